@@ -21,6 +21,7 @@ import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
 
 import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.Property;
 import com.jkoolcloud.tnt4j.core.PropertySnapshot;
 import com.jkoolcloud.tnt4j.utils.Utils;
 
@@ -73,6 +74,31 @@ public class AttributeSample {
 		return new AttributeSample(activity, snapshot, serverConn, name, ainfo);
 	}
 
+	/**
+	 * Create a detached copy of this sample, which can be safely used after sampling moves on, e.g. by actions running
+	 * asynchronously. Sampled value, error, timestamp and exclusion flag are copied. Snapshot is copied along with its
+	 * properties, so later changes made by sampler are not visible to the copy. Activity is shared with the original
+	 * sample.
+	 * 
+	 * @return detached copy of this sample
+	 */
+	public AttributeSample copy() {
+		PropertySnapshot snapshotCopy = null;
+		if (snapshot != null) {
+			snapshotCopy = new PropertySnapshot(snapshot.getCategory(), snapshot.getName(), snapshot.getSeverity(),
+					snapshot.getTimeStamp());
+			for (Property prop : snapshot.getSnapshot()) {
+				snapshotCopy.add(new Property(prop.getKey(), prop.getValue(), prop.getValueType()));
+			}
+		}
+		AttributeSample sample = new AttributeSample(activity, snapshotCopy, server, name, ainfo);
+		sample.timeStamp = timeStamp;
+		sample.value = value;
+		sample.ex = ex;
+		sample.excludeNext = excludeNext;
+		return sample;
+	}
+
 	/**
 	 * Sample and retrieve the value associated with the MBean attribute.
 	 * 
@@ -194,6 +220,16 @@ public class AttributeSample {
 		return value;
 	}
 
+	/**
+	 * Obtain timestamp in microseconds of last sampled value. {@link #sample()} must be called prior to calling this
+	 * call, otherwise 0 is returned.
+	 * 
+	 * @return timestamp in microseconds of last sampled value, 0 if no sample was taken
+	 */
+	public long getTimeStampUsec() {
+		return timeStamp;
+	}
+
 	/**
 	 * Obtain age in microseconds since last sampled value. {@link #sample()} must be called prior to calling this call,
 	 * otherwise -1 is returned.
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import javax.management.openmbean.CompositeData;
+
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.expr.Expression;
+
+/**
+ * <p>
+ * This class defines a numeric variable bound to MBean attribute value. Variable path has the following form:
+ * <ul>
+ * <li>{@code Attribute} - numeric (or boolean) attribute value</li>
+ * <li>{@code Attribute.key1.key2} - numeric value of {@code CompositeData} item(s) of an attribute</li>
+ * <li>{@code ....rate} - change rate of a value per second since previous sample</li>
+ * <li>{@code ....delta} - change of a value since previous sample</li>
+ * </ul>
+ * Non numeric values are read as {@code NaN}. Rates and deltas are {@code NaN} on first sample and rates are
+ * {@code NaN} when a counter decreases (e.g. counter reset). Previous values are kept by callers in primitive arrays,
+ * see {@link #derive(double, long, double[], long[], int)}.
+ * </p>
+ * 
+ * @see ExpressionCondition
+ * @version $Revision: 1 $
+ * 
+ */
+public class AttributeVariable {
+	public static final String SUFFIX_RATE = ".rate";
+	public static final String SUFFIX_DELTA = ".delta";
+	public static final int MODE_VALUE = 0, MODE_RATE = 1, MODE_DELTA = 2;
+
+	final String path;
+	final String attrName;
+	final String[] keys;
+	final int mode;
+
+	/**
+	 * Create variable for a given variable path
+	 * 
+	 * @param path variable path
+	 */
+	public AttributeVariable(String path) {
+		this.path = path;
+		String vPath = path;
+		if (vPath.endsWith(SUFFIX_RATE)) {
+			mode = MODE_RATE;
+			vPath = vPath.substring(0, vPath.length() - SUFFIX_RATE.length());
+		} else if (vPath.endsWith(SUFFIX_DELTA)) {
+			mode = MODE_DELTA;
+			vPath = vPath.substring(0, vPath.length() - SUFFIX_DELTA.length());
+		} else {
+			mode = MODE_VALUE;
+		}
+		String[] tokens = vPath.split("\\.");
+		attrName = tokens[0];
+		keys = new String[tokens.length - 1];
+		System.arraycopy(tokens, 1, keys, 0, keys.length);
+	}
+
+	/**
+	 * Obtain variable path
+	 * 
+	 * @return variable path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Obtain name of attribute this variable is bound to
+	 * 
+	 * @return attribute name
+	 */
+	public String getAttributeName() {
+		return attrName;
+	}
+
+	/**
+	 * Obtain variable mode: {@link #MODE_VALUE}, {@link #MODE_RATE} or {@link #MODE_DELTA}
+	 * 
+	 * @return variable mode
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Read numeric value of this variable from a given attribute value
+	 * 
+	 * @param value attribute value
+	 * @return numeric value, {@code NaN} if not numeric
+	 */
+	public double read(Object value) {
+		return toDouble(value, keys);
+	}
+
+	/**
+	 * Compute variable value from a given numeric value, updating previous value kept at a given slot.
+	 * 
+	 * @param value numeric value read from attribute
+	 * @param timeUsec sample timestamp in microseconds
+	 * @param prev previous values
+	 * @param prevTime previous value timestamps
+	 * @param slot slot of this variable in previous value arrays
+	 * @return variable value
+	 */
+	public double derive(double value, long timeUsec, double[] prev, long[] prevTime, int slot) {
+		double result;
+		switch (mode) {
+		case MODE_RATE:
+			double elapsed = (timeUsec - prevTime[slot]) / 1000000.0;
+			double change = value - prev[slot];
+			result = (change >= 0 && elapsed > 0) ? change / elapsed : Double.NaN;
+			break;
+		case MODE_DELTA:
+			result = value - prev[slot];
+			break;
+		default:
+			return value;
+		}
+		prev[slot] = value;
+		prevTime[slot] = timeUsec;
+		return result;
+	}
+
+	/**
+	 * Convert a given attribute value to double navigating {@code CompositeData} items by given keys
+	 * 
+	 * @param value attribute value
+	 * @param keys {@code CompositeData} item keys
+	 * @return numeric value, {@code NaN} if not numeric
+	 */
+	public static double toDouble(Object value, String[] keys) {
+		for (int i = 0; i < keys.length; i++) {
+			if (!(value instanceof CompositeData)) {
+				return Double.NaN;
+			}
+			CompositeData cData = (CompositeData) value;
+			if (!cData.containsKey(keys[i])) {
+				return Double.NaN;
+			}
+			value = cData.get(keys[i]);
+		}
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		} else if (value instanceof Boolean) {
+			return ((Boolean) value) ? Expression.TRUE : Expression.FALSE;
+		}
+		return Double.NaN;
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+}
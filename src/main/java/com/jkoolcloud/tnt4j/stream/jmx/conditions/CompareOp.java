@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+/**
+ * <p>
+ * This enumeration defines comparison operators used by conditions: =, !=, >, >=, <, <=. Operators are parsed once
+ * when condition is created.
+ * </p>
+ * 
+ * @see SimpleCondition
+ * @version $Revision: 1 $
+ * 
+ */
+public enum CompareOp {
+	EQ("="), NE("!="), GT(">"), GE(">="), LT("<"), LE("<=");
+
+	private final String symbol;
+
+	private CompareOp(String symbol) {
+		this.symbol = symbol;
+	}
+
+	/**
+	 * Operator symbol
+	 * 
+	 * @return operator symbol
+	 */
+	public String getSymbol() {
+		return symbol;
+	}
+
+	@Override
+	public String toString() {
+		return symbol;
+	}
+
+	/**
+	 * Obtain operator for a given symbol. {@code ==} is accepted as an alias of {@code =}.
+	 * 
+	 * @param op operator symbol
+	 * @return operator instance
+	 * @throws IllegalArgumentException if operator symbol is not supported
+	 */
+	public static CompareOp parse(String op) {
+		String symbol = op == null ? "" : op.trim();
+		if ("==".equals(symbol)) {
+			return EQ;
+		}
+		for (CompareOp cop : values()) {
+			if (cop.symbol.equals(symbol)) {
+				return cop;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported operator: " + op);
+	}
+
+	/**
+	 * Apply operator on a given pair of numbers
+	 * 
+	 * @param left left operand
+	 * @param right right operand
+	 * @return result of comparison
+	 */
+	public boolean compare(double left, double right) {
+		switch (this) {
+		case EQ:
+			return left == right;
+		case NE:
+			return left != right;
+		case GT:
+			return left > right;
+		case GE:
+			return left >= right;
+		case LT:
+			return left < right;
+		case LE:
+			return left <= right;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Apply operator on a given pair of values. Numbers are compared by their numeric values, other values support
+	 * only equality operators.
+	 * 
+	 * @param left left operand
+	 * @param right right operand
+	 * @return result of comparison, false if values can't be compared using this operator
+	 */
+	public boolean compare(Object left, Object right) {
+		if (left instanceof Number && right instanceof Number) {
+			return compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+		}
+		if (this == EQ) {
+			return left != null && left.equals(right);
+		} else if (this == NE) {
+			return left != null && !left.equals(right);
+		}
+		return false;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+/**
+ * <p>
+ * This class defines a rule evaluated once per sampling cycle, after all MBeans are sampled, against values sampled
+ * within that cycle. Rule is defined by a numeric expression (see
+ * {@link com.jkoolcloud.tnt4j.stream.jmx.conditions.expr.ExpressionParser}), which references attributes of any
+ * sampled MBean using {@code [objectName]Attribute.path} variables (see {@link AttributeVariable}), e.g.
+ * {@code [java.lang:type=Threading]ThreadCount.delta > 0 && [java.lang:type=OperatingSystem]ProcessCpuLoad > 0.9}.
+ * Variables of MBeans or attributes not sampled within a cycle evaluate as {@code NaN}.
+ * </p>
+ * 
+ * @see RuleAction
+ * @see AttributeVariable
+ * @version $Revision: 1 $
+ * 
+ */
+public class CycleRule {
+	String name;
+	String expression;
+
+	/**
+	 * Create a rule with a given name and expression.
+	 * 
+	 * @param name rule name
+	 * @param expression rule expression text
+	 */
+	public CycleRule(String name, String expression) {
+		this.name = name;
+		this.expression = expression;
+	}
+
+	/**
+	 * Name associated with this rule
+	 * 
+	 * @return rule name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Expression text of this rule
+	 * 
+	 * @return rule expression text
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + expression;
+	}
+}
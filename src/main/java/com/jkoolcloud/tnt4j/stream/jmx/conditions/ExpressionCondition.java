@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import java.util.*;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.expr.Expression;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.expr.ExpressionParser;
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class defines a condition based on a compiled numeric expression over attributes of a single MBean, e.g.
+ * {@code HeapMemoryUsage.used / HeapMemoryUsage.max > 0.9 && CollectionTime.rate > 200}. Expression is parsed once
+ * (see {@link ExpressionParser}) and evaluated on primitive doubles. Variables reference attribute values,
+ * {@code CompositeData} items and their rates or deltas, see {@link AttributeVariable}. Non numeric values are
+ * evaluated as {@code NaN}, so any comparison on them is false.
+ * </p>
+ * <p>
+ * Object name may be an object name pattern: variable state is maintained per matching MBean. Expression is evaluated
+ * once per sample of MBean, when the last of referenced attributes is sampled, so associated action is invoked with
+ * that attribute sample. Sampling cycles of MBean ended before all referenced attributes were sampled (e.g. attribute
+ * is missing or excluded after sampling errors) are not evaluated and counted as incomplete, see
+ * {@link #getIncompleteCount()} and {@link #getMissingAttributes(ObjectName)}.
+ * </p>
+ * 
+ * @see AttributeCondition
+ * @see ScopedCondition
+ * @see StatefulCondition
+ * @see ExpressionParser
+ * @see AttributeVariable
+ * @version $Revision: 1 $
+ * 
+ */
+public class ExpressionCondition implements ScopedCondition, StatefulCondition {
+	String name;
+	ObjectName objectName;
+	String exprText;
+	Expression expression;
+
+	List<String> references = new ArrayList<String>();
+	List<String> attrNames = new ArrayList<String>();
+	int[] slotAttr;
+	AttributeVariable[] variables;
+	Map<String, int[]> slotsByAttr = new HashMap<String, int[]>();
+	Map<ObjectName, VarState> states = new HashMap<ObjectName, VarState>();
+	long evalStamp = 0;
+	long incompleteCount = 0;
+
+	/**
+	 * Variable state of a single MBean
+	 */
+	static class VarState {
+		final double[] values;
+		final double[] prev;
+		final long[] prevTime;
+		final long[] attrCycle;
+		final boolean[] missing;
+		String cycleId;
+		long cycle;
+		int pending;
+
+		VarState(int slots, int attrs) {
+			values = new double[slots];
+			prev = new double[slots];
+			prevTime = new long[slots];
+			attrCycle = new long[attrs];
+			missing = new boolean[attrs];
+			Arrays.fill(values, Double.NaN);
+			Arrays.fill(prev, Double.NaN);
+		}
+	}
+
+	/**
+	 * Create a condition on a given expression over attributes of a given object.
+	 * 
+	 * @param objName canonical MBean object name or object name pattern
+	 * @param expression expression text
+	 * @throws IllegalArgumentException if object name or expression is malformed
+	 */
+	public ExpressionCondition(String objName, String expression) {
+		try {
+			this.objectName = new ObjectName(objName);
+		} catch (MalformedObjectNameException ex) {
+			throw new IllegalArgumentException("Malformed object name: " + objName, ex);
+		}
+		this.exprText = expression;
+		this.expression = new ExpressionParser(new ExpressionParser.VariableResolver() {
+			@Override
+			public int resolve(String reference) {
+				return addReference(reference);
+			}
+		}).parse(expression);
+		this.name = "(" + expression + ")@" + objName;
+		buildSlots();
+	}
+
+	private int addReference(String reference) {
+		if (reference.startsWith("[")) {
+			throw new IllegalArgumentException("Object name references are not supported by MBean conditions");
+		}
+		int slot = references.indexOf(reference);
+		if (slot < 0) {
+			slot = references.size();
+			references.add(reference);
+		}
+		return slot;
+	}
+
+	private void buildSlots() {
+		int slots = references.size();
+		slotAttr = new int[slots];
+		variables = new AttributeVariable[slots];
+		Map<String, List<Integer>> byAttr = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < slots; i++) {
+			variables[i] = new AttributeVariable(references.get(i));
+			String attr = variables[i].getAttributeName();
+			List<Integer> attrSlots = byAttr.get(attr);
+			if (attrSlots == null) {
+				attrSlots = new ArrayList<Integer>();
+				byAttr.put(attr, attrSlots);
+				attrNames.add(attr);
+			}
+			slotAttr[i] = attrNames.indexOf(attr);
+			attrSlots.add(i);
+		}
+		for (Map.Entry<String, List<Integer>> entry : byAttr.entrySet()) {
+			int[] attrSlots = new int[entry.getValue().size()];
+			for (int i = 0; i < attrSlots.length; i++) {
+				attrSlots[i] = entry.getValue().get(i);
+			}
+			slotsByAttr.put(entry.getKey(), attrSlots);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * Expression may reference multiple attributes, so this condition applies to all attributes of matching MBeans.
+	 * 
+	 * @return {@code null}
+	 */
+	@Override
+	public String getAttributeName() {
+		return null;
+	}
+
+	/**
+	 * Obtain names of attributes referenced by expression
+	 * 
+	 * @return list of referenced attribute names
+	 */
+	public List<String> getAttributeNames() {
+		return Collections.unmodifiableList(attrNames);
+	}
+
+	/**
+	 * Obtain compiled expression
+	 * 
+	 * @return compiled expression
+	 */
+	public Expression getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Obtain number of MBean sampling cycles, which ended before all referenced attributes were sampled, so
+	 * expression was not evaluated. Incomplete cycle is detected when the next sampling cycle of the same MBean
+	 * starts.
+	 * 
+	 * @return number of incomplete sampling cycles
+	 */
+	public synchronized long getIncompleteCount() {
+		return incompleteCount;
+	}
+
+	/**
+	 * Obtain names of referenced attributes, which were not sampled during the last incomplete sampling cycle of a
+	 * given MBean.
+	 * 
+	 * @param name MBean object name
+	 * @return list of missing attribute names, empty if none
+	 */
+	public synchronized List<String> getMissingAttributes(ObjectName name) {
+		VarState state = states.get(name);
+		if (state == null) {
+			return Collections.emptyList();
+		}
+		List<String> missing = new ArrayList<String>();
+		for (int i = 0; i < state.missing.length; i++) {
+			if (state.missing[i]) {
+				missing.add(attrNames.get(i));
+			}
+		}
+		return missing;
+	}
+
+	@Override
+	public synchronized boolean evaluate(AttributeSample sample) {
+		int[] slots = slotsByAttr.get(sample.getAttributeInfo().getName());
+		if (slots == null || !objectName.apply(sample.getObjetName())) {
+			return false;
+		}
+		VarState state = states.get(sample.getObjetName());
+		if (state == null) {
+			state = new VarState(references.size(), attrNames.size());
+			states.put(sample.getObjetName(), state);
+		}
+		String cycleId = sample.getActivity().getTrackingId();
+		if (state.cycleId == null || !state.cycleId.equals(cycleId)) {
+			if (state.pending > 0) {
+				incompleteCount++;
+				for (int i = 0; i < state.missing.length; i++) {
+					state.missing[i] = state.attrCycle[i] != state.cycle;
+				}
+			}
+			state.cycleId = cycleId;
+			state.cycle++;
+			state.pending = attrNames.size();
+		}
+		long timeStamp = sample.timeStamp > 0 ? sample.timeStamp : Utils.currentTimeUsec();
+		Object value = sample.get();
+		for (int slot : slots) {
+			AttributeVariable var = variables[slot];
+			state.values[slot] = var.derive(var.read(value), timeStamp, state.prev, state.prevTime, slot);
+		}
+		int attr = slotAttr[slots[0]];
+		if (state.attrCycle[attr] != state.cycle) {
+			state.attrCycle[attr] = state.cycle;
+			state.pending--;
+		}
+		if (state.pending == 0) {
+			state.pending = -1;
+			return Expression.isTrue(expression.evaluate(state.values, ++evalStamp));
+		}
+		return false;
+	}
+
+	@Override
+	public synchronized void reset(ObjectName name) {
+		states.remove(name);
+	}
+}
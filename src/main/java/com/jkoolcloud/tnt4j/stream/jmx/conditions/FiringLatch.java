@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+/**
+ * <p>
+ * This class implements firing deduplication with a hold time. First firing activates the latch and passes through.
+ * Firings while latch is active are suppressed and extend the latch. Latch is released when no firing happened for
+ * the hold time, so the next firing passes through again. Instances are not thread safe: owners synchronize access.
+ * </p>
+ *
+ * @see LatchingCondition
+ * @see LatchingRule
+ * @version $Revision: 1 $
+ *
+ */
+class FiringLatch {
+	boolean active = false;
+	long lastFireUsec;
+
+	/**
+	 * Validate hold time and convert it to microseconds
+	 *
+	 * @param holdMs hold time in milliseconds
+	 * @return hold time in microseconds
+	 * @throws IllegalArgumentException if hold time is not positive
+	 */
+	static long holdUsec(long holdMs) {
+		if (holdMs <= 0) {
+			throw new IllegalArgumentException("Latch hold time must be positive: " + holdMs);
+		}
+		return holdMs * 1000;
+	}
+
+	/**
+	 * Release latch if no firing happened for the hold time
+	 *
+	 * @param timeUsec current time in microseconds
+	 * @param holdUsec hold time in microseconds
+	 * @return true if latch was released, false otherwise
+	 */
+	boolean expire(long timeUsec, long holdUsec) {
+		if (active && timeUsec - lastFireUsec >= holdUsec) {
+			active = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Register a firing. Call {@link #expire(long, long)} first to release latch held longer than hold time.
+	 *
+	 * @param timeUsec firing time in microseconds
+	 * @return true if firing activated the latch and passes through, false if it is suppressed
+	 */
+	boolean fire(long timeUsec) {
+		lastFireUsec = timeUsec;
+		if (active) {
+			return false;
+		}
+		active = true;
+		return true;
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class defines a numeric condition with hysteresis for a given JMX object, property. Condition becomes active
+ * when attribute value satisfies operator against enter threshold and stays active until value no longer satisfies
+ * operator against exit threshold, e.g. {@code > 90} to enter and {@code > 80} to stay active. State change happens
+ * only when new state holds for at least minimum hold time, so short spikes and dips are ignored.
+ * </p>
+ * <p>
+ * Condition evaluates to true only when it becomes active, so associated action is invoked once per activation.
+ * Samples satisfying enter threshold while condition is already active would fire it again, so they are counted as
+ * suppressed firings. Samples only satisfying exit threshold keep condition active and are not counted. State is maintained per matching
+ * MBean when object name is a pattern. Attribute may be referenced with {@code CompositeData} item path, e.g.
+ * {@code HeapMemoryUsage.used}.
+ * </p>
+ * 
+ * @see AttributeCondition
+ * @see LatchedCondition
+ * @version $Revision: 1 $
+ * 
+ */
+public class HysteresisCondition implements ScopedCondition, LatchedCondition {
+	String name;
+	ObjectName objectName;
+	String attrName;
+	String[] keys;
+	CompareOp compareOp;
+	double enterValue;
+	double exitValue;
+	long minHoldUsec;
+	long transitionCount = 0, suppressedCount = 0;
+	Map<ObjectName, LatchState> states = new HashMap<ObjectName, LatchState>();
+
+	/**
+	 * Latch state of a single MBean
+	 */
+	static class LatchState {
+		boolean active = false;
+		long pendingSince = -1;
+	}
+
+	/**
+	 * Create a condition with hysteresis on a numeric object/attribute.
+	 * 
+	 * @param objName canonical MBean object name or object name pattern
+	 * @param attrPath attribute name, optionally followed by dot separated {@code CompositeData} item path
+	 * @param op operator to apply ( =, !=, >, >=, <, <=)
+	 * @param enterValue threshold value activating condition
+	 * @param exitValue threshold value condition must satisfy to stay active
+	 * @throws IllegalArgumentException if object name is malformed or operator is not supported
+	 */
+	public HysteresisCondition(String objName, String attrPath, String op, Number enterValue, Number exitValue) {
+		this(objName, attrPath, op, enterValue, exitValue, 0);
+	}
+
+	/**
+	 * Create a condition with hysteresis and minimum hold time on a numeric object/attribute.
+	 * 
+	 * @param objName canonical MBean object name or object name pattern
+	 * @param attrPath attribute name, optionally followed by dot separated {@code CompositeData} item path
+	 * @param op operator to apply ( =, !=, >, >=, <, <=)
+	 * @param enterValue threshold value activating condition
+	 * @param exitValue threshold value condition must satisfy to stay active
+	 * @param minHoldMs minimum time in milliseconds new state must hold before state changes
+	 * @throws IllegalArgumentException if object name is malformed or operator is not supported
+	 */
+	public HysteresisCondition(String objName, String attrPath, String op, Number enterValue, Number exitValue,
+			long minHoldMs) {
+		try {
+			this.objectName = new ObjectName(objName);
+		} catch (MalformedObjectNameException ex) {
+			throw new IllegalArgumentException("Malformed object name: " + objName, ex);
+		}
+		String[] tokens = attrPath.split("\\.");
+		this.attrName = tokens[0];
+		this.keys = new String[tokens.length - 1];
+		System.arraycopy(tokens, 1, keys, 0, keys.length);
+		this.compareOp = CompareOp.parse(op);
+		this.enterValue = enterValue.doubleValue();
+		this.exitValue = exitValue.doubleValue();
+		this.minHoldUsec = minHoldMs * 1000;
+		this.name = attrPath + "@" + objName;
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + compareOp + " " + enterValue + "/" + exitValue;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	@Override
+	public String getAttributeName() {
+		return attrName;
+	}
+
+	@Override
+	public synchronized boolean evaluate(AttributeSample sample) {
+		if (!sample.getAttributeInfo().getName().equals(attrName) || !objectName.apply(sample.getObjetName())) {
+			return false;
+		}
+		double value = AttributeVariable.toDouble(sample.get(), keys);
+		if (Double.isNaN(value)) {
+			return false;
+		}
+		LatchState state = states.get(sample.getObjetName());
+		if (state == null) {
+			state = new LatchState();
+			states.put(sample.getObjetName(), state);
+		}
+		long timeStamp = sample.timeStamp > 0 ? sample.timeStamp : Utils.currentTimeUsec();
+		if (!state.active) {
+			if (!compareOp.compare(value, enterValue)) {
+				state.pendingSince = -1;
+			} else if (hold(state, timeStamp)) {
+				state.active = true;
+				transitionCount++;
+				return true;
+			}
+		} else {
+			if (compareOp.compare(value, exitValue)) {
+				state.pendingSince = -1;
+				if (compareOp.compare(value, enterValue)) {
+					suppressedCount++;
+				}
+			} else if (hold(state, timeStamp)) {
+				state.active = false;
+				transitionCount++;
+			}
+		}
+		return false;
+	}
+
+	private boolean hold(LatchState state, long timeStamp) {
+		if (state.pendingSince < 0) {
+			state.pendingSince = timeStamp;
+		}
+		if (timeStamp - state.pendingSince >= minHoldUsec) {
+			state.pendingSince = -1;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Determine if condition is currently active for a given MBean
+	 * 
+	 * @param name MBean object name
+	 * @return true if condition is active, false otherwise
+	 */
+	public synchronized boolean isActive(ObjectName name) {
+		LatchState state = states.get(name);
+		return state != null && state.active;
+	}
+
+	@Override
+	public synchronized long getTransitionCount() {
+		return transitionCount;
+	}
+
+	@Override
+	public synchronized long getSuppressedCount() {
+		return suppressedCount;
+	}
+
+	@Override
+	public synchronized void reset(ObjectName name) {
+		states.remove(name);
+	}
+}
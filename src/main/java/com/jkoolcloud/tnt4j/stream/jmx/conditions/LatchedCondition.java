@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+/**
+ * <p>
+ * This interface defines an attribute condition which tracks its state across samples and reports only state
+ * transitions instead of firing on every sample while condition holds. Sample handlers report counts of state
+ * transitions and suppressed (repeated) firings via {@code SampleContext}.
+ * </p>
+ * 
+ * @see HysteresisCondition
+ * @see LatchingCondition
+ * @version $Revision: 1 $
+ * 
+ */
+public interface LatchedCondition extends StatefulCondition {
+	/**
+	 * Obtain number of state transitions (entering and leaving active state) since condition was created
+	 * 
+	 * @return number of state transitions
+	 */
+	long getTransitionCount();
+
+	/**
+	 * Obtain number of suppressed firings, i.e. samples which would have fired condition again while it was already
+	 * active
+	 * 
+	 * @return number of suppressed firings
+	 */
+	long getSuppressedCount();
+}
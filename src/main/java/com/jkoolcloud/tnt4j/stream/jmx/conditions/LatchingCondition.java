@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class decorates any attribute condition (e.g. {@link SimpleCondition}, {@link ExpressionCondition},
+ * {@link WindowedCondition}) with firing deduplication. First firing of wrapped condition for a given MBean passes
+ * through and latches condition. Firings while condition is latched are suppressed and counted; each of them extends
+ * the latch. Latch is released once wrapped condition did not fire for the hold time, so the next firing invokes
+ * associated action again. Latch state is maintained per MBean. Use {@link LatchingRule} to deduplicate firings of
+ * {@link CycleRule}s.
+ * </p>
+ * <p>
+ * Scope of wrapped condition is preserved when it implements {@link ScopedCondition}, and {@link #reset(ObjectName)}
+ * is propagated when it implements {@link StatefulCondition}. Counts of wrapped {@link LatchedCondition} are included
+ * into counts reported by this condition.
+ * </p>
+ *
+ * @see LatchedCondition
+ * @see LatchingRule
+ * @version $Revision: 1 $
+ *
+ */
+public class LatchingCondition implements ScopedCondition, LatchedCondition {
+	AttributeCondition condition;
+	long holdUsec;
+	long transitionCount = 0, suppressedCount = 0;
+	Map<ObjectName, FiringLatch> latches = new HashMap<ObjectName, FiringLatch>();
+
+	/**
+	 * Create a latching decorator of a given condition.
+	 *
+	 * @param condition condition to deduplicate firings of
+	 * @param holdMs time in milliseconds condition must not fire to release the latch
+	 * @throws IllegalArgumentException if hold time is not positive
+	 */
+	public LatchingCondition(AttributeCondition condition, long holdMs) {
+		this.condition = condition;
+		this.holdUsec = FiringLatch.holdUsec(holdMs);
+	}
+
+	/**
+	 * Obtain wrapped condition
+	 *
+	 * @return wrapped condition
+	 */
+	public AttributeCondition getCondition() {
+		return condition;
+	}
+
+	@Override
+	public String toString() {
+		return "latched(" + condition + ", " + (holdUsec / 1000) + "ms)";
+	}
+
+	@Override
+	public String getName() {
+		return condition.getName();
+	}
+
+	@Override
+	public ObjectName getObjectName() {
+		return condition instanceof ScopedCondition ? ((ScopedCondition) condition).getObjectName() : null;
+	}
+
+	@Override
+	public String getAttributeName() {
+		return condition instanceof ScopedCondition ? ((ScopedCondition) condition).getAttributeName() : null;
+	}
+
+	@Override
+	public synchronized boolean evaluate(AttributeSample sample) {
+		boolean fired = condition.evaluate(sample);
+		FiringLatch latch = latches.get(sample.getObjetName());
+		if (latch == null) {
+			if (!fired) {
+				return false;
+			}
+			latch = new FiringLatch();
+			latches.put(sample.getObjetName(), latch);
+		}
+		long timeStamp = sample.timeStamp > 0 ? sample.timeStamp : Utils.currentTimeUsec();
+		if (latch.expire(timeStamp, holdUsec)) {
+			transitionCount++;
+		}
+		if (!fired) {
+			return false;
+		}
+		if (latch.fire(timeStamp)) {
+			transitionCount++;
+			return true;
+		}
+		suppressedCount++;
+		return false;
+	}
+
+	/**
+	 * Determine if condition is latched for a given MBean as of the last evaluated sample of that MBean
+	 *
+	 * @param name MBean object name
+	 * @return true if condition is latched, false otherwise
+	 */
+	public synchronized boolean isActive(ObjectName name) {
+		FiringLatch latch = latches.get(name);
+		return latch != null && latch.active;
+	}
+
+	@Override
+	public synchronized long getTransitionCount() {
+		return transitionCount
+				+ (condition instanceof LatchedCondition ? ((LatchedCondition) condition).getTransitionCount() : 0);
+	}
+
+	@Override
+	public synchronized long getSuppressedCount() {
+		return suppressedCount
+				+ (condition instanceof LatchedCondition ? ((LatchedCondition) condition).getSuppressedCount() : 0);
+	}
+
+	@Override
+	public void reset(ObjectName name) {
+		synchronized (this) {
+			latches.remove(name);
+		}
+		if (condition instanceof StatefulCondition) {
+			((StatefulCondition) condition).reset(name);
+		}
+	}
+}
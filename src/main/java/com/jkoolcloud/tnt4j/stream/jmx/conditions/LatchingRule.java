@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+/**
+ * <p>
+ * This class decorates a {@link CycleRule} with firing deduplication. First cycle rule evaluates to true invokes
+ * associated action and latches the rule. Cycles evaluating rule to true while it is latched are suppressed and
+ * counted; each of them extends the latch. Latch is released once rule did not evaluate to true for the hold time.
+ * </p>
+ *
+ * @see LatchingCondition
+ * @see CycleRule
+ * @version $Revision: 1 $
+ *
+ */
+public class LatchingRule extends CycleRule {
+	CycleRule rule;
+	long holdUsec;
+	long transitionCount = 0, suppressedCount = 0;
+	FiringLatch latch = new FiringLatch();
+
+	/**
+	 * Create a latching decorator of a given rule.
+	 *
+	 * @param rule rule to deduplicate firings of
+	 * @param holdMs time in milliseconds rule must not evaluate to true to release the latch
+	 * @throws IllegalArgumentException if hold time is not positive
+	 */
+	public LatchingRule(CycleRule rule, long holdMs) {
+		super(rule.getName(), rule.getExpression());
+		this.rule = rule;
+		this.holdUsec = FiringLatch.holdUsec(holdMs);
+	}
+
+	/**
+	 * Obtain wrapped rule
+	 *
+	 * @return wrapped rule
+	 */
+	public CycleRule getRule() {
+		return rule;
+	}
+
+	/**
+	 * Register result of rule evaluation within a sampling cycle
+	 *
+	 * @param fired true if rule evaluated to true, false otherwise
+	 * @param timeUsec evaluation time in microseconds
+	 * @return true if associated action should be invoked, false if rule did not fire or firing is suppressed
+	 */
+	public synchronized boolean latch(boolean fired, long timeUsec) {
+		if (latch.expire(timeUsec, holdUsec)) {
+			transitionCount++;
+		}
+		if (!fired) {
+			return false;
+		}
+		if (latch.fire(timeUsec)) {
+			transitionCount++;
+			return true;
+		}
+		suppressedCount++;
+		return false;
+	}
+
+	/**
+	 * Determine if rule is latched as of the last evaluation
+	 *
+	 * @return true if rule is latched, false otherwise
+	 */
+	public synchronized boolean isActive() {
+		return latch.active;
+	}
+
+	/**
+	 * Obtain number of latch state transitions (latching and releasing)
+	 *
+	 * @return number of state transitions
+	 */
+	public synchronized long getTransitionCount() {
+		return transitionCount;
+	}
+
+	/**
+	 * Obtain number of suppressed firings, i.e. cycles rule evaluated to true while it was latched
+	 *
+	 * @return number of suppressed firings
+	 */
+	public synchronized long getSuppressedCount() {
+		return suppressedCount;
+	}
+
+	@Override
+	public String toString() {
+		return "latched(" + rule + ", " + (holdUsec / 1000) + "ms)";
+	}
+}
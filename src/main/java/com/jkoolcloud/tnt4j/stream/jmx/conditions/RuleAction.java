@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.stream.jmx.core.SampleContext;
+
+/**
+ * <p>
+ * This interface defines a way to run actions when a {@link CycleRule} evaluates to true at the end of a sampling
+ * cycle.
+ * </p>
+ * 
+ * @see CycleRule
+ * @version $Revision: 1 $
+ * 
+ */
+public interface RuleAction {
+	/**
+	 * Run action instance
+	 * 
+	 * @param context current sample context
+	 * @param rule rule that triggered this action
+	 * @param activity current sampling activity containing all sampled snapshots
+	 * @return a user defined return value
+	 */
+	Object action(SampleContext context, CycleRule rule, Activity activity);
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+/**
+ * <p> 
+ * This interface extends {@link SampleHandler} with cycle rules evaluated once per sampling cycle, after all MBeans
+ * are sampled.
+ * </p>
+ * 
+ * @see CycleRule
+ * @see RuleAction
+ * @version $Revision: 1 $
+ * 
+ */
+public interface RuleHandler extends SampleHandler {
+	/**
+	 * Register and associate cycle rule with an action
+	 * 
+	 * @param rule user defined rule evaluated once per sampling cycle
+	 * @param action action to be triggered when rule evaluates to true
+	 * @throws IllegalArgumentException if rule expression is malformed
+	 */
+	SampleHandler register(CycleRule rule, RuleAction action);
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * This class implements fixed size window of timestamped numeric samples backed by primitive ring buffers. Window
+ * statistics (mean, min, max, rate of change, percentiles) are computed over samples currently in the window without
+ * allocating objects. Memory is bounded by window size.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ * 
+ * @see WindowedCondition
+ * @version $Revision: 1 $
+ * 
+ */
+public class SampleWindow {
+	private final double[] values;
+	private final long[] times;
+	private final double[] scratch;
+	private int head = 0;
+	private int count = 0;
+
+	/**
+	 * Create sample window of a given size
+	 * 
+	 * @param size maximum number of samples in the window
+	 */
+	public SampleWindow(int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Window size must be positive: " + size);
+		}
+		values = new double[size];
+		times = new long[size];
+		scratch = new double[size];
+	}
+
+	/**
+	 * Add sample to the window, evicting the oldest sample when window is full.
+	 * 
+	 * @param value sample value
+	 * @param timeUsec sample timestamp in microseconds
+	 */
+	public void add(double value, long timeUsec) {
+		values[head] = value;
+		times[head] = timeUsec;
+		head = (head + 1) % values.length;
+		if (count < values.length) {
+			count++;
+		}
+	}
+
+	/**
+	 * Remove all samples from the window
+	 */
+	public void clear() {
+		head = 0;
+		count = 0;
+	}
+
+	/**
+	 * Obtain number of samples in the window
+	 * 
+	 * @return number of samples
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Obtain maximum number of samples in the window
+	 * 
+	 * @return window capacity
+	 */
+	public int capacity() {
+		return values.length;
+	}
+
+	/**
+	 * Determine if window holds maximum number of samples
+	 * 
+	 * @return true if window is full, false otherwise
+	 */
+	public boolean isFull() {
+		return count == values.length;
+	}
+
+	private int index(int i) {
+		return (head - count + i + values.length) % values.length;
+	}
+
+	/**
+	 * Mean of samples in the window
+	 * 
+	 * @return mean value, {@code NaN} if window is empty
+	 */
+	public double mean() {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		double sum = 0;
+		for (int i = 0; i < count; i++) {
+			sum += values[index(i)];
+		}
+		return sum / count;
+	}
+
+	/**
+	 * Minimum of samples in the window
+	 * 
+	 * @return minimum value, {@code NaN} if window is empty
+	 */
+	public double min() {
+		double min = Double.NaN;
+		for (int i = 0; i < count; i++) {
+			double value = values[index(i)];
+			min = (i == 0 || value < min) ? value : min;
+		}
+		return min;
+	}
+
+	/**
+	 * Maximum of samples in the window
+	 * 
+	 * @return maximum value, {@code NaN} if window is empty
+	 */
+	public double max() {
+		double max = Double.NaN;
+		for (int i = 0; i < count; i++) {
+			double value = values[index(i)];
+			max = (i == 0 || value > max) ? value : max;
+		}
+		return max;
+	}
+
+	/**
+	 * Rate of change per second between the oldest and the newest samples in the window
+	 * 
+	 * @return rate of change per second, {@code NaN} if window has less than 2 samples
+	 */
+	public double rate() {
+		if (count < 2) {
+			return Double.NaN;
+		}
+		int first = index(0), last = index(count - 1);
+		long elapsed = times[last] - times[first];
+		return elapsed > 0 ? (values[last] - values[first]) * 1000000.0 / elapsed : Double.NaN;
+	}
+
+	/**
+	 * Percentile of samples in the window using nearest rank method. Result is exact for samples in the window and
+	 * approximates percentile of the sampled series, since window is a bounded subset of it.
+	 * 
+	 * @param percentile percentile in range {@code [0, 100]}
+	 * @return percentile value, {@code NaN} if window is empty
+	 */
+	public double percentile(double percentile) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		for (int i = 0; i < count; i++) {
+			scratch[i] = values[index(i)];
+		}
+		int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+		return select(scratch, count, Math.max(0, Math.min(count - 1, rank)));
+	}
+
+	/**
+	 * Select k-th smallest value from first {@code n} values of a given array (quick select, reorders array)
+	 */
+	private static double select(double[] arr, int n, int k) {
+		int left = 0, right = n - 1;
+		while (left < right) {
+			double pivot = arr[(left + right) >>> 1];
+			int i = left, j = right;
+			while (i <= j) {
+				while (arr[i] < pivot) {
+					i++;
+				}
+				while (arr[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					double tmp = arr[i];
+					arr[i++] = arr[j];
+					arr[j--] = tmp;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				break;
+			}
+		}
+		return arr[k];
+	}
+
+	@Override
+	public String toString() {
+		double[] ordered = new double[count];
+		for (int i = 0; i < count; i++) {
+			ordered[i] = values[index(i)];
+		}
+		return Arrays.toString(ordered);
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * This interface defines an attribute condition which declares MBean object name (or pattern) and attribute it
+ * applies to. Sample handlers index scoped conditions and evaluate them only for matching attributes. Conditions not
+ * implementing this interface are evaluated for every sampled attribute.
+ * </p>
+ * 
+ * @see AttributeCondition
+ * @see AttributeSample
+ * @version $Revision: 1 $
+ * 
+ */
+public interface ScopedCondition extends AttributeCondition {
+	/**
+	 * MBean object name or object name pattern this condition applies to
+	 * 
+	 * @return object name or pattern, {@code null} if condition applies to all MBeans
+	 */
+	ObjectName getObjectName();
+
+	/**
+	 * MBean attribute name this condition applies to
+	 * 
+	 * @return attribute name, {@code null} if condition applies to all attributes
+	 */
+	String getAttributeName();
+}
@@ -15,37 +15,51 @@
  */
 package com.jkoolcloud.tnt4j.stream.jmx.conditions;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
 /**
  * <p>
  * This class defines a simple numeric condition that supports =, !=, >, >=, <, <= operators for a given JMX object,
- * property.
+ * property. Object name may be an object name pattern. Condition declares its scope, so sample handlers evaluate it
+ * only for matching attributes.
  * </p>
  * 
  * @see AttributeCondition
+ * @see ScopedCondition
  * @see AttributeSample
  * @version $Revision: 1 $
  * 
  */
-public class SimpleCondition implements AttributeCondition {
+public class SimpleCondition implements ScopedCondition {
 	String name;
 	String objName;
+	ObjectName objectName;
 	String attrName;
 	Number value;
 	String op;
+	CompareOp compareOp;
 
 	/**
 	 * Create a condition on a numeric object/attribute and a given numeric value by applying an operator.
 	 * 
-	 * @param objName canonical MBean object name
+	 * @param objName canonical MBean object name or object name pattern
 	 * @param attrName attribute name
 	 * @param value numeric value to apply operator
 	 * @param op operator to apply ( =, !=, >, >=, <, <=)
+	 * @throws IllegalArgumentException if object name is malformed or operator is not supported
 	 */
 	public SimpleCondition(String objName, String attrName, Number value, String op) {
-		this.objName = objName;
+		try {
+			this.objectName = new ObjectName(objName);
+		} catch (MalformedObjectNameException ex) {
+			throw new IllegalArgumentException("Malformed object name: " + objName, ex);
+		}
+		this.objName = objectName.getCanonicalName();
 		this.attrName = attrName;
 		this.value = value;
 		this.op = op;
+		this.compareOp = CompareOp.parse(op);
 		this.name = attrName + "@" + objName;
 	}
 
@@ -59,38 +73,20 @@ public class SimpleCondition implements AttributeCondition {
 		return name;
 	}
 
+	@Override
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	@Override
+	public String getAttributeName() {
+		return attrName;
+	}
+
 	@Override
 	public boolean evaluate(AttributeSample sample) {
-		if (sample.getAttributeInfo().getName().equals(attrName)
-				&& sample.getObjetName().getCanonicalName().equals(objName)) {
-			if (op.endsWith("=")) {
-				return sample.get().equals(value);
-			} else if (op.endsWith("!=")) {
-				Object val = sample.get();
-				if (val instanceof Number) {
-					return ((Number) val).doubleValue() != value.doubleValue();
-				}
-			} else if (op.endsWith(">")) {
-				Object val = sample.get();
-				if (val instanceof Number) {
-					return ((Number) val).doubleValue() > value.doubleValue();
-				}
-			} else if (op.endsWith(">=")) {
-				Object val = sample.get();
-				if (val instanceof Number) {
-					return ((Number) val).doubleValue() >= value.doubleValue();
-				}
-			} else if (op.endsWith("<")) {
-				Object val = sample.get();
-				if (val instanceof Number) {
-					return ((Number) val).doubleValue() < value.doubleValue();
-				}
-			} else if (op.endsWith("<=")) {
-				Object val = sample.get();
-				if (val instanceof Number) {
-					return ((Number) val).doubleValue() <= value.doubleValue();
-				}
-			}
+		if (sample.getAttributeInfo().getName().equals(attrName) && objectName.apply(sample.getObjetName())) {
+			return compareOp.compare(sample.get(), value);
 		}
 		return false;
 	}
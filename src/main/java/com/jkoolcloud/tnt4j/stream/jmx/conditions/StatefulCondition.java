@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * This interface defines an attribute condition which maintains state per MBean across samples (e.g. previous values,
+ * sample windows). Sample handlers call {@link #reset(ObjectName)} when MBean is unregistered, so state memory does
+ * not grow with MBean churn.
+ * </p>
+ * 
+ * @see ExpressionCondition
+ * @see WindowedCondition
+ * @version $Revision: 1 $
+ * 
+ */
+public interface StatefulCondition extends AttributeCondition {
+	/**
+	 * Drop state maintained for a given MBean
+	 * 
+	 * @param name MBean object name
+	 */
+	void reset(ObjectName name);
+}
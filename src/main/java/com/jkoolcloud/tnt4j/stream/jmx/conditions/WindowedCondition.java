@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class defines a condition on a statistic computed over a window of last samples of a numeric attribute, e.g.
+ * "average of {@code QueueSize} over the last 12 samples > 1000" or "{@code CollectionTime} rate over the last 6
+ * samples > 100 ms/sec". Supported statistics are defined by {@link Statistic}. Attribute may be referenced with
+ * {@code CompositeData} item path, e.g. {@code HeapMemoryUsage.used}.
+ * </p>
+ * <p>
+ * Object name may be an object name pattern: sample window is maintained per matching MBean using {@link SampleWindow}
+ * primitive ring buffers, so memory is bounded by window size times number of tracked MBeans. Condition evaluates to
+ * false until the window is full. Non numeric values are not added to the window.
+ * </p>
+ * 
+ * @see AttributeCondition
+ * @see SampleWindow
+ * @version $Revision: 1 $
+ * 
+ */
+public class WindowedCondition implements ScopedCondition, StatefulCondition {
+	/**
+	 * Window statistics supported by windowed conditions
+	 */
+	public enum Statistic {
+		MEAN, MIN, MAX, RATE, PERCENTILE
+	}
+
+	String name;
+	ObjectName objectName;
+	String attrPath;
+	String attrName;
+	String[] keys;
+	Statistic statistic;
+	double percentile;
+	int windowSize;
+	CompareOp compareOp;
+	double value;
+	Map<ObjectName, SampleWindow> windows = new HashMap<ObjectName, SampleWindow>();
+
+	/**
+	 * Create a condition on a window statistic of a given numeric object/attribute by applying an operator.
+	 * 
+	 * @param objName canonical MBean object name or object name pattern
+	 * @param attrPath attribute name, optionally followed by dot separated {@code CompositeData} item path
+	 * @param statistic window statistic (other than {@link Statistic#PERCENTILE})
+	 * @param windowSize number of last samples in the window
+	 * @param value numeric value to apply operator
+	 * @param op operator to apply ( =, !=, >, >=, <, <=)
+	 * @throws IllegalArgumentException if object name is malformed, operator is not supported or window size is not
+	 *             positive
+	 */
+	public WindowedCondition(String objName, String attrPath, Statistic statistic, int windowSize, Number value,
+			String op) {
+		this(objName, attrPath, statistic, 0, windowSize, value, op);
+	}
+
+	/**
+	 * Create a condition on a given percentile of a numeric object/attribute window by applying an operator.
+	 * 
+	 * @param objName canonical MBean object name or object name pattern
+	 * @param attrPath attribute name, optionally followed by dot separated {@code CompositeData} item path
+	 * @param percentile percentile in range {@code [0, 100]}
+	 * @param windowSize number of last samples in the window
+	 * @param value numeric value to apply operator
+	 * @param op operator to apply ( =, !=, >, >=, <, <=)
+	 * @throws IllegalArgumentException if object name is malformed, operator is not supported or window size is not
+	 *             positive
+	 */
+	public WindowedCondition(String objName, String attrPath, double percentile, int windowSize, Number value,
+			String op) {
+		this(objName, attrPath, Statistic.PERCENTILE, percentile, windowSize, value, op);
+	}
+
+	private WindowedCondition(String objName, String attrPath, Statistic statistic, double percentile,
+			int windowSize, Number value, String op) {
+		try {
+			this.objectName = new ObjectName(objName);
+		} catch (MalformedObjectNameException ex) {
+			throw new IllegalArgumentException("Malformed object name: " + objName, ex);
+		}
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+		}
+		String[] tokens = attrPath.split("\\.");
+		this.attrPath = attrPath;
+		this.attrName = tokens[0];
+		this.keys = new String[tokens.length - 1];
+		System.arraycopy(tokens, 1, keys, 0, keys.length);
+		this.statistic = statistic;
+		this.percentile = percentile;
+		this.windowSize = windowSize;
+		this.value = value.doubleValue();
+		this.compareOp = CompareOp.parse(op);
+		this.name = statName() + "(" + attrPath + ", " + windowSize + ")@" + objName;
+	}
+
+	private String statName() {
+		return statistic == Statistic.PERCENTILE ? "p" + percentile : statistic.name().toLowerCase();
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + compareOp + " " + value;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	@Override
+	public String getAttributeName() {
+		return attrName;
+	}
+
+	@Override
+	public synchronized boolean evaluate(AttributeSample sample) {
+		if (!sample.getAttributeInfo().getName().equals(attrName) || !objectName.apply(sample.getObjetName())) {
+			return false;
+		}
+		double sValue = AttributeVariable.toDouble(sample.get(), keys);
+		if (Double.isNaN(sValue)) {
+			return false;
+		}
+		SampleWindow window = windows.get(sample.getObjetName());
+		if (window == null) {
+			window = new SampleWindow(windowSize);
+			windows.put(sample.getObjetName(), window);
+		}
+		window.add(sValue, sample.timeStamp > 0 ? sample.timeStamp : Utils.currentTimeUsec());
+		if (!window.isFull()) {
+			return false;
+		}
+		double stat = statistic(window);
+		return !Double.isNaN(stat) && compareOp.compare(stat, value);
+	}
+
+	private double statistic(SampleWindow window) {
+		switch (statistic) {
+		case MEAN:
+			return window.mean();
+		case MIN:
+			return window.min();
+		case MAX:
+			return window.max();
+		case RATE:
+			return window.rate();
+		case PERCENTILE:
+			return window.percentile(percentile);
+		default:
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Obtain number of MBeans tracked by this condition
+	 * 
+	 * @return number of tracked MBeans
+	 */
+	public synchronized int getSeriesCount() {
+		return windows.size();
+	}
+
+	@Override
+	public synchronized void reset(ObjectName name) {
+		windows.remove(name);
+	}
+}
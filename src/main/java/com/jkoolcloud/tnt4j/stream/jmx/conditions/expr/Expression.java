@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions.expr;
+
+/**
+ * <p>
+ * This class defines a node of compiled expression tree. Expressions are evaluated on primitive doubles: variables
+ * are read from {@code double[]} slots assigned during parsing and boolean results are represented as {@code 1.0}
+ * (true) and {@code 0.0} (false). {@code NaN} represents unknown values, any comparison with {@code NaN} evaluates
+ * to false. Evaluation does not allocate any objects.
+ * </p>
+ * <p>
+ * Nodes shared by multiple expressions (see {@link ExpressionParser}) cache their value for a given evaluation stamp,
+ * so shared sub-expressions are computed only once per evaluation round.
+ * </p>
+ * 
+ * @see ExpressionParser
+ * @version $Revision: 1 $
+ * 
+ */
+public abstract class Expression {
+	public static final double TRUE = 1.0;
+	public static final double FALSE = 0.0;
+
+	boolean shared = false;
+	long stamp = Long.MIN_VALUE;
+	double cached;
+
+	/**
+	 * Evaluate expression
+	 * 
+	 * @param vars variable values indexed by slots assigned during parsing
+	 * @param evalStamp evaluation round stamp, must change between evaluation rounds with different variable values
+	 * @return expression value
+	 */
+	public final double evaluate(double[] vars, long evalStamp) {
+		if (!shared) {
+			return eval(vars, evalStamp);
+		}
+		if (stamp != evalStamp) {
+			cached = eval(vars, evalStamp);
+			stamp = evalStamp;
+		}
+		return cached;
+	}
+
+	/**
+	 * Evaluate expression node
+	 * 
+	 * @param vars variable values indexed by slots assigned during parsing
+	 * @param evalStamp evaluation round stamp
+	 * @return expression value
+	 */
+	protected abstract double eval(double[] vars, long evalStamp);
+
+	/**
+	 * Determine if this node is shared by multiple expressions
+	 * 
+	 * @return true if shared, false otherwise
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * Convert a given expression value to boolean
+	 * 
+	 * @param value expression value
+	 * @return true if value is non zero number, false otherwise
+	 */
+	public static boolean isTrue(double value) {
+		return value != 0 && !Double.isNaN(value);
+	}
+
+	static double bool(boolean value) {
+		return value ? TRUE : FALSE;
+	}
+
+	/**
+	 * Numeric constant
+	 */
+	static class Constant extends Expression {
+		final double value;
+
+		Constant(double value) {
+			this.value = value;
+		}
+
+		@Override
+		protected double eval(double[] vars, long evalStamp) {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(value);
+		}
+	}
+
+	/**
+	 * Variable reference
+	 */
+	static class Variable extends Expression {
+		final String reference;
+		final int slot;
+
+		Variable(String reference, int slot) {
+			this.reference = reference;
+			this.slot = slot;
+		}
+
+		@Override
+		protected double eval(double[] vars, long evalStamp) {
+			return vars[slot];
+		}
+
+		@Override
+		public String toString() {
+			return reference;
+		}
+	}
+
+	/**
+	 * Unary operator: logical not ({@code !}) or negation ({@code -})
+	 */
+	static class Unary extends Expression {
+		final boolean not;
+		final Expression operand;
+
+		Unary(boolean not, Expression operand) {
+			this.not = not;
+			this.operand = operand;
+		}
+
+		@Override
+		protected double eval(double[] vars, long evalStamp) {
+			double value = operand.evaluate(vars, evalStamp);
+			return not ? bool(!isTrue(value)) : -value;
+		}
+
+		@Override
+		public String toString() {
+			return (not ? "!" : "-") + "(" + operand + ")";
+		}
+	}
+
+	/**
+	 * Binary operator
+	 */
+	static class Binary extends Expression {
+		static final int ADD = 0, SUB = 1, MUL = 2, DIV = 3, MOD = 4, GT = 5, GE = 6, LT = 7, LE = 8, EQ = 9, NE = 10,
+				AND = 11, OR = 12;
+		static final String[] SYMBOLS = { "+", "-", "*", "/", "%", ">", ">=", "<", "<=", "==", "!=", "&&", "||" };
+
+		final int op;
+		final Expression left, right;
+
+		Binary(int op, Expression left, Expression right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		protected double eval(double[] vars, long evalStamp) {
+			double lv = left.evaluate(vars, evalStamp);
+			switch (op) {
+			case AND:
+				return isTrue(lv) ? bool(isTrue(right.evaluate(vars, evalStamp))) : FALSE;
+			case OR:
+				return isTrue(lv) ? TRUE : bool(isTrue(right.evaluate(vars, evalStamp)));
+			default:
+				break;
+			}
+			double rv = right.evaluate(vars, evalStamp);
+			switch (op) {
+			case ADD:
+				return lv + rv;
+			case SUB:
+				return lv - rv;
+			case MUL:
+				return lv * rv;
+			case DIV:
+				return lv / rv;
+			case MOD:
+				return lv % rv;
+			case GT:
+				return bool(lv > rv);
+			case GE:
+				return bool(lv >= rv);
+			case LT:
+				return bool(lv < rv);
+			case LE:
+				return bool(lv <= rv);
+			case EQ:
+				return bool(lv == rv);
+			case NE:
+				return bool(lv != rv && !Double.isNaN(lv) && !Double.isNaN(rv));
+			default:
+				return Double.NaN;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "(" + left + " " + SYMBOLS[op] + " " + right + ")";
+		}
+	}
+
+	/**
+	 * Function call: {@code abs(x)}, {@code min(x, y)}, {@code max(x, y)}
+	 */
+	static class Function extends Expression {
+		static final String[] NAMES = { "abs", "min", "max" };
+		static final int[] ARGS = { 1, 2, 2 };
+		static final int ABS = 0, MIN = 1, MAX = 2;
+
+		final int func;
+		final Expression[] args;
+
+		Function(int func, Expression[] args) {
+			this.func = func;
+			this.args = args;
+		}
+
+		static int indexOf(String name) {
+			for (int i = 0; i < NAMES.length; i++) {
+				if (NAMES[i].equals(name)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		protected double eval(double[] vars, long evalStamp) {
+			switch (func) {
+			case ABS:
+				return Math.abs(args[0].evaluate(vars, evalStamp));
+			case MIN:
+				return Math.min(args[0].evaluate(vars, evalStamp), args[1].evaluate(vars, evalStamp));
+			case MAX:
+				return Math.max(args[0].evaluate(vars, evalStamp), args[1].evaluate(vars, evalStamp));
+			default:
+				return Double.NaN;
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder str = new StringBuilder(NAMES[func]).append("(");
+			for (int i = 0; i < args.length; i++) {
+				str.append(i > 0 ? ", " : "").append(args[i]);
+			}
+			return str.append(")").toString();
+		}
+	}
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions.expr;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.expr.Expression.*;
+
+/**
+ * <p>
+ * This class implements recursive descent parser compiling textual numeric expressions into {@link Expression}
+ * trees. Supported syntax (in order of increasing precedence):
+ * <ul>
+ * <li>logical operators: {@code ||}, {@code &&}</li>
+ * <li>comparison operators: {@code >}, {@code >=}, {@code <}, {@code <=}, {@code ==} (or {@code =}), {@code !=}</li>
+ * <li>arithmetic operators: {@code +}, {@code -}, {@code *}, {@code /}, {@code %}</li>
+ * <li>unary operators: {@code !}, {@code -}</li>
+ * <li>numeric literals, parentheses, functions {@code abs(x)}, {@code min(x, y)}, {@code max(x, y)}</li>
+ * <li>variable references: dot separated identifier paths, e.g. {@code HeapMemoryUsage.used}, optionally prefixed
+ * with MBean object name in square brackets, e.g. {@code [java.lang:type=Memory]HeapMemoryUsage.used}</li>
+ * </ul>
+ * Variable references are bound to {@code double[]} slots by a {@link VariableResolver} during parsing, so evaluation
+ * does not need any name lookups.
+ * </p>
+ * <p>
+ * Parser instance keeps track of all compiled nodes: structurally equal sub-expressions parsed by the same parser
+ * instance are compiled into a single shared node, which is evaluated only once per evaluation round (see
+ * {@link Expression#evaluate(double[], long)}).
+ * </p>
+ * 
+ * @see Expression
+ * @version $Revision: 1 $
+ * 
+ */
+public class ExpressionParser {
+	/**
+	 * This interface defines variable resolver, which binds variable references to variable slots.
+	 */
+	public interface VariableResolver {
+		/**
+		 * Resolve variable slot for a given variable reference
+		 * 
+		 * @param reference variable reference text
+		 * @return variable slot index
+		 * @throws IllegalArgumentException if reference can not be resolved
+		 */
+		int resolve(String reference);
+	}
+
+	private final VariableResolver resolver;
+	private final Map<String, Expression> nodes = new HashMap<String, Expression>();
+	private int sharedCount = 0;
+
+	private String text;
+	private int pos;
+
+	/**
+	 * Create expression parser binding variables using a given resolver
+	 * 
+	 * @param resolver variable resolver
+	 */
+	public ExpressionParser(VariableResolver resolver) {
+		this.resolver = resolver;
+	}
+
+	/**
+	 * Compile a given expression text
+	 * 
+	 * @param expression expression text
+	 * @return compiled expression
+	 * @throws IllegalArgumentException if expression is malformed
+	 */
+	public synchronized Expression parse(String expression) {
+		text = expression;
+		pos = 0;
+		try {
+			Expression expr = parseOr();
+			skipSpaces();
+			if (pos < text.length()) {
+				throw error("Unexpected '" + text.charAt(pos) + "'");
+			}
+			return expr;
+		} finally {
+			text = null;
+		}
+	}
+
+	/**
+	 * Obtain number of shared sub-expression nodes compiled by this parser
+	 * 
+	 * @return number of shared nodes
+	 */
+	public synchronized int getSharedCount() {
+		return sharedCount;
+	}
+
+	private Expression parseOr() {
+		Expression expr = parseAnd();
+		while (accept("||")) {
+			expr = intern(new Binary(Binary.OR, expr, parseAnd()));
+		}
+		return expr;
+	}
+
+	private Expression parseAnd() {
+		Expression expr = parseCompare();
+		while (accept("&&")) {
+			expr = intern(new Binary(Binary.AND, expr, parseCompare()));
+		}
+		return expr;
+	}
+
+	private Expression parseCompare() {
+		Expression expr = parseAdd();
+		int op;
+		if (accept(">=")) {
+			op = Binary.GE;
+		} else if (accept("<=")) {
+			op = Binary.LE;
+		} else if (accept("==")) {
+			op = Binary.EQ;
+		} else if (accept("!=")) {
+			op = Binary.NE;
+		} else if (accept(">")) {
+			op = Binary.GT;
+		} else if (accept("<")) {
+			op = Binary.LT;
+		} else if (accept("=")) {
+			op = Binary.EQ;
+		} else {
+			return expr;
+		}
+		return intern(new Binary(op, expr, parseAdd()));
+	}
+
+	private Expression parseAdd() {
+		Expression expr = parseMul();
+		while (true) {
+			if (accept("+")) {
+				expr = intern(new Binary(Binary.ADD, expr, parseMul()));
+			} else if (accept("-")) {
+				expr = intern(new Binary(Binary.SUB, expr, parseMul()));
+			} else {
+				return expr;
+			}
+		}
+	}
+
+	private Expression parseMul() {
+		Expression expr = parseUnary();
+		while (true) {
+			if (accept("*")) {
+				expr = intern(new Binary(Binary.MUL, expr, parseUnary()));
+			} else if (accept("/")) {
+				expr = intern(new Binary(Binary.DIV, expr, parseUnary()));
+			} else if (accept("%")) {
+				expr = intern(new Binary(Binary.MOD, expr, parseUnary()));
+			} else {
+				return expr;
+			}
+		}
+	}
+
+	private Expression parseUnary() {
+		if (peek("!=")) {
+			throw error("Unexpected '!='");
+		}
+		if (accept("!")) {
+			return intern(new Unary(true, parseUnary()));
+		}
+		if (accept("-")) {
+			Expression operand = parseUnary();
+			if (operand instanceof Constant) {
+				return new Constant(-((Constant) operand).value);
+			}
+			return intern(new Unary(false, operand));
+		}
+		return parsePrimary();
+	}
+
+	private Expression parsePrimary() {
+		skipSpaces();
+		if (pos >= text.length()) {
+			throw error("Unexpected end of expression");
+		}
+		char ch = text.charAt(pos);
+		if (ch == '(') {
+			pos++;
+			Expression expr = parseOr();
+			expect(")");
+			return expr;
+		}
+		if (Character.isDigit(ch) || ch == '.') {
+			return parseNumber();
+		}
+		if (ch == '[' || Character.isJavaIdentifierStart(ch)) {
+			int start = pos;
+			String reference = parseReference();
+			if (reference.indexOf('[') < 0 && accept("(")) {
+				return parseFunction(reference, start);
+			}
+			return intern(new Variable(reference, resolve(reference, start)));
+		}
+		throw error("Unexpected '" + ch + "'");
+	}
+
+	private Expression parseNumber() {
+		int start = pos;
+		while (pos < text.length()) {
+			char ch = text.charAt(pos);
+			if (Character.isDigit(ch) || ch == '.') {
+				pos++;
+			} else if ((ch == 'e' || ch == 'E') && pos > start) {
+				pos++;
+				if (pos < text.length() && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+					pos++;
+				}
+			} else {
+				break;
+			}
+		}
+		try {
+			return new Constant(Double.parseDouble(text.substring(start, pos)));
+		} catch (NumberFormatException exc) {
+			pos = start;
+			throw error("Malformed number");
+		}
+	}
+
+	private String parseReference() {
+		int start = pos;
+		if (text.charAt(pos) == '[') {
+			int end = text.indexOf(']', pos);
+			if (end < 0) {
+				throw error("Unterminated object name");
+			}
+			pos = end + 1;
+			if (pos >= text.length() || !Character.isJavaIdentifierStart(text.charAt(pos))) {
+				throw error("Attribute name expected");
+			}
+		}
+		while (pos < text.length()) {
+			char ch = text.charAt(pos);
+			if (Character.isJavaIdentifierPart(ch)) {
+				pos++;
+			} else if (ch == '.' && pos + 1 < text.length() && Character.isJavaIdentifierStart(text.charAt(pos + 1))) {
+				pos++;
+			} else {
+				break;
+			}
+		}
+		return text.substring(start, pos);
+	}
+
+	private Expression parseFunction(String name, int start) {
+		int func = Function.indexOf(name);
+		if (func < 0) {
+			pos = start;
+			throw error("Unknown function '" + name + "'");
+		}
+		List<Expression> args = new ArrayList<Expression>(2);
+		if (!accept(")")) {
+			do {
+				args.add(parseOr());
+			} while (accept(","));
+			expect(")");
+		}
+		if (args.size() != Function.ARGS[func]) {
+			pos = start;
+			throw error("Function '" + name + "' expects " + Function.ARGS[func] + " argument(s)");
+		}
+		return intern(new Function(func, args.toArray(new Expression[args.size()])));
+	}
+
+	private int resolve(String reference, int start) {
+		try {
+			return resolver.resolve(reference);
+		} catch (IllegalArgumentException exc) {
+			pos = start;
+			throw error(exc.getMessage());
+		}
+	}
+
+	private Expression intern(Expression expr) {
+		String key = expr.toString();
+		Expression node = nodes.get(key);
+		if (node == null) {
+			nodes.put(key, expr);
+			return expr;
+		}
+		if (!node.shared && !(node instanceof Variable)) {
+			node.shared = true;
+			sharedCount++;
+		}
+		return node;
+	}
+
+	private void skipSpaces() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private boolean peek(String token) {
+		skipSpaces();
+		return text.startsWith(token, pos);
+	}
+
+	private boolean accept(String token) {
+		if (peek(token)) {
+			pos += token.length();
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(String token) {
+		if (!accept(token)) {
+			throw error("Expected '" + token + "'");
+		}
+	}
+
+	private IllegalArgumentException error(String msg) {
+		return new IllegalArgumentException(msg + " at position " + pos + ": " + text);
+	}
+}
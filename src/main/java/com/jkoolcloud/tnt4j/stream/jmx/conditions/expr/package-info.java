@@ -0,0 +1,7 @@
+/**
+ * Stream-JMX compiled numeric expressions used by conditions and rules
+ * 
+ * @author albert
+ * @version 1.0
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions.expr;
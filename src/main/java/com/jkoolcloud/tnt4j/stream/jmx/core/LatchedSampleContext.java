@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.core;
+
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.LatchedCondition;
+
+/**
+ * <p>
+ * This interface extends {@link SampleContext} with counts reported by {@link LatchedCondition}s.
+ * </p>
+ * 
+ * @see LatchedCondition
+ * @version $Revision: 1 $
+ */
+public interface LatchedSampleContext extends SampleContext {
+	/**
+	 * Obtain number of state transitions of latched conditions (entering and leaving active state)
+	 * 
+	 * @return number of condition state transitions
+	 */
+	long getTotalTransitionCount();
+
+	/**
+	 * Obtain number of condition firings suppressed by latched conditions while already active
+	 * 
+	 * @return number of suppressed condition firings
+	 */
+	long getTotalSuppressedCount();
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.core;
+
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.CycleRule;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.RuleAction;
+
+/**
+ * <p>
+ * This interface extends {@link Sampler} with cycle rules: rule/action pairs evaluated once every sampling interval,
+ * after all MBeans are sampled.
+ * </p>
+ * 
+ * @see CycleRule
+ * @version $Revision: 1 $
+ * 
+ */
+public interface RuleSampler extends Sampler {
+	/**
+	 * Register a rule/action pair which will be evaluated once every sampling interval, after all MBeans are sampled.
+	 *
+	 * @param rule user defined rule
+	 * @param action user defined action
+	 * @throws IllegalStateException if setSchedule is not called first
+	 * @throws IllegalArgumentException if rule expression is malformed
+	 * @throws UnsupportedOperationException if underlying scheduler does not support rules
+	 */
+	Sampler register(CycleRule rule, RuleAction action);
+}
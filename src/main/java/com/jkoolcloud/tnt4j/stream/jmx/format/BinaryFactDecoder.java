@@ -0,0 +1,409 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import static com.jkoolcloud.tnt4j.stream.jmx.format.BinaryFactFormatter.*;
+
+import java.io.*;
+import java.util.*;
+
+import com.jkoolcloud.tnt4j.core.OpLevel;
+
+/**
+ * <p>
+ * This class decodes frames produced by {@link BinaryFactFormatter}. Decoder maintains string dictionary across frames,
+ * so all frames produced by a single formatter instance must be decoded in order by the same decoder instance. Frames
+ * referring dictionary entries not seen by decoder (e.g. when decoding started in the middle of the stream) are
+ * rejected until next dictionary reset.
+ * </p>
+ * <p>
+ * Decoder can be run as a command line utility converting binary frames into {@link FactNameValueFormatter} like
+ * text: {@code java com.jkoolcloud.tnt4j.stream.jmx.format.BinaryFactDecoder [file]}, reading standard input when no
+ * file is given.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ *
+ * @see BinaryFactFormatter
+ */
+public class BinaryFactDecoder {
+	private static final int[] BASE64_INDEX = new int[128];
+
+	static {
+		Arrays.fill(BASE64_INDEX, -1);
+		for (int i = 0; i < BASE64.length; i++) {
+			BASE64_INDEX[BASE64[i]] = i;
+		}
+	}
+
+	private final List<String> dictionary = new ArrayList<String>(1024);
+	private byte[] buf;
+	private int pos, limit;
+
+	/**
+	 * Decoded snapshot
+	 */
+	public static class SnapshotData {
+		private final String category;
+		private final String name;
+		private final long timeUsec;
+		private final Map<String, Object> properties;
+
+		SnapshotData(String category, String name, long timeUsec, int size) {
+			this.category = category;
+			this.name = name;
+			this.timeUsec = timeUsec;
+			this.properties = new LinkedHashMap<String, Object>(size * 2);
+		}
+
+		public String getCategory() {
+			return category;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getTimeUsec() {
+			return timeUsec;
+		}
+
+		/**
+		 * Obtain snapshot properties: values are {@link Long}, {@link Double}, {@link Boolean} or {@link String}
+		 *
+		 * @return map of property keys and values in formatted order
+		 */
+		public Map<String, Object> getProperties() {
+			return properties;
+		}
+	}
+
+	/**
+	 * Decoded frame
+	 */
+	public static class Frame {
+		private int type;
+		private long timeUsec;
+		private String source;
+		private String name;
+		private String correlator;
+		private OpLevel level;
+		private long pid, tid, elapsedUsec;
+		private String message;
+		private final List<SnapshotData> snapshots = new ArrayList<SnapshotData>();
+
+		/**
+		 * Obtain frame type: {@link BinaryFactFormatter#FRAME_ACTIVITY}, {@link BinaryFactFormatter#FRAME_EVENT},
+		 * {@link BinaryFactFormatter#FRAME_SNAPSHOT} or {@link BinaryFactFormatter#FRAME_MESSAGE}
+		 *
+		 * @return frame type
+		 */
+		public int getType() {
+			return type;
+		}
+
+		public long getTimeUsec() {
+			return timeUsec;
+		}
+
+		public String getSource() {
+			return source;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getCorrelator() {
+			return correlator;
+		}
+
+		public OpLevel getLevel() {
+			return level;
+		}
+
+		public long getPID() {
+			return pid;
+		}
+
+		public long getTID() {
+			return tid;
+		}
+
+		public long getElapsedTimeUsec() {
+			return elapsedUsec;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public List<SnapshotData> getSnapshots() {
+			return snapshots;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder nvString = new StringBuilder(1024);
+			switch (type) {
+			case FRAME_ACTIVITY:
+				nvString.append("OBJ:Streams").append(source).append("\\Activities").append(FactNameValueFormatter.FIELD_SEP);
+				break;
+			case FRAME_EVENT:
+				nvString.append("OBJ:Streams").append(source).append(name).append("\\Events").append(FactNameValueFormatter.FIELD_SEP);
+				break;
+			case FRAME_MESSAGE:
+				nvString.append("OBJ:Streams").append(source).append("\\Message").append(FactNameValueFormatter.FIELD_SEP);
+				nvString.append("Self\\level=").append(level).append(FactNameValueFormatter.FIELD_SEP);
+				return nvString.append("Self\\msg-text=\"").append(message).append("\"").toString();
+			default:
+				nvString.append("OBJ:Metrics\\").append(snapshots.get(0).getCategory()).append(FactNameValueFormatter.FIELD_SEP);
+				break;
+			}
+			if (type != FRAME_SNAPSHOT) {
+				if (!correlator.isEmpty()) {
+					nvString.append("Self\\corrid=").append(correlator).append(FactNameValueFormatter.FIELD_SEP);
+				}
+				nvString.append("Self\\level=").append(level).append(FactNameValueFormatter.FIELD_SEP);
+				nvString.append("Self\\pid=").append(pid).append(FactNameValueFormatter.FIELD_SEP);
+				nvString.append("Self\\tid=").append(tid).append(FactNameValueFormatter.FIELD_SEP);
+				nvString.append("Self\\snap.count=").append(snapshots.size()).append(FactNameValueFormatter.FIELD_SEP);
+				nvString.append("Self\\elapsed.usec=").append(elapsedUsec).append(FactNameValueFormatter.FIELD_SEP);
+			}
+			for (SnapshotData snap : snapshots) {
+				String sName = snap.getName().replace("=", "\\").replace(",", "!");
+				for (Map.Entry<String, Object> prop : snap.getProperties().entrySet()) {
+					nvString.append(sName).append("\\").append(prop.getKey());
+					nvString.append("=").append(prop.getValue()).append(FactNameValueFormatter.FIELD_SEP);
+				}
+			}
+			return nvString.toString();
+		}
+	}
+
+	/**
+	 * Decode a single Base64 encoded frame line.
+	 *
+	 * @param line frame line produced by {@link BinaryFactFormatter}
+	 * @return decoded frame
+	 * @throws IOException if frame is malformed or refers unknown dictionary entries
+	 */
+	public Frame decode(String line) throws IOException {
+		buf = decodeBase64(line.trim());
+		pos = 0;
+		limit = buf.length;
+		if (readByte() != MAGIC) {
+			throw new IOException("Not a binary fact frame");
+		}
+		int version = readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported frame version: " + version);
+		}
+		Frame frame = new Frame();
+		frame.type = readByte();
+		int flags = readByte();
+		int firstId = (int) readVarLong();
+		int count = (int) readVarLong();
+		if ((flags & FLAG_DICTIONARY_RESET) != 0) {
+			dictionary.clear();
+		}
+		if (firstId != dictionary.size()) {
+			throw new IOException("Dictionary out of sync: expected entry " + dictionary.size() + ", got " + firstId);
+		}
+		for (int i = 0; i < count; i++) {
+			dictionary.add(readString());
+		}
+		frame.timeUsec = readVarLong();
+		switch (frame.type) {
+		case FRAME_ACTIVITY:
+		case FRAME_EVENT:
+			frame.source = readId();
+			frame.name = readId();
+			frame.correlator = readString();
+			frame.level = readLevel();
+			frame.pid = readVarLong();
+			frame.tid = readVarLong();
+			frame.elapsedUsec = readVarLong();
+			readSnapshots(frame);
+			break;
+		case FRAME_SNAPSHOT:
+			readSnapshots(frame);
+			break;
+		case FRAME_MESSAGE:
+			frame.source = readId();
+			frame.level = readLevel();
+			frame.message = readString();
+			break;
+		default:
+			throw new IOException("Unsupported frame type: " + frame.type);
+		}
+		return frame;
+	}
+
+	/**
+	 * Obtain number of strings currently held within decoder dictionary.
+	 *
+	 * @return dictionary size
+	 */
+	public int getDictionarySize() {
+		return dictionary.size();
+	}
+
+	private void readSnapshots(Frame frame) throws IOException {
+		int sCount = (int) readVarLong();
+		for (int s = 0; s < sCount; s++) {
+			String category = readId();
+			String name = readId();
+			long timeUsec = frame.timeUsec + readZigZag();
+			int pCount = (int) readVarLong();
+			SnapshotData snap = new SnapshotData(category, name, timeUsec, pCount);
+			for (int p = 0; p < pCount; p++) {
+				String key = readId();
+				snap.properties.put(key, readValue());
+			}
+			frame.snapshots.add(snap);
+		}
+	}
+
+	private Object readValue() throws IOException {
+		int type = readByte();
+		switch (type) {
+		case TYPE_LONG:
+			return readZigZag();
+		case TYPE_DOUBLE:
+			long bits = 0;
+			for (int i = 0; i < 8; i++) {
+				bits = (bits << 8) | readByte();
+			}
+			return Double.longBitsToDouble(bits);
+		case TYPE_INTEGRAL_DOUBLE:
+			return (double) readZigZag();
+		case TYPE_TRUE:
+			return Boolean.TRUE;
+		case TYPE_FALSE:
+			return Boolean.FALSE;
+		case TYPE_STRING:
+			return readString();
+		case TYPE_STRING_ID:
+			return readId();
+		default:
+			throw new IOException("Unsupported value type: " + type);
+		}
+	}
+
+	private OpLevel readLevel() throws IOException {
+		int ordinal = readByte();
+		OpLevel[] levels = OpLevel.values();
+		if (ordinal >= levels.length) {
+			throw new IOException("Unsupported level: " + ordinal);
+		}
+		return levels[ordinal];
+	}
+
+	private String readId() throws IOException {
+		long id = readVarLong();
+		if (id >= dictionary.size()) {
+			throw new IOException("Unknown dictionary entry: " + id);
+		}
+		return dictionary.get((int) id);
+	}
+
+	private String readString() throws IOException {
+		int length = (int) readVarLong();
+		if (length < 0 || pos + length > limit) {
+			throw new EOFException("Truncated frame");
+		}
+		String str = new String(buf, pos, length, UTF8);
+		pos += length;
+		return str;
+	}
+
+	private int readByte() throws IOException {
+		if (pos >= limit) {
+			throw new EOFException("Truncated frame");
+		}
+		return buf[pos++] & 0xFF;
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private long readZigZag() throws IOException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static byte[] decodeBase64(String str) throws IOException {
+		int length = str.length();
+		if (length % 4 != 0) {
+			throw new IOException("Malformed frame encoding");
+		}
+		int pad = length > 0 && str.charAt(length - 1) == '=' ? (str.charAt(length - 2) == '=' ? 2 : 1) : 0;
+		byte[] bytes = new byte[length / 4 * 3 - pad];
+		int pos = 0;
+		for (int i = 0; i < length; i += 4) {
+			int bits = 0;
+			for (int j = 0; j < 4; j++) {
+				char c = str.charAt(i + j);
+				int idx = c == '=' ? 0 : (c < 128 ? BASE64_INDEX[c] : -1);
+				if (idx < 0) {
+					throw new IOException("Malformed frame encoding");
+				}
+				bits = (bits << 6) | idx;
+			}
+			for (int shift = 16; shift >= 0 && pos < bytes.length; shift -= 8) {
+				bytes[pos++] = (byte) (bits >>> shift);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Decode binary frames from a given file (or standard input) and print them to standard output as name/value text.
+	 *
+	 * @param args optional file name
+	 * @throws IOException if input can not be read
+	 */
+	public static void main(String[] args) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				args.length > 0 ? new FileInputStream(args[0]) : System.in, UTF8));
+		BinaryFactDecoder decoder = new BinaryFactDecoder();
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				try {
+					System.out.println(decoder.decode(line));
+				} catch (IOException exc) {
+					System.err.println("Skipping frame: " + exc.getMessage());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jkoolcloud.tnt4j.core.*;
+import com.jkoolcloud.tnt4j.format.DefaultFormatter;
+import com.jkoolcloud.tnt4j.source.Source;
+import com.jkoolcloud.tnt4j.stream.jmx.jfr.SampleEvents;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming.Phase;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+import com.jkoolcloud.tnt4j.tracker.TrackingEvent;
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class provides compact binary formatting for tnt4j activities, events and snapshots. Every string (source,
+ * snapshot names, property keys and short string values) is assigned an integer id within a dictionary maintained by
+ * formatter instance, and only dictionary entries added since previous frame are transmitted with a frame. Numbers are
+ * encoded as zig-zag varints or raw doubles, booleans as value type only.
+ * </p>
+ * <p>
+ * Formatted frame is Base64 encoded and terminated by newline, so frames can be written by any character based tnt4j
+ * sink. Frames are decoded using {@link BinaryFactDecoder}, which must receive all frames produced by formatter
+ * instance in order. Dictionary is reset (and retransmitted on use) every {@code DictionaryRefresh} frames (default
+ * {@code 100}, {@code 0} to never refresh) and when it grows over {@code DictionaryMaxSize} entries (default
+ * {@code 65536}), so decoders attached to a running stream catch up. Both values are set using formatter
+ * configuration, e.g. {@code event.formatter.DictionaryRefresh: 1000}.
+ * </p>
+ *
+ * Frame layout:
+ * <ul>
+ * <li>magic byte, version byte, frame type byte, flags byte (bit 0 - dictionary reset)</li>
+ * <li>varint id of the first added dictionary entry, varint count of added entries, added UTF-8 strings</li>
+ * <li>frame type specific header: activity, event, snapshot or message</li>
+ * <li>varint snapshot count, each snapshot: category and name ids, zig-zag varint time offset to frame time in
+ * microseconds, varint property count, each property: key id, value type byte, value</li>
+ * </ul>
+ *
+ * @version $Revision: 1 $
+ *
+ * @see BinaryFactDecoder
+ * @see FactNameValueFormatter
+ */
+public class BinaryFactFormatter extends DefaultFormatter {
+	public static final int MAGIC = 0xB7;
+	public static final int VERSION = 1;
+
+	public static final int FRAME_ACTIVITY = 1;
+	public static final int FRAME_EVENT = 2;
+	public static final int FRAME_SNAPSHOT = 3;
+	public static final int FRAME_MESSAGE = 4;
+
+	public static final int FLAG_DICTIONARY_RESET = 0x01;
+
+	public static final int TYPE_LONG = 1;
+	public static final int TYPE_DOUBLE = 2;
+	public static final int TYPE_INTEGRAL_DOUBLE = 3;
+	public static final int TYPE_TRUE = 4;
+	public static final int TYPE_FALSE = 5;
+	public static final int TYPE_STRING = 6;
+	public static final int TYPE_STRING_ID = 7;
+
+	public static final String END_SEP = "\n";
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	/**
+	 * Maximum length of string values encoded using dictionary, longer values are encoded inline
+	 */
+	protected static final int MAX_DICTIONARY_VALUE = 64;
+
+	private final Map<String, Integer> dictionary = new HashMap<String, Integer>(1024);
+	private final List<String> added = new ArrayList<String>();
+	private final Buffer body = new Buffer(4096);
+	private final Buffer frame = new Buffer(4096);
+	private char[] chars = new char[8192];
+	private int firstAdded;
+	private long frameCount = 0;
+	private int dictionaryRefresh = 100;
+	private int dictionaryMaxSize = 65536;
+
+	/**
+	 * Growable byte buffer reused across frames
+	 */
+	static final class Buffer {
+		byte[] buf;
+		int size;
+
+		Buffer(int capacity) {
+			buf = new byte[capacity];
+		}
+
+		void ensure(int extra) {
+			if (size + extra > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+			}
+		}
+
+		void write(int b) {
+			ensure(1);
+			buf[size++] = (byte) b;
+		}
+
+		void write(byte[] bytes, int off, int len) {
+			ensure(len);
+			System.arraycopy(bytes, off, buf, size, len);
+			size += len;
+		}
+
+		void writeVarLong(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				buf[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buf[size++] = (byte) value;
+		}
+
+		void writeZigZag(long value) {
+			writeVarLong((value << 1) ^ (value >> 63));
+		}
+
+		void writeDouble(double value) {
+			long bits = Double.doubleToLongBits(value);
+			ensure(8);
+			for (int i = 56; i >= 0; i -= 8) {
+				buf[size++] = (byte) (bits >>> i);
+			}
+		}
+
+		void writeString(String value) {
+			byte[] bytes = value.getBytes(UTF8);
+			writeVarLong(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+	}
+
+	public BinaryFactFormatter() {
+		super();
+	}
+
+	@Override
+	public void setConfiguration(Map<String, Object> settings) {
+		super.setConfiguration(settings);
+		Object refresh = settings.get("DictionaryRefresh");
+		if (refresh != null) {
+			dictionaryRefresh = Integer.parseInt(refresh.toString().trim());
+		}
+		Object maxSize = settings.get("DictionaryMaxSize");
+		if (maxSize != null) {
+			dictionaryMaxSize = Integer.parseInt(maxSize.toString().trim());
+		}
+	}
+
+	@Override
+	public synchronized String format(TrackingEvent event) {
+		Operation op = event.getOperation();
+		begin();
+		body.writeVarLong(timeUsec(op.getStartTime()));
+		writeId(toString(event.getSource()));
+		writeId(op.getName());
+		body.writeString(first(event.getCorrelator()));
+		body.write(op.getSeverity().ordinal());
+		body.writeVarLong(op.getPID());
+		body.writeVarLong(op.getTID());
+		body.writeVarLong(op.getElapsedTimeUsec());
+		writeSnapshots(op.getSnapshots(), timeUsec(op.getStartTime()));
+		return end(FRAME_EVENT);
+	}
+
+	@Override
+	public synchronized String format(TrackingActivity event) {
+		long started = System.nanoTime();
+		begin();
+		long timeUsec = timeUsec(event.getStartTime());
+		body.writeVarLong(timeUsec);
+		writeId(toString(event.getSource()));
+		writeId(event.getName());
+		body.writeString(first(event.getCorrelator()));
+		body.write(event.getSeverity().ordinal());
+		body.writeVarLong(event.getPID());
+		body.writeVarLong(event.getTID());
+		body.writeVarLong(event.getElapsedTimeUsec());
+		Collection<Snapshot> slist = event.getSnapshots();
+		writeSnapshots(slist, timeUsec);
+		String str = end(FRAME_ACTIVITY);
+		SampleTiming.record(Phase.FORMAT, System.nanoTime() - started);
+		SampleEvents.recorder().formatted(getClass().getName(), slist.size(), str.length());
+		return str;
+	}
+
+	@Override
+	public synchronized String format(Snapshot event) {
+		begin();
+		long timeUsec = timeUsec(event.getTimeStamp());
+		body.writeVarLong(timeUsec);
+		writeSnapshots(Collections.singletonList(event), timeUsec);
+		return end(FRAME_SNAPSHOT);
+	}
+
+	@Override
+	public synchronized String format(long ttl, Source source, OpLevel level, String msg, Object... args) {
+		begin();
+		body.writeVarLong(Utils.currentTimeUsec());
+		writeId(toString(source));
+		body.write(level.ordinal());
+		body.writeString(String.valueOf(Utils.format(msg, args)));
+		return end(FRAME_MESSAGE);
+	}
+
+	/**
+	 * Obtain number of strings currently held within formatter dictionary.
+	 *
+	 * @return dictionary size
+	 */
+	public synchronized int getDictionarySize() {
+		return dictionary.size();
+	}
+
+	private void begin() {
+		body.size = 0;
+		added.clear();
+		boolean reset = dictionary.size() >= dictionaryMaxSize
+				|| (dictionaryRefresh > 0 && frameCount % dictionaryRefresh == 0);
+		if (reset) {
+			dictionary.clear();
+		}
+		firstAdded = dictionary.size();
+	}
+
+	private String end(int type) {
+		frame.size = 0;
+		frame.write(MAGIC);
+		frame.write(VERSION);
+		frame.write(type);
+		frame.write(firstAdded == 0 ? FLAG_DICTIONARY_RESET : 0);
+		frame.writeVarLong(firstAdded);
+		frame.writeVarLong(added.size());
+		for (String str : added) {
+			frame.writeString(str);
+		}
+		frame.write(body.buf, 0, body.size);
+		frameCount++;
+		return encode(frame);
+	}
+
+	private void writeId(String str) {
+		Integer id = dictionary.get(str);
+		if (id == null) {
+			id = dictionary.size();
+			dictionary.put(str, id);
+			added.add(str);
+		}
+		body.writeVarLong(id);
+	}
+
+	private void writeSnapshots(Collection<Snapshot> snapshots, long timeUsec) {
+		body.writeVarLong(snapshots.size());
+		for (Snapshot snap : snapshots) {
+			writeId(snap.getCategory() == null ? "" : snap.getCategory());
+			writeId(snap.getName());
+			body.writeZigZag(timeUsec(snap.getTimeStamp()) - timeUsec);
+			Collection<Property> list = snap.getSnapshot();
+			int count = 0;
+			for (Property p : list) {
+				if (FactNameValueFormatter.isSerializable(p.getValue())) {
+					count++;
+				}
+			}
+			body.writeVarLong(count);
+			for (Property p : list) {
+				Object value = p.getValue();
+				if (FactNameValueFormatter.isSerializable(value)) {
+					writeId(p.getKey());
+					writeValue(value);
+				}
+			}
+		}
+	}
+
+	private void writeValue(Object value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+				|| value instanceof AtomicLong || value instanceof AtomicInteger) {
+			body.write(TYPE_LONG);
+			body.writeZigZag(((Number) value).longValue());
+		} else if (value instanceof Number) {
+			double dValue = ((Number) value).doubleValue();
+			long lValue = (long) dValue;
+			if (lValue == dValue && Math.abs(lValue) < (1L << 53) && !isNegativeZero(dValue)) {
+				body.write(TYPE_INTEGRAL_DOUBLE);
+				body.writeZigZag(lValue);
+			} else {
+				body.write(TYPE_DOUBLE);
+				body.writeDouble(dValue);
+			}
+		} else if (value instanceof Boolean) {
+			body.write(((Boolean) value) ? TYPE_TRUE : TYPE_FALSE);
+		} else {
+			String str = String.valueOf(value);
+			if (str.length() <= MAX_DICTIONARY_VALUE) {
+				body.write(TYPE_STRING_ID);
+				writeId(str);
+			} else {
+				body.write(TYPE_STRING);
+				body.writeString(str);
+			}
+		}
+	}
+
+	private static boolean isNegativeZero(double value) {
+		return value == 0.0 && Double.doubleToRawLongBits(value) != 0L;
+	}
+
+	private String encode(Buffer buffer) {
+		int length = (buffer.size + 2) / 3 * 4 + END_SEP.length();
+		if (chars.length < length) {
+			chars = new char[Math.max(chars.length * 2, length)];
+		}
+		byte[] buf = buffer.buf;
+		int pos = 0, i = 0;
+		for (; i + 2 < buffer.size; i += 3) {
+			int bits = (buf[i] & 0xFF) << 16 | (buf[i + 1] & 0xFF) << 8 | (buf[i + 2] & 0xFF);
+			chars[pos++] = BASE64[bits >>> 18];
+			chars[pos++] = BASE64[(bits >>> 12) & 0x3F];
+			chars[pos++] = BASE64[(bits >>> 6) & 0x3F];
+			chars[pos++] = BASE64[bits & 0x3F];
+		}
+		int rest = buffer.size - i;
+		if (rest > 0) {
+			int bits = (buf[i] & 0xFF) << 16 | (rest > 1 ? (buf[i + 1] & 0xFF) << 8 : 0);
+			chars[pos++] = BASE64[bits >>> 18];
+			chars[pos++] = BASE64[(bits >>> 12) & 0x3F];
+			chars[pos++] = rest > 1 ? BASE64[(bits >>> 6) & 0x3F] : '=';
+			chars[pos++] = '=';
+		}
+		for (int c = 0; c < END_SEP.length(); c++) {
+			chars[pos++] = END_SEP.charAt(c);
+		}
+		return new String(chars, 0, pos);
+	}
+
+	private static long timeUsec(UsecTimestamp timeStamp) {
+		return timeStamp == null ? 0 : timeStamp.getTimeUsec();
+	}
+
+	private static String first(Set<String> values) {
+		if (values != null) {
+			for (String value : values) {
+				return value;
+			}
+		}
+		return "";
+	}
+
+	private static String toString(Source source) {
+		StringBuilder path = new StringBuilder(64);
+		for (Source src = source; src != null; src = src.getSource()) {
+			path.insert(0, src.getName()).insert(0, '\\');
+		}
+		return path.toString();
+	}
+}
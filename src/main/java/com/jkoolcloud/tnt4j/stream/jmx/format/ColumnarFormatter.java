@@ -0,0 +1,376 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import java.util.*;
+
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.core.Property;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+import com.jkoolcloud.tnt4j.core.UsecTimestamp;
+import com.jkoolcloud.tnt4j.format.DefaultFormatter;
+import com.jkoolcloud.tnt4j.source.Source;
+import com.jkoolcloud.tnt4j.stream.jmx.jfr.SampleEvents;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleChunker;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming.Phase;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+import com.jkoolcloud.tnt4j.tracker.TrackingEvent;
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class provides columnar (CSV or TSV) formatting for tnt4j activities, events and snapshots. Every activity is
+ * formatted as a single row of values: time stamp in milliseconds followed by values of all sampled metrics. Metric
+ * columns are named same as {@link FactNameValueFormatter} names, e.g. {@code java.lang:type\Memory\ObjectPendingFinalizationCount}.
+ * </p>
+ * <p>
+ * Header row (starting with {@link #HEADER_PREFIX}) is written only before the first row and when columns change.
+ * Column positions are stable between headers: new metrics are appended as new columns and metrics not sampled within a
+ * cycle are left empty, so rows written after any header can be read using that header. Columns of MBeans not sampled
+ * within last {@code ColumnIdleRows} rows (default {@value #DEFAULT_IDLE_ROWS}, {@code 0} to keep all columns), e.g.
+ * unregistered MBeans, are removed and remaining columns are re-positioned, so number of columns does not grow with
+ * MBean churn. Header segments of one or more files are re-joined into a single table using {@link ColumnarJoiner}.
+ * </p>
+ * <p>
+ * Chunk activities of a sampling cycle (see {@link SampleChunker}) are merged into a single row written when the
+ * sampling activity completing the cycle is formatted, chunk activities are formatted as empty strings. Chunk
+ * bookkeeping snapshots are not written.
+ * </p>
+ * <p>
+ * Column delimiter is defined by {@code Delimiter} formatter configuration property: {@code comma} (default) or
+ * {@code tab}. Values containing delimiter or quotes are quoted, line breaks within values are escaped.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ *
+ * @see ColumnarJoiner
+ */
+public class ColumnarFormatter extends DefaultFormatter {
+	public static final String HEADER_PREFIX = "#";
+	public static final String TIME_COLUMN = "timestamp";
+	public static final String END_SEP = "\n";
+	public static final int DEFAULT_IDLE_ROWS = 10;
+
+	private char delimiter = ',';
+	private int idleRows = DEFAULT_IDLE_ROWS;
+	private final Map<String, MBeanColumns> columnIndex = new HashMap<String, MBeanColumns>(256);
+	private final List<String> columns = new ArrayList<String>(1024);
+	private boolean headerChanged = true;
+	private long rowCount = 0;
+	private Object[] values = new Object[1024];
+	private String pendingCycle;
+	private long pendingTimeUsec;
+	private final StringBuilder buffer = new StringBuilder(8192);
+
+	/**
+	 * Column positions of a single MBean
+	 */
+	private static class MBeanColumns {
+		final String prefix;
+		final Map<String, Integer> index = new HashMap<String, Integer>();
+		long lastRow;
+
+		MBeanColumns(String name) {
+			this.prefix = name.replace("=", "\\").replace(",", "!") + "\\";
+		}
+	}
+
+	public ColumnarFormatter() {
+		super();
+		columns.add(TIME_COLUMN);
+	}
+
+	@Override
+	public void setConfiguration(Map<String, Object> settings) {
+		super.setConfiguration(settings);
+		Object delim = settings.get("Delimiter");
+		if (delim != null) {
+			setDelimiter(delim.toString().trim());
+		}
+		Object idle = settings.get("ColumnIdleRows");
+		if (idle != null) {
+			setIdleRows(Integer.parseInt(idle.toString().trim()));
+		}
+	}
+
+	/**
+	 * Set number of rows after which columns of MBeans not sampled within those rows are removed.
+	 *
+	 * @param idleRows number of rows, {@code 0} to keep all columns
+	 */
+	public synchronized void setIdleRows(int idleRows) {
+		this.idleRows = Math.max(0, idleRows);
+	}
+
+	/**
+	 * Set column delimiter.
+	 *
+	 * @param delim delimiter name: {@code comma} or {@code tab}, or delimiter character
+	 * @throws IllegalArgumentException if delimiter is not supported
+	 */
+	public synchronized void setDelimiter(String delim) {
+		delimiter = parseDelimiter(delim);
+	}
+
+	/**
+	 * Parse delimiter name: {@code comma} or {@code tab}, or a single delimiter character.
+	 *
+	 * @param delim delimiter name or character
+	 * @return delimiter character
+	 * @throws IllegalArgumentException if delimiter is not supported
+	 */
+	public static char parseDelimiter(String delim) {
+		if ("comma".equalsIgnoreCase(delim) || ",".equals(delim)) {
+			return ',';
+		}
+		if ("tab".equalsIgnoreCase(delim) || "\t".equals(delim)) {
+			return '\t';
+		}
+		if (delim.length() == 1 && delim.charAt(0) != '"' && delim.charAt(0) != '\n') {
+			return delim.charAt(0);
+		}
+		throw new IllegalArgumentException("Unsupported delimiter: " + delim);
+	}
+
+	@Override
+	public synchronized String format(TrackingEvent event) {
+		return formatRow(event.getOperation().getSnapshots(), timeUsec(event.getOperation().getStartTime()));
+	}
+
+	@Override
+	public synchronized String format(TrackingActivity event) {
+		long started = System.nanoTime();
+		Collection<Snapshot> slist = event.getSnapshots();
+		String cycleId = getChunkCycleId(slist);
+		buffer.setLength(0);
+		if (pendingCycle != null && !pendingCycle.equals(cycleId == null ? event.getTrackingId() : cycleId)) {
+			appendRow(pendingTimeUsec); // chunks of incomplete cycle
+			pendingCycle = null;
+		}
+		collect(slist);
+		if (cycleId != null) {
+			if (pendingCycle == null) {
+				pendingCycle = cycleId;
+				pendingTimeUsec = timeUsec(event.getStartTime());
+			}
+		} else {
+			pendingCycle = null;
+			appendRow(timeUsec(event.getStartTime()));
+		}
+		String str = buffer.toString();
+		SampleTiming.record(Phase.FORMAT, System.nanoTime() - started);
+		SampleEvents.recorder().formatted(getClass().getName(), slist.size(), str.length());
+		return str;
+	}
+
+	@Override
+	public synchronized String format(Snapshot event) {
+		return formatRow(Collections.singletonList(event), timeUsec(event.getTimeStamp()));
+	}
+
+	/**
+	 * Messages are formatted as comment rows, which are not header rows.
+	 */
+	@Override
+	public String format(long ttl, Source source, OpLevel level, String msg, Object... args) {
+		return HEADER_PREFIX + HEADER_PREFIX + " " + level + " " + String.valueOf(Utils.format(msg, args)).replace('\n', ' ')
+				+ END_SEP;
+	}
+
+	/**
+	 * Obtain number of columns, including time stamp column.
+	 *
+	 * @return number of columns
+	 */
+	public synchronized int getColumnCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Obtain cycle id of a chunk activity.
+	 *
+	 * @param snapshots activity snapshots
+	 * @return cycle id, {@code null} if activity is not a chunk activity
+	 */
+	private static String getChunkCycleId(Collection<Snapshot> snapshots) {
+		for (Snapshot snap : snapshots) {
+			if (SampleChunker.CHUNK_SNAPSHOT.equals(snap.getName())) {
+				Property cycleId = snap.get(SampleChunker.PROP_CYCLE_ID);
+				return cycleId == null ? null : String.valueOf(cycleId.getValue());
+			}
+		}
+		return null;
+	}
+
+	private String formatRow(Collection<Snapshot> snapshots, long timeUsec) {
+		buffer.setLength(0);
+		if (pendingCycle != null) {
+			appendRow(pendingTimeUsec); // chunks of cycle interrupted by other entries
+			pendingCycle = null;
+		}
+		collect(snapshots);
+		appendRow(timeUsec);
+		return buffer.toString();
+	}
+
+	private void collect(Collection<Snapshot> snapshots) {
+		for (Snapshot snap : snapshots) {
+			if (SampleChunker.CHUNK_SNAPSHOT.equals(snap.getName())) {
+				continue;
+			}
+			MBeanColumns snapColumns = columnIndex.get(snap.getName());
+			if (snapColumns == null) {
+				snapColumns = new MBeanColumns(snap.getName());
+				columnIndex.put(snap.getName(), snapColumns);
+			}
+			snapColumns.lastRow = rowCount;
+			for (Property p : snap.getSnapshot()) {
+				Object value = p.getValue();
+				if (!FactNameValueFormatter.isSerializable(value)) {
+					continue;
+				}
+				Integer idx = snapColumns.index.get(p.getKey());
+				if (idx == null) {
+					idx = columns.size();
+					columns.add(snapColumns.prefix + p.getKey());
+					snapColumns.index.put(p.getKey(), idx);
+					headerChanged = true;
+					if (idx >= values.length) {
+						values = Arrays.copyOf(values, Math.max(values.length * 2, idx + 1));
+					}
+				}
+				values[idx] = value;
+			}
+		}
+	}
+
+	/**
+	 * Remove columns of MBeans not sampled within last {@code idleRows} rows, re-positioning remaining columns and
+	 * values collected for current row.
+	 */
+	private void retireIdleColumns() {
+		if (idleRows <= 0) {
+			return;
+		}
+		boolean[] keep = null;
+		for (Iterator<MBeanColumns> it = columnIndex.values().iterator(); it.hasNext();) {
+			MBeanColumns snapColumns = it.next();
+			if (rowCount - snapColumns.lastRow > idleRows) {
+				if (keep == null) {
+					keep = new boolean[columns.size()];
+					Arrays.fill(keep, true);
+				}
+				for (Integer idx : snapColumns.index.values()) {
+					keep[idx] = false;
+				}
+				it.remove();
+			}
+		}
+		if (keep == null) {
+			return;
+		}
+		int[] remap = new int[keep.length];
+		int size = 1;
+		for (int i = 1; i < keep.length; i++) {
+			if (keep[i]) {
+				remap[i] = size;
+				columns.set(size, columns.get(i));
+				values[size] = values[i];
+				if (size != i) {
+					values[i] = null;
+				}
+				size++;
+			} else {
+				values[i] = null;
+			}
+		}
+		columns.subList(size, columns.size()).clear();
+		for (MBeanColumns snapColumns : columnIndex.values()) {
+			for (Map.Entry<String, Integer> entry : snapColumns.index.entrySet()) {
+				entry.setValue(remap[entry.getValue()]);
+			}
+		}
+		headerChanged = true;
+	}
+
+	private void appendRow(long timeUsec) {
+		retireIdleColumns();
+		if (headerChanged) {
+			buffer.append(HEADER_PREFIX);
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0) {
+					buffer.append(delimiter);
+				}
+				appendCell(buffer, columns.get(i), delimiter);
+			}
+			buffer.append(END_SEP);
+			headerChanged = false;
+		}
+		buffer.append(timeUsec / 1000);
+		for (int i = 1; i < columns.size(); i++) {
+			buffer.append(delimiter);
+			Object value = values[i];
+			if (value != null) {
+				if (value instanceof Number || value instanceof Boolean) {
+					buffer.append(value);
+				} else {
+					appendCell(buffer, value.toString(), delimiter);
+				}
+				values[i] = null;
+			}
+		}
+		buffer.append(END_SEP);
+		rowCount++;
+	}
+
+	/**
+	 * Append a cell value, quoting it when it contains delimiter or quotes. Line breaks are escaped as {@code \n} and
+	 * {@code \r}, so every row is kept on a single line.
+	 *
+	 * @param out buffer to append to
+	 * @param value cell value
+	 * @param delimiter column delimiter
+	 * @return buffer instance
+	 */
+	static StringBuilder appendCell(StringBuilder out, String value, char delimiter) {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == delimiter || c == '"';
+		}
+		if (quote) {
+			out.append('"');
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				out.append("\"\"");
+			} else if (c == '\n') {
+				out.append("\\n");
+			} else if (c == '\r') {
+				out.append("\\r");
+			} else {
+				out.append(c);
+			}
+		}
+		return quote ? out.append('"') : out;
+	}
+
+	private static long timeUsec(UsecTimestamp timeStamp) {
+		return timeStamp == null ? Utils.currentTimeUsec() : timeStamp.getTimeUsec();
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * <p>
+ * This class re-joins output produced by {@link ColumnarFormatter}. Formatter output consists of one or more header
+ * segments: a header row followed by value rows. Joiner merges headers of all segments (of one or more files) into a
+ * single header, preserving column order of first appearance, and re-aligns value rows of every segment to that
+ * header. Result is a plain table having a single header row, which can be loaded by any CSV/TSV tool.
+ * </p>
+ * <p>
+ * Usage: {@code ColumnarJoiner [-d comma|tab] [-o out_file] file...}, joined table is written to standard output
+ * when output file is not defined.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ *
+ * @see ColumnarFormatter
+ */
+public class ColumnarJoiner {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final char delimiter;
+	private final Map<String, Integer> columnIndex = new HashMap<String, Integer>(1024);
+	private final List<String> columns = new ArrayList<String>(1024);
+
+	/**
+	 * Create joiner for a given column delimiter.
+	 *
+	 * @param delimiter column delimiter used by formatter
+	 */
+	public ColumnarJoiner(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Obtain joined columns collected so far.
+	 *
+	 * @return list of joined column names
+	 */
+	public List<String> getColumns() {
+		return Collections.unmodifiableList(columns);
+	}
+
+	/**
+	 * Collect header columns from a given formatter output. Must be called for all inputs before any input is written
+	 * using {@link #write(Reader, Writer)}.
+	 *
+	 * @param in formatter output
+	 * @throws IOException if input can not be read
+	 */
+	public void scan(Reader in) throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (isHeader(line)) {
+				for (String column : readRecord(line.substring(ColumnarFormatter.HEADER_PREFIX.length()), reader)) {
+					if (!columnIndex.containsKey(column)) {
+						columnIndex.put(column, columns.size());
+						columns.add(column);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write joined header row.
+	 *
+	 * @param out output to write to
+	 * @throws IOException if output can not be written
+	 */
+	public void writeHeader(Writer out) throws IOException {
+		StringBuilder row = new StringBuilder(columns.size() * 32);
+		row.append(ColumnarFormatter.HEADER_PREFIX);
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				row.append(delimiter);
+			}
+			ColumnarFormatter.appendCell(row, columns.get(i), delimiter);
+		}
+		out.write(row.append(ColumnarFormatter.END_SEP).toString());
+	}
+
+	/**
+	 * Write value rows of a given formatter output re-aligned to joined header. Comment rows are skipped.
+	 *
+	 * @param in formatter output
+	 * @param out output to write to
+	 * @return number of value rows written
+	 * @throws IOException if input can not be read, output can not be written or input contains columns not
+	 *             collected by {@link #scan(Reader)}
+	 */
+	public long write(Reader in, Writer out) throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		String[] cells = new String[columns.size()];
+		StringBuilder row = new StringBuilder(columns.size() * 16);
+		int[] mapping = null;
+		long rows = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty() || line.startsWith(ColumnarFormatter.HEADER_PREFIX + ColumnarFormatter.HEADER_PREFIX)) {
+				continue;
+			}
+			if (isHeader(line)) {
+				List<String> header = readRecord(line.substring(ColumnarFormatter.HEADER_PREFIX.length()), reader);
+				mapping = new int[header.size()];
+				for (int i = 0; i < mapping.length; i++) {
+					Integer idx = columnIndex.get(header.get(i));
+					if (idx == null) {
+						throw new IOException("Column not scanned: " + header.get(i));
+					}
+					mapping[i] = idx;
+				}
+				continue;
+			}
+			if (mapping == null) {
+				throw new IOException("Value row precedes header row");
+			}
+			List<String> values = readRecord(line, reader);
+			for (int i = 0; i < values.size() && i < mapping.length; i++) {
+				cells[mapping[i]] = values.get(i);
+			}
+			row.setLength(0);
+			for (int i = 0; i < cells.length; i++) {
+				if (i > 0) {
+					row.append(delimiter);
+				}
+				if (cells[i] != null) {
+					ColumnarFormatter.appendCell(row, cells[i], delimiter);
+					cells[i] = null;
+				}
+			}
+			out.write(row.append(ColumnarFormatter.END_SEP).toString());
+			rows++;
+		}
+		return rows;
+	}
+
+	private static boolean isHeader(String line) {
+		return line.startsWith(ColumnarFormatter.HEADER_PREFIX)
+				&& !line.startsWith(ColumnarFormatter.HEADER_PREFIX + ColumnarFormatter.HEADER_PREFIX);
+	}
+
+	/**
+	 * Parse delimited record starting with a given line. Quoted cells may span multiple lines, which are then read
+	 * from a given reader.
+	 */
+	private List<String> readRecord(String line, BufferedReader reader) throws IOException {
+		List<String> cells = new ArrayList<String>(columns.size() + 1);
+		StringBuilder cell = new StringBuilder(64);
+		boolean quoted = false;
+		while (true) {
+			for (int i = 0; i < line.length(); i++) {
+				char c = line.charAt(i);
+				if (quoted) {
+					if (c != '"') {
+						cell.append(c);
+					} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						cell.append(c);
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == delimiter) {
+					cells.add(cell.toString());
+					cell.setLength(0);
+				} else {
+					cell.append(c);
+				}
+			}
+			if (!quoted) {
+				break;
+			}
+			line = reader.readLine();
+			if (line == null) {
+				throw new EOFException("Unterminated quoted value");
+			}
+			cell.append('\n');
+		}
+		cells.add(cell.toString());
+		return cells;
+	}
+
+	/**
+	 * Join given {@link ColumnarFormatter} output files into a single table.
+	 *
+	 * @param args {@code [-d comma|tab] [-o out_file] file...}
+	 * @throws IOException if files can not be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		char delimiter = ',';
+		String outFile = null;
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("-d".equals(args[i]) && i + 1 < args.length) {
+				delimiter = ColumnarFormatter.parseDelimiter(args[++i]);
+			} else if ("-o".equals(args[i]) && i + 1 < args.length) {
+				outFile = args[++i];
+			} else {
+				files.add(args[i]);
+			}
+		}
+		if (files.isEmpty()) {
+			System.err.println("Usage: ColumnarJoiner [-d comma|tab] [-o out_file] file...");
+			System.exit(1);
+		}
+
+		ColumnarJoiner joiner = new ColumnarJoiner(delimiter);
+		for (String file : files) {
+			Reader in = new InputStreamReader(new FileInputStream(file), UTF8);
+			try {
+				joiner.scan(in);
+			} finally {
+				in.close();
+			}
+		}
+		Writer out = new BufferedWriter(
+				new OutputStreamWriter(outFile == null ? System.out : new FileOutputStream(outFile), UTF8));
+		try {
+			joiner.writeHeader(out);
+			for (String file : files) {
+				Reader in = new InputStreamReader(new FileInputStream(file), UTF8);
+				try {
+					joiner.write(in, out);
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -15,7 +15,10 @@
  */
 package com.jkoolcloud.tnt4j.stream.jmx.format;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
+import java.util.Map;
 
 import com.jkoolcloud.tnt4j.core.OpLevel;
 import com.jkoolcloud.tnt4j.core.Operation;
@@ -23,6 +26,9 @@ import com.jkoolcloud.tnt4j.core.Property;
 import com.jkoolcloud.tnt4j.core.Snapshot;
 import com.jkoolcloud.tnt4j.format.DefaultFormatter;
 import com.jkoolcloud.tnt4j.source.Source;
+import com.jkoolcloud.tnt4j.stream.jmx.jfr.SampleEvents;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming.Phase;
 import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SchedulerImpl;
 import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
 import com.jkoolcloud.tnt4j.tracker.TrackingEvent;
@@ -35,6 +41,13 @@ import com.jkoolcloud.tnt4j.utils.Utils;
  * {@code "OBJ:name-value-prefix,name1=value1,....,nameN=valueN"}.
  * </p>
  * Newline is added at the end of each line.
+ * <p>
+ * Activities can also be formatted directly into a caller supplied buffer or {@link Writer} using
+ * {@link #formatTo(TrackingActivity, StringBuilder)} and {@link #formatTo(TrackingActivity, Writer)}. Formatting
+ * buffers are reused per thread, source path and escaped snapshot names are cached (number of cached names is bounded
+ * by {@code NameCacheSize} formatter configuration property), so steady-state formatting of an activity allocates
+ * little beyond the resulting string.
+ * </p>
  *
  * @version $Revision: 1 $
  * 
@@ -44,13 +57,33 @@ public class FactNameValueFormatter extends DefaultFormatter {
 	public static final String FIELD_SEP = ",";
 	public static final String END_SEP = "\n";
 
+	/**
+	 * Default maximum number of escaped snapshot names cached by formatter
+	 */
+	public static final int DEFAULT_NAME_CACHE_SIZE = 4096;
+
+	private final FormatSupport.SourceCache sourcePaths = new FormatSupport.SourceCache() {
+		@Override
+		protected String build(Source source) {
+			return FormatSupport.appendSourcePath(new StringBuilder(128), source).toString();
+		}
+	};
+	private final FormatSupport.LruCache<String, String> nameCache = new FormatSupport.LruCache<String, String>(
+			DEFAULT_NAME_CACHE_SIZE);
+
 	public FactNameValueFormatter() {
 		super("time.stamp={2},level={1},source={3},msg=\"{0}\"");
 	}
 
+	@Override
+	public void setConfiguration(Map<String, Object> settings) {
+		super.setConfiguration(settings);
+		nameCache.configure(settings, "NameCacheSize");
+	}
+
 	@Override
 	public String format(TrackingEvent event) {
-		StringBuilder nvString = new StringBuilder(1024);
+		StringBuilder nvString = FormatSupport.newBuffer();
 		nvString.append("OBJ:Streams");
 		toString(nvString, event.getSource()).append(event.getOperation().getName()).append("\\Events").append(FIELD_SEP);
 
@@ -87,7 +120,19 @@ public class FactNameValueFormatter extends DefaultFormatter {
 
 	@Override
 	public String format(TrackingActivity event) {
-		StringBuilder nvString = new StringBuilder(1024);
+		return formatTo(event, FormatSupport.newBuffer()).toString();
+	}
+
+	/**
+	 * Format a given activity appending formatted entry (terminated by {@link #END_SEP}) to a given buffer.
+	 *
+	 * @param event activity to format
+	 * @param nvString buffer to append formatted activity to
+	 * @return buffer instance
+	 */
+	public StringBuilder formatTo(TrackingActivity event, StringBuilder nvString) {
+		long started = System.nanoTime();
+		int start = nvString.length();
 
 		nvString.append("OBJ:Streams");
 		toString(nvString, event.getSource()).append("\\Activities").append(FIELD_SEP);
@@ -111,22 +156,44 @@ public class FactNameValueFormatter extends DefaultFormatter {
 		for (Snapshot snap : slist) {
 			toString(nvString, snap);
 		}
+		nvString.append(END_SEP);
 
-		return nvString.append(END_SEP).toString();
+		SampleTiming.record(Phase.FORMAT, System.nanoTime() - started);
+		SampleEvents.recorder().formatted(getClass().getName(), slist.size(), nvString.length() - start);
+		return nvString;
+	}
+
+	/**
+	 * Format a given activity writing formatted entry (terminated by {@link #END_SEP}) to a given writer. Entry is
+	 * formatted into per thread reusable buffer and copied to writer in chunks, so no intermediate string is
+	 * allocated.
+	 *
+	 * @param event activity to format
+	 * @param out writer to write formatted activity to
+	 * @throws IOException if writing fails
+	 */
+	public void formatTo(TrackingActivity event, Writer out) throws IOException {
+		FormatSupport.FormatBuffer buffer = FormatSupport.buffer();
+		StringBuilder nvString = formatTo(event, buffer.reset());
+		char[] chunk = buffer.out;
+		for (int pos = 0, length = nvString.length(); pos < length; pos += chunk.length) {
+			int end = Math.min(length, pos + chunk.length);
+			nvString.getChars(pos, end, chunk, 0);
+			out.write(chunk, 0, end - pos);
+		}
 	}
 
 	@Override
 	public String format(Snapshot event) {
-		StringBuilder nvString = new StringBuilder(1024);
-		String prefix = "OBJ:Metrics\\" + event.getCategory();
-		nvString.append(prefix).append(FIELD_SEP);
+		StringBuilder nvString = FormatSupport.newBuffer();
+		nvString.append("OBJ:Metrics\\").append(event.getCategory()).append(FIELD_SEP);
 		toString(nvString, event).append(END_SEP);
 		return nvString.toString();
 	}
 
 	@Override
 	public String format(long ttl, Source source, OpLevel level, String msg, Object... args) {
-		StringBuilder nvString = new StringBuilder(1024);
+		StringBuilder nvString = FormatSupport.newBuffer();
 
 		nvString.append("OBJ:Streams");
 		toString(nvString, source).append("\\Message").append(FIELD_SEP);
@@ -136,27 +203,65 @@ public class FactNameValueFormatter extends DefaultFormatter {
 	}
 
 	protected StringBuilder toString(StringBuilder nvString, Source source) {
-		Source parent = source.getSource();
-		if (parent != null) {
-			toString(nvString, source.getSource());
-		}
-		nvString.append("\\").append(source.getName());
-		return nvString;
+		return nvString.append(sourcePaths.get(source));
 	}
 
 	protected StringBuilder toString(StringBuilder nvString, Snapshot snap) {
 		Collection<Property> list = snap.getSnapshot();
+		String name = null;
 		for (Property p : list) {
 			Object value = p.getValue();
 			if (isSerializable(value)) {
-				String name = snap.getName().replace("=", "\\").replace(",", "!");
-				nvString.append(name).append("\\").append(p.getKey());
-				nvString.append("=").append(String.valueOf(value)).append(FIELD_SEP);
+				if (name == null) {
+					name = getEscapedName(snap.getName());
+				}
+				nvString.append(name);
+				appendValue(nvString.append(p.getKey()).append('='), value).append(FIELD_SEP);
 			}
 		}
 		return nvString;
 	}
 
+	/**
+	 * Obtain escaped snapshot name followed by path delimiter, cached per snapshot name.
+	 *
+	 * @param snapName snapshot name
+	 * @return escaped snapshot name prefix
+	 */
+	protected String getEscapedName(String snapName) {
+		synchronized (nameCache) {
+			String name = nameCache.get(snapName);
+			if (name == null) {
+				name = snapName.replace("=", "\\").replace(",", "!") + "\\";
+				nameCache.put(snapName, name);
+			}
+			return name;
+		}
+	}
+
+	/**
+	 * Append a given value to buffer, primitive wrappers are appended without intermediate string.
+	 *
+	 * @param nvString buffer to append value to
+	 * @param value value to append
+	 * @return buffer instance
+	 */
+	protected static StringBuilder appendValue(StringBuilder nvString, Object value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return nvString.append(((Number) value).longValue());
+		}
+		if (value instanceof Double) {
+			return nvString.append(((Double) value).doubleValue());
+		}
+		if (value instanceof Float) {
+			return nvString.append(((Float) value).floatValue());
+		}
+		if (value instanceof Boolean) {
+			return nvString.append(((Boolean) value).booleanValue());
+		}
+		return nvString.append(String.valueOf(value));
+	}
+
 	/**
 	 * Determine if a given value can be meaningfully serialized to string.
 	 *
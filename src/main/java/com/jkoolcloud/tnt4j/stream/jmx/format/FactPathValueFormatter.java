@@ -44,34 +44,106 @@ public class FactPathValueFormatter extends FactNameValueFormatter {
 	private static final String PATH_DELIM = "\\";
 	private static final String EQ = "=";
 
-	private Comparator<Snapshot> snapshotComparator;
+	/**
+	 * Default maximum number of object name paths cached by formatter
+	 */
+	public static final int DEFAULT_PATH_CACHE_SIZE = 4096;
+
+	private Comparator<SnapshotKey> snapshotComparator;
 	private Comparator<Property> propertyComparator;
 
+	private final FormatSupport.LruCache<String, PathEntry> pathCache = new FormatSupport.LruCache<String, PathEntry>(
+			DEFAULT_PATH_CACHE_SIZE);
+	private final Map<String, Integer> snapshotOrder = new HashMap<String, Integer>(256);
+
+	/**
+	 * Object name path and property order of a single snapshot, reused across formatted activities
+	 */
+	private static class PathEntry {
+		final String path;
+		final Map<String, Integer> propertyOrder = new HashMap<String, Integer>();
+
+		PathEntry(String path) {
+			this.path = path;
+		}
+	}
+
+	/**
+	 * Snapshot with precomputed sort key
+	 */
+	private static class SnapshotKey {
+		final String path;
+		final Snapshot snapshot;
+
+		SnapshotKey(String path, Snapshot snapshot) {
+			this.path = path;
+			this.snapshot = snapshot;
+		}
+	}
+
 	public FactPathValueFormatter() {
 		super();
 	}
 
+	@Override
+	public void setConfiguration(Map<String, Object> settings) {
+		super.setConfiguration(settings);
+		pathCache.configure(settings, "PathCacheSize");
+	}
+
+	/**
+	 * Obtain snapshots of operation sorted by object name path. When set of snapshot names is same as in previously
+	 * formatted operation, snapshots are placed using previous order without sorting.
+	 *
+	 * @param op operation containing snapshots
+	 * @return sorted collection of snapshots
+	 */
 	@Override
 	protected Collection<Snapshot> getSnapshots(Operation op) {
 		Collection<Snapshot> sList = op.getSnapshots();
-
 		Snapshot[] sa = new Snapshot[sList.size()];
-		sa = sList.toArray(sa);
-		Arrays.sort(sa, getSnapshotComparator());
+		synchronized (snapshotOrder) {
+			if (placeSnapshots(sList, sa)) {
+				return Arrays.asList(sa);
+			}
+
+			SnapshotKey[] keys = new SnapshotKey[sa.length];
+			int i = 0;
+			for (Snapshot snap : sList) {
+				keys[i++] = new SnapshotKey(getPathEntry(snap.getName()).path, snap);
+			}
+			Arrays.sort(keys, getSnapshotComparator());
 
+			snapshotOrder.clear();
+			for (i = 0; i < keys.length; i++) {
+				sa[i] = keys[i].snapshot;
+				snapshotOrder.put(sa[i].getName(), i);
+			}
+		}
 		return Arrays.asList(sa);
 	}
 
-	private Comparator<Snapshot> getSnapshotComparator() {
+	private boolean placeSnapshots(Collection<Snapshot> sList, Snapshot[] sa) {
+		if (sa.length == 0 || sa.length != snapshotOrder.size()) {
+			return false;
+		}
+		for (Snapshot snap : sList) {
+			Integer idx = snapshotOrder.get(snap.getName());
+			if (idx == null || sa[idx] != null) {
+				Arrays.fill(sa, null);
+				return false;
+			}
+			sa[idx] = snap;
+		}
+		return true;
+	}
+
+	private Comparator<SnapshotKey> getSnapshotComparator() {
 		if (snapshotComparator == null) {
-			snapshotComparator = new Comparator<Snapshot>() {
+			snapshotComparator = new Comparator<SnapshotKey>() {
 				@Override
-				public int compare(Snapshot s1, Snapshot s2) {
-					// return s1.getCategory().compareTo(s2.getCategory()) + s1.getName().compareTo(s2.getName());
-					String s1Path = makeObjNamePath(s1.getName());
-					String s2Path = makeObjNamePath(s2.getName());
-
-					return s1Path.compareTo(s2Path);
+				public int compare(SnapshotKey s1, SnapshotKey s2) {
+					return s1.path.compareTo(s2.path);
 				}
 			};
 		}
@@ -81,27 +153,57 @@ public class FactPathValueFormatter extends FactNameValueFormatter {
 
 	@Override
 	protected StringBuilder toString(StringBuilder nvString, Snapshot snap) {
-		Collection<Property> list = getProperties(snap);
+		PathEntry entry = getPathEntry(snap.getName());
+		Collection<Property> list = getProperties(snap, entry);
 		for (Property p : list) {
 			Object value = p.getValue();
 
-			String name = makeObjNamePath(snap.getName());
-			nvString.append(name).append(PATH_DELIM).append(p.getKey());
-			nvString.append(EQ).append(toString(value)).append(FIELD_SEP);
+			nvString.append(entry.path).append(PATH_DELIM).append(p.getKey()).append(EQ);
+			if (isSerializable(value)) {
+				appendValue(nvString, value);
+			} else {
+				nvString.append(toString(value));
+			}
+			nvString.append(FIELD_SEP);
 		}
 		return nvString;
 	}
 
-	private Collection<Property> getProperties(Snapshot snapshot) {
+	private Collection<Property> getProperties(Snapshot snapshot, PathEntry entry) {
 		Collection<Property> pList = snapshot.getSnapshot();
 
 		Property[] pa = new Property[pList.size()];
-		pa = pList.toArray(pa);
-		Arrays.sort(pa, getPropertyComparator());
+		synchronized (entry) {
+			if (placeProperties(pList, pa, entry.propertyOrder)) {
+				return Arrays.asList(pa);
+			}
 
+			pa = pList.toArray(pa);
+			Arrays.sort(pa, getPropertyComparator());
+
+			entry.propertyOrder.clear();
+			for (int i = 0; i < pa.length; i++) {
+				entry.propertyOrder.put(pa[i].getKey(), i);
+			}
+		}
 		return Arrays.asList(pa);
 	}
 
+	private static boolean placeProperties(Collection<Property> pList, Property[] pa, Map<String, Integer> order) {
+		if (pa.length == 0 || pa.length != order.size()) {
+			return false;
+		}
+		for (Property p : pList) {
+			Integer idx = order.get(p.getKey());
+			if (idx == null || pa[idx] != null) {
+				Arrays.fill(pa, null);
+				return false;
+			}
+			pa[idx] = p;
+		}
+		return true;
+	}
+
 	private Comparator<Property> getPropertyComparator() {
 		if (propertyComparator == null) {
 			propertyComparator = new Comparator<Property>() {
@@ -115,6 +217,24 @@ public class FactPathValueFormatter extends FactNameValueFormatter {
 		return propertyComparator;
 	}
 
+	/**
+	 * Obtain cached object name path of a given canonical object name. Number of cached paths is bounded by
+	 * {@code PathCacheSize} formatter configuration property, least recently used paths are evicted first.
+	 *
+	 * @param objCanonName canonical object name
+	 * @return cached path entry
+	 */
+	private PathEntry getPathEntry(String objCanonName) {
+		synchronized (pathCache) {
+			PathEntry entry = pathCache.get(objCanonName);
+			if (entry == null) {
+				entry = new PathEntry(makeObjNamePath(objCanonName));
+				pathCache.put(objCanonName, entry);
+			}
+			return entry;
+		}
+	}
+
 	private static String makeObjName(String objCanonName) {
 		return objCanonName.replace(EQ, PATH_DELIM).replace(FIELD_SEP, "!");
 	}
@@ -138,7 +258,7 @@ public class FactPathValueFormatter extends FactNameValueFormatter {
 		String propsStr = objCanonName.substring(ddIdx + 1);
 
 		if (propsStr.length() > 0) {
-			propsStr = propsStr.replaceAll(FIELD_SEP, "\n");
+			propsStr = propsStr.replace(FIELD_SEP, "\n");
 			Reader rdr = new StringReader(propsStr);
 			try {
 				props.load(rdr);
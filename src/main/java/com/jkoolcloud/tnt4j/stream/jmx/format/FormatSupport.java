@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.jkoolcloud.tnt4j.source.Source;
+
+/**
+ * Formatting support shared by formatters of this package: per thread reusable formatting buffers, cached source
+ * paths and bounded least recently used caches of precomputed names.
+ *
+ * @version $Revision: 1 $
+ */
+final class FormatSupport {
+	/**
+	 * Maximum capacity (in characters) of per thread formatting buffer retained between formatted entries
+	 */
+	static final int MAX_RETAINED_BUFFER = 4 * 1024 * 1024;
+
+	private static final ThreadLocal<FormatBuffer> BUFFERS = new ThreadLocal<FormatBuffer>() {
+		@Override
+		protected FormatBuffer initialValue() {
+			return new FormatBuffer();
+		}
+	};
+
+	private FormatSupport() {
+	}
+
+	/**
+	 * Obtain formatting buffers of current thread.
+	 *
+	 * @return formatting buffers of current thread
+	 */
+	static FormatBuffer buffer() {
+		return BUFFERS.get();
+	}
+
+	/**
+	 * Obtain empty formatting buffer of current thread.
+	 *
+	 * @return empty formatting buffer
+	 */
+	static StringBuilder newBuffer() {
+		return BUFFERS.get().reset();
+	}
+
+	/**
+	 * Append path of a given source, e.g. {@code \server\application}, to a given buffer.
+	 *
+	 * @param path buffer to append source path to
+	 * @param source source to append path of
+	 * @return buffer instance
+	 */
+	static StringBuilder appendSourcePath(StringBuilder path, Source source) {
+		Source parent = source.getSource();
+		if (parent != null) {
+			appendSourcePath(path, parent);
+		}
+		return path.append('\\').append(source.getName());
+	}
+
+	/**
+	 * Reusable formatting buffers of a single thread
+	 */
+	static class FormatBuffer {
+		StringBuilder chars = new StringBuilder(8192);
+		char[] out = new char[8192];
+
+		StringBuilder reset() {
+			if (chars.capacity() > MAX_RETAINED_BUFFER) {
+				chars = new StringBuilder(8192);
+			}
+			chars.setLength(0);
+			return chars;
+		}
+	}
+
+	/**
+	 * Formatted representation of last formatted source. Sampling activities share a single source, so formatted
+	 * source is rebuilt only when source instance changes.
+	 */
+	abstract static class SourceCache {
+		private volatile Entry last;
+
+		private static class Entry {
+			final Source source;
+			final String value;
+
+			Entry(Source source, String value) {
+				this.source = source;
+				this.value = value;
+			}
+		}
+
+		/**
+		 * Obtain formatted representation of a given source.
+		 *
+		 * @param source source to format
+		 * @return formatted source
+		 */
+		String get(Source source) {
+			Entry entry = last;
+			if (entry == null || entry.source != source) {
+				entry = new Entry(source, build(source));
+				last = entry;
+			}
+			return entry.value;
+		}
+
+		/**
+		 * Build formatted representation of a given source.
+		 *
+		 * @param source source to format
+		 * @return formatted source
+		 */
+		protected abstract String build(Source source);
+	}
+
+	/**
+	 * Cache evicting least recently used entries when number of entries exceeds maximum size. Access must be
+	 * synchronized on cache instance.
+	 *
+	 * @param <K> type of cache keys
+	 * @param <V> type of cached values
+	 */
+	static class LruCache<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = -6218043726175491830L;
+
+		private int maxSize;
+
+		LruCache(int maxSize) {
+			super(256, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		/**
+		 * Set maximum cache size from a given formatter configuration property, if it is defined.
+		 *
+		 * @param settings formatter configuration properties
+		 * @param key name of cache size property
+		 */
+		void configure(Map<String, Object> settings, String key) {
+			Object size = settings.get(key);
+			if (size != null) {
+				synchronized (this) {
+					maxSize = Integer.parseInt(size.toString().trim());
+				}
+			}
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
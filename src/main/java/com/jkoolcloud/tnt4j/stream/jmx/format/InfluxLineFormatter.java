@@ -0,0 +1,277 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import java.util.*;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.core.Property;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+import com.jkoolcloud.tnt4j.core.UsecTimestamp;
+import com.jkoolcloud.tnt4j.format.DefaultFormatter;
+import com.jkoolcloud.tnt4j.source.Source;
+import com.jkoolcloud.tnt4j.stream.jmx.jfr.SampleEvents;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming.Phase;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+import com.jkoolcloud.tnt4j.tracker.TrackingEvent;
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class provides InfluxDB line protocol formatting for tnt4j activities, events and snapshots. Every MBean
+ * snapshot is formatted as a single line: measurement is made of MBean domain and {@code type} key, remaining object
+ * name keys become tags and snapshot properties become fields, e.g.:
+ * </p>
+ * {@code java.lang.GarbageCollector,name=Copy CollectionCount=12i,CollectionTime=34i,Valid=true 1510000000000000000}
+ * <p>
+ * Line timestamp is taken from snapshot time stamp, i.e. time when MBean was sampled. Integer values are written as
+ * integer fields, non finite decimal values are skipped. All snapshots of an activity are formatted into a single
+ * batch of lines, so sampling cycle is written to socket or file sink at once.
+ * </p>
+ * <p>
+ * Measurement and tag set prefix is cached per object name (number of cached prefixes is bounded by
+ * {@code TagCacheSize} formatter configuration property, default {@code 4096}). Timestamp precision is defined by
+ * {@code Precision} formatter configuration property: {@code ns} (default), {@code us}, {@code ms} or {@code s}.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ */
+public class InfluxLineFormatter extends DefaultFormatter {
+	public static final String END_SEP = "\n";
+	public static final String MESSAGE_MEASUREMENT = "streamjmx.message";
+
+	/**
+	 * Default maximum number of measurement and tag set prefixes cached by formatter
+	 */
+	public static final int DEFAULT_TAG_CACHE_SIZE = 4096;
+
+	private long precisionDivisor = 1;
+	private long precisionMultiplier = 1000;
+	private final FormatSupport.LruCache<String, String> tagCache = new FormatSupport.LruCache<String, String>(
+			DEFAULT_TAG_CACHE_SIZE);
+
+	public InfluxLineFormatter() {
+		super();
+	}
+
+	@Override
+	public void setConfiguration(Map<String, Object> settings) {
+		super.setConfiguration(settings);
+		tagCache.configure(settings, "TagCacheSize");
+		Object precision = settings.get("Precision");
+		if (precision != null) {
+			setPrecision(precision.toString().trim());
+		}
+	}
+
+	/**
+	 * Set timestamp precision of formatted lines.
+	 *
+	 * @param precision precision: {@code ns}, {@code us}, {@code ms} or {@code s}
+	 * @throws IllegalArgumentException if precision is not supported
+	 */
+	public void setPrecision(String precision) {
+		if ("ns".equals(precision)) {
+			precisionMultiplier = 1000;
+			precisionDivisor = 1;
+		} else if ("us".equals(precision)) {
+			precisionMultiplier = 1;
+			precisionDivisor = 1;
+		} else if ("ms".equals(precision)) {
+			precisionMultiplier = 1;
+			precisionDivisor = 1000;
+		} else if ("s".equals(precision)) {
+			precisionMultiplier = 1;
+			precisionDivisor = 1000000;
+		} else {
+			throw new IllegalArgumentException("Unsupported precision: " + precision);
+		}
+	}
+
+	@Override
+	public String format(TrackingEvent event) {
+		StringBuilder lines = FormatSupport.newBuffer();
+		for (Snapshot snap : event.getOperation().getSnapshots()) {
+			toString(lines, snap);
+		}
+		return lines.toString();
+	}
+
+	@Override
+	public String format(TrackingActivity event) {
+		long started = System.nanoTime();
+		StringBuilder lines = FormatSupport.newBuffer();
+		Collection<Snapshot> slist = event.getSnapshots();
+		for (Snapshot snap : slist) {
+			toString(lines, snap);
+		}
+		String str = lines.toString();
+		SampleTiming.record(Phase.FORMAT, System.nanoTime() - started);
+		SampleEvents.recorder().formatted(getClass().getName(), slist.size(), str.length());
+		return str;
+	}
+
+	@Override
+	public String format(Snapshot event) {
+		return toString(FormatSupport.newBuffer(), event).toString();
+	}
+
+	@Override
+	public String format(long ttl, Source source, OpLevel level, String msg, Object... args) {
+		StringBuilder line = FormatSupport.newBuffer();
+		line.append(MESSAGE_MEASUREMENT).append(",source=");
+		escapeTag(line, source.getName()).append(",level=").append(level).append(" text=");
+		appendString(line, String.valueOf(Utils.format(msg, args))).append(' ');
+		appendTime(line, Utils.currentTimeUsec()).append(END_SEP);
+		return line.toString();
+	}
+
+	/**
+	 * Append a line of a given snapshot. Snapshots without fields are skipped.
+	 *
+	 * @param lines buffer to append line to
+	 * @param snap snapshot to format
+	 * @return buffer instance
+	 */
+	protected StringBuilder toString(StringBuilder lines, Snapshot snap) {
+		int start = lines.length();
+		lines.append(getTagSet(snap));
+		int fieldsStart = lines.length();
+		for (Property p : snap.getSnapshot()) {
+			Object value = p.getValue();
+			if (!FactNameValueFormatter.isSerializable(value)) {
+				continue;
+			}
+			if ((value instanceof Double || value instanceof Float)
+					&& (Double.isNaN(((Number) value).doubleValue()) || Double.isInfinite(((Number) value).doubleValue()))) {
+				continue;
+			}
+			lines.append(lines.length() == fieldsStart ? ' ' : ',');
+			escapeTag(lines, p.getKey()).append('=');
+			appendValue(lines, value);
+		}
+		if (lines.length() == fieldsStart) {
+			lines.setLength(start); // line protocol requires at least one field
+			return lines;
+		}
+		lines.append(' ');
+		return appendTime(lines, timeUsec(snap.getTimeStamp())).append(END_SEP);
+	}
+
+	/**
+	 * Obtain escaped measurement and tag set of a given snapshot, cached per snapshot name.
+	 *
+	 * @param snap snapshot
+	 * @return escaped measurement and tag set
+	 */
+	protected String getTagSet(Snapshot snap) {
+		synchronized (tagCache) {
+			String tagSet = tagCache.get(snap.getName());
+			if (tagSet == null) {
+				tagSet = makeTagSet(snap);
+				tagCache.put(snap.getName(), tagSet);
+			}
+			return tagSet;
+		}
+	}
+
+	private static String makeTagSet(Snapshot snap) {
+		StringBuilder tagSet = new StringBuilder(128);
+		ObjectName oName;
+		try {
+			oName = new ObjectName(snap.getName());
+		} catch (MalformedObjectNameException exc) {
+			escapeMeasurement(tagSet, snap.getCategory() == null ? snap.getName() : snap.getCategory());
+			return escapeTag(tagSet.append(",name="), snap.getName()).toString();
+		}
+		Map<String, String> keys = new TreeMap<String, String>(oName.getKeyPropertyList());
+		String type = keys.remove("type");
+		escapeMeasurement(tagSet, type == null ? oName.getDomain() : oName.getDomain() + "." + type);
+		for (Map.Entry<String, String> key : keys.entrySet()) {
+			String value = key.getValue();
+			if (value.length() > 1 && value.charAt(0) == '"') {
+				try {
+					value = ObjectName.unquote(value);
+				} catch (IllegalArgumentException exc) {
+				}
+			}
+			if (!value.isEmpty()) { // line protocol does not allow empty tag values
+				escapeTag(tagSet.append(','), key.getKey()).append('=');
+				escapeTag(tagSet, value);
+			}
+		}
+		return tagSet.toString();
+	}
+
+	private StringBuilder appendTime(StringBuilder lines, long timeUsec) {
+		return lines.append(timeUsec * precisionMultiplier / precisionDivisor);
+	}
+
+	private static long timeUsec(UsecTimestamp timeStamp) {
+		return timeStamp == null ? Utils.currentTimeUsec() : timeStamp.getTimeUsec();
+	}
+
+	private static StringBuilder appendValue(StringBuilder lines, Object value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return lines.append(((Number) value).longValue()).append('i');
+		}
+		if (value instanceof Number) {
+			return lines.append(((Number) value).doubleValue());
+		}
+		if (value instanceof Boolean) {
+			return lines.append(((Boolean) value).booleanValue());
+		}
+		return appendString(lines, String.valueOf(value));
+	}
+
+	private static StringBuilder appendString(StringBuilder lines, String value) {
+		lines.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				lines.append('\\');
+			}
+			lines.append(c == '\n' ? ' ' : c);
+		}
+		return lines.append('"');
+	}
+
+	private static StringBuilder escapeMeasurement(StringBuilder lines, String name) {
+		return escape(lines, name, false);
+	}
+
+	private static StringBuilder escapeTag(StringBuilder lines, String name) {
+		return escape(lines, name, true);
+	}
+
+	private static StringBuilder escape(StringBuilder lines, String name, boolean equals) {
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == ',' || c == ' ' || (equals && c == '=')) {
+				lines.append('\\');
+			} else if (c == '\n') {
+				c = ' ';
+				lines.append('\\');
+			}
+			lines.append(c);
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jkoolcloud.tnt4j.core.*;
+import com.jkoolcloud.tnt4j.format.DefaultFormatter;
+import com.jkoolcloud.tnt4j.source.Source;
+import com.jkoolcloud.tnt4j.stream.jmx.jfr.SampleEvents;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming.Phase;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+import com.jkoolcloud.tnt4j.tracker.TrackingEvent;
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class provides compact JSON formatting for tnt4j activities, events and snapshots. Every activity (sampling
+ * cycle) is formatted as a single JSON object, having sampled attributes grouped by MBean object name:
+ * </p>
+ * <p>
+ * {@code {"source":"\\...","name":"...","id":"...","time.usec":...,"mbeans":{"java.lang:type=Memory":{"ObjectPendingFinalizationCount":0,...},...}}}
+ * </p>
+ * <p>
+ * When {@code Ndjson} formatter configuration property is set to {@code true}, every MBean is formatted as a separate
+ * line (newline delimited JSON), so output can be split per MBean:
+ * </p>
+ * <p>
+ * {@code {"source":"\\...","id":"...","time.usec":...,"mbean":"java.lang:type=Memory","attributes":{"ObjectPendingFinalizationCount":0,...}}}
+ * </p>
+ * <p>
+ * Escaped MBean and attribute names are cached (number of cached MBeans is bounded by {@code NameCacheSize} formatter
+ * configuration property), primitive values are appended without intermediate strings and formatting buffers are
+ * reused per thread. Non finite numbers are formatted as {@code null}.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ */
+public class JsonFactFormatter extends DefaultFormatter {
+	public static final String END_SEP = "\n";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private boolean ndjson = false;
+	private final FormatSupport.SourceCache sourceMembers = new FormatSupport.SourceCache() {
+		@Override
+		protected String build(Source source) {
+			String path = FormatSupport.appendSourcePath(new StringBuilder(128), source).toString();
+			return appendString(new StringBuilder(path.length() + 16).append("\"source\":"), path).append(',')
+					.toString();
+		}
+	};
+	private final FormatSupport.LruCache<String, SnapshotNames> nameCache;
+
+	/**
+	 * Pre-escaped JSON member names of a single snapshot
+	 */
+	private static class SnapshotNames {
+		final String name;
+		final Map<String, String> keys = new HashMap<String, String>();
+
+		SnapshotNames(String snapName) {
+			name = member(snapName);
+		}
+
+		synchronized String key(String key) {
+			String member = keys.get(key);
+			if (member == null) {
+				member = member(key);
+				keys.put(key, member);
+			}
+			return member;
+		}
+
+		private static String member(String name) {
+			return appendString(new StringBuilder(name.length() + 4), name).append(':').toString();
+		}
+	}
+
+	public JsonFactFormatter() {
+		nameCache = new FormatSupport.LruCache<String, SnapshotNames>(FactNameValueFormatter.DEFAULT_NAME_CACHE_SIZE);
+	}
+
+	@Override
+	public void setConfiguration(Map<String, Object> settings) {
+		super.setConfiguration(settings);
+		Object nd = settings.get("Ndjson");
+		if (nd != null) {
+			ndjson = Boolean.parseBoolean(nd.toString().trim());
+		}
+		nameCache.configure(settings, "NameCacheSize");
+	}
+
+	/**
+	 * Determine if formatter produces newline delimited JSON: one MBean per line.
+	 *
+	 * @return {@code true} if one line per MBean is produced, {@code false} - if one line per activity
+	 */
+	public boolean isNdjson() {
+		return ndjson;
+	}
+
+	@Override
+	public String format(TrackingEvent event) {
+		StringBuilder json = FormatSupport.newBuffer();
+		Operation op = event.getOperation();
+		formatTo(json, event.getSource(), op.getName(), event.getTrackingId(), timeUsec(op.getStartTime()),
+				op.getElapsedTimeUsec(), op.getSnapshots());
+		return json.toString();
+	}
+
+	@Override
+	public String format(TrackingActivity event) {
+		return formatTo(event, FormatSupport.newBuffer()).toString();
+	}
+
+	/**
+	 * Format a given activity appending formatted entry (terminated by {@link #END_SEP}) to a given buffer.
+	 *
+	 * @param event activity to format
+	 * @param json buffer to append formatted activity to
+	 * @return buffer instance
+	 */
+	public StringBuilder formatTo(TrackingActivity event, StringBuilder json) {
+		long started = System.nanoTime();
+		int start = json.length();
+		Collection<Snapshot> slist = event.getSnapshots();
+		formatTo(json, event.getSource(), event.getName(), event.getTrackingId(), timeUsec(event.getStartTime()),
+				event.getElapsedTimeUsec(), slist);
+		SampleTiming.record(Phase.FORMAT, System.nanoTime() - started);
+		SampleEvents.recorder().formatted(getClass().getName(), slist.size(), json.length() - start);
+		return json;
+	}
+
+	@Override
+	public String format(Snapshot event) {
+		StringBuilder json = FormatSupport.newBuffer();
+		json.append('{');
+		appendString(json.append("\"category\":"), event.getCategory()).append(',');
+		json.append("\"time.usec\":").append(timeUsec(event.getTimeStamp())).append(',');
+		appendSnapshot(json, event, getNames(event.getName()), "\"mbean\":", "\"attributes\":");
+		return json.append('}').append(END_SEP).toString();
+	}
+
+	@Override
+	public String format(long ttl, Source source, OpLevel level, String msg, Object... args) {
+		StringBuilder json = FormatSupport.newBuffer();
+		json.append('{');
+		if (source != null) {
+			json.append(sourceMembers.get(source));
+		}
+		json.append("\"time.usec\":").append(Utils.currentTimeUsec()).append(',');
+		appendString(json.append("\"level\":"), String.valueOf(level)).append(',');
+		appendString(json.append("\"msg\":"), String.valueOf(Utils.format(msg, args)));
+		return json.append('}').append(END_SEP).toString();
+	}
+
+	private void formatTo(StringBuilder json, Source source, String name, String id, long timeUsec, long elapsedUsec,
+			Collection<Snapshot> slist) {
+		if (ndjson) {
+			for (Snapshot snap : slist) {
+				json.append('{');
+				appendHead(json, source, id, timeUsec);
+				appendSnapshot(json, snap, getNames(snap.getName()), "\"mbean\":", "\"attributes\":");
+				json.append('}').append(END_SEP);
+			}
+			return;
+		}
+		json.append('{');
+		if (name != null) {
+			appendString(json.append("\"name\":"), name).append(',');
+		}
+		appendHead(json, source, id, timeUsec);
+		json.append("\"elapsed.usec\":").append(elapsedUsec).append(',');
+		json.append("\"mbeans\":{");
+		boolean first = true;
+		for (Snapshot snap : slist) {
+			if (!first) {
+				json.append(',');
+			}
+			SnapshotNames names = getNames(snap.getName());
+			appendSnapshot(json, snap, names, null, names.name);
+			first = false;
+		}
+		json.append("}}").append(END_SEP);
+	}
+
+	private StringBuilder appendHead(StringBuilder json, Source source, String id, long timeUsec) {
+		if (source != null) {
+			json.append(sourceMembers.get(source));
+		}
+		if (id != null) {
+			appendString(json.append("\"id\":"), id).append(',');
+		}
+		return json.append("\"time.usec\":").append(timeUsec).append(',');
+	}
+
+	private static StringBuilder appendSnapshot(StringBuilder json, Snapshot snap, SnapshotNames names,
+			String nameMember, String propsMember) {
+		if (nameMember != null) {
+			json.append(nameMember).append(names.name, 0, names.name.length() - 1).append(',');
+		}
+		json.append(propsMember).append('{');
+		boolean first = true;
+		for (Property p : snap.getSnapshot()) {
+			Object value = p.getValue();
+			if (FactNameValueFormatter.isSerializable(value)) {
+				if (!first) {
+					json.append(',');
+				}
+				appendValue(json.append(names.key(p.getKey())), value);
+				first = false;
+			}
+		}
+		return json.append('}');
+	}
+
+	private SnapshotNames getNames(String snapName) {
+		synchronized (nameCache) {
+			SnapshotNames names = nameCache.get(snapName);
+			if (names == null) {
+				names = new SnapshotNames(snapName);
+				nameCache.put(snapName, names);
+			}
+			return names;
+		}
+	}
+
+	/**
+	 * Append a given value as JSON value, primitive wrappers are appended without intermediate string.
+	 *
+	 * @param json buffer to append value to
+	 * @param value value to append
+	 * @return buffer instance
+	 */
+	protected static StringBuilder appendValue(StringBuilder json, Object value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return json.append(((Number) value).longValue());
+		}
+		if (value instanceof Double || value instanceof Float) {
+			double dValue = ((Number) value).doubleValue();
+			if (Double.isNaN(dValue) || Double.isInfinite(dValue)) {
+				return json.append("null");
+			}
+			return value instanceof Float ? json.append(((Float) value).floatValue()) : json.append(dValue);
+		}
+		if (value instanceof Boolean) {
+			return json.append(((Boolean) value).booleanValue());
+		}
+		if (value instanceof BigInteger || value instanceof BigDecimal) {
+			return json.append(value);
+		}
+		if (value instanceof Number) {
+			return appendValue(json, ((Number) value).doubleValue());
+		}
+		return appendString(json, String.valueOf(value));
+	}
+
+	/**
+	 * Append a given string as quoted and escaped JSON string.
+	 *
+	 * @param json buffer to append string to
+	 * @param str string to append
+	 * @return buffer instance
+	 */
+	protected static StringBuilder appendString(StringBuilder json, String str) {
+		json.append('"');
+		for (int i = 0, length = str.length(); i < length; i++) {
+			char c = str.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		return json.append('"');
+	}
+
+	private static long timeUsec(UsecTimestamp timeStamp) {
+		return timeStamp == null ? Utils.currentTimeUsec() : timeStamp.getTimeUsec();
+	}
+}
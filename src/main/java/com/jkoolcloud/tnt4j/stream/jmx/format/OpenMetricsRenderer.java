@@ -0,0 +1,296 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import java.util.*;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.core.Property;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+
+/**
+ * <p>
+ * This class renders MBean snapshots as OpenMetrics (Prometheus) text exposition samples. Metric family name is made
+ * of MBean domain, {@code type} key and property key, e.g. {@code java_lang_Memory_HeapMemoryUsage_used}, while
+ * remaining object name keys become labels, e.g. {@code java_lang_GarbageCollector_CollectionCount{name="Copy"}}.
+ * Constant labels (e.g. sampler identifier) can be added to all samples: MBean object name keys clashing with
+ * constant label names are prefixed with {@code mbean_}.
+ * </p>
+ * <p>
+ * Numeric and boolean property values are rendered, other values are skipped. Properties which key (or the last dot
+ * separated segment of it) is one of counter keys are monotonic counters: their families are typed as
+ * {@code counter} (see {@link #isCounter(String)}) and samples are suffixed with {@code _total}. All other properties
+ * are gauges.
+ * </p>
+ * <p>
+ * Family names and labels are computed once per MBean and property key and kept in a bounded cache, so rendering a
+ * cycle only appends cached strings and values.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ */
+public class OpenMetricsRenderer {
+	/**
+	 * Default maximum number of MBean label mappings cached by renderer
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+
+	/**
+	 * Default keys of monotonic platform MBean attributes rendered as counters
+	 */
+	public static final String DEFAULT_COUNTERS = "CollectionCount,CollectionTime,TotalLoadedClassCount,UnloadedClassCount,"
+			+ "TotalStartedThreadCount,TotalCompilationTime,ProcessCpuTime";
+
+	private final Map<String, MBeanMapping> mappings;
+	private final String constLabels;
+	private final Set<String> constNames;
+	private final Set<String> counterKeys;
+	private final Set<String> counters = new HashSet<String>();
+
+	/**
+	 * Cached family prefix, labels and family names of a single MBean
+	 */
+	private static class MBeanMapping {
+		final String prefix;
+		final String labels;
+		final Map<String, Family> families = new HashMap<String, Family>();
+
+		MBeanMapping(String prefix, String labels) {
+			this.prefix = prefix;
+			this.labels = labels;
+		}
+	}
+
+	/**
+	 * Cached family and sample names of a single property key
+	 */
+	private static class Family {
+		final String name;
+		final String sample;
+
+		Family(String name, boolean counter) {
+			this.name = name;
+			this.sample = counter ? name + "_total" : name;
+		}
+	}
+
+	/**
+	 * Create new instance of {@code OpenMetricsRenderer} with default mapping cache size.
+	 */
+	public OpenMetricsRenderer() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Create new instance of {@code OpenMetricsRenderer} with a given mapping cache size.
+	 *
+	 * @param cacheSize maximum number of cached MBean mappings
+	 */
+	public OpenMetricsRenderer(int cacheSize) {
+		this(cacheSize, Collections.<String, String> emptyMap(), DEFAULT_COUNTERS);
+	}
+
+	/**
+	 * Create new instance of {@code OpenMetricsRenderer} with a given mapping cache size, constant labels and counter
+	 * keys.
+	 *
+	 * @param cacheSize maximum number of cached MBean mappings
+	 * @param labels constant labels added to all samples
+	 * @param counters comma separated property keys rendered as counters, {@code null} or empty if none
+	 */
+	public OpenMetricsRenderer(int cacheSize, Map<String, String> labels, String counters) {
+		this.mappings = new FormatSupport.LruCache<String, MBeanMapping>(cacheSize);
+		StringBuilder cLabels = new StringBuilder(64);
+		Set<String> cNames = new HashSet<String>();
+		for (Map.Entry<String, String> label : labels.entrySet()) {
+			String name = sanitize(label.getKey());
+			cNames.add(name);
+			cLabels.append(',').append(name).append("=\"");
+			escapeLabel(cLabels, label.getValue()).append('"');
+		}
+		this.constLabels = cLabels.toString();
+		this.constNames = cNames;
+		this.counterKeys = new HashSet<String>();
+		if (counters != null) {
+			for (String key : counters.split(",")) {
+				if (!key.trim().isEmpty()) {
+					counterKeys.add(key.trim());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determine if a given metric family rendered by this renderer is a counter.
+	 *
+	 * @param family metric family name
+	 * @return true if family is a counter, false if it is a gauge
+	 */
+	public synchronized boolean isCounter(String family) {
+		return counters.contains(family);
+	}
+
+	/**
+	 * Render samples of a given set of snapshots grouped by metric family.
+	 *
+	 * @param snapshots MBean snapshots
+	 * @return map of metric family names and family sample lines, in order of first appearance
+	 */
+	public Map<String, StringBuilder> render(Collection<Snapshot> snapshots) {
+		return render(snapshots, new LinkedHashMap<String, StringBuilder>(snapshots.size() * 4));
+	}
+
+	/**
+	 * Render samples of a given set of snapshots appending them to a given map of metric families, so samples of
+	 * snapshots rendered in several calls are grouped by metric family.
+	 *
+	 * @param snapshots MBean snapshots
+	 * @param families map of metric family names and family sample lines to append samples to
+	 * @return map of metric family names and family sample lines, in order of first appearance
+	 */
+	public synchronized Map<String, StringBuilder> render(Collection<Snapshot> snapshots,
+			Map<String, StringBuilder> families) {
+		for (Snapshot snap : snapshots) {
+			MBeanMapping mapping = getMapping(snap.getName());
+			if (mapping == null) {
+				continue;
+			}
+			for (Property p : snap.getSnapshot()) {
+				Object value = p.getValue();
+				if (!(value instanceof Number || value instanceof Boolean)) {
+					continue;
+				}
+				Family family = getFamily(mapping, p.getKey());
+				StringBuilder lines = families.get(family.name);
+				if (lines == null) {
+					lines = new StringBuilder(128);
+					families.put(family.name, lines);
+				}
+				lines.append(family.sample).append(mapping.labels).append(' ');
+				appendValue(lines, value).append('\n');
+			}
+		}
+		return families;
+	}
+
+	private Family getFamily(MBeanMapping mapping, String key) {
+		Family family = mapping.families.get(key);
+		if (family == null) {
+			int dot = key.lastIndexOf('.');
+			boolean counter = counterKeys.contains(key) || (dot >= 0 && counterKeys.contains(key.substring(dot + 1)));
+			family = new Family(mapping.prefix + sanitize(key), counter);
+			mapping.families.put(key, family);
+			if (counter) {
+				counters.add(family.name);
+			}
+		}
+		return family;
+	}
+
+	private MBeanMapping getMapping(String canonicalName) {
+		MBeanMapping mapping = mappings.get(canonicalName);
+		if (mapping == null) {
+			ObjectName oName;
+			try {
+				oName = new ObjectName(canonicalName);
+			} catch (MalformedObjectNameException exc) {
+				return null; // not an MBean snapshot
+			}
+			Map<String, String> keys = new TreeMap<String, String>(oName.getKeyPropertyList());
+			StringBuilder prefix = new StringBuilder(64).append(oName.getDomain()).append('_');
+			String type = keys.remove("type");
+			if (type != null) {
+				prefix.append(type).append('_');
+			}
+			StringBuilder labels = new StringBuilder(64).append(constLabels);
+			for (Map.Entry<String, String> key : keys.entrySet()) {
+				String label = sanitize(key.getKey());
+				labels.append(',').append(constNames.contains(label) ? "mbean_" + label : label).append("=\"");
+				escapeLabel(labels, unquote(key.getValue())).append('"');
+			}
+			if (labels.length() > 0) {
+				labels.setCharAt(0, '{');
+				labels.append('}');
+			}
+			mapping = new MBeanMapping(sanitize(prefix.toString()), labels.toString());
+			mappings.put(canonicalName, mapping);
+		}
+		return mapping;
+	}
+
+	private static String unquote(String value) {
+		if (value.length() > 1 && value.charAt(0) == '"') {
+			try {
+				return ObjectName.unquote(value);
+			} catch (IllegalArgumentException exc) {
+			}
+		}
+		return value;
+	}
+
+	private static StringBuilder escapeLabel(StringBuilder out, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				out.append('\\').append(c);
+			} else if (c == '\n') {
+				out.append("\\n");
+			} else {
+				out.append(c);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Replace characters not allowed in OpenMetrics metric and label names with {@code '_'}.
+	 *
+	 * @param name name to sanitize
+	 * @return sanitized name
+	 */
+	public static String sanitize(String name) {
+		StringBuilder out = new StringBuilder(name.length() + 1);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (i > 0 && c >= '0' && c <= '9');
+			if (i == 0 && c >= '0' && c <= '9') {
+				out.append('_');
+				valid = true;
+			}
+			out.append(valid ? c : '_');
+		}
+		return out.toString();
+	}
+
+	private static StringBuilder appendValue(StringBuilder out, Object value) {
+		if (value instanceof Boolean) {
+			return out.append(((Boolean) value) ? '1' : '0');
+		}
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return out.append(((Number) value).longValue());
+		}
+		double dValue = ((Number) value).doubleValue();
+		if (Double.isNaN(dValue)) {
+			return out.append("NaN");
+		}
+		if (Double.isInfinite(dValue)) {
+			return out.append(dValue > 0 ? "+Inf" : "-Inf");
+		}
+		return out.append(dValue);
+	}
+}
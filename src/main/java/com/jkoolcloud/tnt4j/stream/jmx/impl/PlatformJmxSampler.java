@@ -24,11 +24,16 @@ import javax.management.MBeanServerConnection;
 import com.jkoolcloud.tnt4j.TrackingLogger;
 import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeAction;
 import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeCondition;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.CycleRule;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.RuleAction;
+import com.jkoolcloud.tnt4j.stream.jmx.core.RuleSampler;
 import com.jkoolcloud.tnt4j.stream.jmx.core.SampleContext;
 import com.jkoolcloud.tnt4j.stream.jmx.core.SampleListener;
 import com.jkoolcloud.tnt4j.stream.jmx.core.Sampler;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.RuleScheduler;
 import com.jkoolcloud.tnt4j.stream.jmx.scheduler.Scheduler;
 import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SchedulerImpl;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.WheelSchedulerImpl;
 
 /**
  * <p>
@@ -43,7 +48,9 @@ import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SchedulerImpl;
  * @see Scheduler
  * @see SchedulerImpl
  */
-public class PlatformJmxSampler implements Sampler {
+public class PlatformJmxSampler implements RuleSampler {
+	protected static boolean SHARED_SCHEDULER = Boolean.getBoolean("com.jkoolcloud.tnt4j.stream.jmx.scheduler.shared");
+
 	protected Scheduler sampler;
 	protected MBeanServerConnection targetServer;
 
@@ -114,7 +121,9 @@ public class PlatformJmxSampler implements Sampler {
 	}
 
 	/**
-	 * Create new instance of {@link Scheduler}. Override this call to return your instance of {@link Scheduler}.
+	 * Create new instance of {@link Scheduler}. Override this call to return your instance of {@link Scheduler}. When
+	 * {@code com.jkoolcloud.tnt4j.stream.jmx.scheduler.shared} system property is set to {@code true}, all samplers
+	 * are scheduled on a single shared timing wheel using {@link WheelSchedulerImpl}.
 	 *
 	 * @param mServerConn MBean server connection instance
 	 * @param incfilter MBean include filters semicolon separated
@@ -126,6 +135,9 @@ public class PlatformJmxSampler implements Sampler {
 	 */
 	protected Scheduler newScheduler(MBeanServerConnection mServerConn, String incfilter, String excfilter, long period,
 			TimeUnit tunit) {
+		if (SHARED_SCHEDULER) {
+			return new WheelSchedulerImpl(this.getClass().getName(), mServerConn, incfilter, excfilter, period, tunit);
+		}
 		return new SchedulerImpl(this.getClass().getName(), mServerConn, incfilter, excfilter, period, tunit);
 	}
 
@@ -156,6 +168,18 @@ public class PlatformJmxSampler implements Sampler {
 		return this;
 	}
 
+	@Override
+	public Sampler register(CycleRule rule, RuleAction action) {
+		if (sampler == null) {
+			throw new IllegalStateException("no schedule set: call setSchedule() first");
+		}
+		if (!(sampler instanceof RuleScheduler)) {
+			throw new UnsupportedOperationException("scheduler does not support cycle rules: " + sampler.getClass().getName());
+		}
+		((RuleScheduler) sampler).register(rule, action);
+		return this;
+	}
+
 	@Override
 	public void run() {
 		if (sampler == null) {
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.jfr;
+
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * This interface defines recorder of sampler internal events. Duration events are started using {@code beginXXX()}
+ * calls returning an event handle, which is passed to matching {@code endXXX()} call. When event is not enabled
+ * {@code beginXXX()} returns {@code null} and matching {@code endXXX()} call does nothing, so disabled events cost a
+ * single check and no allocation.
+ * </p>
+ *
+ * @see SampleEvents
+ *
+ * @version $Revision: 1 $
+ */
+public interface SampleEventRecorder {
+	/**
+	 * Begin sample cycle event.
+	 *
+	 * @return event handle, {@code null} if event is not enabled
+	 */
+	Object beginCycle();
+
+	/**
+	 * End sample cycle event.
+	 *
+	 * @param event event handle returned by {@link #beginCycle()}
+	 * @param sampler sampler name
+	 * @param mbeanCount number of sampled MBeans
+	 * @param metricCount number of metrics sampled
+	 * @param errorCount total number of sampling errors
+	 */
+	void endCycle(Object event, String sampler, int mbeanCount, long metricCount, long errorCount);
+
+	/**
+	 * Begin MBean fetch event.
+	 *
+	 * @return event handle, {@code null} if event is not enabled
+	 */
+	Object beginFetch();
+
+	/**
+	 * End MBean fetch event.
+	 *
+	 * @param event event handle returned by {@link #beginFetch()}
+	 * @param name MBean object name
+	 * @param attrCount number of MBean attributes
+	 */
+	void endFetch(Object event, ObjectName name, int attrCount);
+
+	/**
+	 * Begin MBean discovery event.
+	 *
+	 * @return event handle, {@code null} if event is not enabled
+	 */
+	Object beginDiscovery();
+
+	/**
+	 * End MBean discovery event.
+	 *
+	 * @param event event handle returned by {@link #beginDiscovery()}
+	 * @param filter MBean include filter
+	 * @param mbeanCount number of discovered MBeans
+	 */
+	void endDiscovery(Object event, String filter, int mbeanCount);
+
+	/**
+	 * Record condition firing event.
+	 *
+	 * @param condition condition name
+	 * @param action action class name
+	 * @param name MBean object name
+	 * @param attribute attribute name
+	 */
+	void conditionFired(String condition, String action, ObjectName name, String attribute);
+
+	/**
+	 * Record formatter output event.
+	 *
+	 * @param formatter formatter class name
+	 * @param snapshotCount number of formatted snapshots
+	 * @param size formatted output size in characters
+	 */
+	void formatted(String formatter, int snapshotCount, int size);
+}
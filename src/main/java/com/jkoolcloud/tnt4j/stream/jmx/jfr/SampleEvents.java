@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.jfr;
+
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * This class provides access to JVM wide {@link SampleEventRecorder}. When running on java runtime providing JDK
+ * Flight Recorder ({@code jdk.jfr.Event} class is available), JFR based recorder is loaded dynamically. Otherwise or
+ * when disabled using {@code com.jkoolcloud.tnt4j.stream.jmx.jfr.events} system property, {@link #NOOP} recorder is
+ * used.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleEvents {
+	public static final boolean JFR_EVENTS = Boolean
+			.parseBoolean(System.getProperty("com.jkoolcloud.tnt4j.stream.jmx.jfr.events", "true"));
+
+	private static final String JFR_EVENT_CLASS = "jdk.jfr.Event";
+	private static final String JFR_RECORDER_CLASS = "com.jkoolcloud.tnt4j.stream.jmx.jfr.JfrSampleEventRecorder";
+
+	/**
+	 * Recorder ignoring all events.
+	 */
+	public static final SampleEventRecorder NOOP = new SampleEventRecorder() {
+		@Override
+		public Object beginCycle() {
+			return null;
+		}
+
+		@Override
+		public void endCycle(Object event, String sampler, int mbeanCount, long metricCount, long errorCount) {
+		}
+
+		@Override
+		public Object beginFetch() {
+			return null;
+		}
+
+		@Override
+		public void endFetch(Object event, ObjectName name, int attrCount) {
+		}
+
+		@Override
+		public Object beginDiscovery() {
+			return null;
+		}
+
+		@Override
+		public void endDiscovery(Object event, String filter, int mbeanCount) {
+		}
+
+		@Override
+		public void conditionFired(String condition, String action, ObjectName name, String attribute) {
+		}
+
+		@Override
+		public void formatted(String formatter, int snapshotCount, int size) {
+		}
+	};
+
+	private static final SampleEventRecorder RECORDER = loadRecorder();
+
+	private SampleEvents() {
+	}
+
+	private static SampleEventRecorder loadRecorder() {
+		if (!JFR_EVENTS) {
+			return NOOP;
+		}
+		try {
+			Class.forName(JFR_EVENT_CLASS);
+		} catch (Throwable ex) {
+			return NOOP; // runtime has no JFR
+		}
+		try {
+			return (SampleEventRecorder) Class.forName(JFR_RECORDER_CLASS).getDeclaredConstructor().newInstance();
+		} catch (Throwable ex) {
+			return NOOP; // JFR recorder not packaged or JFR not usable
+		}
+	}
+
+	/**
+	 * Obtain JVM wide sample event recorder.
+	 *
+	 * @return sample event recorder, {@link #NOOP} if JFR is not available
+	 */
+	public static SampleEventRecorder recorder() {
+		return RECORDER;
+	}
+
+	/**
+	 * Determine if JFR based recorder is used.
+	 *
+	 * @return true if JFR based recorder is used, false otherwise
+	 */
+	public static boolean isJfrAvailable() {
+		return RECORDER != NOOP;
+	}
+}
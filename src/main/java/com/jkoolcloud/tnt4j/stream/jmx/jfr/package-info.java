@@ -0,0 +1,7 @@
+/**
+ * JDK Flight Recorder events produced by samplers, loaded only on java runtimes providing JFR.
+ * 
+ * @author albert
+ * @version 1.0
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.jfr;
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.*;
+import com.jkoolcloud.tnt4j.stream.jmx.core.SampleContext;
+
+/**
+ * <p>
+ * This class implements asynchronous dispatcher of {@link AttributeAction} and {@link RuleAction} invocations, so
+ * that slow actions (thread dumps, file writes, messaging) do not stall sampling. Fired condition/action pairs are
+ * queued along with a detached copy of attribute sample (see {@link AttributeSample#copy()}) to a bounded executor.
+ * Fired rule/action pairs are queued along with sampling activity, which may be reported concurrently, so rule actions
+ * should only read it. When queue is full, a configured {@link OverflowPolicy} is applied and counted.
+ * </p>
+ * <p>
+ * Dispatcher is enabled by setting {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.action.async=true} system property.
+ * Action worker threads are daemon threads.
+ * </p>
+ *
+ * @see SampleHandlerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class AsyncActionDispatcher implements KeyValueStats {
+	public static String STAT_ACTION_QUEUE_DEPTH = "action.async.queue.depth";
+	public static String STAT_ACTION_SUBMIT_COUNT = "action.async.submit.count";
+	public static String STAT_ACTION_COMPLETE_COUNT = "action.async.complete.count";
+	public static String STAT_ACTION_ERROR_COUNT = "action.async.error.count";
+	public static String STAT_ACTION_DROP_NEWEST_COUNT = "action.async.drop.newest.count";
+	public static String STAT_ACTION_DROP_OLDEST_COUNT = "action.async.drop.oldest.count";
+	public static String STAT_ACTION_CALLER_RUNS_COUNT = "action.async.caller.runs.count";
+
+	public static final boolean ASYNC_ACTIONS = Boolean.getBoolean("com.jkoolcloud.tnt4j.stream.jmx.sampler.action.async");
+	public static final int ACTION_THREADS = Integer.getInteger("com.jkoolcloud.tnt4j.stream.jmx.sampler.action.threads",
+			1);
+	public static final int ACTION_QUEUE_SIZE = Integer
+			.getInteger("com.jkoolcloud.tnt4j.stream.jmx.sampler.action.queue.size", 1000);
+	public static final String ACTION_OVERFLOW = System
+			.getProperty("com.jkoolcloud.tnt4j.stream.jmx.sampler.action.overflow", "drop-newest");
+
+	public static final OverflowPolicy DEFAULT_OVERFLOW = OverflowPolicy.DROP_NEWEST;
+
+	private static final AtomicInteger THREAD_SEQ = new AtomicInteger(0);
+
+	/**
+	 * Policies applied when action queue is full
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Drop newly fired action
+		 */
+		DROP_NEWEST,
+		/**
+		 * Drop the oldest queued action and queue newly fired one
+		 */
+		DROP_OLDEST,
+		/**
+		 * Run newly fired action on the sampling thread
+		 */
+		CALLER_RUNS;
+
+		/**
+		 * Obtain policy for a given name, e.g. {@code drop-oldest}
+		 *
+		 * @param name policy name
+		 * @return policy instance
+		 * @throws IllegalArgumentException if policy name is not supported
+		 */
+		public static OverflowPolicy parse(String name) {
+			try {
+				return valueOf(name.trim().toUpperCase().replace('-', '_'));
+			} catch (IllegalArgumentException ex) {
+				throw new IllegalArgumentException("Unsupported action overflow policy: " + name, ex);
+			}
+		}
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final OverflowPolicy policy;
+
+	private final AtomicLong submitCount = new AtomicLong();
+	private final AtomicLong completeCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong dropNewestCount = new AtomicLong();
+	private final AtomicLong dropOldestCount = new AtomicLong();
+	private final AtomicLong callerRunsCount = new AtomicLong();
+
+	/**
+	 * Create new instance of {@code AsyncActionDispatcher} configured by system properties.
+	 */
+	public AsyncActionDispatcher() {
+		this(ACTION_THREADS, ACTION_QUEUE_SIZE, OverflowPolicy.parse(ACTION_OVERFLOW));
+	}
+
+	/**
+	 * Create new instance of {@code AsyncActionDispatcher}.
+	 *
+	 * @param threads number of action worker threads
+	 * @param queueSize maximum number of queued actions
+	 * @param policy policy applied when queue is full
+	 */
+	public AsyncActionDispatcher(int threads, int queueSize, OverflowPolicy policy) {
+		this.policy = policy;
+		int nThreads = Math.max(1, threads);
+		executor = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "stream-jmx-action-" + THREAD_SEQ.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new OverflowHandler());
+	}
+
+	/**
+	 * Determine if asynchronous action dispatching is enabled using system properties.
+	 *
+	 * @return true if enabled, false otherwise
+	 */
+	public static boolean isEnabled() {
+		return ASYNC_ACTIONS;
+	}
+
+	/**
+	 * Queue action invocation for a fired condition. Sample is copied before queuing.
+	 *
+	 * @param context sample context
+	 * @param cond condition that fired
+	 * @param action action to invoke
+	 * @param sample attribute sample that fired condition
+	 */
+	public void dispatch(SampleContext context, AttributeCondition cond, AttributeAction action,
+			AttributeSample sample) {
+		submitCount.incrementAndGet();
+		executor.execute(new ActionTask(context, cond, action, sample.copy()));
+	}
+
+	/**
+	 * Queue action invocation for a fired cycle rule.
+	 *
+	 * @param context sample context
+	 * @param rule rule that fired
+	 * @param action action to invoke
+	 * @param activity sampling activity rule was evaluated for
+	 */
+	public void dispatch(SampleContext context, CycleRule rule, RuleAction action, Activity activity) {
+		submitCount.incrementAndGet();
+		executor.execute(new RuleTask(context, rule, action, activity));
+	}
+
+	/**
+	 * Stop accepting actions and wait for queued actions to complete.
+	 *
+	 * @param timeout maximum time to wait
+	 * @param unit time unit of timeout
+	 */
+	public void shutdown(long timeout, TimeUnit unit) {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(timeout, unit);
+		} catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public KeyValueStats getStats(Map<String, Object> stats) {
+		stats.put(STAT_ACTION_QUEUE_DEPTH, executor.getQueue().size());
+		stats.put(STAT_ACTION_SUBMIT_COUNT, submitCount.get());
+		stats.put(STAT_ACTION_COMPLETE_COUNT, completeCount.get());
+		stats.put(STAT_ACTION_ERROR_COUNT, errorCount.get());
+		stats.put(STAT_ACTION_DROP_NEWEST_COUNT, dropNewestCount.get());
+		stats.put(STAT_ACTION_DROP_OLDEST_COUNT, dropOldestCount.get());
+		stats.put(STAT_ACTION_CALLER_RUNS_COUNT, callerRunsCount.get());
+		return this;
+	}
+
+	@Override
+	public void resetStats() {
+		submitCount.set(0);
+		completeCount.set(0);
+		errorCount.set(0);
+		dropNewestCount.set(0);
+		dropOldestCount.set(0);
+		callerRunsCount.set(0);
+	}
+
+	/**
+	 * Report action failure to sample listeners of sample handler the action was dispatched by.
+	 *
+	 * @param context sample context action was invoked with
+	 * @param ex exception thrown by action
+	 */
+	private static void doError(SampleContext context, Throwable ex) {
+		if (context instanceof SampleContextImpl) {
+			((SampleContextImpl) context).handle.doError(ex);
+		} else {
+			ex.printStackTrace();
+		}
+	}
+
+	private class ActionTask implements Runnable {
+		private final SampleContext context;
+		private final AttributeCondition cond;
+		private final AttributeAction action;
+		private final AttributeSample sample;
+
+		ActionTask(SampleContext context, AttributeCondition cond, AttributeAction action, AttributeSample sample) {
+			this.context = context;
+			this.cond = cond;
+			this.action = action;
+			this.sample = sample;
+		}
+
+		@Override
+		public void run() {
+			try {
+				action.action(context, cond, sample);
+			} catch (Throwable ex) {
+				errorCount.incrementAndGet();
+				doError(context, ex);
+			} finally {
+				completeCount.incrementAndGet();
+			}
+		}
+	}
+
+	private class RuleTask implements Runnable {
+		private final SampleContext context;
+		private final CycleRule rule;
+		private final RuleAction action;
+		private final Activity activity;
+
+		RuleTask(SampleContext context, CycleRule rule, RuleAction action, Activity activity) {
+			this.context = context;
+			this.rule = rule;
+			this.action = action;
+			this.activity = activity;
+		}
+
+		@Override
+		public void run() {
+			try {
+				action.action(context, rule, activity);
+			} catch (Throwable ex) {
+				errorCount.incrementAndGet();
+				doError(context, ex);
+			} finally {
+				completeCount.incrementAndGet();
+			}
+		}
+	}
+
+	private class OverflowHandler implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor exec) {
+			if (exec.isShutdown()) {
+				dropNewestCount.incrementAndGet();
+				return;
+			}
+			switch (policy) {
+			case DROP_OLDEST:
+				if (exec.getQueue().poll() != null) {
+					dropOldestCount.incrementAndGet();
+				}
+				if (!exec.getQueue().offer(r)) {
+					dropNewestCount.incrementAndGet();
+				}
+				break;
+			case CALLER_RUNS:
+				callerRunsCount.incrementAndGet();
+				r.run();
+				break;
+			default:
+				dropNewestCount.incrementAndGet();
+				break;
+			}
+		}
+	}
+}
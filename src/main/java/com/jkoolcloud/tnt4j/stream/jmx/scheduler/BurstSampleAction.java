@@ -0,0 +1,324 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeAction;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeCondition;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeSample;
+import com.jkoolcloud.tnt4j.stream.jmx.core.SampleContext;
+import com.jkoolcloud.tnt4j.stream.jmx.core.SampleListener;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming.Phase;
+import com.jkoolcloud.tnt4j.tracker.Tracker;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+
+/**
+ * <p>
+ * This class implements an action which starts a burst of high resolution sampling of related MBeans when a condition
+ * fires, e.g. sample memory pools and garbage collectors every 250 ms for 60 s when heap usage exceeds 90%. Burst runs
+ * as a temporary task on JVM wide shared {@link HashedWheelScheduler}, sampling MBeans matching burst filter
+ * (optionally restricted to a subset of attributes) using a copy of listeners of the sampler which fired the
+ * condition. Burst activities named {@code <sampler name>-burst} are reported by the tracker of the sampler which fired
+ * the condition, through its staged pipeline when enabled. Burst is stopped automatically after configured duration.
+ * </p>
+ * <p>
+ * Only one burst per action instance runs at a time: firings during active burst are ignored. Number of bursts
+ * running concurrently across all actions is capped by
+ * {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.burst.max.concurrent} system property, so runaway conditions can't
+ * overload sampled MBean server.
+ * </p>
+ *
+ * @see HashedWheelScheduler
+ * @see SampleHandlerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class BurstSampleAction implements AttributeAction {
+	public static final int MAX_CONCURRENT_BURSTS = Integer
+			.getInteger("com.jkoolcloud.tnt4j.stream.jmx.sampler.burst.max.concurrent", 2);
+	public static final String BURST_SUFFIX = "-burst";
+
+	private static final AtomicInteger ACTIVE_BURSTS = new AtomicInteger(0);
+	private static final AtomicLong STARTED_BURSTS = new AtomicLong(0);
+	private static final AtomicLong REJECTED_BURSTS = new AtomicLong(0);
+
+	private final String incFilter;
+	private final Set<String> attrNames;
+	private final long periodMs;
+	private final long durationMs;
+	private BurstTask burst;
+
+	/**
+	 * Create burst action sampling all attributes of MBeans matching a given filter.
+	 *
+	 * @param incFilter MBean include filters semicolon separated
+	 * @param periodMs burst sampling period in milliseconds
+	 * @param durationMs burst duration in milliseconds
+	 */
+	public BurstSampleAction(String incFilter, long periodMs, long durationMs) {
+		this(incFilter, null, periodMs, durationMs);
+	}
+
+	/**
+	 * Create burst action sampling given attributes of MBeans matching a given filter.
+	 *
+	 * @param incFilter MBean include filters semicolon separated
+	 * @param attrNames names of attributes to sample, {@code null} or empty to sample all attributes
+	 * @param periodMs burst sampling period in milliseconds
+	 * @param durationMs burst duration in milliseconds
+	 */
+	public BurstSampleAction(String incFilter, Collection<String> attrNames, long periodMs, long durationMs) {
+		this.incFilter = incFilter;
+		this.attrNames = (attrNames == null || attrNames.isEmpty()) ? null
+				: Collections.unmodifiableSet(new HashSet<String>(attrNames));
+		this.periodMs = periodMs;
+		this.durationMs = durationMs;
+	}
+
+	@Override
+	public synchronized Object action(SampleContext context, AttributeCondition cond, AttributeSample sample) {
+		if (burst != null) {
+			return null; // burst already running
+		}
+		if (!(context instanceof SampleContextImpl)) {
+			return null; // burst shares resources of sample handler implementation
+		}
+		SampleHandlerImpl parent = ((SampleContextImpl) context).handle;
+		Activity activity = sample.getActivity();
+		if (!(activity instanceof TrackingActivity) || ((TrackingActivity) activity).getTracker() == null) {
+			parent.doError(new IllegalStateException("Burst not started: sampling activity has no tracker"));
+			return null;
+		}
+		if (ACTIVE_BURSTS.incrementAndGet() > MAX_CONCURRENT_BURSTS) {
+			ACTIVE_BURSTS.decrementAndGet();
+			REJECTED_BURSTS.incrementAndGet();
+			return null;
+		}
+		SampleHandlerImpl handler = new SampleHandlerImpl(parent, incFilter);
+		// attribute values are added to snapshots by listeners, attribute filter must run last to keep exclusions
+		if (attrNames != null) {
+			handler.addListener(new AttributeFilter(attrNames));
+		}
+		TrackingActivity fired = (TrackingActivity) activity;
+		burst = new BurstTask(fired.getTracker(), fired.getSeverity(), fired.getName() + BURST_SUFFIX, parent, handler);
+		try {
+			burst.task = HashedWheelScheduler.getInstance().schedule(burst.name, burst, periodMs,
+					TimeUnit.MILLISECONDS);
+		} catch (Throwable ex) {
+			burst = null;
+			ACTIVE_BURSTS.decrementAndGet();
+			parent.doError(ex);
+			return null;
+		}
+		STARTED_BURSTS.incrementAndGet();
+		return burst.task;
+	}
+
+	/**
+	 * Stop running burst, if any.
+	 */
+	public void stop() {
+		stop(null);
+	}
+
+	/**
+	 * Stop a given running burst, or any running burst if {@code null}. Waits for burst sample in progress to complete.
+	 *
+	 * @param task burst task to stop, {@code null} to stop any running burst
+	 */
+	private synchronized void stop(BurstTask task) {
+		if (burst != null && (task == null || task == burst)) {
+			try {
+				burst.close();
+			} finally {
+				burst = null;
+				ACTIVE_BURSTS.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Determine if burst started by this action is running.
+	 *
+	 * @return true if burst is running, false otherwise
+	 */
+	public synchronized boolean isActive() {
+		return burst != null;
+	}
+
+	/**
+	 * Obtain number of bursts currently running across all burst actions.
+	 *
+	 * @return number of running bursts
+	 */
+	public static int getActiveBurstCount() {
+		return ACTIVE_BURSTS.get();
+	}
+
+	/**
+	 * Obtain number of bursts started across all burst actions.
+	 *
+	 * @return number of started bursts
+	 */
+	public static long getStartedBurstCount() {
+		return STARTED_BURSTS.get();
+	}
+
+	/**
+	 * Obtain number of bursts rejected because of concurrent bursts cap across all burst actions.
+	 *
+	 * @return number of rejected bursts
+	 */
+	public static long getRejectedBurstCount() {
+		return REJECTED_BURSTS.get();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "{filter=" + incFilter + ", attributes=" + attrNames + ", period="
+				+ periodMs + ", duration=" + durationMs + "}";
+	}
+
+	/**
+	 * Burst sampling task run by timing wheel: every run samples burst MBeans within a new activity created by the
+	 * tracker of the sampler which fired the condition. Task stops the burst when burst duration elapses.
+	 */
+	private class BurstTask implements Runnable {
+		private final Tracker tracker;
+		private final OpLevel level;
+		private final String name;
+		private final SampleHandlerImpl parent;
+		private final SampleHandlerImpl handler;
+		private final long deadline;
+		private volatile HashedWheelScheduler.WheelTask task;
+		private boolean closed = false;
+
+		BurstTask(Tracker tracker, OpLevel level, String name, SampleHandlerImpl parent, SampleHandlerImpl handler) {
+			this.tracker = tracker;
+			this.level = level;
+			this.name = name;
+			this.parent = parent;
+			this.handler = handler;
+			this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMs);
+		}
+
+		@Override
+		public void run() {
+			if (System.nanoTime() - deadline >= 0) {
+				stop(this);
+				return;
+			}
+			synchronized (this) {
+				if (!closed) {
+					sample();
+				}
+			}
+		}
+
+		private void sample() {
+			try {
+				TrackingActivity activity = tracker.newActivity(level, name);
+				activity.removeActivityListener(parent); // tracker attaches sampler handler to every activity
+				activity.addActivityListener(handler);
+				activity.start();
+				activity.stop();
+				if (activity.isNoop()) {
+					return;
+				}
+				SamplePipeline pipeline = handler.getPipeline();
+				if (pipeline != null) {
+					pipeline.submit(tracker, activity, false);
+				} else {
+					handler.getTiming().report(tracker, activity);
+					handler.getTiming().complete(Phase.FORMAT, Phase.SINK);
+				}
+			} catch (Throwable ex) {
+				handler.doError(ex);
+			}
+		}
+
+		/**
+		 * Cancel burst task, wait for sample in progress to complete and release burst handler resources.
+		 */
+		void close() {
+			if (task != null) {
+				task.cancel();
+			}
+			synchronized (this) {
+				closed = true;
+			}
+			handler.close(periodMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Sample listener excluding attributes not included into burst attribute subset.
+	 */
+	private static class AttributeFilter implements SampleListener {
+		private final Set<String> attrNames;
+
+		AttributeFilter(Set<String> attrNames) {
+			this.attrNames = attrNames;
+		}
+
+		@Override
+		public void pre(SampleContext context, AttributeSample sample) {
+			if (!attrNames.contains(sample.getAttributeInfo().getName())) {
+				sample.excludeNext(true);
+			}
+		}
+
+		@Override
+		public void register(SampleContext context, ObjectName oname) {
+		}
+
+		@Override
+		public void unregister(SampleContext context, ObjectName oname) {
+		}
+
+		@Override
+		public void post(SampleContext context, AttributeSample sample) {
+		}
+
+		@Override
+		public void error(SampleContext context, AttributeSample sample) {
+		}
+
+		@Override
+		public void error(SampleContext context, Throwable ex) {
+		}
+
+		@Override
+		public void pre(SampleContext context, Activity activity) {
+		}
+
+		@Override
+		public void post(SampleContext context, Activity activity) {
+		}
+
+		@Override
+		public void getStats(SampleContext context, Map<String, Object> stats) {
+		}
+	}
+}
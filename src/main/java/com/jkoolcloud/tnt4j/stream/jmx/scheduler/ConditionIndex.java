@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeAction;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeCondition;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.ScopedCondition;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.StatefulCondition;
+
+/**
+ * <p>
+ * This class indexes registered condition/action pairs by MBean object name and attribute name, so every sampled
+ * attribute evaluates only conditions relevant to it. Conditions implementing {@link ScopedCondition} are matched
+ * using declared object name (pattern) and attribute name, all other conditions are evaluated for every attribute.
+ * Matching conditions are resolved once per MBean and cached until conditions change or MBean is unregistered.
+ * Registration order of conditions is preserved.
+ * </p>
+ *
+ * @see SampleHandlerImpl
+ * @see ScopedCondition
+ *
+ * @version $Revision: 1 $
+ */
+public class ConditionIndex {
+	private static final Entry[] NO_ENTRIES = new Entry[0];
+	private static final MBeanConditions NO_CONDITIONS = new MBeanConditions(NO_ENTRIES,
+			Collections.<String, Entry[]> emptyMap());
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+	private final ConcurrentHashMap<ObjectName, MBeanConditions> resolved = new ConcurrentHashMap<ObjectName, MBeanConditions>(89);
+
+	/**
+	 * Condition/action pair registered within index.
+	 */
+	public static class Entry {
+		private final AttributeCondition condition;
+		private final AttributeAction action;
+
+		Entry(AttributeCondition condition, AttributeAction action) {
+			this.condition = condition;
+			this.action = action;
+		}
+
+		/**
+		 * Registered condition
+		 *
+		 * @return condition instance
+		 */
+		public AttributeCondition getCondition() {
+			return condition;
+		}
+
+		/**
+		 * Action associated with condition
+		 *
+		 * @return action instance
+		 */
+		public AttributeAction getAction() {
+			return action;
+		}
+	}
+
+	/**
+	 * Conditions resolved for a single MBean.
+	 */
+	private static class MBeanConditions {
+		private final Entry[] anyAttr;
+		private final Map<String, Entry[]> byAttr;
+
+		MBeanConditions(Entry[] anyAttr, Map<String, Entry[]> byAttr) {
+			this.anyAttr = anyAttr;
+			this.byAttr = byAttr;
+		}
+
+		Entry[] get(String attrName) {
+			Entry[] attrEntries = byAttr.get(attrName);
+			return attrEntries == null ? anyAttr : attrEntries;
+		}
+	}
+
+	/**
+	 * Register condition/action pair. Registering already registered condition replaces its action.
+	 *
+	 * @param cond condition instance
+	 * @param action action instance
+	 */
+	public synchronized void put(AttributeCondition cond, AttributeAction action) {
+		Entry entry = new Entry(cond, action);
+		int idx = indexOf(cond);
+		if (idx >= 0) {
+			entries.set(idx, entry);
+		} else {
+			entries.add(entry);
+		}
+		resolved.clear();
+	}
+
+	/**
+	 * Unregister condition.
+	 *
+	 * @param cond condition instance
+	 */
+	public synchronized void remove(AttributeCondition cond) {
+		int idx = indexOf(cond);
+		if (idx >= 0) {
+			entries.remove(idx);
+			resolved.clear();
+		}
+	}
+
+	/**
+	 * Drop conditions resolved for a given MBean and condition state maintained for it, e.g. when MBean is
+	 * unregistered.
+	 *
+	 * @param name MBean object name
+	 */
+	public void remove(ObjectName name) {
+		resolved.remove(name);
+		for (Entry entry : entries()) {
+			if (entry.condition instanceof StatefulCondition) {
+				((StatefulCondition) entry.condition).reset(name);
+			}
+		}
+	}
+
+	private synchronized Entry[] entries() {
+		return entries.toArray(new Entry[entries.size()]);
+	}
+
+	/**
+	 * Obtain number of registered conditions.
+	 *
+	 * @return number of registered conditions
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Obtain conditions relevant to a given MBean attribute.
+	 *
+	 * @param name MBean object name
+	 * @param attrName attribute name
+	 * @return array of relevant condition/action pairs in registration order, never {@code null}
+	 */
+	public Entry[] get(ObjectName name, String attrName) {
+		MBeanConditions mConditions = resolved.get(name);
+		if (mConditions == null) {
+			mConditions = resolve(name);
+		}
+		return mConditions.get(attrName);
+	}
+
+	private int indexOf(AttributeCondition cond) {
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i).condition.equals(cond)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private synchronized MBeanConditions resolve(ObjectName name) {
+		List<Entry> applicable = new ArrayList<Entry>();
+		Set<String> attrNames = new LinkedHashSet<String>();
+		for (Entry entry : entries) {
+			if (entry.condition instanceof ScopedCondition) {
+				ScopedCondition sCond = (ScopedCondition) entry.condition;
+				ObjectName cName = sCond.getObjectName();
+				if (cName != null && !cName.apply(name)) {
+					continue;
+				}
+				if (sCond.getAttributeName() != null) {
+					attrNames.add(sCond.getAttributeName());
+				}
+			}
+			applicable.add(entry);
+		}
+
+		MBeanConditions mConditions = NO_CONDITIONS;
+		if (!applicable.isEmpty()) {
+			Map<String, Entry[]> byAttr = new HashMap<String, Entry[]>(attrNames.size() * 2);
+			for (String attrName : attrNames) {
+				byAttr.put(attrName, filter(applicable, attrName));
+			}
+			mConditions = new MBeanConditions(filter(applicable, null), byAttr);
+		}
+		resolved.put(name, mConditions);
+		return mConditions;
+	}
+
+	private static Entry[] filter(List<Entry> applicable, String attrName) {
+		List<Entry> filtered = new ArrayList<Entry>(applicable.size());
+		for (Entry entry : applicable) {
+			String cAttr = entry.condition instanceof ScopedCondition
+					? ((ScopedCondition) entry.condition).getAttributeName() : null;
+			if (cAttr == null || cAttr.equals(attrName)) {
+				filtered.add(entry);
+			}
+		}
+		return filtered.isEmpty() ? NO_ENTRIES : filtered.toArray(new Entry[filtered.size()]);
+	}
+}
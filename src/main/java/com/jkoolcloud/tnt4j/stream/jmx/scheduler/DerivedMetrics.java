@@ -0,0 +1,378 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeSample;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeVariable;
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class computes derived metrics from consecutive samples of monotonic counters (e.g. {@code CollectionCount},
+ * {@code CollectionTime}, {@code TotalStartedThreadCount}) and adds them as extra properties into the same MBean
+ * {@link PropertySnapshot}. Supported functions are defined by {@link Function}. Derived property is named after
+ * attribute property with function suffix, e.g. {@code CollectionCount.rate} or {@code Usage\max.delta}.
+ * </p>
+ * <p>
+ * Previous counter values are kept in primitive arrays indexed by metric id (MBean object name, attribute path and
+ * function). Metric is not reported on first sample, after MBean is re-registered and when counter decreases (counter
+ * reset), in which case sampled value becomes new base value. Slots of unregistered MBeans are released and reused, so
+ * MBeans re-registered under new names (per instance ids, pools, connections) do not accumulate state.
+ * </p>
+ * <p>
+ * Derived metrics are defined programmatically or using
+ * {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.derived} system property: semicolon separated list of
+ * {@code function:attribute@objectName} definitions, e.g.
+ * {@code rate:CollectionCount@java.lang:type=GarbageCollector,*;pct:CollectionTime@java.lang:type=GarbageCollector,*}.
+ * </p>
+ *
+ * @see SampleHandlerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class DerivedMetrics implements KeyValueStats {
+	public static String STAT_DERIVED_DEFINITION_COUNT = "derived.definition.count";
+	public static String STAT_DERIVED_METRIC_COUNT = "derived.metric.count";
+	public static String STAT_DERIVED_RESET_COUNT = "derived.counter.reset.count";
+	public static String STAT_DERIVED_SLOT_COUNT = "derived.slot.count";
+
+	public static final String DERIVED_METRICS = System.getProperty("com.jkoolcloud.tnt4j.stream.jmx.sampler.derived");
+
+	private static final Binding[] NO_BINDINGS = new Binding[0];
+
+	/**
+	 * Derived metric functions
+	 */
+	public enum Function {
+		/**
+		 * Change of counter per second since previous sample
+		 */
+		RATE("rate"),
+		/**
+		 * Change of counter since previous sample
+		 */
+		DELTA("delta"),
+		/**
+		 * Percentage of elapsed time since previous sample accumulated by a time counter in milliseconds, e.g. time
+		 * spent in garbage collection
+		 */
+		PCT("pct");
+
+		private final String suffix;
+
+		private Function(String suffix) {
+			this.suffix = suffix;
+		}
+
+		/**
+		 * Suffix of derived property name
+		 *
+		 * @return derived property name suffix
+		 */
+		public String getSuffix() {
+			return suffix;
+		}
+
+		/**
+		 * Obtain function for a given name (case insensitive)
+		 *
+		 * @param name function name
+		 * @return function instance
+		 * @throws IllegalArgumentException if function is not supported
+		 */
+		public static Function parse(String name) {
+			try {
+				return valueOf(name.trim().toUpperCase());
+			} catch (IllegalArgumentException ex) {
+				throw new IllegalArgumentException("Unsupported derived metric function: " + name, ex);
+			}
+		}
+	}
+
+	/**
+	 * Derived metric definition
+	 */
+	private static class Definition {
+		final ObjectName objectName;
+		final AttributeVariable variable;
+		final Function function;
+		final String propName;
+
+		Definition(ObjectName objectName, String attrPath, Function function) {
+			this.objectName = objectName;
+			this.variable = new AttributeVariable(attrPath);
+			this.function = function;
+			this.propName = attrPath.replace('.', '\\') + "." + function.getSuffix();
+		}
+	}
+
+	/**
+	 * Derived metric definition bound to a single MBean and its state slot
+	 */
+	private static class Binding {
+		final Definition definition;
+		final int slot;
+		boolean released;
+
+		Binding(Definition definition, int slot) {
+			this.definition = definition;
+			this.slot = slot;
+		}
+	}
+
+	private final List<Definition> definitions = new ArrayList<Definition>();
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+	private final ConcurrentHashMap<ObjectName, Map<String, Binding[]>> resolved = new ConcurrentHashMap<ObjectName, Map<String, Binding[]>>(89);
+
+	private double[] prev = new double[16];
+	private long[] prevTime = new long[16];
+	private int[] freeSlots = new int[16];
+	private int freeCount = 0, slotCount = 0;
+	private long metricCount = 0, resetCount = 0;
+	private volatile boolean defined = false;
+
+	/**
+	 * Create new instance of {@code DerivedMetrics} with no definitions.
+	 *
+	 * @see #addAll(String)
+	 */
+	public DerivedMetrics() {
+	}
+
+	/**
+	 * Determine if derived metrics are defined using {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.derived} system
+	 * property.
+	 *
+	 * @return true if derived metrics property is set, false otherwise
+	 */
+	public static boolean isConfigured() {
+		return !Utils.isEmpty(DERIVED_METRICS);
+	}
+
+	/**
+	 * Add derived metric definitions given as semicolon separated list of {@code function:attribute@objectName}.
+	 * Malformed definitions are skipped, so remaining valid definitions are still added.
+	 *
+	 * @param definitions semicolon separated derived metric definitions
+	 * @return list of errors of skipped malformed definitions, empty if all definitions were added
+	 */
+	public List<IllegalArgumentException> addAll(String definitions) {
+		List<IllegalArgumentException> errors = new ArrayList<IllegalArgumentException>(1);
+		StringTokenizer tk = new StringTokenizer(definitions, ";");
+		while (tk.hasMoreTokens()) {
+			String def = tk.nextToken().trim();
+			int fIdx = def.indexOf(':');
+			int oIdx = def.indexOf('@');
+			try {
+				if (fIdx <= 0 || oIdx <= fIdx + 1) {
+					throw new IllegalArgumentException("Malformed derived metric definition: " + def);
+				}
+				add(def.substring(0, fIdx), def.substring(oIdx + 1), def.substring(fIdx + 1, oIdx));
+			} catch (IllegalArgumentException ex) {
+				errors.add(ex);
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Add derived metric definition.
+	 *
+	 * @param function function name: {@code rate}, {@code delta} or {@code pct}
+	 * @param objName canonical MBean object name or object name pattern
+	 * @param attrPath attribute name, optionally followed by dot separated {@code CompositeData} item path
+	 * @throws IllegalArgumentException if object name is malformed or function is not supported
+	 */
+	public synchronized void add(String function, String objName, String attrPath) {
+		try {
+			definitions.add(new Definition(new ObjectName(objName), attrPath, Function.parse(function)));
+		} catch (MalformedObjectNameException ex) {
+			throw new IllegalArgumentException("Malformed object name: " + objName, ex);
+		}
+		resolved.clear();
+		defined = true;
+	}
+
+	/**
+	 * Obtain number of derived metric definitions.
+	 *
+	 * @return number of definitions
+	 */
+	public synchronized int size() {
+		return definitions.size();
+	}
+
+	/**
+	 * Compute derived metrics of a given sampled attribute and add them into sample snapshot.
+	 *
+	 * @param sample MBean attribute sample
+	 */
+	public void update(AttributeSample sample) {
+		if (!defined) {
+			return;
+		}
+		Map<String, Binding[]> mBindings = resolved.get(sample.getObjetName());
+		if (mBindings == null) {
+			mBindings = resolve(sample.getObjetName());
+		}
+		Binding[] bindings = mBindings.get(sample.getAttributeInfo().getName());
+		if (bindings == null) {
+			return;
+		}
+		long timeStamp = sample.getTimeStampUsec() > 0 ? sample.getTimeStampUsec() : Utils.currentTimeUsec();
+		synchronized (this) {
+			for (Binding binding : bindings) {
+				if (binding.released) {
+					continue; // MBean unregistered while sampled
+				}
+				double value = binding.definition.variable.read(sample.get());
+				if (Double.isNaN(value)) {
+					continue;
+				}
+				double derived = derive(binding, value, timeStamp);
+				if (!Double.isNaN(derived)) {
+					metricCount++;
+					sample.getSnapshot().add(binding.definition.propName, derived);
+				}
+			}
+		}
+	}
+
+	private double derive(Binding binding, double value, long timeStamp) {
+		int slot = binding.slot;
+		double change = value - prev[slot];
+		long elapsed = timeStamp - prevTime[slot];
+		boolean first = prevTime[slot] == 0;
+		prev[slot] = value;
+		prevTime[slot] = timeStamp;
+		if (first || elapsed <= 0) {
+			return Double.NaN;
+		}
+		if (change < 0) {
+			resetCount++;
+			return Double.NaN;
+		}
+		switch (binding.definition.function) {
+		case RATE:
+			return change * 1000000.0 / elapsed;
+		case PCT:
+			return change * 1000.0 * 100.0 / elapsed;
+		default:
+			return change;
+		}
+	}
+
+	private synchronized Map<String, Binding[]> resolve(ObjectName name) {
+		Map<String, List<Binding>> lists = new HashMap<String, List<Binding>>();
+		for (Definition def : definitions) {
+			if (!def.objectName.apply(name)) {
+				continue;
+			}
+			String attrName = def.variable.getAttributeName();
+			List<Binding> list = lists.get(attrName);
+			if (list == null) {
+				list = new ArrayList<Binding>();
+				lists.put(attrName, list);
+			}
+			list.add(new Binding(def, slot(name.getCanonicalName() + "\\" + def.propName)));
+		}
+		Map<String, Binding[]> mBindings = new HashMap<String, Binding[]>(lists.size() * 2);
+		for (Map.Entry<String, List<Binding>> entry : lists.entrySet()) {
+			mBindings.put(entry.getKey(), entry.getValue().toArray(NO_BINDINGS));
+		}
+		resolved.put(name, mBindings);
+		return mBindings;
+	}
+
+	private int slot(String metricId) {
+		Integer slot = slots.get(metricId);
+		if (slot == null) {
+			if (freeCount > 0) {
+				slot = freeSlots[--freeCount];
+			} else {
+				slot = slotCount++;
+				if (slot >= prev.length) {
+					prev = Arrays.copyOf(prev, prev.length * 2);
+					prevTime = Arrays.copyOf(prevTime, prevTime.length * 2);
+				}
+			}
+			prevTime[slot] = 0;
+			slots.put(metricId, slot);
+		}
+		return slot;
+	}
+
+	private void release(int slot) {
+		if (freeCount >= freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+		}
+		freeSlots[freeCount++] = slot;
+	}
+
+	/**
+	 * Drop previous values of metrics derived for a given MBean, e.g. when MBean is unregistered, so that re-registered
+	 * MBean counters start from new base values. State slots of MBean metrics are released for reuse.
+	 *
+	 * @param name MBean object name
+	 */
+	public synchronized void reset(ObjectName name) {
+		Map<String, Binding[]> mBindings = resolved.remove(name);
+		if (mBindings != null) {
+			for (Binding[] bindings : mBindings.values()) {
+				for (Binding binding : bindings) {
+					binding.released = true;
+				}
+			}
+		}
+		for (Definition def : definitions) {
+			Integer slot = def.objectName.apply(name) ? slots.remove(name.getCanonicalName() + "\\" + def.propName)
+					: null;
+			if (slot != null) {
+				release(slot);
+			}
+		}
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public synchronized KeyValueStats getStats(Map<String, Object> stats) {
+		stats.put(STAT_DERIVED_DEFINITION_COUNT, definitions.size());
+		stats.put(STAT_DERIVED_METRIC_COUNT, metricCount);
+		stats.put(STAT_DERIVED_RESET_COUNT, resetCount);
+		stats.put(STAT_DERIVED_SLOT_COUNT, slots.size());
+		return this;
+	}
+
+	@Override
+	public synchronized void resetStats() {
+		metricCount = 0;
+		resetCount = 0;
+	}
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+
+/**
+ * <p>
+ * This class provides a single hashed timing wheel shared by all samplers within a JVM. A single wheel thread advances
+ * the wheel every tick and dispatches due sample tasks onto a bounded pool of worker threads. Each registered task has
+ * at most one dispatch queued or running at any time, so a slow sampler skips its overdue ticks instead of occupying
+ * more workers and starving other samplers. Worker threads are virtual threads when enabled and supported by the
+ * runtime (see {@link SampleExecutors}).
+ * </p>
+ *
+ * @see WheelSchedulerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class HashedWheelScheduler implements KeyValueStats {
+	public static String STAT_WHEEL_TASK_COUNT = "wheel.task.count";
+	public static String STAT_WHEEL_WORKER_COUNT = "wheel.worker.count";
+	public static String STAT_WHEEL_ACTIVE_COUNT = "wheel.active.count";
+	public static String STAT_WHEEL_QUEUE_DEPTH = "wheel.queue.depth";
+	public static String STAT_WHEEL_DISPATCH_COUNT = "wheel.dispatch.count";
+	public static String STAT_WHEEL_SKIP_COUNT = "wheel.skip.count";
+	public static String STAT_WHEEL_LATE_LAST_USEC = "wheel.late.last.usec";
+	public static String STAT_WHEEL_LATE_MAX_USEC = "wheel.late.max.usec";
+	public static String STAT_WHEEL_LATE_AVG_USEC = "wheel.late.avg.usec";
+	public static String STAT_WHEEL_VIRTUAL = "wheel.virtual.threads";
+
+	public static final long DEFAULT_TICK_MS = Long.getLong("com.jkoolcloud.tnt4j.stream.jmx.scheduler.wheel.tick.ms", 100);
+	public static final int DEFAULT_WHEEL_SIZE = Integer.getInteger("com.jkoolcloud.tnt4j.stream.jmx.scheduler.wheel.size", 512);
+	public static final int DEFAULT_WORKERS = Integer.getInteger("com.jkoolcloud.tnt4j.stream.jmx.scheduler.wheel.workers",
+			SampleExecutors.isVirtualThreadEnabled() ? 256 : Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+	private static HashedWheelScheduler defaultScheduler;
+
+	private final long tickNanos;
+	private final int mask;
+	private final ArrayList<WheelTask>[] wheel;
+	private final ConcurrentLinkedQueue<WheelTask> newTasks = new ConcurrentLinkedQueue<WheelTask>();
+	private final ThreadPoolExecutor workers;
+	private final boolean virtualWorkers;
+	private final AtomicInteger taskCount = new AtomicInteger(0);
+	private final AtomicBoolean started = new AtomicBoolean(false);
+
+	private final AtomicLong dispatchCount = new AtomicLong(0);
+	private final AtomicLong skipCount = new AtomicLong(0);
+	private final AtomicLong lateTotalNanos = new AtomicLong(0);
+	private final AtomicLong lateCount = new AtomicLong(0);
+	private volatile long lateLastNanos = 0, lateMaxNanos = 0;
+
+	private Thread wheelThread;
+	private long startTime;
+	private long tick = 0;
+
+	/**
+	 * Create a new timing wheel instance.
+	 *
+	 * @param tickMs wheel tick duration in milliseconds
+	 * @param wheelSize number of wheel buckets (rounded up to power of two)
+	 * @param workerCount maximum number of worker threads running sample tasks
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public HashedWheelScheduler(long tickMs, int wheelSize, int workerCount) {
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.wheel = new ArrayList[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new ArrayList<WheelTask>(4);
+		}
+		ThreadFactory factory = SampleExecutors.newVirtualThreadFactory("StreamJmx-Worker");
+		this.virtualWorkers = factory != null;
+		this.workers = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), factory != null ? factory : new WheelThreadFactory("StreamJmx-Worker"));
+		this.workers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Obtain JVM wide shared timing wheel instance, configured using {@code com.jkoolcloud.tnt4j.stream.jmx.scheduler.wheel.*}
+	 * system properties.
+	 *
+	 * @return shared timing wheel instance
+	 */
+	public static synchronized HashedWheelScheduler getInstance() {
+		if (defaultScheduler == null) {
+			defaultScheduler = new HashedWheelScheduler(DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE, DEFAULT_WORKERS);
+		}
+		return defaultScheduler;
+	}
+
+	/**
+	 * Determine if sample tasks are run on virtual worker threads.
+	 *
+	 * @return true if worker threads are virtual, false if platform threads are used
+	 */
+	public boolean isVirtual() {
+		return virtualWorkers;
+	}
+
+	/**
+	 * Schedule a given task for periodic execution at a fixed rate.
+	 *
+	 * @param name task name
+	 * @param task task to run every period
+	 * @param period sampling period
+	 * @param tunit time unit for the sampling period
+	 * @return scheduled task handle used to cancel and query task
+	 */
+	public WheelTask schedule(String name, Runnable task, long period, TimeUnit tunit) {
+		start();
+		long periodNanos = Math.max(tickNanos, tunit.toNanos(period));
+		WheelTask wTask = new WheelTask(name, task, periodNanos, System.nanoTime() + periodNanos);
+		taskCount.incrementAndGet();
+		newTasks.add(wTask);
+		return wTask;
+	}
+
+	private void start() {
+		if (started.compareAndSet(false, true)) {
+			startTime = System.nanoTime();
+			wheelThread = new WheelThreadFactory("StreamJmx-Wheel").newThread(new Runnable() {
+				@Override
+				public void run() {
+					runWheel();
+				}
+			});
+			wheelThread.start();
+		}
+	}
+
+	private void runWheel() {
+		while (!Thread.currentThread().isInterrupted()) {
+			long deadline = startTime + (tick + 1) * tickNanos;
+			long sleepNanos = deadline - System.nanoTime();
+			if (sleepNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException exc) {
+					break;
+				}
+			}
+			transferNewTasks();
+			expireBucket(wheel[(int) (tick & mask)], System.nanoTime());
+			tick++;
+		}
+	}
+
+	private void transferNewTasks() {
+		WheelTask task;
+		while ((task = newTasks.poll()) != null) {
+			if (!task.cancelled) {
+				place(task);
+			}
+		}
+	}
+
+	private void place(WheelTask task) {
+		long ticks = Math.max(tick, (task.deadline - startTime + tickNanos - 1) / tickNanos - 1);
+		task.rounds = (ticks - tick) / wheel.length;
+		wheel[(int) (ticks & mask)].add(task);
+	}
+
+	private void expireBucket(ArrayList<WheelTask> bucket, long now) {
+		ArrayList<WheelTask> due = null;
+		for (Iterator<WheelTask> it = bucket.iterator(); it.hasNext();) {
+			WheelTask task = it.next();
+			if (task.cancelled) {
+				it.remove();
+			} else if (task.rounds > 0) {
+				task.rounds--;
+			} else {
+				it.remove();
+				if (due == null) {
+					due = new ArrayList<WheelTask>(bucket.size() + 1);
+				}
+				due.add(task);
+			}
+		}
+		if (due != null) {
+			for (WheelTask task : due) {
+				dispatch(task);
+				task.deadline += task.periodNanos;
+				while (task.deadline <= now) {
+					task.deadline += task.periodNanos;
+					task.skipCount.incrementAndGet();
+					skipCount.incrementAndGet();
+				}
+				newTasks.add(task);
+			}
+		}
+	}
+
+	private void dispatch(WheelTask task) {
+		if (task.running.compareAndSet(false, true)) {
+			task.dueTime = task.deadline;
+			try {
+				workers.execute(task);
+				dispatchCount.incrementAndGet();
+			} catch (RejectedExecutionException exc) {
+				task.running.set(false);
+				task.skipCount.incrementAndGet();
+				skipCount.incrementAndGet();
+			}
+		} else {
+			// previous run of this task is still queued or running
+			task.skipCount.incrementAndGet();
+			skipCount.incrementAndGet();
+		}
+	}
+
+	private void recordLateness(long lateNanos) {
+		lateLastNanos = lateNanos;
+		if (lateNanos > lateMaxNanos) {
+			lateMaxNanos = lateNanos;
+		}
+		lateTotalNanos.addAndGet(lateNanos);
+		lateCount.incrementAndGet();
+	}
+
+	/**
+	 * Obtain number of dispatched tasks waiting for a free worker thread.
+	 *
+	 * @return worker queue depth
+	 */
+	public int getQueueDepth() {
+		return workers.getQueue().size();
+	}
+
+	/**
+	 * Obtain number of tasks currently scheduled on this wheel.
+	 *
+	 * @return number of scheduled tasks
+	 */
+	public int getTaskCount() {
+		return taskCount.get();
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public KeyValueStats getStats(Map<String, Object> stats) {
+		long count = lateCount.get();
+		stats.put(STAT_WHEEL_TASK_COUNT, taskCount.get());
+		stats.put(STAT_WHEEL_WORKER_COUNT, workers.getPoolSize());
+		stats.put(STAT_WHEEL_ACTIVE_COUNT, workers.getActiveCount());
+		stats.put(STAT_WHEEL_QUEUE_DEPTH, getQueueDepth());
+		stats.put(STAT_WHEEL_DISPATCH_COUNT, dispatchCount.get());
+		stats.put(STAT_WHEEL_SKIP_COUNT, skipCount.get());
+		stats.put(STAT_WHEEL_LATE_LAST_USEC, lateLastNanos / 1000);
+		stats.put(STAT_WHEEL_LATE_MAX_USEC, lateMaxNanos / 1000);
+		stats.put(STAT_WHEEL_LATE_AVG_USEC, count > 0 ? lateTotalNanos.get() / count / 1000 : 0);
+		stats.put(STAT_WHEEL_VIRTUAL, virtualWorkers);
+		return this;
+	}
+
+	@Override
+	public void resetStats() {
+		dispatchCount.set(0);
+		skipCount.set(0);
+		lateTotalNanos.set(0);
+		lateCount.set(0);
+		lateLastNanos = 0;
+		lateMaxNanos = 0;
+	}
+
+	/**
+	 * <p>
+	 * This class represents a periodic task scheduled on a {@link HashedWheelScheduler}.
+	 * </p>
+	 */
+	public class WheelTask implements Runnable {
+		final String name;
+		final Runnable task;
+		final long periodNanos;
+		final AtomicBoolean running = new AtomicBoolean(false);
+		final AtomicLong skipCount = new AtomicLong(0);
+		final AtomicLong runCount = new AtomicLong(0);
+
+		volatile boolean cancelled = false;
+		volatile long lateNanos = 0;
+		volatile long dueTime;
+		long deadline;
+		long rounds;
+
+		WheelTask(String name, Runnable task, long periodNanos, long deadline) {
+			this.name = name;
+			this.task = task;
+			this.periodNanos = periodNanos;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public void run() {
+			lateNanos = Math.max(0, System.nanoTime() - dueTime);
+			recordLateness(lateNanos);
+			try {
+				if (!cancelled) {
+					runCount.incrementAndGet();
+					task.run();
+				}
+			} finally {
+				running.set(false);
+			}
+		}
+
+		/**
+		 * Cancel this task. Running dispatch, if any, is allowed to complete.
+		 */
+		public void cancel() {
+			if (!cancelled) {
+				cancelled = true;
+				taskCount.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Determine if this task has been cancelled.
+		 *
+		 * @return true if cancelled, false otherwise
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Determine if this task is currently queued or running on a worker thread.
+		 *
+		 * @return true if task is queued or running, false otherwise
+		 */
+		public boolean isRunning() {
+			return running.get();
+		}
+
+		/**
+		 * Obtain task name.
+		 *
+		 * @return task name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Obtain number of task executions.
+		 *
+		 * @return number of task executions
+		 */
+		public long getRunCount() {
+			return runCount.get();
+		}
+
+		/**
+		 * Obtain number of ticks skipped because previous execution was still running or wheel was late.
+		 *
+		 * @return number of skipped ticks
+		 */
+		public long getSkipCount() {
+			return skipCount.get();
+		}
+
+		/**
+		 * Obtain dispatch lateness of the last execution in nanoseconds.
+		 *
+		 * @return dispatch lateness in nanoseconds
+		 */
+		public long getLateNanos() {
+			return lateNanos;
+		}
+	}
+
+	private static class WheelThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger(0);
+		private final String prefix;
+
+		WheelThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+import com.jkoolcloud.tnt4j.stream.jmx.format.OpenMetricsRenderer;
+import com.jkoolcloud.tnt4j.utils.Utils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>
+ * This class implements embedded OpenMetrics (Prometheus) scrape endpoint serving metrics of the latest sampling cycle
+ * of every sampler running within JVM. Every sampler publishes its cycle into own {@link Slot} once per cycle: slot
+ * samples are rendered using {@link OpenMetricsRenderer}, merged with samples of other slots and cached as byte array,
+ * so scrapes are served from memory and never query MBean servers. Samples of every slot are labeled with slot
+ * name ({@code sampler} label), so series of samplers sampling MBeans of the same type stay distinct.
+ * </p>
+ * <p>
+ * Endpoint is enabled by setting {@code com.jkoolcloud.tnt4j.stream.jmx.metrics.port} system property. Endpoint binds
+ * to address defined by {@code com.jkoolcloud.tnt4j.stream.jmx.metrics.host} system property (all addresses by
+ * default) and serves metrics on {@code /metrics} path. Endpoint runs on daemon threads. Attributes listed by
+ * {@code com.jkoolcloud.tnt4j.stream.jmx.metrics.counters} system property (comma separated property keys, default
+ * {@link OpenMetricsRenderer#DEFAULT_COUNTERS}) are monotonic and served as counters, all other attributes are
+ * served as gauges.
+ * </p>
+ *
+ * @see OpenMetricsRenderer
+ * @see SampleHandlerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class MetricsEndpoint {
+	public static String STAT_METRICS_PORT = "metrics.endpoint.port";
+	public static String STAT_METRICS_SCRAPE_COUNT = "metrics.scrape.count";
+	public static String STAT_METRICS_SERIES_COUNT = "metrics.series.count";
+	public static String STAT_METRICS_RENDER_BYTES = "metrics.render.bytes";
+
+	public static final int PORT = Integer.getInteger("com.jkoolcloud.tnt4j.stream.jmx.metrics.port", 0);
+	public static final String HOST = System.getProperty("com.jkoolcloud.tnt4j.stream.jmx.metrics.host");
+	public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+	public static final String PATH = "/metrics";
+	public static final String COUNTERS = System.getProperty("com.jkoolcloud.tnt4j.stream.jmx.metrics.counters",
+			OpenMetricsRenderer.DEFAULT_COUNTERS);
+	public static final String SAMPLER_LABEL = "sampler";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] EMPTY = "# EOF\n".getBytes(UTF8);
+	private static MetricsEndpoint instance;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final List<Slot> slots = new CopyOnWriteArrayList<Slot>();
+	private final AtomicLong scrapeCount = new AtomicLong();
+	private volatile byte[] content = EMPTY;
+
+	/**
+	 * Metrics published by a single sampler
+	 */
+	public class Slot implements KeyValueStats {
+		private final String name;
+		private final OpenMetricsRenderer renderer;
+		private volatile Map<String, StringBuilder> families = Collections.emptyMap();
+		private volatile int seriesCount = 0;
+		private Map<String, StringBuilder> staged;
+
+		Slot(String name) {
+			this.name = name;
+			this.renderer = new OpenMetricsRenderer(OpenMetricsRenderer.DEFAULT_CACHE_SIZE,
+					Collections.singletonMap(SAMPLER_LABEL, name), COUNTERS);
+		}
+
+		/**
+		 * Obtain slot name, which is the value of {@code sampler} label of slot samples
+		 *
+		 * @return slot name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Stage snapshots reported before sampling cycle is completed, e.g. within chunk activities. Staged snapshots
+		 * are not served until published along with remaining snapshots of the cycle by {@link #publish(Collection)}.
+		 *
+		 * @param snapshots MBean snapshots of current sampling cycle
+		 */
+		public synchronized void stage(Collection<Snapshot> snapshots) {
+			staged = renderer.render(snapshots, staged == null ? new LinkedHashMap<String, StringBuilder>() : staged);
+		}
+
+		/**
+		 * Discard snapshots staged so far, which are not published.
+		 */
+		public synchronized void discard() {
+			staged = null;
+		}
+
+		/**
+		 * Publish snapshots of a completed sampling cycle along with snapshots staged within the cycle, replacing
+		 * snapshots published before.
+		 *
+		 * @param snapshots MBean snapshots of sampling cycle
+		 */
+		public synchronized void publish(Collection<Snapshot> snapshots) {
+			Map<String, StringBuilder> rendered = staged == null ? renderer.render(snapshots)
+					: renderer.render(snapshots, staged);
+			staged = null;
+			int series = 0;
+			for (StringBuilder lines : rendered.values()) {
+				for (int i = 0; i < lines.length(); i++) {
+					if (lines.charAt(i) == '\n') {
+						series++;
+					}
+				}
+			}
+			families = rendered;
+			seriesCount = series;
+			rebuild();
+		}
+
+		/**
+		 * Remove this slot metrics from endpoint.
+		 */
+		public void close() {
+			slots.remove(this);
+			rebuild();
+		}
+
+		@Override
+		public Map<String, Object> getStats() {
+			Map<String, Object> stats = new HashMap<String, Object>();
+			getStats(stats);
+			return stats;
+		}
+
+		@Override
+		public KeyValueStats getStats(Map<String, Object> stats) {
+			stats.put(STAT_METRICS_PORT, server.getAddress().getPort());
+			stats.put(STAT_METRICS_SCRAPE_COUNT, scrapeCount.get());
+			stats.put(STAT_METRICS_SERIES_COUNT, seriesCount);
+			stats.put(STAT_METRICS_RENDER_BYTES, content.length);
+			return this;
+		}
+
+		@Override
+		public void resetStats() {
+		}
+	}
+
+	/**
+	 * Create and start endpoint on a given address.
+	 *
+	 * @param host host name or address to bind to, {@code null} to bind to all addresses
+	 * @param port port to listen on, {@code 0} for any free port
+	 * @throws IOException if server can not be started
+	 */
+	public MetricsEndpoint(String host, int port) throws IOException {
+		InetSocketAddress address = Utils.isEmpty(host) ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+		server = HttpServer.create(address, 0);
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "StreamJmx-metrics");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		start();
+	}
+
+	/**
+	 * Determine if endpoint is configured using system properties.
+	 *
+	 * @return true if endpoint port is defined, false otherwise
+	 */
+	public static boolean isConfigured() {
+		return PORT > 0;
+	}
+
+	/**
+	 * Obtain endpoint configured by system properties, starting it on first call.
+	 *
+	 * @return endpoint instance
+	 * @throws IOException if endpoint can not be started
+	 */
+	public static synchronized MetricsEndpoint getInstance() throws IOException {
+		if (instance == null) {
+			instance = new MetricsEndpoint(HOST, PORT);
+		}
+		return instance;
+	}
+
+	/**
+	 * Create new slot for publishing metrics of a sampler.
+	 *
+	 * @return new slot instance
+	 * @see #newSlot(String)
+	 */
+	public Slot newSlot() {
+		return newSlot(SAMPLER_LABEL);
+	}
+
+	/**
+	 * Create new slot for publishing metrics of a sampler. Slot name is made unique among slots of this endpoint by
+	 * appending a sequence number, e.g. {@code name-2}.
+	 *
+	 * @param name slot name, e.g. MBean server identifier
+	 * @return new slot instance
+	 */
+	public synchronized Slot newSlot(String name) {
+		String slotName = name;
+		for (int i = 2; hasSlot(slotName); i++) {
+			slotName = name + "-" + i;
+		}
+		Slot slot = new Slot(slotName);
+		slots.add(slot);
+		return slot;
+	}
+
+	private boolean hasSlot(String name) {
+		for (Slot slot : slots) {
+			if (slot.name.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Obtain address endpoint listens on.
+	 *
+	 * @return endpoint socket address
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Stop endpoint.
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+		synchronized (MetricsEndpoint.class) {
+			if (instance == this) {
+				instance = null;
+			}
+		}
+	}
+
+	private void start() {
+		// HTTP dispatcher thread inherits daemon state of the thread starting server
+		Thread starter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				server.start();
+			}
+		}, "StreamJmx-metrics-start");
+		starter.setDaemon(true);
+		starter.start();
+		try {
+			starter.join();
+		} catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void rebuild() {
+		Set<String> names = new LinkedHashSet<String>();
+		for (Slot slot : slots) {
+			names.addAll(slot.families.keySet());
+		}
+		StringBuilder out = new StringBuilder(Math.max(1024, content.length + 256));
+		for (String name : names) {
+			boolean typed = false;
+			for (Slot slot : slots) {
+				StringBuilder lines = slot.families.get(name);
+				if (lines != null) {
+					if (!typed) {
+						out.append("# TYPE ").append(name).append(slot.renderer.isCounter(name) ? " counter\n" : " gauge\n");
+						typed = true;
+					}
+					out.append(lines);
+				}
+			}
+		}
+		content = out.append("# EOF\n").toString().getBytes(UTF8);
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = content;
+			scrapeCount.incrementAndGet();
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		} finally {
+			exchange.close();
+		}
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.*;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeSample;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeVariable;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.CycleRule;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.LatchingRule;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.RuleAction;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.expr.Expression;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.expr.ExpressionParser;
+import com.jkoolcloud.tnt4j.stream.jmx.jfr.SampleEventRecorder;
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class evaluates registered {@link CycleRule}s once per sampling cycle. Rule expressions are compiled by a
+ * single {@link ExpressionParser}, so sub-expressions shared by multiple rules are compiled into shared nodes and
+ * computed only once per cycle. Variables referenced by rules are indexed by MBean object name and attribute name:
+ * every sampled attribute updates only variables bound to it, so rules never query MBean server and cycle values are
+ * kept in primitive arrays. Firings of {@link LatchingRule}s are deduplicated: suppressed firings do not invoke
+ * actions and are counted by {@code total.rule.suppressed.count} statistic.
+ * </p>
+ *
+ * @see SampleHandlerImpl
+ * @see CycleRule
+ *
+ * @version $Revision: 1 $
+ */
+public class RuleEngine implements KeyValueStats {
+	public static String STAT_RULE_COUNT = "rule.count";
+	public static String STAT_RULE_VARIABLE_COUNT = "rule.variable.count";
+	public static String STAT_RULE_SHARED_EXPR_COUNT = "rule.shared.expr.count";
+	public static String STAT_TOTAL_RULE_EVAL_COUNT = "total.rule.eval.count";
+	public static String STAT_TOTAL_RULE_FIRE_COUNT = "total.rule.fire.count";
+	public static String STAT_TOTAL_RULE_SUPPRESSED_COUNT = "total.rule.suppressed.count";
+
+	private final ExpressionParser parser;
+	private final List<CycleRule> rules = new ArrayList<CycleRule>();
+	private final List<RuleAction> actions = new ArrayList<RuleAction>();
+	private final List<Expression> compiled = new ArrayList<Expression>();
+
+	private final List<ObjectName> varNames = new ArrayList<ObjectName>();
+	private final List<AttributeVariable> variables = new ArrayList<AttributeVariable>();
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+	private final Map<ObjectName, Map<String, int[]>> index = new HashMap<ObjectName, Map<String, int[]>>();
+
+	private double[] values = new double[0];
+	private double[] prev = new double[0];
+	private long[] prevTime = new long[0];
+	private long evalStamp = 0, evalCount = 0, fireCount = 0, suppressedCount = 0;
+
+	/**
+	 * Create new instance of {@code RuleEngine}.
+	 */
+	public RuleEngine() {
+		parser = new ExpressionParser(new ExpressionParser.VariableResolver() {
+			@Override
+			public int resolve(String reference) {
+				return addVariable(reference);
+			}
+		});
+	}
+
+	/**
+	 * Register rule/action pair. Registering already registered rule replaces its action.
+	 *
+	 * @param rule rule instance
+	 * @param action action instance
+	 * @throws IllegalArgumentException if rule expression is malformed
+	 */
+	public synchronized void put(CycleRule rule, RuleAction action) {
+		int idx = rules.indexOf(rule);
+		if (idx >= 0) {
+			actions.set(idx, action);
+			return;
+		}
+		Expression expr = parser.parse(rule.getExpression());
+		rules.add(rule);
+		actions.add(action);
+		compiled.add(expr);
+		buildIndex();
+	}
+
+	/**
+	 * Obtain number of registered rules.
+	 *
+	 * @return number of registered rules
+	 */
+	public synchronized int size() {
+		return rules.size();
+	}
+
+	private int addVariable(String reference) {
+		int end = reference.indexOf(']');
+		if (!reference.startsWith("[") || end < 0) {
+			throw new IllegalArgumentException("Rule variable must be prefixed with MBean object name: " + reference);
+		}
+		ObjectName name;
+		try {
+			name = new ObjectName(reference.substring(1, end));
+		} catch (MalformedObjectNameException exc) {
+			throw new IllegalArgumentException("Malformed object name: " + reference.substring(1, end), exc);
+		}
+		if (name.isPattern()) {
+			throw new IllegalArgumentException("Object name patterns are not supported by rules: " + name);
+		}
+		String path = reference.substring(end + 1);
+		String key = "[" + name.getCanonicalName() + "]" + path;
+		Integer slot = slots.get(key);
+		if (slot == null) {
+			slot = variables.size();
+			slots.put(key, slot);
+			varNames.add(name);
+			variables.add(new AttributeVariable(path));
+		}
+		return slot;
+	}
+
+	private void buildIndex() {
+		int size = variables.size();
+		int oldSize = values.length;
+		if (oldSize != size) {
+			values = Arrays.copyOf(values, size);
+			prev = Arrays.copyOf(prev, size);
+			prevTime = Arrays.copyOf(prevTime, size);
+			Arrays.fill(values, oldSize, size, Double.NaN);
+			Arrays.fill(prev, oldSize, size, Double.NaN);
+		}
+		Map<ObjectName, Map<String, List<Integer>>> slotLists = new HashMap<ObjectName, Map<String, List<Integer>>>();
+		for (int i = 0; i < size; i++) {
+			Map<String, List<Integer>> attrSlots = slotLists.get(varNames.get(i));
+			if (attrSlots == null) {
+				attrSlots = new HashMap<String, List<Integer>>();
+				slotLists.put(varNames.get(i), attrSlots);
+			}
+			String attrName = variables.get(i).getAttributeName();
+			List<Integer> list = attrSlots.get(attrName);
+			if (list == null) {
+				list = new ArrayList<Integer>();
+				attrSlots.put(attrName, list);
+			}
+			list.add(i);
+		}
+		index.clear();
+		for (Map.Entry<ObjectName, Map<String, List<Integer>>> entry : slotLists.entrySet()) {
+			Map<String, int[]> attrSlots = new HashMap<String, int[]>();
+			for (Map.Entry<String, List<Integer>> aEntry : entry.getValue().entrySet()) {
+				int[] arr = new int[aEntry.getValue().size()];
+				for (int i = 0; i < arr.length; i++) {
+					arr[i] = aEntry.getValue().get(i);
+				}
+				attrSlots.put(aEntry.getKey(), arr);
+			}
+			index.put(entry.getKey(), attrSlots);
+		}
+	}
+
+	/**
+	 * Begin new sampling cycle: variables not updated within a cycle evaluate as {@code NaN}.
+	 */
+	public synchronized void beginCycle() {
+		Arrays.fill(values, Double.NaN);
+	}
+
+	/**
+	 * Update variables bound to a given sampled attribute.
+	 *
+	 * @param sample MBean attribute sample
+	 */
+	public synchronized void update(AttributeSample sample) {
+		if (index.isEmpty()) {
+			return;
+		}
+		Map<String, int[]> attrSlots = index.get(sample.getObjetName());
+		int[] aSlots = attrSlots == null ? null : attrSlots.get(sample.getAttributeInfo().getName());
+		if (aSlots == null) {
+			return;
+		}
+		long timeStamp = sample.getTimeStampUsec() > 0 ? sample.getTimeStampUsec() : Utils.currentTimeUsec();
+		Object value = sample.get();
+		for (int slot : aSlots) {
+			AttributeVariable var = variables.get(slot);
+			values[slot] = var.derive(var.read(value), timeStamp, prev, prevTime, slot);
+		}
+	}
+
+	/**
+	 * Rule evaluated to true along with its action
+	 */
+	public static class FiredRule {
+		private final CycleRule rule;
+		private final RuleAction action;
+
+		FiredRule(CycleRule rule, RuleAction action) {
+			this.rule = rule;
+			this.action = action;
+		}
+
+		/**
+		 * Obtain rule evaluated to true
+		 *
+		 * @return rule instance
+		 */
+		public CycleRule getRule() {
+			return rule;
+		}
+
+		/**
+		 * Obtain action associated with the rule
+		 *
+		 * @return action instance
+		 */
+		public RuleAction getAction() {
+			return action;
+		}
+	}
+
+	/**
+	 * Evaluate all registered rules against values sampled within current cycle. Actions of rules evaluated to true
+	 * are not invoked by engine: returned actions are invoked by caller outside of engine lock, so a slow or failing
+	 * action does not affect evaluation of remaining rules.
+	 *
+	 * @param events sampler event recorder
+	 * @return list of rules evaluated to true, empty if none
+	 */
+	public synchronized List<FiredRule> evaluate(SampleEventRecorder events) {
+		List<FiredRule> fired = null;
+		evalStamp++;
+		long timeUsec = Utils.currentTimeUsec();
+		for (int i = 0; i < compiled.size(); i++) {
+			evalCount++;
+			CycleRule rule = rules.get(i);
+			boolean matched = Expression.isTrue(compiled.get(i).evaluate(values, evalStamp));
+			if (rule instanceof LatchingRule) {
+				LatchingRule lRule = (LatchingRule) rule;
+				long suppressed = lRule.getSuppressedCount();
+				matched = lRule.latch(matched, timeUsec);
+				suppressedCount += lRule.getSuppressedCount() - suppressed;
+			}
+			if (matched) {
+				fireCount++;
+				RuleAction action = actions.get(i);
+				events.conditionFired(rule.getName(), action.getClass().getName(), null, null);
+				if (fired == null) {
+					fired = new ArrayList<FiredRule>(2);
+				}
+				fired.add(new FiredRule(rule, action));
+			}
+		}
+		return fired == null ? Collections.<FiredRule> emptyList() : fired;
+	}
+
+	/**
+	 * Drop previous values of variables bound to a given MBean, e.g. when MBean is unregistered.
+	 *
+	 * @param name MBean object name
+	 */
+	public synchronized void reset(ObjectName name) {
+		for (int i = 0; i < varNames.size(); i++) {
+			if (varNames.get(i).equals(name)) {
+				prev[i] = Double.NaN;
+				prevTime[i] = 0;
+			}
+		}
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public synchronized KeyValueStats getStats(Map<String, Object> stats) {
+		stats.put(STAT_RULE_COUNT, rules.size());
+		stats.put(STAT_RULE_VARIABLE_COUNT, variables.size());
+		stats.put(STAT_RULE_SHARED_EXPR_COUNT, parser.getSharedCount());
+		stats.put(STAT_TOTAL_RULE_EVAL_COUNT, evalCount);
+		stats.put(STAT_TOTAL_RULE_FIRE_COUNT, fireCount);
+		stats.put(STAT_TOTAL_RULE_SUPPRESSED_COUNT, suppressedCount);
+		return this;
+	}
+
+	@Override
+	public synchronized void resetStats() {
+		evalCount = 0;
+		fireCount = 0;
+		suppressedCount = 0;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.CycleRule;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.RuleAction;
+
+/**
+ * <p>
+ * This interface extends {@link Scheduler} with cycle rules evaluated once every sampling interval.
+ * </p>
+ * 
+ * @see CycleRule
+ * @version $Revision: 1 $
+ */
+public interface RuleScheduler extends Scheduler {
+	/**
+	 * Register a rule/action pair which will be evaluated once every sampling interval.
+	 *
+	 * @param rule user defined rule
+	 * @param action user defined action
+	 * @throws UnsupportedOperationException if sample handler does not support rules
+	 */
+	void register(CycleRule rule, RuleAction action);
+}
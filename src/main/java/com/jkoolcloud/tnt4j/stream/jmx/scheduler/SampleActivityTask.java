@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.jkoolcloud.tnt4j.ActivityTask;
+import com.jkoolcloud.tnt4j.TrackingLogger;
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming.Phase;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+
+/**
+ * <p>
+ * This class provides sampling activity task, which measures time spent formatting and writing sampling activity to
+ * the sink. When staged sampling pipeline is set, sampling activity is passed to pipeline to be formatted and written
+ * by pipeline stage threads. Closed task waits for running sampling cycle to complete and does not run further
+ * cycles, so no sampling activity is reported after task is closed.
+ * </p>
+ *
+ * @see SchedulerImpl
+ * @see SampleTiming
+ * @see SamplePipeline
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleActivityTask extends ActivityTask {
+	protected TrackingLogger logger;
+	protected SampleTiming timing;
+	protected SamplePipeline pipeline;
+
+	private final ReentrantLock runLock = new ReentrantLock();
+	private volatile boolean closed = false;
+
+	/**
+	 * Create new instance of {@code SampleActivityTask}.
+	 *
+	 * @param logger tracking logger instance used to report sampling activities
+	 * @param name activity name
+	 * @param level activity severity level
+	 * @param timing sampling pipeline timing instance
+	 */
+	public SampleActivityTask(TrackingLogger logger, String name, OpLevel level, SampleTiming timing) {
+		this(logger, name, level, timing, null);
+	}
+
+	/**
+	 * Create new instance of {@code SampleActivityTask}.
+	 *
+	 * @param logger tracking logger instance used to report sampling activities
+	 * @param name activity name
+	 * @param level activity severity level
+	 * @param timing sampling pipeline timing instance
+	 * @param pipeline staged sampling pipeline, {@code null} to report activities by sampling thread
+	 */
+	public SampleActivityTask(TrackingLogger logger, String name, OpLevel level, SampleTiming timing,
+			SamplePipeline pipeline) {
+		super(logger, name, level);
+		this.logger = logger;
+		this.timing = timing;
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	public void run() {
+		runLock.lock();
+		try {
+			if (!closed) {
+				super.run();
+			}
+		} finally {
+			runLock.unlock();
+		}
+	}
+
+	/**
+	 * Close task: wait for running sampling cycle to complete, further runs of the task do nothing.
+	 *
+	 * @param timeout maximum time to wait for running sampling cycle
+	 * @param unit time unit of timeout
+	 * @return {@code true} if no sampling cycle is running, {@code false} if timeout elapsed
+	 */
+	public boolean close(long timeout, TimeUnit unit) {
+		closed = true;
+		try {
+			if (runLock.tryLock(timeout, unit)) {
+				runLock.unlock();
+				return true;
+			}
+		} catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	@Override
+	protected long endActivity() {
+		TrackingActivity activity = getActivity();
+		activity.stop();
+		if (doSample()) {
+			if (activity.isNoop()) {
+				logger.tnt(activity);
+			} else if (pipeline != null) {
+				pipeline.submit(logger, activity);
+			} else {
+				tnt(activity);
+			}
+		}
+		return activity.getElapsedTimeUsec();
+	}
+
+	/**
+	 * Report sampling activity measuring format and sink write time.
+	 *
+	 * @param activity sampling activity
+	 */
+	protected void tnt(TrackingActivity activity) {
+		try {
+			timing.report(logger, activity);
+		} finally {
+			timing.complete(Phase.FORMAT, Phase.SINK);
+		}
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.*;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.core.Property;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+
+/**
+ * <p>
+ * This class implements local pre-aggregation (downsampling) of sampled MBean snapshots. Instead of reporting every
+ * sample, MBean property values are accumulated over a configured emission window and a single aggregated snapshot per
+ * MBean is reported once per window, so sampling resolution is decoupled from sink bandwidth.
+ * </p>
+ * <p>
+ * For every numeric property minimum, maximum, average, last value and number of samples within window are
+ * maintained in primitive arrays indexed by metric id (MBean snapshot and property key). Last value is reported under
+ * original property name, other aggregates are reported using function suffix, e.g. {@code ThreadCount.max}.
+ * Non numeric properties are reported using last value only.
+ * </p>
+ * <p>
+ * Aggregation is enabled by setting {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.aggregate.window} system property
+ * to emission window in milliseconds. Reported aggregates are defined by
+ * {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.aggregate.functions} system property: comma separated list of
+ * {@code min}, {@code max}, {@code avg}, {@code last}, {@code count}.
+ * </p>
+ *
+ * @see SampleHandlerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleAggregator implements KeyValueStats {
+	public static String STAT_AGGREGATE_WINDOW_MS = "aggregate.window.ms";
+	public static String STAT_AGGREGATE_SERIES_COUNT = "aggregate.series.count";
+	public static String STAT_AGGREGATE_METRIC_COUNT = "aggregate.metric.count";
+	public static String STAT_AGGREGATE_SAMPLE_COUNT = "aggregate.sample.count";
+	public static String STAT_AGGREGATE_EMIT_COUNT = "aggregate.emit.count";
+	public static String STAT_AGGREGATE_HELD_COUNT = "aggregate.held.cycle.count";
+
+	public static final long WINDOW_MS = Long.getLong("com.jkoolcloud.tnt4j.stream.jmx.sampler.aggregate.window", 0);
+	public static final String FUNCTIONS = System.getProperty("com.jkoolcloud.tnt4j.stream.jmx.sampler.aggregate.functions",
+			"min,max,avg,last,count");
+
+	public static final String FUNC_MIN = "min";
+	public static final String FUNC_MAX = "max";
+	public static final String FUNC_AVG = "avg";
+	public static final String FUNC_LAST = "last";
+	public static final String FUNC_COUNT = "count";
+
+	/**
+	 * Aggregated values of all properties of a single MBean snapshot
+	 */
+	private static class Series {
+		final String category;
+		final String name;
+		final Map<String, Integer> index = new HashMap<String, Integer>();
+		String[] keys = new String[8];
+		String[] suffixed = new String[8 * 4];
+		String[] valueTypes = new String[8];
+		Object[] last = new Object[8];
+		double[] min = new double[8];
+		double[] max = new double[8];
+		double[] sum = new double[8];
+		long[] count = new long[8];
+		long[] numCount = new long[8];
+		int size = 0;
+		long samples = 0;
+
+		Series(String category, String name) {
+			this.category = category;
+			this.name = name;
+		}
+
+		int slot(String key) {
+			Integer slot = index.get(key);
+			if (slot == null) {
+				slot = size++;
+				index.put(key, slot);
+				if (slot >= keys.length) {
+					int length = keys.length * 2;
+					keys = Arrays.copyOf(keys, length);
+					suffixed = Arrays.copyOf(suffixed, length * 4);
+					valueTypes = Arrays.copyOf(valueTypes, length);
+					last = Arrays.copyOf(last, length);
+					min = Arrays.copyOf(min, length);
+					max = Arrays.copyOf(max, length);
+					sum = Arrays.copyOf(sum, length);
+					count = Arrays.copyOf(count, length);
+					numCount = Arrays.copyOf(numCount, length);
+				}
+				keys[slot] = key;
+				suffixed[slot * 4] = key + "." + FUNC_MIN;
+				suffixed[slot * 4 + 1] = key + "." + FUNC_MAX;
+				suffixed[slot * 4 + 2] = key + "." + FUNC_AVG;
+				suffixed[slot * 4 + 3] = key + "." + FUNC_COUNT;
+			}
+			return slot;
+		}
+
+		void add(int slot, Object value, String valueType) {
+			last[slot] = value;
+			valueTypes[slot] = valueType;
+			count[slot]++;
+			if (value instanceof Number) {
+				double dValue = ((Number) value).doubleValue();
+				if (numCount[slot] == 0) {
+					min[slot] = dValue;
+					max[slot] = dValue;
+					sum[slot] = dValue;
+				} else {
+					min[slot] = Math.min(min[slot], dValue);
+					max[slot] = Math.max(max[slot], dValue);
+					sum[slot] += dValue;
+				}
+				numCount[slot]++;
+			}
+		}
+
+		void clear() {
+			Arrays.fill(count, 0, size, 0);
+			Arrays.fill(numCount, 0, size, 0);
+			Arrays.fill(last, 0, size, null);
+			samples = 0;
+		}
+	}
+
+	private final long windowMs;
+	private final boolean doMin, doMax, doAvg, doLast, doCount;
+	private final Map<String, Series> series = new LinkedHashMap<String, Series>(89);
+
+	private long windowStart = 0;
+	private long sampleCount = 0, emitCount = 0, heldCount = 0;
+
+	/**
+	 * Create new instance of {@code SampleAggregator} with emission window and aggregates defined by system properties.
+	 */
+	public SampleAggregator() {
+		this(WINDOW_MS, FUNCTIONS);
+	}
+
+	/**
+	 * Create new instance of {@code SampleAggregator} with a given emission window and aggregates.
+	 *
+	 * @param windowMs emission window in milliseconds
+	 * @param functions comma separated list of reported aggregates: {@code min}, {@code max}, {@code avg},
+	 *            {@code last}, {@code count}
+	 * @throws IllegalArgumentException if window is not positive or aggregate is not supported
+	 */
+	public SampleAggregator(long windowMs, String functions) {
+		if (windowMs <= 0) {
+			throw new IllegalArgumentException("Aggregation window must be positive: " + windowMs);
+		}
+		this.windowMs = windowMs;
+		Set<String> funcs = new HashSet<String>();
+		StringTokenizer tk = new StringTokenizer(functions, ",");
+		while (tk.hasMoreTokens()) {
+			String func = tk.nextToken().trim().toLowerCase();
+			if (!(FUNC_MIN.equals(func) || FUNC_MAX.equals(func) || FUNC_AVG.equals(func) || FUNC_LAST.equals(func)
+					|| FUNC_COUNT.equals(func))) {
+				throw new IllegalArgumentException("Unsupported aggregate function: " + func);
+			}
+			funcs.add(func);
+		}
+		doMin = funcs.contains(FUNC_MIN);
+		doMax = funcs.contains(FUNC_MAX);
+		doAvg = funcs.contains(FUNC_AVG);
+		doLast = funcs.contains(FUNC_LAST);
+		doCount = funcs.contains(FUNC_COUNT);
+	}
+
+	/**
+	 * Determine if aggregation is configured using system properties.
+	 *
+	 * @return true if aggregation window is defined, false otherwise
+	 */
+	public static boolean isConfigured() {
+		return WINDOW_MS > 0;
+	}
+
+	/**
+	 * Obtain emission window of this aggregator.
+	 *
+	 * @return emission window in milliseconds
+	 */
+	public long getWindow() {
+		return windowMs;
+	}
+
+	/**
+	 * Begin sampling cycle: when emission window has elapsed, aggregated snapshots of the window are added to a given
+	 * activity and new window is started. Cycle samples are accumulated into the new window, so every window consists
+	 * of cycles started within it.
+	 *
+	 * @param activity sampling activity
+	 * @return true if aggregated snapshots were added to activity, false if cycle is held within current window
+	 */
+	public synchronized boolean beginCycle(Activity activity) {
+		long now = System.currentTimeMillis();
+		if (windowStart == 0) {
+			windowStart = now;
+		}
+		if (now - windowStart < windowMs) {
+			heldCount++;
+			return false;
+		}
+		windowStart += ((now - windowStart) / windowMs) * windowMs;
+		emit(activity);
+		return true;
+	}
+
+	/**
+	 * Emit aggregated snapshots of current partial window into a given activity, e.g. when sampler is stopped, and
+	 * start new window.
+	 *
+	 * @param activity activity aggregated snapshots are added to
+	 * @return true if aggregated snapshots were added to activity, false if no samples were accumulated within window
+	 */
+	public synchronized boolean flush(Activity activity) {
+		boolean pending = false;
+		for (Series mSeries : series.values()) {
+			if (mSeries.samples > 0) {
+				pending = true;
+				break;
+			}
+		}
+		windowStart = System.currentTimeMillis();
+		if (pending) {
+			emit(activity);
+		}
+		return pending;
+	}
+
+	/**
+	 * Accumulate properties of a given MBean snapshot into current window.
+	 *
+	 * @param snapshot sampled MBean snapshot
+	 */
+	public synchronized void add(PropertySnapshot snapshot) {
+		Series mSeries = series.get(snapshot.getName());
+		if (mSeries == null) {
+			mSeries = new Series(snapshot.getCategory(), snapshot.getName());
+			series.put(snapshot.getName(), mSeries);
+		}
+		for (Property prop : snapshot.getSnapshot()) {
+			mSeries.add(mSeries.slot(prop.getKey()), prop.getValue(), prop.getValueType());
+		}
+		mSeries.samples++;
+		sampleCount++;
+	}
+
+	private void emit(Activity activity) {
+		Iterator<Series> it = series.values().iterator();
+		while (it.hasNext()) {
+			Series mSeries = it.next();
+			if (mSeries.samples == 0) {
+				it.remove(); // no samples within window, e.g. MBean unregistered
+				continue;
+			}
+			PropertySnapshot snapshot = new PropertySnapshot(mSeries.category, mSeries.name);
+			for (int i = 0; i < mSeries.size; i++) {
+				if (mSeries.count[i] == 0) {
+					continue;
+				}
+				if (doLast) {
+					snapshot.add(mSeries.keys[i], mSeries.last[i], mSeries.valueTypes[i]);
+				}
+				if (mSeries.numCount[i] > 0) {
+					if (doMin) {
+						snapshot.add(mSeries.suffixed[i * 4], mSeries.min[i]);
+					}
+					if (doMax) {
+						snapshot.add(mSeries.suffixed[i * 4 + 1], mSeries.max[i]);
+					}
+					if (doAvg) {
+						snapshot.add(mSeries.suffixed[i * 4 + 2], mSeries.sum[i] / mSeries.numCount[i]);
+					}
+				}
+				if (doCount) {
+					snapshot.add(mSeries.suffixed[i * 4 + 3], mSeries.count[i]);
+				}
+			}
+			mSeries.clear();
+			if (snapshot.size() > 0) {
+				activity.addSnapshot(snapshot);
+			}
+		}
+		emitCount++;
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public synchronized KeyValueStats getStats(Map<String, Object> stats) {
+		int metrics = 0;
+		for (Series mSeries : series.values()) {
+			metrics += mSeries.size;
+		}
+		stats.put(STAT_AGGREGATE_WINDOW_MS, windowMs);
+		stats.put(STAT_AGGREGATE_SERIES_COUNT, series.size());
+		stats.put(STAT_AGGREGATE_METRIC_COUNT, metrics);
+		stats.put(STAT_AGGREGATE_SAMPLE_COUNT, sampleCount);
+		stats.put(STAT_AGGREGATE_EMIT_COUNT, emitCount);
+		stats.put(STAT_AGGREGATE_HELD_COUNT, heldCount);
+		return this;
+	}
+
+	@Override
+	public synchronized void resetStats() {
+		sampleCount = 0;
+		emitCount = 0;
+		heldCount = 0;
+	}
+}
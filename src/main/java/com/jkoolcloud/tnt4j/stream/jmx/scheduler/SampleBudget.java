@@ -0,0 +1,342 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class implements sampling overhead budget, which governs sampler own CPU and memory allocation cost. Sampling
+ * thread CPU time and allocated bytes are measured every sample using {@code com.sun.management.ThreadMXBean} and
+ * compared against configured budget: CPU time as percentage of a single core and allocation rate in bytes per
+ * second. When sampler runs over budget, MBeans matching low priority filters are shed first, then sampling period is
+ * stretched by skipping samples (doubling stretch factor up to a configured maximum). When load drops well below
+ * budget, stretching is reverted first and shed MBeans are restored last.
+ * </p>
+ * <p>
+ * Budget is enabled by setting {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.budget.cpu.pct} and/or
+ * {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.budget.alloc.bytes.sec} system properties. Only sampling thread cost
+ * is measured. CPU time and allocations of virtual threads can't be measured, so {@link SampleHandlerImpl} disables
+ * budget when MBean attributes are fetched on virtual threads or sampling thread itself is virtual.
+ * </p>
+ *
+ * @see SampleHandlerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleBudget implements KeyValueStats {
+	public static String STAT_BUDGET_CPU_PCT = "budget.cpu.pct";
+	public static String STAT_BUDGET_ALLOC_BYTES_SEC = "budget.alloc.bytes.sec";
+	public static String STAT_BUDGET_LOAD = "budget.load";
+	public static String STAT_BUDGET_STRETCH_FACTOR = "budget.stretch.factor";
+	public static String STAT_BUDGET_SHED_ACTIVE = "budget.shed.active";
+	public static String STAT_BUDGET_SHED_MBEAN_COUNT = "budget.shed.mbean.count";
+	public static String STAT_BUDGET_SKIP_COUNT = "budget.skip.count";
+	public static String STAT_BUDGET_DECISION = "budget.decision";
+	public static String STAT_BUDGET_DECISION_COUNT = "budget.decision.count";
+
+	public static final String CPU_BUDGET_PCT_VALUE = System
+			.getProperty("com.jkoolcloud.tnt4j.stream.jmx.sampler.budget.cpu.pct", "0");
+	public static final double CPU_BUDGET_PCT = parsePct(CPU_BUDGET_PCT_VALUE);
+	public static final long ALLOC_BUDGET_BYTES_SEC = Long
+			.getLong("com.jkoolcloud.tnt4j.stream.jmx.sampler.budget.alloc.bytes.sec", 0);
+	public static final int MAX_STRETCH = Integer.getInteger("com.jkoolcloud.tnt4j.stream.jmx.sampler.budget.max.stretch", 16);
+	public static final String LOW_PRIORITY_FILTER = System
+			.getProperty("com.jkoolcloud.tnt4j.stream.jmx.sampler.budget.low.priority");
+
+	/**
+	 * Load ratio below which budget restrictions are reverted. Kept below {@code 0.5}, so that halving stretch factor
+	 * does not immediately bring sampler over budget again.
+	 */
+	protected static final double RECOVER_LOAD = 0.4;
+
+	public static final String DECISION_NONE = "none";
+	public static final String DECISION_SHED = "shed";
+	public static final String DECISION_STRETCH = "stretch";
+	public static final String DECISION_SATURATED = "saturated";
+	public static final String DECISION_UNSTRETCH = "unstretch";
+	public static final String DECISION_RESTORE = "restore";
+
+	private final com.sun.management.ThreadMXBean threadMXBean;
+	private final boolean cpuSupported;
+	private final boolean allocSupported;
+
+	private final double cpuBudgetPct;
+	private final long allocBudget;
+	private final int maxStretch;
+	private final Vector<ObjectName> lowPriority = new Vector<ObjectName>(5, 5);
+	private final List<IllegalArgumentException> errors = new ArrayList<IllegalArgumentException>(1);
+
+	private long cycleCpuStart, cycleAllocStart;
+	private long lastCycleEnd = -1;
+	private long cycleIndex = 0, skipCount = 0, decisionCount = 0;
+	private int stretch = 1, shedMBeanCount = 0;
+	private boolean shedding = false;
+	private double lastCpuPct = 0, lastAllocRate = 0, lastLoad = 0;
+	private String lastDecision = DECISION_NONE;
+
+	/**
+	 * Create new instance of {@code SampleBudget} using budget defined by system properties.
+	 */
+	public SampleBudget() {
+		this(CPU_BUDGET_PCT, ALLOC_BUDGET_BYTES_SEC, MAX_STRETCH, LOW_PRIORITY_FILTER);
+		if (Double.isNaN(CPU_BUDGET_PCT)) {
+			errors.add(new IllegalArgumentException(
+					"Invalid CPU budget percentage '" + CPU_BUDGET_PCT_VALUE + "', CPU budget disabled"));
+		}
+	}
+
+	/**
+	 * Create new instance of {@code SampleBudget} with a given budget.
+	 *
+	 * @param cpuPct CPU budget as percentage of a single core, {@code 0} or {@code NaN} to disable
+	 * @param allocBytesSec allocation budget in bytes per second, {@code 0} to disable
+	 * @param maxStretch maximum sampling period stretch factor
+	 * @param lowPriorityFilter semicolon separated MBean filters to shed when over budget, may be {@code null}
+	 */
+	public SampleBudget(double cpuPct, long allocBytesSec, int maxStretch, String lowPriorityFilter) {
+		java.lang.management.ThreadMXBean tBean = ManagementFactory.getThreadMXBean();
+		threadMXBean = tBean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) tBean
+				: null;
+		cpuSupported = tBean.isCurrentThreadCpuTimeSupported() && tBean.isThreadCpuTimeEnabled();
+		allocSupported = threadMXBean != null && threadMXBean.isThreadAllocatedMemorySupported()
+				&& threadMXBean.isThreadAllocatedMemoryEnabled();
+		this.cpuBudgetPct = Double.isNaN(cpuPct) ? 0 : cpuPct;
+		this.allocBudget = allocBytesSec;
+		this.maxStretch = Math.max(1, maxStretch);
+		if (!Utils.isEmpty(lowPriorityFilter)) {
+			tokenizeFilters(lowPriorityFilter, lowPriority);
+		}
+	}
+
+	/**
+	 * Determine if sampling budget is defined using system properties.
+	 *
+	 * @return true if CPU or allocation budget is defined (CPU budget may be malformed), false otherwise
+	 */
+	public static boolean isConfigured() {
+		return CPU_BUDGET_PCT > 0 || Double.isNaN(CPU_BUDGET_PCT) || ALLOC_BUDGET_BYTES_SEC > 0;
+	}
+
+	/**
+	 * Parse CPU budget percentage defined by system property. Malformed value disables CPU budget, so that bad
+	 * configuration does not prevent sampler from starting.
+	 *
+	 * @param value percentage value
+	 * @return parsed percentage, {@code NaN} if value is malformed
+	 */
+	static double parsePct(String value) {
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException exc) {
+			return Double.NaN;
+		}
+	}
+
+	private void tokenizeFilters(String filter, List<ObjectName> filters) {
+		StringTokenizer itk = new StringTokenizer(filter, ";");
+		while (itk.hasMoreTokens()) {
+			String token = itk.nextToken();
+			try {
+				filters.add(new ObjectName(token));
+			} catch (MalformedObjectNameException ex) {
+				errors.add(new IllegalArgumentException("Invalid low priority MBean filter '" + token + "', ignored",
+						ex));
+			}
+		}
+	}
+
+	/**
+	 * Obtain errors of malformed budget configuration found when this budget was created. Malformed CPU budget
+	 * disables CPU budget, malformed low priority filters are ignored.
+	 *
+	 * @return list of configuration errors, empty if configuration is valid
+	 */
+	public List<IllegalArgumentException> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Determine if this budget is enforced: CPU or allocation budget is defined and supported by java runtime.
+	 *
+	 * @return true if budget is enforced, false otherwise
+	 */
+	public boolean isEnabled() {
+		return (cpuBudgetPct > 0 && cpuSupported) || (allocBudget > 0 && allocSupported);
+	}
+
+	/**
+	 * Determine if next sample should be skipped due to stretched sampling period. Called once when every sampling
+	 * activity starts.
+	 *
+	 * @return true if sample should be skipped, false otherwise
+	 */
+	public synchronized boolean skipSample() {
+		boolean skip = (cycleIndex++ % stretch) != 0;
+		if (skip) {
+			skipCount++;
+		}
+		return skip;
+	}
+
+	/**
+	 * Determine if a given MBean should be skipped during this sample, because low priority MBeans are shed.
+	 *
+	 * @param name MBean object name
+	 * @return true if MBean is shed, false otherwise
+	 */
+	public boolean isShed(ObjectName name) {
+		if (!shedding) {
+			return false;
+		}
+		for (ObjectName filter : lowPriority) {
+			if (filter.apply(name)) {
+				shedMBeanCount++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Mark beginning of sampling cost measurement on a current thread.
+	 *
+	 * @return true if cost of current thread is measured, false if it can't be measured, e.g. current thread is a
+	 *         virtual thread
+	 */
+	public boolean begin() {
+		shedMBeanCount = 0;
+		cycleCpuStart = cpuSupported ? threadMXBean().getCurrentThreadCpuTime() : 0;
+		cycleAllocStart = allocSupported ? threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+		return cycleCpuStart >= 0 && cycleAllocStart >= 0; // -1 is returned for virtual threads
+	}
+
+	/**
+	 * Mark end of sampling cost measurement on a current thread, compare measured cost with the budget and adjust
+	 * sampling restrictions.
+	 *
+	 * @return decision made during this sample
+	 */
+	public synchronized String end() {
+		long now = System.nanoTime();
+		long cpuNanos = cpuSupported ? threadMXBean().getCurrentThreadCpuTime() - cycleCpuStart : 0;
+		long allocBytes = allocSupported
+				? threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - cycleAllocStart : 0;
+		long elapsed = lastCycleEnd < 0 ? 0 : now - lastCycleEnd;
+		lastCycleEnd = now;
+		if (elapsed <= 0) {
+			return lastDecision; // need a full sampling interval to measure
+		}
+		lastCpuPct = cpuNanos * 100.0 / elapsed;
+		lastAllocRate = allocBytes * 1000000000.0 / elapsed;
+
+		double load = 0;
+		if (cpuBudgetPct > 0 && cpuSupported) {
+			load = Math.max(load, lastCpuPct / cpuBudgetPct);
+		}
+		if (allocBudget > 0 && allocSupported) {
+			load = Math.max(load, lastAllocRate / allocBudget);
+		}
+		lastLoad = load;
+
+		String decision = DECISION_NONE;
+		if (load > 1.0) {
+			if (!shedding && !lowPriority.isEmpty()) {
+				shedding = true;
+				decision = DECISION_SHED;
+			} else if (stretch < maxStretch) {
+				stretch = Math.min(maxStretch, stretch * 2);
+				decision = DECISION_STRETCH;
+			} else {
+				decision = DECISION_SATURATED;
+			}
+		} else if (load < RECOVER_LOAD) {
+			if (stretch > 1) {
+				stretch = Math.max(1, stretch / 2);
+				decision = DECISION_UNSTRETCH;
+			} else if (shedding) {
+				shedding = false;
+				decision = DECISION_RESTORE;
+			}
+		}
+		if (decision != DECISION_NONE) {
+			decisionCount++;
+			lastDecision = decision;
+		}
+		return decision;
+	}
+
+	private java.lang.management.ThreadMXBean threadMXBean() {
+		return threadMXBean != null ? threadMXBean : ManagementFactory.getThreadMXBean();
+	}
+
+	/**
+	 * Obtain current sampling period stretch factor.
+	 *
+	 * @return stretch factor, {@code 1} if sampling period is not stretched
+	 */
+	public int getStretchFactor() {
+		return stretch;
+	}
+
+	/**
+	 * Determine if low priority MBeans are currently shed.
+	 *
+	 * @return true if low priority MBeans are shed, false otherwise
+	 */
+	public boolean isShedding() {
+		return shedding;
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public synchronized KeyValueStats getStats(Map<String, Object> stats) {
+		stats.put(STAT_BUDGET_CPU_PCT, lastCpuPct);
+		stats.put(STAT_BUDGET_ALLOC_BYTES_SEC, (long) lastAllocRate);
+		stats.put(STAT_BUDGET_LOAD, lastLoad);
+		stats.put(STAT_BUDGET_STRETCH_FACTOR, stretch);
+		stats.put(STAT_BUDGET_SHED_ACTIVE, shedding);
+		stats.put(STAT_BUDGET_SHED_MBEAN_COUNT, shedMBeanCount);
+		stats.put(STAT_BUDGET_SKIP_COUNT, skipCount);
+		stats.put(STAT_BUDGET_DECISION, lastDecision);
+		stats.put(STAT_BUDGET_DECISION_COUNT, decisionCount);
+		return this;
+	}
+
+	@Override
+	public synchronized void resetStats() {
+		skipCount = 0;
+		decisionCount = 0;
+	}
+}
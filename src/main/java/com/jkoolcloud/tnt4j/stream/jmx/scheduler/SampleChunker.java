@@ -0,0 +1,295 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.ActivityListener;
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.core.Property;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+import com.jkoolcloud.tnt4j.tracker.Tracker;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+
+/**
+ * <p>
+ * This class implements chunked reporting of sampled MBean snapshots. Instead of accumulating all MBean snapshots of a
+ * sampling cycle within a single activity, completed snapshots are flushed to the tracker during the cycle as
+ * separate chunk activities, bounded by number of properties and/or estimated formatted size. Snapshots remaining at
+ * the end of the cycle are reported within the sampling activity itself along with {@code SampleContext} snapshot, so
+ * both memory held by sampling activity and sink message size are bounded.
+ * </p>
+ * <p>
+ * Chunks of a cycle are correlated using cycle id: tracking id of the sampling activity, which is set as correlator of
+ * every chunk activity and of the sampling activity itself. Every chunk activity starts with {@value #CHUNK_SNAPSHOT}
+ * snapshot defining cycle id and chunk index, number of chunks flushed before sampling activity is reported as
+ * {@code chunk.last.count} sampling statistic. When staged sampling pipeline is enabled, chunk activities are passed to
+ * the pipeline ahead of sampling activity, so they are formatted and written by pipeline stage threads.
+ * </p>
+ * <p>
+ * Chunking is enabled by setting {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.chunk.properties} system property to
+ * maximum number of properties per chunk and/or {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.chunk.bytes} system
+ * property to maximum estimated formatted size of chunk in bytes. Single MBean snapshot is never split, so snapshot
+ * exceeding the bounds is flushed as a chunk of its own.
+ * </p>
+ *
+ * @see SampleHandlerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleChunker implements KeyValueStats {
+	public static String STAT_CHUNK_MAX_PROPERTIES = "chunk.max.properties";
+	public static String STAT_CHUNK_MAX_BYTES = "chunk.max.bytes";
+	public static String STAT_CHUNK_LAST_COUNT = "chunk.last.count";
+	public static String STAT_CHUNK_TOTAL_COUNT = "chunk.total.count";
+	public static String STAT_CHUNK_TOTAL_BYTES = "chunk.total.bytes";
+
+	public static final String CHUNK_SNAPSHOT = "SampleChunk";
+	public static final String PROP_CYCLE_ID = "cycle.id";
+	public static final String PROP_CHUNK_INDEX = "chunk.index";
+	public static final String PROP_CHUNK_PROPERTIES = "chunk.properties";
+
+	public static final int MAX_PROPERTIES = Integer.getInteger("com.jkoolcloud.tnt4j.stream.jmx.sampler.chunk.properties",
+			0);
+	public static final long MAX_BYTES = Long.getLong("com.jkoolcloud.tnt4j.stream.jmx.sampler.chunk.bytes", 0);
+
+	/**
+	 * Estimated formatted size of numeric and boolean values
+	 */
+	private static final int VALUE_SIZE = 12;
+
+	private final int maxProperties;
+	private final long maxBytes;
+
+	private TrackingActivity cycle;
+	private Tracker tracker;
+	private ActivityListener owner;
+	private MetricsEndpoint.Slot metrics;
+	private SamplePipeline pipeline;
+	private SampleTiming timing;
+	private final List<PropertySnapshot> pending = new ArrayList<PropertySnapshot>();
+	private int pendingProperties = 0;
+	private long pendingBytes = 0;
+	private int chunkIndex = 0;
+
+	private int lastCount = 0;
+	private long totalCount = 0, totalBytes = 0;
+
+	/**
+	 * Create new instance of {@code SampleChunker} with chunk bounds defined by system properties.
+	 */
+	public SampleChunker() {
+		this(MAX_PROPERTIES, MAX_BYTES);
+	}
+
+	/**
+	 * Create new instance of {@code SampleChunker} with given chunk bounds.
+	 *
+	 * @param maxProperties maximum number of properties per chunk, {@code 0} if not bounded
+	 * @param maxBytes maximum estimated formatted size of chunk in bytes, {@code 0} if not bounded
+	 * @throws IllegalArgumentException if none of the bounds is positive
+	 */
+	public SampleChunker(int maxProperties, long maxBytes) {
+		if (maxProperties <= 0 && maxBytes <= 0) {
+			throw new IllegalArgumentException("Chunk bounds must be positive: " + maxProperties + ", " + maxBytes);
+		}
+		this.maxProperties = maxProperties;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Determine if chunking is configured using system properties.
+	 *
+	 * @return true if any of chunk bounds is defined, false otherwise
+	 */
+	public static boolean isConfigured() {
+		return MAX_PROPERTIES > 0 || MAX_BYTES > 0;
+	}
+
+	/**
+	 * Set metrics endpoint slot, which snapshots of flushed chunks are staged into, so that metrics endpoint serves
+	 * complete sampling cycle once sampling activity snapshots are published.
+	 *
+	 * @param slot metrics endpoint slot, {@code null} if metrics are not published
+	 */
+	public synchronized void setMetricsSlot(MetricsEndpoint.Slot slot) {
+		this.metrics = slot;
+	}
+
+	/**
+	 * Set sampling pipeline timing, which format and sink times of chunks reported by sampling thread are recorded
+	 * into.
+	 *
+	 * @param timing sampling pipeline timing, {@code null} if not recorded
+	 */
+	public synchronized void setTiming(SampleTiming timing) {
+		this.timing = timing;
+	}
+
+	/**
+	 * Set staged sampling pipeline, which chunk activities are passed to instead of being reported by sampling thread.
+	 *
+	 * @param pipeline staged sampling pipeline, {@code null} to report chunks by sampling thread
+	 */
+	public synchronized void setPipeline(SamplePipeline pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * Begin sampling cycle of a given activity. Chunking is applied only to activities created by a tracker, which is
+	 * used to report chunks.
+	 *
+	 * @param activity sampling activity
+	 * @param owner listener handling sampling activity, which is not notified about chunk activities
+	 * @return true if snapshots of the cycle are chunked, false otherwise
+	 */
+	public synchronized boolean beginCycle(Activity activity, ActivityListener owner) {
+		this.owner = owner;
+		pending.clear();
+		pendingProperties = 0;
+		pendingBytes = 0;
+		chunkIndex = 0;
+		cycle = null;
+		tracker = null;
+		if (metrics != null) {
+			metrics.discard(); // left over by incomplete cycle
+		}
+		if (activity instanceof TrackingActivity && ((TrackingActivity) activity).getTracker() != null) {
+			cycle = (TrackingActivity) activity;
+			tracker = cycle.getTracker();
+			cycle.setCorrelator(cycle.getTrackingId());
+		}
+		return cycle != null;
+	}
+
+	/**
+	 * Add a sampled MBean snapshot to current chunk. Current chunk is flushed to tracker first, if adding the snapshot
+	 * would exceed chunk bounds.
+	 *
+	 * @param snapshot sampled MBean snapshot
+	 * @return true if snapshot was added to chunk, false if snapshots of current cycle are not chunked
+	 */
+	public synchronized boolean add(PropertySnapshot snapshot) {
+		if (cycle == null) {
+			return false;
+		}
+		long bytes = estimateSize(snapshot);
+		if (!pending.isEmpty() && ((maxProperties > 0 && pendingProperties + snapshot.size() > maxProperties)
+				|| (maxBytes > 0 && pendingBytes + bytes > maxBytes))) {
+			flush();
+		}
+		pending.add(snapshot);
+		pendingProperties += snapshot.size();
+		pendingBytes += bytes;
+		return true;
+	}
+
+	/**
+	 * End sampling cycle: snapshots not flushed so far are added to sampling activity, which is reported as the last
+	 * chunk of the cycle.
+	 *
+	 * @param activity sampling activity
+	 */
+	public synchronized void endCycle(Activity activity) {
+		if (cycle != activity) {
+			return;
+		}
+		for (PropertySnapshot snapshot : pending) {
+			activity.addSnapshot(snapshot);
+		}
+		totalBytes += pendingBytes;
+		pending.clear();
+		lastCount = chunkIndex;
+		cycle = null;
+		tracker = null;
+	}
+
+	private void flush() {
+		TrackingActivity chunk = tracker.newActivity(cycle.getSeverity(), cycle.getName());
+		if (owner != null) {
+			chunk.removeActivityListener(owner); // tracker attaches configured listener to every activity
+		}
+		chunk.setCorrelator(cycle.getTrackingId());
+		chunk.start();
+		PropertySnapshot chunkInfo = new PropertySnapshot(cycle.getName(), CHUNK_SNAPSHOT);
+		chunkInfo.add(PROP_CYCLE_ID, cycle.getTrackingId());
+		chunkInfo.add(PROP_CHUNK_INDEX, ++chunkIndex);
+		chunkInfo.add(PROP_CHUNK_PROPERTIES, pendingProperties);
+		chunk.addSnapshot(chunkInfo);
+		for (PropertySnapshot snapshot : pending) {
+			chunk.addSnapshot(snapshot);
+		}
+		chunk.stop();
+		if (metrics != null) {
+			metrics.stage(chunk.getSnapshots());
+		}
+		if (pipeline != null) {
+			pipeline.submit(tracker, chunk, false);
+		} else if (timing != null) {
+			timing.report(tracker, chunk);
+		} else {
+			tracker.tnt(chunk);
+		}
+
+		totalCount++;
+		totalBytes += pendingBytes;
+		pending.clear();
+		pendingProperties = 0;
+		pendingBytes = 0;
+	}
+
+	/**
+	 * Estimate formatted size of a given snapshot: every property is assumed to be formatted as snapshot name, property
+	 * key and value.
+	 */
+	private static long estimateSize(PropertySnapshot snapshot) {
+		int nameSize = snapshot.getName().length() + 2;
+		long size = 0;
+		for (Property prop : snapshot.getSnapshot()) {
+			Object value = prop.getValue();
+			size += nameSize + prop.getKey().length()
+					+ (value instanceof String ? ((String) value).length() + 2 : VALUE_SIZE);
+		}
+		return size;
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public synchronized KeyValueStats getStats(Map<String, Object> stats) {
+		stats.put(STAT_CHUNK_MAX_PROPERTIES, maxProperties);
+		stats.put(STAT_CHUNK_MAX_BYTES, maxBytes);
+		stats.put(STAT_CHUNK_LAST_COUNT, lastCount);
+		stats.put(STAT_CHUNK_TOTAL_COUNT, totalCount);
+		stats.put(STAT_CHUNK_TOTAL_BYTES, totalBytes);
+		return this;
+	}
+
+	@Override
+	public synchronized void resetStats() {
+		totalCount = 0;
+		totalBytes = 0;
+	}
+}
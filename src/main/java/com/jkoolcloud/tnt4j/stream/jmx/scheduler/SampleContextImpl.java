@@ -17,11 +17,12 @@ package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
 
 import javax.management.MBeanServerConnection;
 
+import com.jkoolcloud.tnt4j.stream.jmx.core.LatchedSampleContext;
 import com.jkoolcloud.tnt4j.stream.jmx.core.SampleContext;
 
 /**
  * <p>
- * This class provides implementation of {@link SampleContext} and used by {@link SampleHandlerImpl}.
+ * This class provides implementation of {@link LatchedSampleContext} and used by {@link SampleHandlerImpl}.
  * </p>
  * 
  * @see SampleContext
@@ -29,7 +30,7 @@ import com.jkoolcloud.tnt4j.stream.jmx.core.SampleContext;
  * 
  * @version $Revision: 1 $
  */
-public class SampleContextImpl implements SampleContext {
+public class SampleContextImpl implements LatchedSampleContext {
 	SampleHandlerImpl handle;
 
 	protected SampleContextImpl(SampleHandlerImpl lst) {
@@ -91,4 +92,14 @@ public class SampleContextImpl implements SampleContext {
 	public long getTotalErrorCount() {
 		return handle.errorCount;
 	}
-}
\ No newline at end of file
+
+	@Override
+	public long getTotalTransitionCount() {
+		return handle.totalTransitionCount;
+	}
+
+	@Override
+	public long getTotalSuppressedCount() {
+		return handle.totalSuppressedCount;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * This class provides access to virtual thread based executors used to run blocking MBean server calls. Virtual
+ * threads are resolved dynamically, so this class loads and runs on any supported java runtime. When virtual threads
+ * are not supported by the runtime or not enabled using {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.virtual.threads}
+ * system property, {@code null} is returned and callers fall back to platform threads.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleExecutors {
+	public static final boolean VIRTUAL_THREADS = Boolean.getBoolean("com.jkoolcloud.tnt4j.stream.jmx.sampler.virtual.threads");
+	public static final int FETCH_CONCURRENCY = Integer.getInteger("com.jkoolcloud.tnt4j.stream.jmx.sampler.fetch.concurrency", 64);
+
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+	private static final Method NEW_VIRTUAL_EXECUTOR;
+
+	private static ExecutorService virtualExecutor;
+	private static volatile Throwable lastError;
+
+	static {
+		Method ofVirtual = null, builderName = null, builderFactory = null, newExecutor = null;
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			builderName = builderClass.getMethod("name", String.class, long.class);
+			builderFactory = builderClass.getMethod("factory");
+			newExecutor = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (Throwable ex) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = builderName;
+		BUILDER_FACTORY = builderFactory;
+		NEW_VIRTUAL_EXECUTOR = newExecutor;
+	}
+
+	private SampleExecutors() {
+	}
+
+	/**
+	 * Determine if running java runtime supports virtual threads.
+	 *
+	 * @return true if virtual threads are supported, false otherwise
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Determine if virtual threads are enabled and supported by running java runtime.
+	 *
+	 * @return true if virtual threads are enabled and supported, false otherwise
+	 */
+	public static boolean isVirtualThreadEnabled() {
+		return VIRTUAL_THREADS && isVirtualThreadSupported();
+	}
+
+	/**
+	 * Obtain shared executor running every submitted task on a new virtual thread.
+	 *
+	 * @return virtual thread per task executor, {@code null} if virtual threads are not enabled or not supported
+	 */
+	public static synchronized ExecutorService getVirtualExecutor() {
+		if (virtualExecutor == null && isVirtualThreadEnabled()) {
+			try {
+				virtualExecutor = (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+			} catch (Throwable ex) {
+				lastError = unwrap(ex);
+			}
+		}
+		return virtualExecutor;
+	}
+
+	/**
+	 * Create a thread factory producing virtual threads named using a given prefix.
+	 *
+	 * @param prefix thread name prefix
+	 * @return virtual thread factory, {@code null} if virtual threads are not enabled or not supported
+	 */
+	public static ThreadFactory newVirtualThreadFactory(String prefix) {
+		if (!isVirtualThreadEnabled()) {
+			return null;
+		}
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = BUILDER_NAME.invoke(builder, prefix + "-", 1L);
+			return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+		} catch (Throwable ex) {
+			lastError = unwrap(ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Obtain error of the last failed virtual thread executor or thread factory creation.
+	 *
+	 * @return last creation error, {@code null} if none failed
+	 */
+	public static Throwable getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Create error reported when virtual threads are enabled using
+	 * {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.virtual.threads} system property, but platform threads are used
+	 * instead. Error message states which threads are actually used and why virtual threads are not.
+	 *
+	 * @param work description of work run by executor, e.g. {@code "MBean attribute fetch"}
+	 * @param fallback description of threads used instead, e.g. {@code "sampling thread"}
+	 * @return fallback error, caused by the last creation error if any
+	 */
+	public static Throwable newFallbackError(String work, String fallback) {
+		String reason = isVirtualThreadSupported() ? "virtual thread creation failed"
+				: "virtual threads are not supported by java runtime " + System.getProperty("java.version");
+		return new UnsupportedOperationException(work + " runs on " + fallback + ": " + reason, lastError);
+	}
+
+	private static Throwable unwrap(Throwable ex) {
+		return ex instanceof InvocationTargetException && ex.getCause() != null ? ex.getCause() : ex;
+	}
+}
@@ -18,18 +18,27 @@ package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
 import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.management.*;
 import javax.management.relation.MBeanServerNotificationFilter;
 
+import com.jkoolcloud.tnt4j.TrackingLogger;
 import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.core.OpType;
+import com.jkoolcloud.tnt4j.core.Property;
 import com.jkoolcloud.tnt4j.core.PropertySnapshot;
 import com.jkoolcloud.tnt4j.stream.jmx.conditions.*;
 import com.jkoolcloud.tnt4j.stream.jmx.core.SampleContext;
 import com.jkoolcloud.tnt4j.stream.jmx.core.SampleListener;
 import com.jkoolcloud.tnt4j.stream.jmx.core.UnsupportedAttributeException;
+import com.jkoolcloud.tnt4j.stream.jmx.jfr.SampleEventRecorder;
+import com.jkoolcloud.tnt4j.stream.jmx.jfr.SampleEvents;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming.Phase;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
 import com.jkoolcloud.tnt4j.utils.Utils;
 
 /**
@@ -45,7 +54,7 @@ import com.jkoolcloud.tnt4j.utils.Utils;
  * 
  * @version $Revision: 1 $
  */
-public class SampleHandlerImpl implements SampleHandler, NotificationListener {
+public class SampleHandlerImpl implements RuleHandler, NotificationListener {
 	public static String STAT_NOOP_COUNT = "noop.count";
 	public static String STAT_SAMPLE_COUNT = "sample.count";
 	public static String STAT_TOTAL_ERROR_COUNT = "total.error.count";
@@ -54,27 +63,52 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 	public static String STAT_CONDITION_COUNT = "condition.count";
 	public static String STAT_LISTENER_COUNT = "listener.count";
 	public static String STAT_TOTAL_ACTION_COUNT = "total.action.count";
+	public static String STAT_TOTAL_CONDITION_EVAL_COUNT = "total.condition.eval.count";
+	public static String STAT_TOTAL_TRANSITION_COUNT = "total.condition.transition.count";
+	public static String STAT_TOTAL_SUPPRESSED_COUNT = "total.condition.suppressed.count";
+	public static String STAT_TOTAL_INCOMPLETE_COUNT = "total.condition.incomplete.count";
 	public static String STAT_TOTAL_METRIC_COUNT = "total.metric.count";
 	public static String STAT_LAST_METRIC_COUNT = "last.metric.count";
 	public static String STAT_SAMPLE_TIME_USEC = "sample.time.usec";
+	public static String STAT_FETCH_VIRTUAL = "fetch.virtual.threads";
+
+	private static final int MAX_PENDING_ERRORS = 16;
 
 	private final ReentrantLock lock = new ReentrantLock();
 
 	String mbeanIncFilter, mbeanExcFilter;
-	long sampleCount = 0, totalMetricCount = 0, totalActionCount = 0;
+	long sampleCount = 0, totalMetricCount = 0, totalActionCount = 0, totalEvalCount = 0;
+	long totalTransitionCount = 0, totalSuppressedCount = 0, totalIncompleteCount = 0;
 	long lastMetricCount = 0, lastSampleTimeUsec = 0;
 	long noopCount = 0, excCount = 0, errorCount = 0;
 
+	ExecutorService fetchExecutor = SampleExecutors.getVirtualExecutor();
+	Semaphore fetchPermits = new Semaphore(Math.max(1, SampleExecutors.FETCH_CONCURRENCY));
+	SampleBudget budget;
+	SampleAggregator aggregator;
+	SampleChunker chunker;
+	MetricsEndpoint.Slot metrics;
+	AsyncActionDispatcher actionDispatcher;
+	SamplePipeline pipeline;
+	SampleTiming timing = new SampleTiming();
+	SampleEventRecorder events = SampleEvents.recorder();
+
 	MBeanServerConnection mbeanServer;
+	SampleHandlerImpl parent;
 	SampleContext context;
 	Throwable lastError;
+	volatile Map<String, Object> lastStats;
 
 	MBeanServerNotificationFilter MBeanFilter;
 	Vector<ObjectName> iFilters = new Vector<ObjectName>(5, 5), eFilters = new Vector<ObjectName>(5, 5);
-	Map<AttributeCondition, AttributeAction> conditions = new LinkedHashMap<AttributeCondition, AttributeAction>(89);
+	ConditionIndex conditions = new ConditionIndex();
+	RuleEngine rules = new RuleEngine();
+	DerivedMetrics derived = new DerivedMetrics();
 	ConcurrentHashMap<ObjectName, MBeanInfo> mbeans = new ConcurrentHashMap<ObjectName, MBeanInfo>(89);
 
 	Vector<SampleListener> listeners = new Vector<SampleListener>(5, 5);
+	List<Throwable> pendingErrors = new ArrayList<Throwable>(2);
+	Vector<KeyValueStats> statsProviders = new Vector<KeyValueStats>(5, 5);
 
 	/**
 	 * Create new instance of {@code SampleHandlerImpl} with a given MBean server and a set of filters.
@@ -88,6 +122,106 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 		mbeanIncFilter = incFilter;
 		mbeanExcFilter = excFilter;
 		context = new SampleContextImpl(this);
+		if (SampleExecutors.VIRTUAL_THREADS && fetchExecutor == null) {
+			doError(SampleExecutors.newFallbackError("MBean attribute fetch", "sampling thread"));
+		}
+		addStatsProvider(timing);
+		addStatsProvider(rules);
+		addStatsProvider(derived);
+		if (DerivedMetrics.isConfigured()) {
+			for (IllegalArgumentException ex : derived.addAll(DerivedMetrics.DERIVED_METRICS)) {
+				doError(ex); // malformed definition skipped
+			}
+		}
+		if (SampleBudget.isConfigured()) {
+			SampleBudget sBudget = new SampleBudget();
+			for (IllegalArgumentException ex : sBudget.getErrors()) {
+				doError(ex);
+			}
+			if (fetchExecutor != null) {
+				doError(new UnsupportedOperationException(
+						"Sampling budget disabled: cost of MBean attribute fetches on virtual threads can't be measured"));
+			} else if (sBudget.isEnabled()) {
+				budget = sBudget;
+				addStatsProvider(budget);
+			}
+		}
+		if (SampleAggregator.isConfigured()) {
+			setAggregator(new SampleAggregator());
+		}
+		if (SampleChunker.isConfigured()) {
+			chunker = new SampleChunker();
+			chunker.setTiming(timing);
+			addStatsProvider(chunker);
+		}
+		if (MetricsEndpoint.isConfigured()) {
+			try {
+				setMetricsSlot(MetricsEndpoint.getInstance().newSlot(getServerId()));
+			} catch (IOException ex) {
+				doError(ex);
+			}
+		}
+		if (AsyncActionDispatcher.isEnabled()) {
+			AsyncActionDispatcher.OverflowPolicy policy = AsyncActionDispatcher.DEFAULT_OVERFLOW;
+			try {
+				policy = AsyncActionDispatcher.OverflowPolicy.parse(AsyncActionDispatcher.ACTION_OVERFLOW);
+			} catch (IllegalArgumentException ex) {
+				doError(new IllegalArgumentException(ex.getMessage() + ", using " + policy, ex));
+			}
+			actionDispatcher = new AsyncActionDispatcher(AsyncActionDispatcher.ACTION_THREADS,
+					AsyncActionDispatcher.ACTION_QUEUE_SIZE, policy);
+			addStatsProvider(actionDispatcher);
+		}
+		if (SamplePipeline.isEnabled()) {
+			SamplePipeline.OverflowPolicy policy = SamplePipeline.DEFAULT_OVERFLOW;
+			try {
+				policy = SamplePipeline.OverflowPolicy.parse(SamplePipeline.OVERFLOW);
+			} catch (IllegalArgumentException ex) {
+				doError(new IllegalArgumentException(ex.getMessage() + ", using " + policy, ex));
+			}
+			pipeline = new SamplePipeline(SamplePipeline.QUEUE_SIZE, policy, SamplePipeline.PRIORITY_DOMAINS, timing);
+			addStatsProvider(pipeline);
+			if (chunker != null) {
+				chunker.setPipeline(pipeline);
+			}
+		}
+	}
+
+	/**
+	 * Obtain identifier of sampled MBean server, used to label metrics published by this handler.
+	 *
+	 * @return MBean server identifier, {@link MetricsEndpoint#SAMPLER_LABEL} if it can't be obtained
+	 */
+	private String getServerId() {
+		try {
+			return String.valueOf(mbeanServer.getAttribute(MBeanServerDelegate.DELEGATE_NAME, "MBeanServerId"));
+		} catch (Exception ex) {
+			return MetricsEndpoint.SAMPLER_LABEL;
+		}
+	}
+
+	/**
+	 * Create new instance of {@code SampleHandlerImpl} sampling MBeans of a given parent handler MBean server matching
+	 * a given filter, e.g. for a burst of high resolution sampling. Created handler runs no threads of its own: it
+	 * shares fetch executor, asynchronous action dispatcher and staged pipeline of the parent handler and samples using
+	 * a copy of parent handler listeners. Shared resources are not released when created handler is closed.
+	 *
+	 * @param parent parent sample handler
+	 * @param incFilter MBean include filters semicolon separated
+	 */
+	SampleHandlerImpl(SampleHandlerImpl parent, String incFilter) {
+		this.parent = parent;
+		mbeanServer = parent.mbeanServer;
+		mbeanIncFilter = incFilter;
+		context = new SampleContextImpl(this);
+		fetchExecutor = parent.fetchExecutor;
+		fetchPermits = parent.fetchPermits;
+		actionDispatcher = parent.actionDispatcher;
+		pipeline = parent.pipeline;
+		addStatsProvider(timing);
+		synchronized (parent.listeners) {
+			listeners.addAll(parent.listeners);
+		}
 	}
 
 	/**
@@ -142,11 +276,15 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 	 * Load JMX beans based on a configured MBean filter list. All loaded MBeans are stored in {@link HashMap}.
 	 */
 	private void loadMBeans() {
+		Object discoveryEvent = events.beginDiscovery();
 		try {
 			tokenizeFilters(mbeanIncFilter, iFilters);
 			if (!Utils.isEmpty(mbeanExcFilter)) {
 				tokenizeFilters(mbeanExcFilter, eFilters);
 			}
+			if (!StreamJmx.SAMPLE_SELF) {
+				eFilters.add(new ObjectName(StreamJmx.JMX_FILTER_SELF));
+			}
 			listenForChanges();
 
 			// run inclusion
@@ -163,6 +301,8 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 		} catch (Exception ex) {
 			lastError = ex;
 			doError(ex);
+		} finally {
+			events.endDiscovery(discoveryEvent, mbeanIncFilter, mbeans.size());
 		}
 	}
 
@@ -192,20 +332,121 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 	 * @return number of metrics loaded from all MBeans
 	 */
 	private int sampleMBeans(Activity activity) {
+		if (fetchExecutor != null) {
+			return sampleMBeansAsync(activity);
+		}
 		int pCount = 0;
 		for (Entry<ObjectName, MBeanInfo> entry : mbeans.entrySet()) {
 			ObjectName name = entry.getKey();
+			if (budget != null && budget.isShed(name)) {
+				continue;
+			}
 			MBeanInfo info = entry.getValue();
 			MBeanAttributeInfo[] attr = info.getAttributes();
 
+			Object fetchEvent = events.beginFetch();
 			PropertySnapshot snapshot = new PropertySnapshot(name.getDomain(), name.getCanonicalName());
 			for (MBeanAttributeInfo jinfo : attr) {
 				AttributeSample sample = AttributeSample.newAttributeSample(activity, snapshot, mbeanServer, name,
 						jinfo);
+				long started = System.nanoTime(), now;
 				try {
-					if (doPre(sample)) {
+					boolean accepted = doPre(sample);
+					now = System.nanoTime();
+					timing.add(Phase.PRE, now - started);
+					if (accepted) {
+						started = now;
 						sample.sample(); // obtain a sample
+						now = System.nanoTime();
+						timing.add(Phase.FETCH, now - started);
+						started = now;
+						doPost(sample);
+						derived.update(sample);
+						timing.add(Phase.FLATTEN, System.nanoTime() - started);
+					}
+				} catch (Throwable ex) {
+					doError(sample, ex);
+				} finally {
+					if (sample.excludeNext()) {
+						excCount++;
+					}
+					started = System.nanoTime();
+					evalAttrConditions(sample);
+					timing.add(Phase.CONDITIONS, System.nanoTime() - started);
+				}
+			}
+			events.endFetch(fetchEvent, name, attr.length);
+			if (snapshot.size() > 0) {
+				pCount += snapshot.size();
+				addSnapshot(activity, snapshot);
+			}
+		}
+		return pCount;
+	}
+
+	/**
+	 * Sample MBeans fetching attribute values of every MBean on a separate (virtual) thread. Listeners and conditions
+	 * are always invoked on the sampling thread in MBean order, so only blocking MBean server calls run concurrently.
+	 * 
+	 * @param activity
+	 *            instance where sampled MBean attributes are stored
+	 * @return number of metrics loaded from all MBeans
+	 */
+	private int sampleMBeansAsync(Activity activity) {
+		List<PropertySnapshot> snapshots = new ArrayList<PropertySnapshot>(mbeans.size());
+		List<List<AttributeSample>> samples = new ArrayList<List<AttributeSample>>(mbeans.size());
+		List<boolean[]> accepted = new ArrayList<boolean[]>(mbeans.size());
+		List<Future<?>> fetches = new ArrayList<Future<?>>(mbeans.size());
+		for (Entry<ObjectName, MBeanInfo> entry : mbeans.entrySet()) {
+			ObjectName name = entry.getKey();
+			if (budget != null && budget.isShed(name)) {
+				continue;
+			}
+			MBeanAttributeInfo[] attr = entry.getValue().getAttributes();
+
+			PropertySnapshot snapshot = new PropertySnapshot(name.getDomain(), name.getCanonicalName());
+			List<AttributeSample> mbeanSamples = new ArrayList<AttributeSample>(attr.length);
+			List<AttributeSample> fetchList = new ArrayList<AttributeSample>(attr.length);
+			boolean[] preAccepted = new boolean[attr.length];
+			for (int i = 0; i < attr.length; i++) {
+				AttributeSample sample = AttributeSample.newAttributeSample(activity, snapshot, mbeanServer, name,
+						attr[i]);
+				mbeanSamples.add(sample);
+				long started = System.nanoTime();
+				try {
+					if (doPre(sample)) {
+						preAccepted[i] = true;
+						fetchList.add(sample);
+					}
+				} catch (Throwable ex) {
+					sample.setError(ex);
+				}
+				timing.add(Phase.PRE, System.nanoTime() - started);
+			}
+			snapshots.add(snapshot);
+			samples.add(mbeanSamples);
+			accepted.add(preAccepted);
+			fetches.add(fetchList.isEmpty() ? null : submitFetch(name, fetchList));
+		}
+
+		int pCount = 0;
+		for (int i = 0; i < snapshots.size(); i++) {
+			long started = System.nanoTime();
+			awaitFetch(fetches.get(i));
+			timing.add(Phase.FETCH, System.nanoTime() - started);
+			PropertySnapshot snapshot = snapshots.get(i);
+			List<AttributeSample> mbeanSamples = samples.get(i);
+			boolean[] preAccepted = accepted.get(i);
+			for (int j = 0; j < mbeanSamples.size(); j++) {
+				AttributeSample sample = mbeanSamples.get(j);
+				started = System.nanoTime();
+				try {
+					if (sample.getError() != null) {
+						doError(sample, sample.getError());
+					} else if (preAccepted[j]) {
 						doPost(sample);
+						derived.update(sample);
+						timing.add(Phase.FLATTEN, System.nanoTime() - started);
 					}
 				} catch (Throwable ex) {
 					doError(sample, ex);
@@ -213,32 +454,187 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 					if (sample.excludeNext()) {
 						excCount++;
 					}
+					started = System.nanoTime();
 					evalAttrConditions(sample);
+					timing.add(Phase.CONDITIONS, System.nanoTime() - started);
 				}
 			}
 			if (snapshot.size() > 0) {
 				pCount += snapshot.size();
-				activity.addSnapshot(snapshot);
+				addSnapshot(activity, snapshot);
 			}
+			// release references, so chunks flushed are not retained till the end of cycle
+			snapshots.set(i, null);
+			samples.set(i, null);
 		}
 		return pCount;
 	}
 
 	/**
-	 * Run and evaluate all registered conditions and invoke associated {@code MBeanAction} instances.
+	 * Add a sampled MBean snapshot to a given activity or accumulate it within aggregation window when
+	 * {@link SampleAggregator} is enabled. When {@link SampleChunker} is enabled, snapshot is added to current chunk
+	 * instead.
+	 *
+	 * @param activity sampling activity
+	 * @param snapshot sampled MBean snapshot
+	 */
+	private void addSnapshot(Activity activity, PropertySnapshot snapshot) {
+		if (aggregator != null) {
+			aggregator.add(snapshot);
+		} else if (chunker == null || !chunker.add(snapshot)) {
+			activity.addSnapshot(snapshot);
+		}
+	}
+
+	/**
+	 * Submit fetch of a given list of attribute samples to fetch executor. Number of concurrent fetches is bounded by
+	 * {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.fetch.concurrency} system property.
+	 *
+	 * @param name MBean object name
+	 * @param fetchList list of attribute samples to fetch
+	 * @return future of the submitted fetch
+	 */
+	private Future<?> submitFetch(final ObjectName name, final List<AttributeSample> fetchList) {
+		fetchPermits.acquireUninterruptibly();
+		try {
+			return fetchExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					Object fetchEvent = events.beginFetch();
+					try {
+						for (AttributeSample sample : fetchList) {
+							try {
+								sample.sample(); // obtain a sample
+							} catch (Throwable ex) {
+								sample.setError(ex);
+							}
+						}
+					} finally {
+						events.endFetch(fetchEvent, name, fetchList.size());
+						fetchPermits.release();
+					}
+				}
+			});
+		} catch (RuntimeException exc) {
+			fetchPermits.release();
+			throw exc;
+		}
+	}
+
+	/**
+	 * Wait for a submitted fetch to complete.
+	 *
+	 * @param fetch future of the submitted fetch, may be {@code null}
+	 */
+	private static void awaitFetch(Future<?> fetch) {
+		if (fetch == null) {
+			return;
+		}
+		boolean interrupted = false;
+		while (true) {
+			try {
+				fetch.get();
+				break;
+			} catch (InterruptedException exc) {
+				interrupted = true;
+			} catch (ExecutionException exc) {
+				break;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Run and evaluate registered conditions relevant to a given sample and invoke associated {@code MBeanAction}
+	 * instances. Actions are dispatched asynchronously when {@link AsyncActionDispatcher} is enabled.
 	 * 
 	 * @param sample MBean sample instance
 	 * @see AttributeSample
+	 * @see ConditionIndex
 	 */
 	protected void evalAttrConditions(AttributeSample sample) {
-		for (Map.Entry<AttributeCondition, AttributeAction> entry : conditions.entrySet()) {
-			if (entry.getKey().evaluate(sample)) {
+		rules.update(sample); // index sampled value for cycle rules
+		ConditionIndex.Entry[] entries = conditions.get(sample.getObjetName(), sample.getAttributeInfo().getName());
+		totalEvalCount += entries.length;
+		for (ConditionIndex.Entry entry : entries) {
+			if (evaluate(entry.getCondition(), sample)) {
 				totalActionCount++;
-				entry.getValue().action(context, entry.getKey(), sample);
+				events.conditionFired(entry.getCondition().getName(), entry.getAction().getClass().getName(),
+						sample.getObjetName(), sample.getAttributeInfo().getName());
+				if (actionDispatcher != null) {
+					actionDispatcher.dispatch(context, entry.getCondition(), entry.getAction(), sample);
+				} else {
+					entry.getAction().action(context, entry.getCondition(), sample);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invoke actions of cycle rules evaluated to true. Actions are queued to asynchronous action dispatcher when
+	 * enabled, otherwise they are run by sampling thread: action failure is reported to sample listeners and does not
+	 * prevent remaining actions from running.
+	 *
+	 * @param activity sampling activity
+	 * @param fired list of rules evaluated to true
+	 * @see RuleEngine#evaluate(SampleEventRecorder)
+	 */
+	protected void runRuleActions(Activity activity, List<RuleEngine.FiredRule> fired) {
+		for (RuleEngine.FiredRule rule : fired) {
+			if (actionDispatcher != null) {
+				actionDispatcher.dispatch(context, rule.getRule(), rule.getAction(), activity);
+			} else {
+				try {
+					rule.getAction().action(context, rule.getRule(), activity);
+				} catch (Throwable ex) {
+					doError(ex);
+				}
 			}
 		}
 	}
 
+	/**
+	 * Evaluate a given condition, accounting state transitions and suppressed firings of latched conditions and
+	 * incomplete sampling cycles of expression conditions. First incomplete sampling cycle of expression condition is
+	 * reported as an error, naming the missing attributes.
+	 * 
+	 * @param cond condition to evaluate
+	 * @param sample MBean sample instance
+	 * @return true if condition evaluated, false otherwise
+	 * @see LatchedCondition
+	 * @see LatchingCondition
+	 * @see ExpressionCondition
+	 */
+	private boolean evaluate(AttributeCondition cond, AttributeSample sample) {
+		AttributeCondition target = cond instanceof LatchingCondition ? ((LatchingCondition) cond).getCondition()
+				: cond;
+		ExpressionCondition eCond = target instanceof ExpressionCondition ? (ExpressionCondition) target : null;
+		LatchedCondition lCond = cond instanceof LatchedCondition ? (LatchedCondition) cond : null;
+		if (eCond == null && lCond == null) {
+			return cond.evaluate(sample);
+		}
+		long incomplete = eCond == null ? 0 : eCond.getIncompleteCount();
+		long transitions = lCond == null ? 0 : lCond.getTransitionCount();
+		long suppressed = lCond == null ? 0 : lCond.getSuppressedCount();
+		boolean fired = cond.evaluate(sample);
+		if (lCond != null) {
+			totalTransitionCount += lCond.getTransitionCount() - transitions;
+			totalSuppressedCount += lCond.getSuppressedCount() - suppressed;
+		}
+		if (eCond != null) {
+			long count = eCond.getIncompleteCount();
+			totalIncompleteCount += count - incomplete;
+			if (incomplete == 0 && count > 0) {
+				doError(new IllegalStateException("Condition " + cond.getName() + " not evaluated for "
+						+ sample.getObjetName() + ": attributes " + eCond.getMissingAttributes(sample.getObjetName())
+						+ " not sampled"));
+			}
+		}
+		return fired;
+	}
+
 	/**
 	 * Finish processing of the activity sampling
 	 * 
@@ -255,15 +651,26 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 		snapshot.add(STAT_CONDITION_COUNT, conditions.size());
 		snapshot.add(STAT_LISTENER_COUNT, listeners.size());
 		snapshot.add(STAT_TOTAL_ACTION_COUNT, totalActionCount);
+		snapshot.add(STAT_TOTAL_CONDITION_EVAL_COUNT, totalEvalCount);
+		snapshot.add(STAT_TOTAL_TRANSITION_COUNT, totalTransitionCount);
+		snapshot.add(STAT_TOTAL_SUPPRESSED_COUNT, totalSuppressedCount);
+		snapshot.add(STAT_TOTAL_INCOMPLETE_COUNT, totalIncompleteCount);
 		snapshot.add(STAT_TOTAL_METRIC_COUNT, totalMetricCount);
 		snapshot.add(STAT_LAST_METRIC_COUNT, lastMetricCount);
 		snapshot.add(STAT_SAMPLE_TIME_USEC, lastSampleTimeUsec);
+		snapshot.add(STAT_FETCH_VIRTUAL, fetchExecutor != null);
 
 		// get custom statistics
 		Map<String, Object> stats = new HashMap<String, Object>();
 		doStats(stats);
 		snapshot.addAll(stats);
 
+		// publish statistics for self-monitoring MBean
+		for (Property prop : snapshot.getSnapshot()) {
+			stats.put(prop.getKey(), prop.getValue());
+		}
+		lastStats = stats;
+
 		activity.addSnapshot(snapshot);
 		return snapshot;
 	}
@@ -273,9 +680,17 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 		lock.lock();
 		try {
 			lastError = null; // reset last sample error
+			runPendingErrors();
+			long started = System.nanoTime();
 			runPre(activity);
+			timing.add(Phase.PRE, System.nanoTime() - started);
+			if ((!activity.isNoop()) && (budget != null) && budget.skipSample()) {
+				activity.setType(OpType.NOOP); // sampling period stretched to stay within budget
+			}
 			if ((!activity.isNoop()) && (mbeans.isEmpty())) {
+				started = System.nanoTime();
 				loadMBeans();
+				timing.add(Phase.DISCOVERY, System.nanoTime() - started);
 			} else if (activity.isNoop()) {
 				noopCount++;
 			}
@@ -290,18 +705,52 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 			lock.lock();
 			try {
 				long started = System.nanoTime();
+				Object cycleEvent = events.beginCycle();
+				if (budget != null && !budget.begin()) {
+					doError(new UnsupportedOperationException("Sampling budget disabled: cost of sampling thread "
+							+ Thread.currentThread().getName() + " can't be measured"));
+					removeStatsProvider(budget);
+					budget = null;
+				}
 				sampleCount++;
+				// emit aggregates of elapsed window, cycle is not reported otherwise
+				boolean held = aggregator != null && !aggregator.beginCycle(activity);
+				rules.beginCycle();
+				if (chunker != null) {
+					chunker.beginCycle(activity, this);
+				}
 				lastMetricCount = sampleMBeans(activity);
 				totalMetricCount += lastMetricCount;
+				if (chunker != null) {
+					chunker.endCycle(activity); // snapshots not flushed within chunks are reported by activity
+				}
+
+				// evaluate cycle rules over values sampled within this cycle
+				long rulesStarted = System.nanoTime();
+				runRuleActions(activity, rules.evaluate(events));
+				timing.add(Phase.CONDITIONS, System.nanoTime() - rulesStarted);
 				lastSampleTimeUsec = (System.nanoTime() - started) / 1000;
 
 				// run post listeners
+				long postStarted = System.nanoTime();
 				runPost(activity);
+				if (metrics != null && !held) {
+					metrics.publish(activity.getSnapshots()); // served by metrics endpoint until next cycle
+				}
+				timing.add(Phase.POST, System.nanoTime() - postStarted);
+				timing.complete(Phase.PRE, Phase.POST);
 				if (activity.isNoop()) {
 					noopCount++;
 				}
+				if (budget != null) {
+					budget.end();
+				}
 				// compute sampling statistics
 				finish(activity);
+				if (held) {
+					activity.setType(OpType.NOOP); // not reported to the sink
+				}
+				events.endCycle(cycleEvent, activity.getName(), mbeans.size(), lastMetricCount, errorCount);
 			} catch (Throwable ex) {
 				doError(ex);
 			} finally {
@@ -310,6 +759,69 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 		}
 	}
 
+	/**
+	 * Report aggregates of current partial emission window, so that samples accumulated since the last emitted window
+	 * are not lost when sampler is stopped. Aggregates are reported within a separate activity, which is passed to
+	 * staged sampling pipeline when enabled.
+	 *
+	 * @param logger tracking logger used to report sampling activities
+	 * @param name activity name
+	 */
+	public void flush(TrackingLogger logger, String name) {
+		lock.lock();
+		try {
+			if (aggregator == null) {
+				return;
+			}
+			TrackingActivity activity = logger.newActivity(OpLevel.INFO, name);
+			activity.removeActivityListener(this); // tracker attaches configured listener to every activity
+			activity.start();
+			if (!aggregator.flush(activity)) {
+				return;
+			}
+			activity.stop();
+			if (pipeline != null) {
+				pipeline.submit(logger, activity);
+			} else {
+				logger.tnt(activity);
+			}
+		} catch (Throwable ex) {
+			doError(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Release resources used by this handler: MBean registration listener is removed, metrics endpoint slot is closed,
+	 * asynchronous actions and pipelined activities queued so far are completed within a given timeout.
+	 *
+	 * @param timeout maximum time to wait for queued actions and activities
+	 * @param unit time unit of timeout
+	 */
+	public void close(long timeout, TimeUnit unit) {
+		if (MBeanFilter != null) {
+			try {
+				mbeanServer.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+			} catch (Exception ex) {
+				doError(ex);
+			}
+			MBeanFilter = null;
+		}
+		if (parent != null) {
+			return; // action dispatcher and pipeline are owned by parent handler
+		}
+		if (actionDispatcher != null) {
+			actionDispatcher.shutdown(timeout, unit);
+		}
+		if (pipeline != null) {
+			pipeline.close(timeout, unit);
+		}
+		if (metrics != null) {
+			metrics.close();
+		}
+	}
+
 	/**
 	 * Reset all counters maintained by sampling handler
 	 * 
@@ -321,6 +833,10 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 			sampleCount = 0;
 			totalMetricCount = 0;
 			totalActionCount = 0;
+			totalEvalCount = 0;
+			totalTransitionCount = 0;
+			totalSuppressedCount = 0;
+			totalIncompleteCount = 0;
 			lastMetricCount = 0;
 			lastSampleTimeUsec = 0;
 			noopCount = 0;
@@ -445,16 +961,41 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 	 * 
 	 * @param ex exception associated with the error
 	 */
-	private void doError(Throwable ex) {
+	void doError(Throwable ex) {
 		errorCount++;
 		lastError = ex;
 		synchronized (this.listeners) {
+			if (listeners.isEmpty()) {
+				if (pendingErrors.size() < MAX_PENDING_ERRORS) {
+					pendingErrors.add(ex); // e.g. configuration error reported before listeners are added
+				}
+				return;
+			}
 			for (SampleListener lst : listeners) {
 				lst.error(context, ex);
 			}
 		}
 	}
 
+	/**
+	 * Run {@link com.jkoolcloud.tnt4j.stream.jmx.core.SampleListener#error(SampleContext, Throwable)} for all
+	 * registered listeners with errors reported while no listeners were registered, e.g. configuration errors found
+	 * when this handler was created.
+	 */
+	private void runPendingErrors() {
+		synchronized (this.listeners) {
+			if (pendingErrors.isEmpty() || listeners.isEmpty()) {
+				return;
+			}
+			for (Throwable ex : pendingErrors) {
+				for (SampleListener lst : listeners) {
+					lst.error(context, ex);
+				}
+			}
+			pendingErrors.clear();
+		}
+	}
+
 	/**
 	 * Run {@link com.jkoolcloud.tnt4j.stream.jmx.core.SampleListener#getStats(SampleContext, Map)} for all registered
 	 * listeners.
@@ -462,6 +1003,11 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 	 * @param stats map of key/value statistics
 	 */
 	private void doStats(Map<String, Object> stats) {
+		synchronized (this.statsProviders) {
+			for (KeyValueStats provider : statsProviders) {
+				provider.getStats(stats);
+			}
+		}
 		synchronized (this.listeners) {
 			for (SampleListener lst : listeners) {
 				lst.getStats(context, stats);
@@ -469,12 +1015,117 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 		}
 	}
 
+	/**
+	 * Obtain sampling pipeline timing maintained by this handler.
+	 *
+	 * @return sampling pipeline timing instance
+	 */
+	public SampleTiming getTiming() {
+		return timing;
+	}
+
+	/**
+	 * Obtain staged sampling-to-sink pipeline maintained by this handler.
+	 *
+	 * @return sampling pipeline instance, {@code null} if pipeline is not enabled
+	 */
+	public SamplePipeline getPipeline() {
+		return pipeline;
+	}
+
+	/**
+	 * Set aggregator accumulating sampled MBean snapshots over emission window instead of reporting them every
+	 * sample.
+	 *
+	 * @param aggregator sample aggregator instance, {@code null} to report every sample
+	 * @return instance of this sample handler
+	 */
+	public SampleHandler setAggregator(SampleAggregator aggregator) {
+		lock.lock();
+		try {
+			if (this.aggregator != null) {
+				removeStatsProvider(this.aggregator);
+			}
+			this.aggregator = aggregator;
+			if (aggregator != null) {
+				addStatsProvider(aggregator);
+			}
+			return this;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Set metrics endpoint slot, which sampled MBean snapshots are published into at the end of each sample.
+	 *
+	 * @param slot metrics endpoint slot, {@code null} to stop publishing
+	 * @return instance of this sample handler
+	 */
+	public SampleHandler setMetricsSlot(MetricsEndpoint.Slot slot) {
+		lock.lock();
+		try {
+			if (this.metrics != null) {
+				removeStatsProvider(this.metrics);
+				this.metrics.close();
+			}
+			this.metrics = slot;
+			if (slot != null) {
+				addStatsProvider(slot);
+			}
+			if (chunker != null) {
+				chunker.setMetricsSlot(slot);
+			}
+			return this;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Obtain statistics reported within the last {@code SampleContext} snapshot.
+	 *
+	 * @return map of key/value statistics, {@code null} if no sample completed yet
+	 */
+	public Map<String, Object> getLastStats() {
+		return lastStats;
+	}
+
+	/**
+	 * Add a statistics provider, which statistics are included into {@code SampleContext} snapshot at the end of each
+	 * sample.
+	 *
+	 * @param provider statistics provider instance
+	 * @return instance of this sample handler
+	 */
+	public SampleHandler addStatsProvider(KeyValueStats provider) {
+		statsProviders.add(provider);
+		return this;
+	}
+
+	/**
+	 * Remove a statistics provider.
+	 *
+	 * @param provider statistics provider instance
+	 * @return instance of this sample handler
+	 */
+	public SampleHandler removeStatsProvider(KeyValueStats provider) {
+		statsProviders.remove(provider);
+		return this;
+	}
+
 	@Override
 	public SampleHandler register(AttributeCondition cond, AttributeAction action) {
 		conditions.put(cond, (action == null ? NoopAction.NOOP : action));
 		return this;
 	}
 
+	@Override
+	public SampleHandler register(CycleRule rule, RuleAction action) {
+		rules.put(rule, action);
+		return this;
+	}
+
 	@Override
 	public SampleHandler register(AttributeCondition cond) {
 		register(cond, NoopAction.NOOP);
@@ -513,6 +1164,9 @@ public class SampleHandlerImpl implements SampleHandler, NotificationListener {
 				}
 			} else if (mbeanEvent.getType().equalsIgnoreCase(MBeanServerNotification.UNREGISTRATION_NOTIFICATION)) {
 				mbeans.remove(mbeanEvent.getMBeanName());
+				conditions.remove(mbeanEvent.getMBeanName());
+				rules.reset(mbeanEvent.getMBeanName());
+				derived.reset(mbeanEvent.getMBeanName());
 				runUnRegister(mbeanEvent.getMBeanName());
 			}
 		}
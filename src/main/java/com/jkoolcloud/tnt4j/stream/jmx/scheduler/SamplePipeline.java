@@ -0,0 +1,508 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+import com.jkoolcloud.tnt4j.sink.EventSink;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleTiming.Phase;
+import com.jkoolcloud.tnt4j.tracker.Tracker;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+
+/**
+ * <p>
+ * This class implements staged sampling-to-sink pipeline, so that slow sinks (e.g. stalled sockets) do not delay
+ * sampling. Sampled activities are passed from sampling (fetch) thread to format stage thread, which formats them using
+ * formatter of logger event sink, and formatted entries are passed to sink stage thread writing them to the sink.
+ * Stages are connected by bounded queues.
+ * </p>
+ * <p>
+ * Formatted activities are written using {@link EventSink#write(Object, Object...)} and do not go through
+ * {@link Tracker#tnt(TrackingActivity)}, since it would format activity again on the sink stage. So event sink filter is
+ * applied by format stage, while tracker counters and sink log listeners do not account pipelined activities: written
+ * and filtered activities are counted by pipeline statistics instead. Activities formatted as empty strings (e.g.
+ * chunk activities merged by columnar formatter into the row of sampling activity) are not written.
+ * </p>
+ * <p>
+ * When format queue is full, a configured {@link OverflowPolicy} is applied to sampled activity and counted. Sink
+ * queue always blocks format stage, so stalled sink fills format queue, where the policy is applied. Queue depths, drop
+ * counts and blocked time are reported as sampling statistics.
+ * </p>
+ * <p>
+ * Pipeline is enabled by setting {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.pipeline.queue.size} system property to
+ * capacity of stage queues. Overflow policy is defined by
+ * {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.pipeline.overflow} system property, priority domains by
+ * {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.pipeline.priority.domains} system property. Stage threads are daemon
+ * threads.
+ * </p>
+ *
+ * @see SampleActivityTask
+ * @see SampleHandlerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class SamplePipeline implements KeyValueStats {
+	public static String STAT_PIPELINE_FORMAT_QUEUE_DEPTH = "pipeline.format.queue.depth";
+	public static String STAT_PIPELINE_SINK_QUEUE_DEPTH = "pipeline.sink.queue.depth";
+	public static String STAT_PIPELINE_SUBMIT_COUNT = "pipeline.submit.count";
+	public static String STAT_PIPELINE_WRITE_COUNT = "pipeline.write.count";
+	public static String STAT_PIPELINE_FILTER_COUNT = "pipeline.filter.count";
+	public static String STAT_PIPELINE_ERROR_COUNT = "pipeline.error.count";
+	public static String STAT_PIPELINE_DROP_NEWEST_COUNT = "pipeline.drop.newest.count";
+	public static String STAT_PIPELINE_DROP_OLDEST_COUNT = "pipeline.drop.oldest.count";
+	public static String STAT_PIPELINE_DROP_SNAPSHOT_COUNT = "pipeline.drop.snapshot.count";
+	public static String STAT_PIPELINE_BLOCK_COUNT = "pipeline.block.count";
+	public static String STAT_PIPELINE_BLOCK_TIME_USEC = "pipeline.block.time.usec";
+
+	public static final int QUEUE_SIZE = Integer.getInteger("com.jkoolcloud.tnt4j.stream.jmx.sampler.pipeline.queue.size",
+			0);
+	public static final String OVERFLOW = System.getProperty("com.jkoolcloud.tnt4j.stream.jmx.sampler.pipeline.overflow",
+			"block");
+	public static final String PRIORITY_DOMAINS = System
+			.getProperty("com.jkoolcloud.tnt4j.stream.jmx.sampler.pipeline.priority.domains", "java.lang");
+
+	public static final OverflowPolicy DEFAULT_OVERFLOW = OverflowPolicy.BLOCK;
+
+	private static final AtomicInteger THREAD_SEQ = new AtomicInteger(0);
+
+	/**
+	 * Policies applied when format queue is full
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Block sampling thread until queue has space
+		 */
+		BLOCK,
+		/**
+		 * Drop newly sampled activity
+		 */
+		DROP_NEWEST,
+		/**
+		 * Drop the oldest queued activity and queue newly sampled one
+		 */
+		DROP_OLDEST,
+		/**
+		 * Keep only snapshots of priority domains in newly sampled activity, drop the oldest queued activity and queue
+		 * the newly sampled one
+		 */
+		PRIORITY;
+
+		/**
+		 * Obtain policy for a given name, e.g. {@code drop-oldest}
+		 *
+		 * @param name policy name
+		 * @return policy instance
+		 * @throws IllegalArgumentException if policy name is not supported
+		 */
+		public static OverflowPolicy parse(String name) {
+			try {
+				return valueOf(name.trim().toUpperCase().replace('-', '_'));
+			} catch (IllegalArgumentException ex) {
+				throw new IllegalArgumentException("Unsupported pipeline overflow policy: " + name, ex);
+			}
+		}
+	}
+
+	/**
+	 * Bounded queue connecting pipeline stages. Consumer waiting on empty queue is signalled when entries are queued,
+	 * producers waiting on full queue are signalled when entries are taken and all waiting threads are signalled when
+	 * queue is closed.
+	 */
+	static class StageQueue<E> {
+		private final ArrayDeque<E> queue;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+		private final int capacity;
+		private volatile int size = 0;
+		private volatile boolean closed = false;
+
+		StageQueue(int capacity) {
+			this.capacity = Math.max(1, capacity);
+			this.queue = new ArrayDeque<E>(Math.min(this.capacity, 1024));
+		}
+
+		boolean offer(E entry) {
+			lock.lock();
+			try {
+				if (closed || queue.size() >= capacity) {
+					return false;
+				}
+				enqueue(entry);
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		boolean put(E entry) {
+			lock.lock();
+			try {
+				while (!closed && queue.size() >= capacity) {
+					notFull.awaitUninterruptibly();
+				}
+				if (closed) {
+					return false;
+				}
+				enqueue(entry);
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		E poll() {
+			lock.lock();
+			try {
+				return dequeue();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		E take() {
+			lock.lock();
+			try {
+				while (!closed && queue.isEmpty()) {
+					notEmpty.awaitUninterruptibly();
+				}
+				return dequeue(); // null if closed and drained
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void enqueue(E entry) {
+			queue.offer(entry);
+			size = queue.size();
+			notEmpty.signal();
+		}
+
+		private E dequeue() {
+			E entry = queue.poll();
+			if (entry != null) {
+				size = queue.size();
+				notFull.signal();
+			}
+			return entry;
+		}
+
+		void close() {
+			lock.lock();
+			try {
+				closed = true;
+				notEmpty.signalAll();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		boolean isClosed() {
+			return closed;
+		}
+
+		int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Entry passed between pipeline stages
+	 */
+	private static class Entry {
+		final Tracker tracker;
+		final TrackingActivity activity;
+		final boolean complete;
+		String text;
+
+		Entry(Tracker tracker, TrackingActivity activity, boolean complete) {
+			this.tracker = tracker;
+			this.activity = activity;
+			this.complete = complete;
+		}
+	}
+
+	private final OverflowPolicy policy;
+	private final Set<String> priorityDomains = new HashSet<String>();
+	private final SampleTiming timing;
+	private final StageQueue<Entry> formatQueue;
+	private final StageQueue<Entry> sinkQueue;
+	private final Thread formatThread;
+	private final Thread sinkThread;
+
+	private final AtomicLong submitCount = new AtomicLong();
+	private final AtomicLong writeCount = new AtomicLong();
+	private final AtomicLong filterCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong dropNewestCount = new AtomicLong();
+	private final AtomicLong dropOldestCount = new AtomicLong();
+	private final AtomicLong dropSnapshotCount = new AtomicLong();
+	private final AtomicLong blockCount = new AtomicLong();
+	private final AtomicLong blockNanos = new AtomicLong();
+
+	/**
+	 * Create new instance of {@code SamplePipeline} configured by system properties.
+	 *
+	 * @param timing sampling pipeline timing instance, format and sink stage times are recorded into
+	 */
+	public SamplePipeline(SampleTiming timing) {
+		this(QUEUE_SIZE, OverflowPolicy.parse(OVERFLOW), PRIORITY_DOMAINS, timing);
+	}
+
+	/**
+	 * Create new instance of {@code SamplePipeline}.
+	 *
+	 * @param queueSize capacity of stage queues
+	 * @param policy policy applied when format queue is full
+	 * @param priorityDomains comma separated list of MBean domains kept by {@link OverflowPolicy#PRIORITY} policy
+	 * @param timing sampling pipeline timing instance, format and sink stage times are recorded into
+	 */
+	public SamplePipeline(int queueSize, OverflowPolicy policy, String priorityDomains, SampleTiming timing) {
+		this.policy = policy;
+		this.timing = timing;
+		StringTokenizer tk = new StringTokenizer(priorityDomains, ",");
+		while (tk.hasMoreTokens()) {
+			this.priorityDomains.add(tk.nextToken().trim());
+		}
+		formatQueue = new StageQueue<Entry>(queueSize);
+		sinkQueue = new StageQueue<Entry>(queueSize);
+		int seq = THREAD_SEQ.incrementAndGet();
+		formatThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runFormat();
+			}
+		}, "stream-jmx-format-" + seq);
+		sinkThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runSink();
+			}
+		}, "stream-jmx-sink-" + seq);
+		formatThread.setDaemon(true);
+		sinkThread.setDaemon(true);
+		formatThread.start();
+		sinkThread.start();
+	}
+
+	/**
+	 * Determine if staged pipeline is enabled using system properties.
+	 *
+	 * @return true if enabled, false otherwise
+	 */
+	public static boolean isEnabled() {
+		return QUEUE_SIZE > 0;
+	}
+
+	/**
+	 * Submit sampled activity to be formatted and written to event sink of a given tracker (e.g. tracking logger). When
+	 * format queue is full, configured overflow policy is applied. Activity submitted after pipeline is closed is
+	 * dropped.
+	 *
+	 * @param tracker tracker, which event sink activity is written to
+	 * @param activity sampled activity
+	 * @return true if activity was queued, false if it was dropped
+	 */
+	public boolean submit(Tracker tracker, TrackingActivity activity) {
+		return submit(tracker, activity, true);
+	}
+
+	/**
+	 * Submit activity to be formatted and written to event sink of a given tracker (e.g. tracking logger). When format
+	 * queue is full, configured overflow policy is applied. Activity submitted after pipeline is closed is dropped.
+	 * Format and sink times are accumulated until activity completing sampling cycle is formatted and written, so
+	 * chunks flushed within a cycle are accounted to the cycle.
+	 *
+	 * @param tracker tracker, which event sink activity is written to
+	 * @param activity sampled activity or chunk of sampling cycle
+	 * @param complete true if activity completes sampling cycle, false for chunks flushed within a cycle
+	 * @return true if activity was queued, false if it was dropped
+	 */
+	public boolean submit(Tracker tracker, TrackingActivity activity, boolean complete) {
+		Entry entry = new Entry(tracker, activity, complete);
+		submitCount.incrementAndGet();
+		if (formatQueue.offer(entry)) {
+			return true;
+		}
+		if (formatQueue.isClosed()) {
+			dropNewestCount.incrementAndGet(); // submitted after pipeline was closed
+			return false;
+		}
+		switch (policy) {
+		case BLOCK:
+			blockCount.incrementAndGet();
+			long started = System.nanoTime();
+			boolean queued = formatQueue.put(entry);
+			blockNanos.addAndGet(System.nanoTime() - started);
+			if (!queued) {
+				dropNewestCount.incrementAndGet();
+			}
+			return queued;
+		case DROP_NEWEST:
+			dropNewestCount.incrementAndGet();
+			return false;
+		case PRIORITY:
+			keepPriority(activity);
+			return dropOldestAndOffer(entry);
+		default:
+			return dropOldestAndOffer(entry);
+		}
+	}
+
+	/**
+	 * Queue a given entry for formatting, dropping the oldest queued entries until it fits or pipeline is closed.
+	 */
+	private boolean dropOldestAndOffer(Entry entry) {
+		while (!formatQueue.offer(entry)) {
+			if (formatQueue.isClosed()) {
+				dropNewestCount.incrementAndGet();
+				return false;
+			}
+			if (formatQueue.poll() != null) {
+				dropOldestCount.incrementAndGet();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove snapshots of MBeans not belonging to priority domains from a given activity. Snapshots not representing
+	 * MBeans ({@code SampleContext}, {@code SampleChunk}) are kept.
+	 */
+	private void keepPriority(TrackingActivity activity) {
+		try {
+			Iterator<Snapshot> it = activity.getSnapshots().iterator();
+			while (it.hasNext()) {
+				Snapshot snap = it.next();
+				if (snap.getName().indexOf(':') > 0 && !priorityDomains.contains(snap.getCategory())) {
+					it.remove();
+					dropSnapshotCount.incrementAndGet();
+				}
+			}
+		} catch (UnsupportedOperationException exc) {
+		}
+	}
+
+	private void runFormat() {
+		Entry entry;
+		while ((entry = formatQueue.take()) != null) {
+			try {
+				EventSink sink = entry.tracker.getEventSink();
+				if (sink == null || !sink.isLoggable(entry.activity)) {
+					filterCount.incrementAndGet();
+					continue;
+				}
+				timing.bind();
+				try {
+					entry.text = sink.getEventFormatter().format(entry.activity);
+				} finally {
+					timing.unbind();
+				}
+				if (entry.text != null && !entry.text.isEmpty() && !sinkQueue.put(entry)) {
+					dropNewestCount.incrementAndGet(); // sink stage closed on timeout
+				}
+			} catch (Throwable exc) {
+				errorCount.incrementAndGet();
+			} finally {
+				if (entry.complete) {
+					timing.complete(Phase.FORMAT, Phase.FORMAT);
+				}
+			}
+		}
+		sinkQueue.close();
+	}
+
+	private void runSink() {
+		Entry entry;
+		while ((entry = sinkQueue.take()) != null) {
+			long started = System.nanoTime();
+			try {
+				entry.tracker.getEventSink().write(entry.text);
+				writeCount.incrementAndGet();
+			} catch (Throwable exc) {
+				errorCount.incrementAndGet();
+			} finally {
+				timing.add(Phase.SINK, System.nanoTime() - started);
+				if (entry.complete) {
+					timing.complete(Phase.SINK, Phase.SINK);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close pipeline: activities queued so far are formatted and written within a given timeout, activities submitted
+	 * afterwards are dropped.
+	 *
+	 * @param timeout maximum time to wait for queued activities
+	 * @param unit time unit of timeout
+	 */
+	public void close(long timeout, TimeUnit unit) {
+		formatQueue.close();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		try {
+			formatThread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+			sinkThread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+		} catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		sinkQueue.close();
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public KeyValueStats getStats(Map<String, Object> stats) {
+		stats.put(STAT_PIPELINE_FORMAT_QUEUE_DEPTH, formatQueue.size());
+		stats.put(STAT_PIPELINE_SINK_QUEUE_DEPTH, sinkQueue.size());
+		stats.put(STAT_PIPELINE_SUBMIT_COUNT, submitCount.get());
+		stats.put(STAT_PIPELINE_WRITE_COUNT, writeCount.get());
+		stats.put(STAT_PIPELINE_FILTER_COUNT, filterCount.get());
+		stats.put(STAT_PIPELINE_ERROR_COUNT, errorCount.get());
+		stats.put(STAT_PIPELINE_DROP_NEWEST_COUNT, dropNewestCount.get());
+		stats.put(STAT_PIPELINE_DROP_OLDEST_COUNT, dropOldestCount.get());
+		stats.put(STAT_PIPELINE_DROP_SNAPSHOT_COUNT, dropSnapshotCount.get());
+		stats.put(STAT_PIPELINE_BLOCK_COUNT, blockCount.get());
+		stats.put(STAT_PIPELINE_BLOCK_TIME_USEC, blockNanos.get() / 1000);
+		return this;
+	}
+
+	@Override
+	public void resetStats() {
+		submitCount.set(0);
+		writeCount.set(0);
+		filterCount.set(0);
+		errorCount.set(0);
+		dropNewestCount.set(0);
+		dropOldestCount.set(0);
+		dropSnapshotCount.set(0);
+		blockCount.set(0);
+		blockNanos.set(0);
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.tracker.Tracker;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+
+/**
+ * <p>
+ * This class accumulates sampling pipeline timing broken down by {@link Phase}. Phase times are accumulated within a
+ * current cycle using {@link #add(Phase, long)} and moved to last cycle and cumulative totals when phase completes
+ * using {@link #complete(Phase, Phase)}.
+ * </p>
+ * <p>
+ * Sampling phases (pre through post) complete before {@code SampleContext} snapshot is built, so they are reported
+ * for the current cycle. Format and sink phases run after the sampling activity is reported, so their last values
+ * are reported within the next cycle snapshot. Format time is recorded by formatters running on a thread timing is
+ * bound to, see {@link #record(Phase, long)}. Sink time excludes format time, so phases do not overlap. Chunks flushed
+ * within a cycle are accounted to format and sink times of the cycle.
+ * </p>
+ *
+ * @see SampleHandlerImpl
+ * @see SampleActivityTask
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleTiming implements KeyValueStats {
+	/**
+	 * Sampling pipeline phases.
+	 */
+	public enum Phase {
+		/**
+		 * Activity and attribute pre listeners
+		 */
+		PRE("pre"),
+		/**
+		 * MBean discovery
+		 */
+		DISCOVERY("discovery"),
+		/**
+		 * MBean attribute value fetch
+		 */
+		FETCH("fetch"),
+		/**
+		 * Attribute post listeners, flattening attribute values into snapshot properties
+		 */
+		FLATTEN("flatten"),
+		/**
+		 * Attribute condition evaluation and actions
+		 */
+		CONDITIONS("conditions"),
+		/**
+		 * Activity post listeners
+		 */
+		POST("post"),
+		/**
+		 * Activity formatting
+		 */
+		FORMAT("format"),
+		/**
+		 * Sink write, excluding formatting
+		 */
+		SINK("sink");
+
+		private final String lastKey;
+		private final String totalKey;
+
+		private Phase(String name) {
+			this.lastKey = "phase." + name + ".last.usec";
+			this.totalKey = "phase." + name + ".total.usec";
+		}
+
+		/**
+		 * Statistics key of the last cycle phase time.
+		 *
+		 * @return last cycle phase time key
+		 */
+		public String getLastKey() {
+			return lastKey;
+		}
+
+		/**
+		 * Statistics key of the cumulative phase time.
+		 *
+		 * @return cumulative phase time key
+		 */
+		public String getTotalKey() {
+			return totalKey;
+		}
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+	private static final ThreadLocal<SampleTiming> CURRENT = new ThreadLocal<SampleTiming>();
+
+	private final long[] cycle = new long[PHASES.length];
+	private final long[] last = new long[PHASES.length];
+	private final long[] total = new long[PHASES.length];
+
+	/**
+	 * Add time spent in a given phase within current cycle. Must be called by a thread running the phase.
+	 *
+	 * @param phase pipeline phase
+	 * @param nanos time spent in nanoseconds
+	 */
+	public void add(Phase phase, long nanos) {
+		cycle[phase.ordinal()] += nanos;
+	}
+
+	/**
+	 * Obtain time accumulated within current cycle for a given phase.
+	 *
+	 * @param phase pipeline phase
+	 * @return time accumulated in nanoseconds
+	 */
+	public long get(Phase phase) {
+		return cycle[phase.ordinal()];
+	}
+
+	/**
+	 * Complete current cycle for a given range of phases: accumulated phase times become last cycle times and are
+	 * added to cumulative totals.
+	 *
+	 * @param from first phase to complete (inclusive)
+	 * @param to last phase to complete (inclusive)
+	 */
+	public synchronized void complete(Phase from, Phase to) {
+		for (int i = from.ordinal(); i <= to.ordinal(); i++) {
+			last[i] = cycle[i];
+			total[i] += cycle[i];
+			cycle[i] = 0;
+		}
+	}
+
+	/**
+	 * Bind this timing instance to a current thread, so phase times can be recorded using
+	 * {@link #record(Phase, long)} by code not aware of the sampler, e.g. formatters.
+	 */
+	public void bind() {
+		CURRENT.set(this);
+	}
+
+	/**
+	 * Unbind timing instance from a current thread.
+	 */
+	public void unbind() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Record time spent in a given phase using timing instance bound to a current thread. Does nothing if no timing
+	 * instance is bound.
+	 *
+	 * @param phase pipeline phase
+	 * @param nanos time spent in nanoseconds
+	 */
+	public static void record(Phase phase, long nanos) {
+		SampleTiming timing = CURRENT.get();
+		if (timing != null) {
+			timing.add(phase, nanos);
+		}
+	}
+
+	/**
+	 * Report a given activity using a tracker on a current thread. Time spent by formatters is recorded as
+	 * {@link Phase#FORMAT}, remaining reporting time as {@link Phase#SINK}. Phases are not completed, so that activities
+	 * reported within a cycle (chunks) are accounted to the cycle.
+	 *
+	 * @param tracker tracker used to report activity
+	 * @param activity activity to report
+	 */
+	public void report(Tracker tracker, TrackingActivity activity) {
+		long formatted = get(Phase.FORMAT);
+		long started = System.nanoTime();
+		bind();
+		try {
+			tracker.tnt(activity);
+		} finally {
+			unbind();
+			add(Phase.SINK, Math.max(0, System.nanoTime() - started - (get(Phase.FORMAT) - formatted)));
+		}
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public synchronized KeyValueStats getStats(Map<String, Object> stats) {
+		for (int i = 0; i < PHASES.length; i++) {
+			stats.put(PHASES[i].getLastKey(), last[i] / 1000);
+			stats.put(PHASES[i].getTotalKey(), total[i] / 1000);
+		}
+		return this;
+	}
+
+	@Override
+	public synchronized void resetStats() {
+		for (int i = 0; i < PHASES.length; i++) {
+			last[i] = 0;
+			total[i] = 0;
+		}
+	}
+}
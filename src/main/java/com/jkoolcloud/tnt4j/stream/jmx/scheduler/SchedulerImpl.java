@@ -15,13 +15,19 @@
  */
 package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
 
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 import javax.management.MBeanServerConnection;
 
 import com.jkoolcloud.tnt4j.ActivityScheduler;
+import com.jkoolcloud.tnt4j.TrackingLogger;
+import com.jkoolcloud.tnt4j.core.OpLevel;
 import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeAction;
 import com.jkoolcloud.tnt4j.stream.jmx.conditions.AttributeCondition;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.CycleRule;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.RuleAction;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.RuleHandler;
 import com.jkoolcloud.tnt4j.stream.jmx.conditions.SampleHandler;
 import com.jkoolcloud.tnt4j.stream.jmx.core.Sampler;
 
@@ -32,12 +38,15 @@ import com.jkoolcloud.tnt4j.stream.jmx.core.Sampler;
  * 
  * @version $Revision: 1 $
  */
-public class SchedulerImpl extends ActivityScheduler implements Scheduler {
+public class SchedulerImpl extends ActivityScheduler implements RuleScheduler {
 	protected SampleHandler listener;
 	protected long period;
 	protected TimeUnit timeUnit;
 	protected String incFilter;
 	protected String excFilter;
+	protected StreamJmx selfMBean;
+	protected volatile boolean scheduled = false;
+	protected volatile SampleActivityTask activityTask;
 
 	/**
 	 * Create new instance of {@code SchedulerImpl} with a given name, MBean server, sampling period. Filter is set to
@@ -117,6 +126,14 @@ public class SchedulerImpl extends ActivityScheduler implements Scheduler {
 		listener.register(cond, action);
 	}
 
+	@Override
+	public void register(CycleRule rule, RuleAction action) {
+		if (!(listener instanceof RuleHandler)) {
+			throw new UnsupportedOperationException("sample handler does not support cycle rules: " + listener.getClass().getName());
+		}
+		((RuleHandler) listener).register(rule, action);
+	}
+
 	@Override
 	public SampleHandler getSampleHandler() {
 		return listener;
@@ -141,4 +158,69 @@ public class SchedulerImpl extends ActivityScheduler implements Scheduler {
 	public void run() {
 		this.schedule(this.getName(), period, timeUnit);
 	}
+
+	@Override
+	public void schedule(String name, long delay, long period, TimeUnit tunit, OpLevel level) {
+		super.schedule(name, delay, period, tunit, level);
+		scheduled = true;
+	}
+
+	/**
+	 * Cancel scheduled sampling. Does nothing if sampling was not scheduled.
+	 */
+	@Override
+	public void cancel(boolean mayInterrupt) {
+		if (scheduled) {
+			super.cancel(mayInterrupt);
+		}
+	}
+
+	/**
+	 * Create new sampling activity task. When sample handler is {@link SampleHandlerImpl}, returned task measures
+	 * format and sink write time of every sampling activity and passes it to staged sampling pipeline, when enabled.
+	 */
+	@Override
+	protected Runnable newActivityTask(TrackingLogger lg, String name, OpLevel level) {
+		if (listener instanceof SampleHandlerImpl) {
+			SampleHandlerImpl handler = (SampleHandlerImpl) listener;
+			activityTask = new SampleActivityTask(lg, name, level, handler.getTiming(), handler.getPipeline());
+			return activityTask;
+		}
+		return super.newActivityTask(lg, name, level);
+	}
+
+	/**
+	 * Open scheduler and register self-monitoring {@link StreamJmx} MBean, unless disabled using
+	 * {@code com.jkoolcloud.tnt4j.stream.jmx.sampler.mbean.register} system property.
+	 */
+	@Override
+	public void open() throws IOException {
+		super.open();
+		if (StreamJmx.REGISTER_MBEAN && selfMBean == null) {
+			selfMBean = new StreamJmx(this);
+			selfMBean.register();
+		}
+	}
+
+	/**
+	 * Close scheduler: sampling is stopped and running sampling cycle is completed, then pending aggregates are
+	 * reported and sample handler resources are released before tracking logger is closed.
+	 */
+	@Override
+	public void close() {
+		if (selfMBean != null) {
+			selfMBean.unregister();
+			selfMBean = null;
+		}
+		cancel();
+		if (activityTask != null) {
+			activityTask.close(period, timeUnit); // running cycle may still submit its activity
+		}
+		if (listener instanceof SampleHandlerImpl) {
+			SampleHandlerImpl handler = (SampleHandlerImpl) listener;
+			handler.flush(getLogger(), getName());
+			handler.close(period, timeUnit);
+		}
+		super.close();
+	}
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.*;
+
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.SampleHandler;
+import com.jkoolcloud.tnt4j.stream.jmx.core.SampleContext;
+
+/**
+ * <p>
+ * This class implements self-monitoring {@code StreamJmx} MBean registered for every {@link Scheduler}. MBean exposes
+ * sample handler counters (see {@link SampleContext}) and all statistics reported within the last
+ * {@code SampleContext} snapshot (cycle timing, exclude counts, scheduler queue depths, listener statistics), so agent
+ * state can be observed using external JMX tools even when event sink is broken. Statistics are captured at the end of
+ * every sample, so reading MBean attributes never triggers statistics collection.
+ * </p>
+ * <p>
+ * MBeans are registered within platform MBean server using {@value #DOMAIN} domain, which is excluded from sampling by
+ * default.
+ * </p>
+ *
+ * @see SampleHandlerImpl
+ *
+ * @version $Revision: 1 $
+ */
+public class StreamJmx implements DynamicMBean {
+	public static final String DOMAIN = "com.jkoolcloud.tnt4j.stream.jmx";
+	public static final String TYPE = "StreamJmx";
+	public static final String JMX_FILTER_SELF = DOMAIN + ":type=" + TYPE + ",*";
+
+	public static final boolean REGISTER_MBEAN = Boolean
+			.parseBoolean(System.getProperty("com.jkoolcloud.tnt4j.stream.jmx.sampler.mbean.register", "true"));
+	public static final boolean SAMPLE_SELF = Boolean.getBoolean("com.jkoolcloud.tnt4j.stream.jmx.sampler.sample.self");
+
+	public static final String ATTR_NAME = "Name";
+	public static final String ATTR_PERIOD = "Period";
+	public static final String ATTR_INC_FILTER = "IncFilter";
+	public static final String ATTR_EXC_FILTER = "ExcFilter";
+	public static final String ATTR_SAMPLE_COUNT = "SampleCount";
+	public static final String ATTR_MBEAN_COUNT = "MBeanCount";
+	public static final String ATTR_TOTAL_METRIC_COUNT = "TotalMetricCount";
+	public static final String ATTR_LAST_METRIC_COUNT = "LastMetricCount";
+	public static final String ATTR_TOTAL_NOOP_COUNT = "TotalNoopCount";
+	public static final String ATTR_TOTAL_ERROR_COUNT = "TotalErrorCount";
+	public static final String ATTR_EXCLUDE_ATTR_COUNT = "ExcludeAttrCount";
+	public static final String ATTR_LAST_SAMPLE_USEC = "LastSampleUsec";
+	public static final String ATTR_LAST_ERROR = "LastError";
+	public static final String OP_RESET_COUNTERS = "resetCounters";
+
+	private static final AtomicInteger ID_SEQ = new AtomicInteger(0);
+	private static final String[] ATTR_NAMES = { ATTR_NAME, ATTR_PERIOD, ATTR_INC_FILTER, ATTR_EXC_FILTER,
+			ATTR_SAMPLE_COUNT, ATTR_MBEAN_COUNT, ATTR_TOTAL_METRIC_COUNT, ATTR_LAST_METRIC_COUNT, ATTR_TOTAL_NOOP_COUNT,
+			ATTR_TOTAL_ERROR_COUNT, ATTR_EXCLUDE_ATTR_COUNT, ATTR_LAST_SAMPLE_USEC, ATTR_LAST_ERROR };
+	private static final String[] ATTR_TYPES = { String.class.getName(), Long.class.getName(),
+			String.class.getName(), String.class.getName(), Long.class.getName(), Long.class.getName(),
+			Long.class.getName(), Long.class.getName(), Long.class.getName(), Long.class.getName(), Long.class.getName(),
+			Long.class.getName(), String.class.getName() };
+
+	private final Scheduler scheduler;
+	private ObjectName objectName;
+
+	private Set<String> infoKeys;
+	private MBeanInfo info;
+
+	/**
+	 * Create new instance of {@code StreamJmx} MBean for a given scheduler.
+	 *
+	 * @param scheduler scheduler instance to monitor
+	 */
+	public StreamJmx(Scheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Register this MBean within platform MBean server. Each registered instance gets unique {@code id} key, since
+	 * multiple samplers may share same name.
+	 *
+	 * @return registered MBean object name, {@code null} if registration failed
+	 */
+	public synchronized ObjectName register() {
+		if (objectName == null) {
+			try {
+				ObjectName oName = new ObjectName(DOMAIN + ":type=" + TYPE + ",name="
+						+ ObjectName.quote(scheduler.getName()) + ",id=" + ID_SEQ.incrementAndGet());
+				ManagementFactory.getPlatformMBeanServer().registerMBean(this, oName);
+				objectName = oName;
+			} catch (Exception ex) {
+				doError(ex);
+			}
+		}
+		return objectName;
+	}
+
+	/**
+	 * Unregister this MBean from platform MBean server.
+	 */
+	public synchronized void unregister() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception ex) {
+				doError(ex);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Report MBean registration error to sample listeners of monitored scheduler.
+	 *
+	 * @param ex exception associated with the error
+	 */
+	private void doError(Throwable ex) {
+		SampleHandler handler = scheduler.getSampleHandler();
+		if (handler instanceof SampleHandlerImpl) {
+			((SampleHandlerImpl) handler).doError(ex);
+		}
+	}
+
+	/**
+	 * Obtain registered MBean object name.
+	 *
+	 * @return registered MBean object name, {@code null} if not registered
+	 */
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	private Map<String, Object> lastStats() {
+		SampleHandler handler = scheduler.getSampleHandler();
+		if (handler instanceof SampleHandlerImpl) {
+			Map<String, Object> stats = ((SampleHandlerImpl) handler).getLastStats();
+			if (stats != null) {
+				return stats;
+			}
+		}
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		SampleContext context = scheduler.getSampleHandler().getContext();
+		if (ATTR_NAME.equals(attribute)) {
+			return scheduler.getName();
+		} else if (ATTR_PERIOD.equals(attribute)) {
+			return scheduler.getPeriod();
+		} else if (ATTR_INC_FILTER.equals(attribute)) {
+			return scheduler.getIncFilter();
+		} else if (ATTR_EXC_FILTER.equals(attribute)) {
+			return scheduler.getExcFilter();
+		} else if (ATTR_SAMPLE_COUNT.equals(attribute)) {
+			return context.getSampleCount();
+		} else if (ATTR_MBEAN_COUNT.equals(attribute)) {
+			return context.getMBeanCount();
+		} else if (ATTR_TOTAL_METRIC_COUNT.equals(attribute)) {
+			return context.getTotalMetricCount();
+		} else if (ATTR_LAST_METRIC_COUNT.equals(attribute)) {
+			return context.getLastMetricCount();
+		} else if (ATTR_TOTAL_NOOP_COUNT.equals(attribute)) {
+			return context.getTotalNoopCount();
+		} else if (ATTR_TOTAL_ERROR_COUNT.equals(attribute)) {
+			return context.getTotalErrorCount();
+		} else if (ATTR_EXCLUDE_ATTR_COUNT.equals(attribute)) {
+			return context.getExcludeAttrCount();
+		} else if (ATTR_LAST_SAMPLE_USEC.equals(attribute)) {
+			return context.getLastSampleUsec();
+		} else if (ATTR_LAST_ERROR.equals(attribute)) {
+			Throwable error = context.getLastError();
+			return error == null ? null : error.toString();
+		}
+		Map<String, Object> stats = lastStats();
+		if (stats.containsKey(attribute)) {
+			return toAttributeValue(stats.get(attribute));
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList(attributes.length);
+		for (String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (AttributeNotFoundException ex) {
+				// skip attributes which are not available
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Attribute is read-only: " + attribute.getName());
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		if (OP_RESET_COUNTERS.equals(actionName)) {
+			scheduler.getSampleHandler().getContext().resetCounters();
+			return null;
+		}
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public synchronized MBeanInfo getMBeanInfo() {
+		Map<String, Object> stats = lastStats();
+		if (info == null || !stats.keySet().equals(infoKeys)) {
+			infoKeys = new HashSet<String>(stats.keySet());
+			info = buildMBeanInfo(new TreeMap<String, Object>(stats));
+		}
+		return info;
+	}
+
+	private MBeanInfo buildMBeanInfo(Map<String, Object> stats) {
+		List<MBeanAttributeInfo> attrs = new ArrayList<MBeanAttributeInfo>(ATTR_NAMES.length + stats.size());
+		for (int i = 0; i < ATTR_NAMES.length; i++) {
+			attrs.add(new MBeanAttributeInfo(ATTR_NAMES[i], ATTR_TYPES[i], ATTR_NAMES[i], true, false, false));
+		}
+		for (Map.Entry<String, Object> entry : stats.entrySet()) {
+			Object value = toAttributeValue(entry.getValue());
+			String type = value == null ? String.class.getName() : value.getClass().getName();
+			attrs.add(new MBeanAttributeInfo(entry.getKey(), type, "Sample context statistic " + entry.getKey(), true,
+					false, false));
+		}
+		MBeanOperationInfo[] ops = { new MBeanOperationInfo(OP_RESET_COUNTERS, "Reset sampling counters",
+				new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION) };
+		return new MBeanInfo(getClass().getName(), "Stream-JMX sampler self-monitoring MBean",
+				attrs.toArray(new MBeanAttributeInfo[attrs.size()]), null, ops, null);
+	}
+
+	private static Object toAttributeValue(Object value) {
+		if (value == null || value instanceof Number || value instanceof Boolean || value instanceof String) {
+			return value;
+		}
+		return String.valueOf(value);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServerConnection;
+
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+
+/**
+ * <p>
+ * This class provides scheduled sample/heart-beat for a given JMX {@code MBeanServerConnection} using JVM wide shared
+ * {@link HashedWheelScheduler} instead of a dedicated scheduling thread per sampler.
+ * </p>
+ *
+ * @see HashedWheelScheduler
+ *
+ * @version $Revision: 1 $
+ */
+public class WheelSchedulerImpl extends SchedulerImpl implements KeyValueStats {
+	public static String STAT_TASK_SKIP_COUNT = "wheel.task.skip.count";
+	public static String STAT_TASK_LATE_USEC = "wheel.task.late.usec";
+
+	protected HashedWheelScheduler wheel;
+	protected HashedWheelScheduler.WheelTask task;
+
+	/**
+	 * Create new instance of {@code WheelSchedulerImpl} with a given name, MBean server, filter list and sampling
+	 * period using shared {@link HashedWheelScheduler} instance.
+	 *
+	 * @param name name of assigned to the sampler
+	 * @param mServerConn MBean server connection instance
+	 * @param incFilterList Bean filters semicolon separated
+	 * @param excFilterList MBean filters semicolon separated
+	 * @param period sampling period
+	 * @param tunit time unit for the sampling period
+	 */
+	public WheelSchedulerImpl(String name, MBeanServerConnection mServerConn, String incFilterList,
+			String excFilterList, long period, TimeUnit tunit) {
+		this(HashedWheelScheduler.getInstance(), name, mServerConn, incFilterList, excFilterList, period, tunit);
+	}
+
+	/**
+	 * Create new instance of {@code WheelSchedulerImpl} with a given timing wheel, name, MBean server, filter list and
+	 * sampling period.
+	 *
+	 * @param wheel timing wheel used to schedule samples
+	 * @param name name of assigned to the sampler
+	 * @param mServerConn MBean server connection instance
+	 * @param incFilterList Bean filters semicolon separated
+	 * @param excFilterList MBean filters semicolon separated
+	 * @param period sampling period
+	 * @param tunit time unit for the sampling period
+	 */
+	public WheelSchedulerImpl(HashedWheelScheduler wheel, String name, MBeanServerConnection mServerConn,
+			String incFilterList, String excFilterList, long period, TimeUnit tunit) {
+		super(name, mServerConn, incFilterList, excFilterList, period, tunit);
+		this.wheel = wheel;
+		// samples run on pooled worker threads, so activities can't be stacked on thread context
+		getLogger().setKeepThreadContext(false);
+		if (listener instanceof SampleHandlerImpl) {
+			((SampleHandlerImpl) listener).addStatsProvider(this);
+			if (SampleExecutors.VIRTUAL_THREADS && !wheel.isVirtual()) {
+				((SampleHandlerImpl) listener).doError(
+						SampleExecutors.newFallbackError("Timing wheel sample task", "platform worker threads"));
+			}
+		}
+	}
+
+	@Override
+	public synchronized void run() {
+		if (task != null && !task.isCancelled()) {
+			throw new IllegalStateException("Already scheduled");
+		}
+		task = wheel.schedule(getName(), newActivityTask(getLogger(), getName(), getOpLevel()), period, timeUnit);
+	}
+
+	@Override
+	public synchronized void cancel(boolean mayInterrupt) {
+		if (task != null) {
+			task.cancel();
+		}
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		getStats(stats);
+		return stats;
+	}
+
+	@Override
+	public KeyValueStats getStats(Map<String, Object> stats) {
+		wheel.getStats(stats);
+		HashedWheelScheduler.WheelTask wTask = task;
+		if (wTask != null) {
+			stats.put(STAT_TASK_SKIP_COUNT, wTask.getSkipCount());
+			stats.put(STAT_TASK_LATE_USEC, wTask.getLateNanos() / 1000);
+		}
+		return this;
+	}
+
+	@Override
+	public void resetStats() {
+		wheel.resetStats();
+	}
+}
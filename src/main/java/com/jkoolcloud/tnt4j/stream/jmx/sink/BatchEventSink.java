@@ -0,0 +1,336 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.sink;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.jkoolcloud.tnt4j.core.KeyValueStats;
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+import com.jkoolcloud.tnt4j.sink.AbstractEventSink;
+import com.jkoolcloud.tnt4j.sink.EventSink;
+import com.jkoolcloud.tnt4j.source.Source;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+import com.jkoolcloud.tnt4j.tracker.TrackingEvent;
+
+/**
+ * <p>
+ * This class implements event sink batching formatted entries (sampling activities, events, snapshots and messages)
+ * and writing every batch to underlying event sink as a single write. Batch is written when it contains configured
+ * number of entries, when its size exceeds configured maximum or when its oldest entry gets older than configured
+ * time, so number of sink writes is reduced at high sampling frequencies while memory held by batch and reporting
+ * delay are bounded. Pending batch is written when sink is flushed, closed and on JVM shutdown.
+ * </p>
+ * <p>
+ * Entries are formatted using formatter of underlying sink. When framing is enabled, every batch is preceded by
+ * {@value #FRAME_PREFIX} header line defining number of entries and UTF-8 encoded size of the batch in bytes. Entries
+ * are formatted while holding sink lock, so entries are batched in the order they were formatted.
+ * </p>
+ *
+ * @see BatchEventSinkFactory
+ *
+ * @version $Revision: 1 $
+ */
+public class BatchEventSink extends AbstractEventSink {
+	public static String STAT_BATCH_WRITE_COUNT = "batch.write.count";
+	public static String STAT_BATCH_ENTRY_COUNT = "batch.entry.count";
+	public static String STAT_BATCH_PENDING_ENTRIES = "batch.pending.entries";
+	public static String STAT_BATCH_PENDING_BYTES = "batch.pending.bytes";
+
+	public static final String FRAME_PREFIX = "#batch";
+	public static final String END_SEP = "\n";
+
+	private static final Set<BatchEventSink> OPEN_SINKS = Collections
+			.synchronizedSet(new LinkedHashSet<BatchEventSink>());
+	private static ScheduledExecutorService flushTimer;
+	private static boolean shutdownHook = false;
+
+	private final EventSink outSink;
+	private final int batchSize;
+	private final long batchTimeMs;
+	private final int maxBytes;
+	private final boolean framed;
+
+	private final StringBuilder batch = new StringBuilder(8192);
+	private int pendingEntries = 0;
+	private long batchBytes = 0;
+	private long batchStarted = 0;
+	private long writeCount = 0, entryCount = 0;
+	private ScheduledFuture<?> flushTask;
+
+	/**
+	 * Create new instance of {@code BatchEventSink} writing batches to a given sink.
+	 *
+	 * @param name sink name
+	 * @param outSink underlying sink batches are written to
+	 * @param batchSize maximum number of entries per batch
+	 * @param batchTimeMs maximum time in milliseconds entry is held within batch, {@code 0} if not bounded
+	 * @param maxBytes maximum UTF-8 encoded batch size in bytes
+	 * @param framed flag indicating whether every batch is preceded by frame header line
+	 */
+	public BatchEventSink(String name, EventSink outSink, int batchSize, long batchTimeMs, int maxBytes,
+			boolean framed) {
+		super(name, outSink.getEventFormatter());
+		this.outSink = outSink;
+		this.batchSize = Math.max(1, batchSize);
+		this.batchTimeMs = batchTimeMs;
+		this.maxBytes = Math.max(1, maxBytes);
+		this.framed = framed;
+	}
+
+	@Override
+	public Object getSinkHandle() {
+		return outSink;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return outSink.isOpen();
+	}
+
+	@Override
+	public boolean isSet(OpLevel sev) {
+		return outSink.isSet(sev);
+	}
+
+	@Override
+	public synchronized void open() throws IOException {
+		outSink.open();
+		if (batchTimeMs > 0 && flushTask == null) {
+			long period = Math.max(10, batchTimeMs / 4);
+			flushTask = getFlushTimer().scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					flushExpired();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+		register(this);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		OPEN_SINKS.remove(this);
+		if (flushTask != null) {
+			flushTask.cancel(false);
+			flushTask = null;
+		}
+		try {
+			writeBatch();
+		} finally {
+			outSink.close();
+		}
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		writeBatch();
+		outSink.flush();
+	}
+
+	@Override
+	protected synchronized void _log(TrackingActivity activity) throws Exception {
+		add(getEventFormatter().format(activity));
+	}
+
+	@Override
+	protected synchronized void _log(TrackingEvent event) throws Exception {
+		add(getEventFormatter().format(event));
+	}
+
+	@Override
+	protected synchronized void _log(Snapshot snapshot) throws Exception {
+		add(getEventFormatter().format(snapshot));
+	}
+
+	@Override
+	protected synchronized void _log(long ttl, Source src, OpLevel sev, String msg, Object... args)
+			throws Exception {
+		add(getEventFormatter().format(ttl, src, sev, msg, args));
+	}
+
+	/**
+	 * Plain string entries (e.g. activities formatted by staged sampling pipeline) are added to current batch, other
+	 * entries are written to underlying sink after current batch.
+	 */
+	@Override
+	protected synchronized void _write(Object msg, Object... args) throws IOException, InterruptedException {
+		if (msg instanceof String && (args == null || args.length == 0)) {
+			add((String) msg);
+			return;
+		}
+		writeBatch(); // keep order of entries
+		outSink.write(msg, args);
+	}
+
+	/**
+	 * Add a formatted entry to current batch. Current batch is written first, if adding the entry would exceed
+	 * maximum batch size. Empty entries (e.g. chunk activities merged by formatter into a later entry) are skipped.
+	 *
+	 * @param entry formatted entry
+	 * @throws IOException if batch can not be written
+	 */
+	protected synchronized void add(String entry) throws IOException {
+		if (entry == null || entry.isEmpty()) {
+			return;
+		}
+		boolean terminated = entry.endsWith(END_SEP);
+		long entryBytes = utf8Length(entry) + (terminated ? 0 : END_SEP.length());
+		if (pendingEntries > 0 && batchBytes + entryBytes > maxBytes) {
+			writeBatch();
+		}
+		if (pendingEntries == 0) {
+			batchStarted = System.currentTimeMillis();
+		}
+		batch.append(entry);
+		if (!terminated) {
+			batch.append(END_SEP);
+		}
+		batchBytes += entryBytes;
+		pendingEntries++;
+		entryCount++;
+		if (pendingEntries >= batchSize || batchBytes >= maxBytes
+				|| (batchTimeMs > 0 && System.currentTimeMillis() - batchStarted >= batchTimeMs)) {
+			writeBatch();
+		}
+	}
+
+	private synchronized void flushExpired() {
+		try {
+			if (pendingEntries > 0 && System.currentTimeMillis() - batchStarted >= batchTimeMs) {
+				writeBatch();
+			}
+		} catch (Throwable ex) {
+			setErrorState(ex);
+		}
+	}
+
+	private void writeBatch() throws IOException {
+		if (pendingEntries == 0) {
+			return;
+		}
+		batch.setLength(batch.length() - END_SEP.length()); // line terminator is added by sink
+		if (framed) {
+			batch.insert(0, FRAME_PREFIX + " entries=" + pendingEntries + " bytes=" + (batchBytes - END_SEP.length())
+					+ END_SEP);
+		}
+		String frame = batch.toString();
+		batch.setLength(0);
+		if (batch.capacity() > maxBytes * 2) {
+			batch.trimToSize(); // release capacity grown by oversized entry
+		}
+		pendingEntries = 0;
+		batchBytes = 0;
+		writeCount++;
+		try {
+			outSink.write(frame);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted writing batch", ex);
+		}
+	}
+
+	@Override
+	public KeyValueStats getStats(Map<String, Object> stats) {
+		super.getStats(stats);
+		synchronized (this) {
+			stats.put(STAT_BATCH_WRITE_COUNT, writeCount);
+			stats.put(STAT_BATCH_ENTRY_COUNT, entryCount);
+			stats.put(STAT_BATCH_PENDING_ENTRIES, pendingEntries);
+			stats.put(STAT_BATCH_PENDING_BYTES, batchBytes);
+		}
+		return this;
+	}
+
+	@Override
+	public void resetStats() {
+		super.resetStats();
+		synchronized (this) {
+			writeCount = 0;
+			entryCount = 0;
+		}
+	}
+
+	/**
+	 * Compute UTF-8 encoded length of a given string without encoding it.
+	 *
+	 * @param str string to measure
+	 * @return number of bytes of UTF-8 encoded string
+	 */
+	static long utf8Length(String str) {
+		long length = 0;
+		for (int i = 0, n = str.length(); i < n; i++) {
+			char ch = str.charAt(i);
+			if (ch < 0x80) {
+				length++;
+			} else if (ch < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(ch) && i + 1 < n && Character.isLowSurrogate(str.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	private static synchronized ScheduledExecutorService getFlushTimer() {
+		if (flushTimer == null) {
+			flushTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "StreamJmx-BatchFlush");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return flushTimer;
+	}
+
+	private static synchronized void register(BatchEventSink sink) {
+		if (!shutdownHook) {
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					flushAll();
+				}
+			}, "StreamJmx-BatchShutdown"));
+			shutdownHook = true;
+		}
+		OPEN_SINKS.add(sink);
+	}
+
+	/**
+	 * Write pending batches of all open batching sinks.
+	 */
+	public static void flushAll() {
+		BatchEventSink[] sinks;
+		synchronized (OPEN_SINKS) {
+			sinks = OPEN_SINKS.toArray(new BatchEventSink[OPEN_SINKS.size()]);
+		}
+		for (BatchEventSink sink : sinks) {
+			try {
+				sink.flush();
+			} catch (Throwable ex) {
+				sink.setErrorState(ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.sink;
+
+import java.util.Map;
+import java.util.Properties;
+
+import com.jkoolcloud.tnt4j.config.ConfigException;
+import com.jkoolcloud.tnt4j.format.EventFormatter;
+import com.jkoolcloud.tnt4j.sink.AbstractEventSinkFactory;
+import com.jkoolcloud.tnt4j.sink.EventSink;
+import com.jkoolcloud.tnt4j.sink.EventSinkFactory;
+import com.jkoolcloud.tnt4j.utils.Utils;
+
+/**
+ * <p>
+ * This class provides factory of {@link BatchEventSink} instances wrapping sinks of underlying sink factory, e.g.:
+ * </p>
+ * 
+ * <pre>
+ * event.sink.factory: com.jkoolcloud.tnt4j.stream.jmx.sink.BatchEventSinkFactory
+ * event.sink.factory.BatchSize: 60
+ * event.sink.factory.BatchTime: 60000
+ * event.sink.factory.EventSinkFactory: com.jkoolcloud.tnt4j.sink.impl.FileEventSinkFactory
+ * event.sink.factory.EventSinkFactory.FileName: tnt4j-stream-jmx.log
+ * </pre>
+ * <p>
+ * Supported configuration properties:
+ * <ul>
+ * <li>{@code EventSinkFactory} - underlying sink factory, configured using {@code EventSinkFactory.} prefixed
+ * properties (required)</li>
+ * <li>{@code BatchSize} - maximum number of entries per batch (default {@value #DEFAULT_BATCH_SIZE})</li>
+ * <li>{@code BatchTime} - maximum time in milliseconds entry is held within batch, {@code 0} if not bounded (default
+ * {@value #DEFAULT_BATCH_TIME})</li>
+ * <li>{@code BatchMaxBytes} - maximum UTF-8 encoded batch size in bytes (default {@value #DEFAULT_BATCH_MAX_BYTES})</li>
+ * <li>{@code Framed} - flag indicating whether every batch is preceded by frame header line (default
+ * {@code false})</li>
+ * </ul>
+ * </p>
+ *
+ * @see BatchEventSink
+ *
+ * @version $Revision: 1 $
+ */
+public class BatchEventSinkFactory extends AbstractEventSinkFactory {
+	public static final int DEFAULT_BATCH_SIZE = 10;
+	public static final long DEFAULT_BATCH_TIME = 5000;
+	public static final int DEFAULT_BATCH_MAX_BYTES = 1024 * 1024;
+
+	private EventSinkFactory sinkFactory;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private long batchTime = DEFAULT_BATCH_TIME;
+	private int maxBytes = DEFAULT_BATCH_MAX_BYTES;
+	private boolean framed = false;
+
+	/**
+	 * Create a batching sink factory configured using {@link #setConfiguration(Map)}.
+	 */
+	public BatchEventSinkFactory() {
+	}
+
+	/**
+	 * Create a batching sink factory wrapping sinks of a given factory.
+	 *
+	 * @param factory underlying sink factory
+	 */
+	public BatchEventSinkFactory(EventSinkFactory factory) {
+		sinkFactory = factory;
+	}
+
+	@Override
+	public EventSink getEventSink(String name) {
+		return configureSink(newSink(name, sinkFactory.getEventSink(name)));
+	}
+
+	@Override
+	public EventSink getEventSink(String name, Properties props) {
+		return configureSink(newSink(name, sinkFactory.getEventSink(name, props)));
+	}
+
+	@Override
+	public EventSink getEventSink(String name, Properties props, EventFormatter frmt) {
+		return configureSink(newSink(name, sinkFactory.getEventSink(name, props, frmt)));
+	}
+
+	private EventSink newSink(String name, EventSink outSink) {
+		return new BatchEventSink(name, outSink, batchSize, batchTime, maxBytes, framed);
+	}
+
+	@Override
+	public void setConfiguration(Map<String, Object> settings) throws ConfigException {
+		super.setConfiguration(settings);
+		sinkFactory = (EventSinkFactory) Utils.createConfigurableObject("EventSinkFactory", "EventSinkFactory.",
+				settings);
+		Object value = settings.get("BatchSize");
+		if (value != null) {
+			batchSize = Integer.parseInt(value.toString().trim());
+		}
+		value = settings.get("BatchTime");
+		if (value != null) {
+			batchTime = Long.parseLong(value.toString().trim());
+		}
+		value = settings.get("BatchMaxBytes");
+		if (value != null) {
+			maxBytes = Integer.parseInt(value.toString().trim());
+		}
+		value = settings.get("Framed");
+		if (value != null) {
+			framed = Boolean.parseBoolean(value.toString().trim());
+		}
+	}
+}
@@ -0,0 +1,7 @@
+/**
+ * Custom TNT4J event sinks which write formatted sampling activities.
+ * 
+ * @author albert
+ * @version 1.0
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.sink;
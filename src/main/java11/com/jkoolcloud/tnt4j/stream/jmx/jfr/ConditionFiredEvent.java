@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * <p>
+ * JFR event recorded when attribute condition fires an action.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ */
+@Name("com.jkoolcloud.tnt4j.stream.jmx.ConditionFired")
+@Label("Condition Fired")
+@Category({ "TNT4J", "Stream-JMX" })
+@Description("Attribute condition evaluated to true and action was invoked")
+class ConditionFiredEvent extends Event {
+	@Label("Condition")
+	String condition;
+
+	@Label("Action")
+	String action;
+
+	@Label("Object Name")
+	String objectName;
+
+	@Label("Attribute")
+	String attribute;
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.jfr;
+
+import javax.management.ObjectName;
+
+import jdk.jfr.EventType;
+
+/**
+ * <p>
+ * This class implements {@link SampleEventRecorder} producing JDK Flight Recorder events. Event type enablement is
+ * checked before any event is allocated, so events not enabled by active recordings cost a single volatile read.
+ * This class is compiled only when building on Java 11 or later and loaded by {@link SampleEvents} only on runtimes
+ * providing JFR.
+ * </p>
+ *
+ * @see SampleEvents
+ *
+ * @version $Revision: 1 $
+ */
+public class JfrSampleEventRecorder implements SampleEventRecorder {
+	private static final EventType CYCLE = EventType.getEventType(SampleCycleEvent.class);
+	private static final EventType FETCH = EventType.getEventType(MBeanFetchEvent.class);
+	private static final EventType DISCOVERY = EventType.getEventType(MBeanDiscoveryEvent.class);
+	private static final EventType CONDITION = EventType.getEventType(ConditionFiredEvent.class);
+	private static final EventType FORMAT = EventType.getEventType(FormatterOutputEvent.class);
+
+	@Override
+	public Object beginCycle() {
+		if (!CYCLE.isEnabled()) {
+			return null;
+		}
+		SampleCycleEvent event = new SampleCycleEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endCycle(Object event, String sampler, int mbeanCount, long metricCount, long errorCount) {
+		if (event == null) {
+			return;
+		}
+		SampleCycleEvent cEvent = (SampleCycleEvent) event;
+		cEvent.end();
+		if (cEvent.shouldCommit()) {
+			cEvent.sampler = sampler;
+			cEvent.mbeanCount = mbeanCount;
+			cEvent.metricCount = metricCount;
+			cEvent.errorCount = errorCount;
+			cEvent.commit();
+		}
+	}
+
+	@Override
+	public Object beginFetch() {
+		if (!FETCH.isEnabled()) {
+			return null;
+		}
+		MBeanFetchEvent event = new MBeanFetchEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endFetch(Object event, ObjectName name, int attrCount) {
+		if (event == null) {
+			return;
+		}
+		MBeanFetchEvent fEvent = (MBeanFetchEvent) event;
+		fEvent.end();
+		if (fEvent.shouldCommit()) {
+			fEvent.objectName = name.getCanonicalName();
+			fEvent.attributeCount = attrCount;
+			fEvent.commit();
+		}
+	}
+
+	@Override
+	public Object beginDiscovery() {
+		if (!DISCOVERY.isEnabled()) {
+			return null;
+		}
+		MBeanDiscoveryEvent event = new MBeanDiscoveryEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endDiscovery(Object event, String filter, int mbeanCount) {
+		if (event == null) {
+			return;
+		}
+		MBeanDiscoveryEvent dEvent = (MBeanDiscoveryEvent) event;
+		dEvent.end();
+		if (dEvent.shouldCommit()) {
+			dEvent.filter = filter;
+			dEvent.mbeanCount = mbeanCount;
+			dEvent.commit();
+		}
+	}
+
+	@Override
+	public void conditionFired(String condition, String action, ObjectName name, String attribute) {
+		if (!CONDITION.isEnabled()) {
+			return;
+		}
+		ConditionFiredEvent event = new ConditionFiredEvent();
+		if (event.shouldCommit()) {
+			event.condition = condition;
+			event.action = action;
+			event.objectName = name == null ? null : name.getCanonicalName();
+			event.attribute = attribute;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void formatted(String formatter, int snapshotCount, int size) {
+		if (!FORMAT.isEnabled()) {
+			return;
+		}
+		FormatterOutputEvent event = new FormatterOutputEvent();
+		if (event.shouldCommit()) {
+			event.formatter = formatter;
+			event.snapshotCount = snapshotCount;
+			event.size = size;
+			event.commit();
+		}
+	}
+}
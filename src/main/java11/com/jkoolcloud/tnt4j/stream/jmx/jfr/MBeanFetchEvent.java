@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * <p>
+ * JFR event recorded for every sampled MBean.
+ * </p>
+ *
+ * @version $Revision: 1 $
+ */
+@Name("com.jkoolcloud.tnt4j.stream.jmx.MBeanFetch")
+@Label("MBean Fetch")
+@Category({ "TNT4J", "Stream-JMX" })
+@Description("Sampling of a single MBean attributes")
+class MBeanFetchEvent extends Event {
+	@Label("Object Name")
+	String objectName;
+
+	@Label("Attribute Count")
+	int attributeCount;
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+
+/**
+ * Tests of {@link ExpressionCondition} evaluation over sampling cycles.
+ *
+ * @version $Revision: 1 $
+ */
+public class ExpressionConditionTest {
+	static final String MEMORY = "java.lang:type=Memory";
+
+	static AttributeSample sample(Activity activity, String objName, String attr, Object value, long timeUsec)
+			throws Exception {
+		return sample(activity, null, objName, attr, value, timeUsec);
+	}
+
+	/**
+	 * Create attribute sample having a given value, as if sampled from MBean server.
+	 */
+	public static AttributeSample sample(Activity activity, PropertySnapshot snapshot, String objName, String attr,
+			Object value, long timeUsec) throws Exception {
+		MBeanAttributeInfo info = new MBeanAttributeInfo(attr, Object.class.getName(), attr, true, false, false);
+		AttributeSample sample = AttributeSample.newAttributeSample(activity, snapshot, null, new ObjectName(objName),
+				info);
+		sample.value = value;
+		sample.timeStamp = timeUsec;
+		return sample;
+	}
+
+	@Test
+	public void testEvaluatesOnLastAttribute() throws Exception {
+		ExpressionCondition cond = new ExpressionCondition(MEMORY, "Used / Max > 0.9");
+		assertEquals(Arrays.asList("Used", "Max"), cond.getAttributeNames());
+
+		Activity cycle = new Activity("cycle-1", "sample");
+		assertFalse(cond.evaluate(sample(cycle, MEMORY, "Used", 95, 1)));
+		assertFalse(cond.evaluate(sample(cycle, MEMORY, "Other", 1, 1)));
+		assertTrue(cond.evaluate(sample(cycle, MEMORY, "Max", 100, 1)));
+		// evaluated once per cycle
+		assertFalse(cond.evaluate(sample(cycle, MEMORY, "Max", 100, 1)));
+
+		cycle = new Activity("cycle-2", "sample");
+		assertFalse(cond.evaluate(sample(cycle, MEMORY, "Max", 100, 2)));
+		assertFalse(cond.evaluate(sample(cycle, MEMORY, "Used", 50, 2)));
+		assertEquals(0, cond.getIncompleteCount());
+	}
+
+	@Test
+	public void testMissingAttribute() throws Exception {
+		ExpressionCondition cond = new ExpressionCondition(MEMORY, "Used / Max > 0.9");
+		ObjectName name = new ObjectName(MEMORY);
+		for (int i = 1; i <= 3; i++) {
+			assertFalse(cond.evaluate(sample(new Activity("cycle-" + i, "sample"), MEMORY, "Used", 95, i)));
+		}
+		assertEquals(2, cond.getIncompleteCount());
+		assertEquals(Collections.singletonList("Max"), cond.getMissingAttributes(name));
+
+		cond.reset(name);
+		assertEquals(Collections.emptyList(), cond.getMissingAttributes(name));
+	}
+
+	@Test
+	public void testCompositeItemsAndRates() throws Exception {
+		ExpressionCondition cond = new ExpressionCondition(MEMORY, "Count.rate > 10 && Count.delta >= 5");
+		assertFalse(cond.evaluate(sample(new Activity("cycle-1", "sample"), MEMORY, "Count", 0L, 1000000L)));
+		assertTrue(cond.evaluate(sample(new Activity("cycle-2", "sample"), MEMORY, "Count", 20L, 2000000L)));
+		assertFalse(cond.evaluate(sample(new Activity("cycle-3", "sample"), MEMORY, "Count", 22L, 3000000L)));
+	}
+
+	@Test
+	public void testNonNumericValue() throws Exception {
+		ExpressionCondition cond = new ExpressionCondition(MEMORY, "State > 0 || State <= 0");
+		assertFalse(cond.evaluate(sample(new Activity("cycle-1", "sample"), MEMORY, "State", "RUNNING", 1)));
+		assertTrue(cond.evaluate(sample(new Activity("cycle-2", "sample"), MEMORY, "State", 1, 2)));
+	}
+
+	@Test
+	public void testObjectNamePattern() throws Exception {
+		String gc1 = "java.lang:type=GarbageCollector,name=G1 Young Generation";
+		String gc2 = "java.lang:type=GarbageCollector,name=G1 Old Generation";
+		ExpressionCondition cond = new ExpressionCondition("java.lang:type=GarbageCollector,*", "A + B > 1");
+		Activity cycle = new Activity("cycle-1", "sample");
+		assertFalse(cond.evaluate(sample(cycle, gc1, "A", 1, 1)));
+		assertFalse(cond.evaluate(sample(cycle, gc2, "A", 0, 1)));
+		assertFalse(cond.evaluate(sample(cycle, MEMORY, "B", 5, 1)));
+		assertFalse(cond.evaluate(sample(cycle, gc2, "B", 1, 1)));
+		assertTrue(cond.evaluate(sample(cycle, gc1, "B", 1, 1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testObjectNameReference() {
+		new ExpressionCondition(MEMORY, "[java.lang:type=Runtime]Uptime > 0");
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import static com.jkoolcloud.tnt4j.stream.jmx.conditions.ExpressionConditionTest.sample;
+import static org.junit.Assert.*;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+
+/**
+ * Tests of firing deduplication by {@link LatchingCondition}, {@link LatchingRule} and {@link HysteresisCondition}.
+ *
+ * @version $Revision: 1 $
+ */
+public class LatchingConditionTest {
+	static final String THREADING = "java.lang:type=Threading";
+	static final long SEC = 1000000L;
+
+	private static boolean eval(AttributeCondition cond, String objName, Object value, long timeUsec)
+			throws Exception {
+		return cond.evaluate(sample(new Activity("cycle-" + timeUsec, "sample"), objName, "ThreadCount", value,
+				timeUsec));
+	}
+
+	@Test
+	public void testLatchSimpleCondition() throws Exception {
+		LatchingCondition cond = new LatchingCondition(new SimpleCondition(THREADING, "ThreadCount", 100, ">"), 2000);
+		assertEquals(new ObjectName(THREADING), cond.getObjectName());
+		assertEquals("ThreadCount", cond.getAttributeName());
+
+		assertFalse(eval(cond, THREADING, 50, 1 * SEC));
+		assertTrue(eval(cond, THREADING, 150, 2 * SEC));
+		assertFalse(eval(cond, THREADING, 150, 3 * SEC));
+		assertFalse(eval(cond, THREADING, 50, 4 * SEC));
+		// each suppressed firing extends the latch
+		assertFalse(eval(cond, THREADING, 150, 4 * SEC + 900000));
+		assertTrue(cond.isActive(new ObjectName(THREADING)));
+		assertEquals(2, cond.getSuppressedCount());
+		assertEquals(1, cond.getTransitionCount());
+
+		assertFalse(eval(cond, THREADING, 50, 7 * SEC));
+		assertFalse(cond.isActive(new ObjectName(THREADING)));
+		assertTrue(eval(cond, THREADING, 150, 8 * SEC));
+		assertEquals(2, cond.getSuppressedCount());
+		assertEquals(3, cond.getTransitionCount());
+	}
+
+	@Test
+	public void testLatchPerMBean() throws Exception {
+		String pool1 = "java.lang:type=Threading,name=1";
+		String pool2 = "java.lang:type=Threading,name=2";
+		LatchingCondition cond = new LatchingCondition(new ExpressionCondition("java.lang:type=Threading,*",
+				"ThreadCount > 100"), 1000);
+		assertNull(cond.getAttributeName());
+		assertTrue(eval(cond, pool1, 150, 1 * SEC));
+		assertTrue(eval(cond, pool2, 150, 1 * SEC));
+		assertFalse(eval(cond, pool1, 150, 1 * SEC + 10));
+		assertEquals(1, cond.getSuppressedCount());
+
+		cond.reset(new ObjectName(pool1));
+		assertFalse(cond.isActive(new ObjectName(pool1)));
+		assertTrue(eval(cond, pool1, 150, 1 * SEC + 20));
+	}
+
+	@Test
+	public void testLatchRule() {
+		LatchingRule rule = new LatchingRule(new CycleRule("threads", "[java.lang:type=Threading]ThreadCount > 100"),
+				1000);
+		assertEquals("threads", rule.getName());
+		assertEquals("[java.lang:type=Threading]ThreadCount > 100", rule.getExpression());
+
+		assertFalse(rule.latch(false, 1 * SEC));
+		assertTrue(rule.latch(true, 2 * SEC));
+		assertFalse(rule.latch(true, 2 * SEC + 500000));
+		assertFalse(rule.latch(false, 3 * SEC));
+		assertTrue(rule.isActive());
+		assertFalse(rule.latch(false, 4 * SEC));
+		assertFalse(rule.isActive());
+		assertTrue(rule.latch(true, 5 * SEC));
+		assertEquals(1, rule.getSuppressedCount());
+		assertEquals(3, rule.getTransitionCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidHoldTime() {
+		new LatchingCondition(new SimpleCondition(THREADING, "ThreadCount", 100, ">"), 0);
+	}
+
+	@Test
+	public void testHysteresisSuppressedCount() throws Exception {
+		HysteresisCondition cond = new HysteresisCondition(THREADING, "ThreadCount", ">", 90, 80);
+		assertTrue(eval(cond, THREADING, 95, 1 * SEC));
+		// above exit threshold only: condition stays active, nothing would fire
+		assertFalse(eval(cond, THREADING, 85, 2 * SEC));
+		assertEquals(0, cond.getSuppressedCount());
+		// above enter threshold again: suppressed re-fire
+		assertFalse(eval(cond, THREADING, 95, 3 * SEC));
+		assertEquals(1, cond.getSuppressedCount());
+		assertFalse(eval(cond, THREADING, 75, 4 * SEC));
+		assertEquals(2, cond.getTransitionCount());
+	}
+
+	@Test
+	public void testLatchedHysteresisCounts() throws Exception {
+		LatchingCondition cond = new LatchingCondition(new HysteresisCondition(THREADING, "ThreadCount", ">", 90, 80),
+				10000);
+		assertTrue(eval(cond, THREADING, 95, 1 * SEC));
+		assertFalse(eval(cond, THREADING, 95, 2 * SEC));
+		assertFalse(eval(cond, THREADING, 75, 3 * SEC));
+		// hysteresis fires again, suppressed by latch
+		assertFalse(eval(cond, THREADING, 95, 4 * SEC));
+		assertEquals(2, cond.getSuppressedCount());
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link SampleWindow} ring buffer and window statistics.
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleWindowTest {
+	static final double DELTA = 1e-9;
+
+	@Test
+	public void testEmptyWindow() {
+		SampleWindow window = new SampleWindow(3);
+		assertEquals(0, window.size());
+		assertEquals(3, window.capacity());
+		assertFalse(window.isFull());
+		assertTrue(Double.isNaN(window.mean()));
+		assertTrue(Double.isNaN(window.min()));
+		assertTrue(Double.isNaN(window.max()));
+		assertTrue(Double.isNaN(window.rate()));
+		assertTrue(Double.isNaN(window.percentile(50)));
+	}
+
+	@Test
+	public void testEvictsOldest() {
+		SampleWindow window = new SampleWindow(3);
+		window.add(1, 1000000);
+		window.add(2, 2000000);
+		window.add(3, 3000000);
+		assertTrue(window.isFull());
+		assertEquals("[1.0, 2.0, 3.0]", window.toString());
+
+		window.add(10, 4000000);
+		assertEquals(3, window.size());
+		assertEquals("[2.0, 3.0, 10.0]", window.toString());
+		assertEquals(5.0, window.mean(), DELTA);
+		assertEquals(2.0, window.min(), DELTA);
+		assertEquals(10.0, window.max(), DELTA);
+		// (10 - 2) over 2 seconds
+		assertEquals(4.0, window.rate(), DELTA);
+
+		window.clear();
+		assertEquals(0, window.size());
+		assertEquals("[]", window.toString());
+	}
+
+	@Test
+	public void testRateSameTime() {
+		SampleWindow window = new SampleWindow(2);
+		window.add(1, 1000000);
+		assertTrue(Double.isNaN(window.rate()));
+		window.add(5, 1000000);
+		assertTrue(Double.isNaN(window.rate()));
+	}
+
+	@Test
+	public void testPercentile() {
+		SampleWindow window = new SampleWindow(10);
+		double[] values = { 7, 3, 9, 1, 5, 10, 2, 8, 4, 6 };
+		for (int i = 0; i < values.length; i++) {
+			window.add(values[i], i);
+		}
+		assertEquals(1.0, window.percentile(0), DELTA);
+		assertEquals(5.0, window.percentile(50), DELTA);
+		assertEquals(9.0, window.percentile(90), DELTA);
+		assertEquals(10.0, window.percentile(100), DELTA);
+		// percentile does not reorder window
+		assertEquals("[7.0, 3.0, 9.0, 1.0, 5.0, 10.0, 2.0, 8.0, 4.0, 6.0]", window.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new SampleWindow(0);
+	}
+}
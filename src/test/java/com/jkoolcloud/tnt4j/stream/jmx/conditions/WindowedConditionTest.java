@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions;
+
+import static com.jkoolcloud.tnt4j.stream.jmx.conditions.ExpressionConditionTest.sample;
+import static org.junit.Assert.*;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.stream.jmx.conditions.WindowedCondition.Statistic;
+
+/**
+ * Tests of {@link WindowedCondition} evaluation over per MBean sample windows.
+ *
+ * @version $Revision: 1 $
+ */
+public class WindowedConditionTest {
+	static final String POOL = "com.example:type=Pool";
+	static final long SEC = 1000000L;
+
+	private static boolean eval(WindowedCondition cond, String objName, String attr, Object value, long timeUsec)
+			throws Exception {
+		return cond.evaluate(sample(new Activity("cycle-" + timeUsec, "sample"), objName, attr, value, timeUsec));
+	}
+
+	@Test
+	public void testMeanWhenFull() throws Exception {
+		WindowedCondition cond = new WindowedCondition(POOL, "QueueSize", Statistic.MEAN, 3, 100, ">");
+		assertEquals("QueueSize", cond.getAttributeName());
+		assertEquals(new ObjectName(POOL), cond.getObjectName());
+
+		assertFalse(eval(cond, POOL, "QueueSize", 500, 1 * SEC));
+		assertFalse(eval(cond, POOL, "QueueSize", 500, 2 * SEC));
+		assertTrue(eval(cond, POOL, "QueueSize", 500, 3 * SEC));
+		// mean of 500, 500, 0
+		assertTrue(eval(cond, POOL, "QueueSize", 0, 4 * SEC));
+		// mean of 500, 0, 0
+		assertTrue(eval(cond, POOL, "QueueSize", 0, 5 * SEC));
+		assertFalse(eval(cond, POOL, "QueueSize", 0, 6 * SEC));
+	}
+
+	@Test
+	public void testIgnoresOtherSamples() throws Exception {
+		WindowedCondition cond = new WindowedCondition(POOL, "QueueSize", Statistic.MAX, 1, 10, ">");
+		assertFalse(eval(cond, POOL, "Other", 50, 1 * SEC));
+		assertFalse(eval(cond, "com.example:type=Other", "QueueSize", 50, 1 * SEC));
+		assertFalse(eval(cond, POOL, "QueueSize", "text", 1 * SEC));
+		assertEquals(0, cond.getSeriesCount());
+		assertTrue(eval(cond, POOL, "QueueSize", 50, 1 * SEC));
+	}
+
+	@Test
+	public void testRatePerMBean() throws Exception {
+		String pool1 = "com.example:type=Pool,name=1";
+		String pool2 = "com.example:type=Pool,name=2";
+		WindowedCondition cond = new WindowedCondition("com.example:type=Pool,*", "CollectionTime", Statistic.RATE,
+				2, 100, ">=");
+		assertFalse(eval(cond, pool1, "CollectionTime", 0L, 1 * SEC));
+		assertFalse(eval(cond, pool2, "CollectionTime", 0L, 1 * SEC));
+		assertTrue(eval(cond, pool1, "CollectionTime", 200L, 2 * SEC));
+		assertFalse(eval(cond, pool2, "CollectionTime", 50L, 2 * SEC));
+		assertEquals(2, cond.getSeriesCount());
+
+		cond.reset(new ObjectName(pool1));
+		assertEquals(1, cond.getSeriesCount());
+		assertFalse(eval(cond, pool1, "CollectionTime", 400L, 3 * SEC));
+	}
+
+	@Test
+	public void testPercentileOfCompositeItem() throws Exception {
+		CompositeType type = new CompositeType("MemoryUsage", "usage", new String[] { "used", "max" },
+				new String[] { "used", "max" }, new OpenType<?>[] { SimpleType.LONG, SimpleType.LONG });
+		WindowedCondition cond = new WindowedCondition("java.lang:type=Memory", "HeapMemoryUsage.used", 50, 4, 300,
+				">");
+		assertEquals("HeapMemoryUsage", cond.getAttributeName());
+		long[] used = { 100, 400, 500, 200 };
+		boolean fired = false;
+		for (int i = 0; i < used.length; i++) {
+			CompositeData usage = new CompositeDataSupport(type, new String[] { "used", "max" },
+					new Object[] { used[i], 1000L });
+			fired = eval(cond, "java.lang:type=Memory", "HeapMemoryUsage", usage, i * SEC);
+		}
+		// median (nearest rank) of 100, 200, 400, 500 is 200
+		assertFalse(fired);
+		CompositeData usage = new CompositeDataSupport(type, new String[] { "used", "max" },
+				new Object[] { 600L, 1000L });
+		assertTrue(eval(cond, "java.lang:type=Memory", "HeapMemoryUsage", usage, 5 * SEC));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWindowSize() {
+		new WindowedCondition(POOL, "QueueSize", Statistic.MEAN, 0, 100, ">");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidObjectName() {
+		new WindowedCondition("no object name", "QueueSize", Statistic.MEAN, 3, 100, ">");
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.conditions.expr;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of {@link ExpressionParser} tokenizing, operator precedence and variable binding.
+ *
+ * @version $Revision: 1 $
+ */
+public class ExpressionParserTest {
+	private List<String> references;
+	private ExpressionParser parser;
+	private long stamp;
+
+	@Before
+	public void setUp() {
+		references = new ArrayList<String>();
+		parser = new ExpressionParser(new ExpressionParser.VariableResolver() {
+			@Override
+			public int resolve(String reference) {
+				if (reference.startsWith("missing")) {
+					throw new IllegalArgumentException("Unknown variable '" + reference + "'");
+				}
+				int slot = references.indexOf(reference);
+				if (slot < 0) {
+					slot = references.size();
+					references.add(reference);
+				}
+				return slot;
+			}
+		});
+	}
+
+	private double eval(String text, double... vars) {
+		return parser.parse(text).evaluate(vars, ++stamp);
+	}
+
+	private void assertMalformed(String text, String message) {
+		try {
+			parser.parse(text);
+			fail("Expected parse error for: " + text);
+		} catch (IllegalArgumentException exc) {
+			assertTrue(exc.getMessage(), exc.getMessage().startsWith(message));
+		}
+	}
+
+	@Test
+	public void testNumbers() {
+		assertEquals(42.0, eval("42"), 0.0);
+		assertEquals(0.5, eval(".5"), 0.0);
+		assertEquals(1500.0, eval("1.5e3"), 0.0);
+		assertEquals(0.015, eval("1.5E-2"), 0.0);
+		assertEquals(-3.0, eval("-3"), 0.0);
+		assertEquals(7.0, eval("  3 +\t4 "), 0.0);
+	}
+
+	@Test
+	public void testReferences() {
+		eval("HeapMemoryUsage.used / HeapMemoryUsage.max", 1, 2);
+		assertEquals(Arrays.asList("HeapMemoryUsage.used", "HeapMemoryUsage.max"), references);
+
+		references.clear();
+		eval("[java.lang:type=Memory]HeapMemoryUsage.used", 0);
+		assertEquals(Arrays.asList("[java.lang:type=Memory]HeapMemoryUsage.used"), references);
+
+		references.clear();
+		eval("Count.rate>Count.delta", 1, 2);
+		assertEquals(Arrays.asList("Count.rate", "Count.delta"), references);
+	}
+
+	@Test
+	public void testArithmeticPrecedence() {
+		assertEquals(7.0, eval("1 + 2 * 3"), 0.0);
+		assertEquals(9.0, eval("(1 + 2) * 3"), 0.0);
+		assertEquals(1.0, eval("10 - 4 - 5"), 0.0);
+		assertEquals(2.0, eval("12 / 3 / 2"), 0.0);
+		assertEquals(5.0, eval("2 + 7 % 4"), 0.0);
+		assertEquals(-6.0, eval("-2 * 3"), 0.0);
+		assertEquals(-1.0, eval("-(a - b)", 3, 2), 0.0);
+	}
+
+	@Test
+	public void testLogicalPrecedence() {
+		assertTrue(Expression.isTrue(eval("1 + 1 > 1 && 2 * 2 == 4")));
+		assertTrue(Expression.isTrue(eval("1 > 2 && 0 > 1 || 3 > 2")));
+		assertFalse(Expression.isTrue(eval("1 > 2 && (0 > 1 || 3 > 2)")));
+		assertTrue(Expression.isTrue(eval("!(1 > 2) && 2 >= 2 && 2 <= 2 && 1 != 2 && 1 = 1")));
+		assertFalse(Expression.isTrue(eval("!1")));
+	}
+
+	@Test
+	public void testFunctions() {
+		assertEquals(3.0, eval("abs(-3)"), 0.0);
+		assertEquals(2.0, eval("min(a, b)", 2, 5), 0.0);
+		assertEquals(10.0, eval("max(a, b) * 2", 2, 5), 0.0);
+	}
+
+	@Test
+	public void testNaNComparisons() {
+		assertFalse(Expression.isTrue(eval("a > 0", Double.NaN)));
+		assertFalse(Expression.isTrue(eval("a <= 0", Double.NaN)));
+		assertTrue(Double.isNaN(eval("a + 1", Double.NaN)));
+	}
+
+	@Test
+	public void testMissingVariable() {
+		assertMalformed("used > 0 && missingAttr > 1", "Unknown variable 'missingAttr' at position 12");
+	}
+
+	@Test
+	public void testMalformed() {
+		assertMalformed("1 +", "Unexpected end of expression");
+		assertMalformed("(1 + 2", "Expected ')'");
+		assertMalformed("1 2", "Unexpected '2'");
+		assertMalformed("1 + != 2", "Unexpected '!='");
+		assertMalformed("foo(1)", "Unknown function 'foo'");
+		assertMalformed("min(1)", "Function 'min' expects 2 argument(s)");
+		assertMalformed("[java.lang:type=Memory", "Unterminated object name");
+		assertMalformed("1.2.3", "Malformed number");
+	}
+
+	@Test
+	public void testSharedNodes() {
+		Expression first = parser.parse("a / b > 0.9");
+		Expression second = parser.parse("a / b < 0.1");
+		assertEquals(1, parser.getSharedCount());
+		assertFalse(first.isShared());
+		double[] vars = { 1, 2 };
+		assertFalse(Expression.isTrue(first.evaluate(vars, ++stamp)));
+		assertFalse(Expression.isTrue(second.evaluate(vars, stamp)));
+		vars[0] = 0;
+		assertTrue(Expression.isTrue(second.evaluate(vars, ++stamp)));
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+
+/**
+ * Round-trip tests of {@link BinaryFactFormatter} frames decoded by {@link BinaryFactDecoder}.
+ *
+ * @version $Revision: 1 $
+ */
+public class BinaryFactFormatterTest {
+	private BinaryFactFormatter formatter;
+	private BinaryFactDecoder decoder;
+
+	@Before
+	public void setUp() {
+		formatter = new BinaryFactFormatter();
+		decoder = new BinaryFactDecoder();
+	}
+
+	private static PropertySnapshot snapshot(String name, Object... keyValues) {
+		PropertySnapshot snap = new PropertySnapshot("java.lang", name);
+		for (int i = 0; i < keyValues.length; i += 2) {
+			snap.add((String) keyValues[i], keyValues[i + 1]);
+		}
+		return snap;
+	}
+
+	private Map<String, Object> roundTrip(PropertySnapshot snap) throws IOException {
+		BinaryFactDecoder.Frame frame = decoder.decode(formatter.format(snap));
+		assertEquals(BinaryFactFormatter.FRAME_SNAPSHOT, frame.getType());
+		assertEquals(1, frame.getSnapshots().size());
+		BinaryFactDecoder.SnapshotData data = frame.getSnapshots().get(0);
+		assertEquals(snap.getCategory(), data.getCategory());
+		assertEquals(snap.getName(), data.getName());
+		return data.getProperties();
+	}
+
+	private static void configure(BinaryFactFormatter formatter, String key, Object value) {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(key, value);
+		formatter.setConfiguration(settings);
+	}
+
+	@Test
+	public void testSpecialDoubles() throws IOException {
+		Map<String, Object> props = roundTrip(snapshot("java.lang:type=Memory", "nan", Double.NaN, "negZero", -0.0d,
+				"posZero", 0.0d, "posInf", Double.POSITIVE_INFINITY, "negInf", Double.NEGATIVE_INFINITY, "minValue",
+				Double.MIN_VALUE, "maxValue", Double.MAX_VALUE, "fraction", 2.5d, "float", 1.5f));
+		assertTrue(Double.isNaN((Double) props.get("nan")));
+		assertEquals(Double.doubleToRawLongBits(-0.0d), Double.doubleToRawLongBits((Double) props.get("negZero")));
+		assertEquals(Double.doubleToRawLongBits(0.0d), Double.doubleToRawLongBits((Double) props.get("posZero")));
+		assertEquals(Double.POSITIVE_INFINITY, props.get("posInf"));
+		assertEquals(Double.NEGATIVE_INFINITY, props.get("negInf"));
+		assertEquals(Double.MIN_VALUE, props.get("minValue"));
+		assertEquals(Double.MAX_VALUE, props.get("maxValue"));
+		assertEquals(2.5d, props.get("fraction"));
+		assertEquals(1.5d, props.get("float"));
+	}
+
+	@Test
+	public void testIntegralValues() throws IOException {
+		Map<String, Object> props = roundTrip(snapshot("java.lang:type=Threading", "longMin", Long.MIN_VALUE,
+				"longMax", Long.MAX_VALUE, "zero", 0L, "minusOne", -1L, "intMin", Integer.MIN_VALUE, "short",
+				(short) -3, "byte", (byte) 7, "integralDouble", 3.0d, "negIntegralDouble", -42.0d, "bigDouble",
+				(double) (1L << 60), "maxExactDouble", (double) ((1L << 53) - 1)));
+		assertEquals(Long.MIN_VALUE, props.get("longMin"));
+		assertEquals(Long.MAX_VALUE, props.get("longMax"));
+		assertEquals(0L, props.get("zero"));
+		assertEquals(-1L, props.get("minusOne"));
+		assertEquals((long) Integer.MIN_VALUE, props.get("intMin"));
+		assertEquals(-3L, props.get("short"));
+		assertEquals(7L, props.get("byte"));
+		assertEquals(3.0d, props.get("integralDouble"));
+		assertEquals(-42.0d, props.get("negIntegralDouble"));
+		assertEquals((double) (1L << 60), props.get("bigDouble"));
+		assertEquals((double) ((1L << 53) - 1), props.get("maxExactDouble"));
+	}
+
+	@Test
+	public void testStringsAndBooleans() throws IOException {
+		String accented = "G\u00fcnther \u00e9t\u00e9 \u0436\u0443\u0440\u043d\u0430\u043b";
+		String cjk = "\u65e5\u672c\u8a9e";
+		String supplementary = "emoji " + new String(Character.toChars(0x1F600));
+		char[] longChars = new char[BinaryFactFormatter.MAX_DICTIONARY_VALUE * 2];
+		Arrays.fill(longChars, '\u00df');
+		String longValue = new String(longChars);
+		Map<String, Object> props = roundTrip(snapshot("test:type=Utf8,name=" + cjk, "accented", accented,
+				cjk, "key", "supplementary", supplementary, "long", longValue, "empty", "", "true", Boolean.TRUE,
+				"false", Boolean.FALSE));
+		assertEquals(accented, props.get("accented"));
+		assertEquals("key", props.get(cjk));
+		assertEquals(supplementary, props.get("supplementary"));
+		assertEquals(longValue, props.get("long"));
+		assertEquals("", props.get("empty"));
+		assertEquals(Boolean.TRUE, props.get("true"));
+		assertEquals(Boolean.FALSE, props.get("false"));
+	}
+
+	@Test
+	public void testMessageFrame() throws IOException {
+		String text = "heap \u00fcber " + new String(Character.toChars(0x1F4A5)) + " {0}";
+		BinaryFactDecoder.Frame frame = decoder
+				.decode(formatter.format(0L, null, OpLevel.WARNING, text, new Object[] { 90 }));
+		assertEquals(BinaryFactFormatter.FRAME_MESSAGE, frame.getType());
+		assertEquals(OpLevel.WARNING, frame.getLevel());
+		assertEquals("heap \u00fcber " + new String(Character.toChars(0x1F4A5)) + " 90", frame.getMessage());
+	}
+
+	@Test
+	public void testDictionaryReuse() throws IOException {
+		String first = formatter.format(snapshot("java.lang:type=Memory", "HeapMemoryUsage", 1L));
+		String second = formatter.format(snapshot("java.lang:type=Memory", "HeapMemoryUsage", 2L));
+		assertTrue("repeated names are sent as ids only", second.length() < first.length());
+		assertEquals(1L, decoder.decode(first).getSnapshots().get(0).getProperties().get("HeapMemoryUsage"));
+		assertEquals(2L, decoder.decode(second).getSnapshots().get(0).getProperties().get("HeapMemoryUsage"));
+		assertEquals(formatter.getDictionarySize(), decoder.getDictionarySize());
+	}
+
+	@Test
+	public void testDictionaryRefresh() throws IOException {
+		configure(formatter, "DictionaryRefresh", 10);
+		for (int i = 0; i < 35; i++) {
+			Map<String, Object> props = roundTrip(snapshot("test:type=Refresh,id=" + (i % 4), "value", (long) i));
+			assertEquals((long) i, props.get("value"));
+			assertEquals(formatter.getDictionarySize(), decoder.getDictionarySize());
+		}
+	}
+
+	@Test
+	public void testDictionaryMaxSize() throws IOException {
+		configure(formatter, "DictionaryMaxSize", 16);
+		for (int i = 0; i < 100; i++) {
+			Map<String, Object> props = roundTrip(snapshot("test:type=Grow,id=" + i, "key" + i, "value" + i));
+			assertEquals("value" + i, props.get("key" + i));
+			assertTrue(formatter.getDictionarySize() <= 16 + 3);
+		}
+	}
+
+	@Test
+	public void testLateDecoderResync() throws IOException {
+		configure(formatter, "DictionaryRefresh", 10);
+		for (int i = 0; i < 5; i++) {
+			formatter.format(snapshot("test:type=Late,id=" + i, "value", (long) i));
+		}
+		BinaryFactDecoder late = new BinaryFactDecoder();
+		int rejected = 0;
+		for (int i = 5; i < 25; i++) {
+			String frame = formatter.format(snapshot("test:type=Late,id=" + i, "value", (long) i));
+			try {
+				assertEquals((long) i, late.decode(frame).getSnapshots().get(0).getProperties().get("value"));
+				assertTrue("frames are decoded after dictionary reset", i >= 10);
+			} catch (IOException exc) {
+				assertTrue("frames are rejected only until dictionary reset", i < 10);
+				rejected++;
+			}
+		}
+		assertEquals(5, rejected);
+	}
+
+	@Test
+	public void testLostFrameResync() throws IOException {
+		configure(formatter, "DictionaryRefresh", 10);
+		int rejected = 0;
+		for (int i = 0; i < 30; i++) {
+			String frame = formatter.format(snapshot("test:type=Lost,id=" + i, "value", (long) i));
+			if (i == 3) {
+				continue; // frame lost by transport
+			}
+			try {
+				assertEquals((long) i, decoder.decode(frame).getSnapshots().get(0).getProperties().get("value"));
+			} catch (IOException exc) {
+				assertTrue("frames are rejected only until dictionary reset", i > 3 && i < 10);
+				rejected++;
+			}
+		}
+		assertEquals(6, rejected);
+	}
+
+	@Test
+	public void testMalformedFrames() {
+		String valid = formatter.format(snapshot("java.lang:type=Memory", "HeapMemoryUsage", 1L)).trim();
+		String[] malformed = { valid.substring(0, valid.length() - 4), "AAAA", "!!!!", valid.substring(1) };
+		for (String frame : malformed) {
+			try {
+				new BinaryFactDecoder().decode(frame);
+				fail("Malformed frame decoded: " + frame);
+			} catch (IOException exc) {
+			}
+		}
+	}
+}
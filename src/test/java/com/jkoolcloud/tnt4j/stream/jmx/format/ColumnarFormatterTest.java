@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SampleChunker;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+
+/**
+ * Tests of {@link ColumnarFormatter} header, column retirement and chunk merging.
+ *
+ * @version $Revision: 1 $
+ */
+public class ColumnarFormatterTest {
+	static final String MEMORY = "java.lang:type=Memory";
+	static final String THREADING = "java.lang:type=Threading";
+
+	private ColumnarFormatter formatter;
+
+	@Before
+	public void setUp() {
+		formatter = new ColumnarFormatter();
+	}
+
+	private static PropertySnapshot snapshot(String name, Object... keyValues) {
+		PropertySnapshot snap = new PropertySnapshot("java.lang", name);
+		for (int i = 0; i < keyValues.length; i += 2) {
+			snap.add((String) keyValues[i], keyValues[i + 1]);
+		}
+		return snap;
+	}
+
+	private static TrackingActivity activity(String trackingId, PropertySnapshot... snapshots) {
+		TrackingActivity activity = new TrackingActivity(OpLevel.INFO, "sample") {
+		};
+		activity.setTrackingId(trackingId);
+		for (PropertySnapshot snap : snapshots) {
+			activity.addSnapshot(snap);
+		}
+		return activity;
+	}
+
+	private static TrackingActivity chunk(String cycleId, int index, PropertySnapshot... snapshots) {
+		PropertySnapshot chunkInfo = new PropertySnapshot("sample", SampleChunker.CHUNK_SNAPSHOT);
+		chunkInfo.add(SampleChunker.PROP_CYCLE_ID, cycleId);
+		chunkInfo.add(SampleChunker.PROP_CHUNK_INDEX, index);
+		TrackingActivity chunk = activity(cycleId + "-chunk" + index, snapshots);
+		chunk.addSnapshot(chunkInfo);
+		return chunk;
+	}
+
+	@Test
+	public void testHeaderOnce() {
+		String first = formatter.format(snapshot(MEMORY, "Used", 10L));
+		assertEquals("#timestamp,java.lang:type\\Memory\\Used", first.split("\n")[0]);
+		assertTrue(first.split("\n")[1].endsWith(",10"));
+
+		String second = formatter.format(snapshot(MEMORY, "Used", 20L));
+		assertEquals(1, second.split("\n").length);
+		assertTrue(second.endsWith(",20\n"));
+
+		String third = formatter.format(snapshot(THREADING, "ThreadCount", 5));
+		assertEquals("#timestamp,java.lang:type\\Memory\\Used,java.lang:type\\Threading\\ThreadCount",
+				third.split("\n")[0]);
+		assertTrue(third.split("\n")[1].endsWith(",,5"));
+		assertEquals(3, formatter.getColumnCount());
+	}
+
+	@Test
+	public void testRetireIdleColumns() {
+		formatter.setIdleRows(2);
+		formatter.format(activity("c1", snapshot(MEMORY, "Used", 1L), snapshot(THREADING, "ThreadCount", 5)));
+		assertEquals(3, formatter.getColumnCount());
+		formatter.format(activity("c2", snapshot(MEMORY, "Used", 2L)));
+		formatter.format(activity("c3", snapshot(MEMORY, "Used", 3L)));
+		assertEquals(3, formatter.getColumnCount());
+
+		String row = formatter.format(activity("c4", snapshot(MEMORY, "Used", 4L)));
+		assertEquals(2, formatter.getColumnCount());
+		assertEquals("#timestamp,java.lang:type\\Memory\\Used", row.split("\n")[0]);
+		assertTrue(row.split("\n")[1].endsWith(",4"));
+
+		// returning MBean gets columns appended again
+		row = formatter.format(activity("c5", snapshot(THREADING, "ThreadCount", 6), snapshot(MEMORY, "Used", 5L)));
+		assertEquals("#timestamp,java.lang:type\\Memory\\Used,java.lang:type\\Threading\\ThreadCount",
+				row.split("\n")[0]);
+		assertTrue(row.split("\n")[1].endsWith(",5,6"));
+	}
+
+	@Test
+	public void testKeepColumns() {
+		formatter.setIdleRows(0);
+		formatter.format(activity("c1", snapshot(THREADING, "ThreadCount", 5)));
+		for (int i = 0; i < 20; i++) {
+			formatter.format(activity("c" + (i + 2), snapshot(MEMORY, "Used", (long) i)));
+		}
+		assertEquals(3, formatter.getColumnCount());
+	}
+
+	@Test
+	public void testMergeChunks() {
+		assertEquals("", formatter.format(chunk("c1", 1, snapshot(MEMORY, "Used", 1L))));
+		assertEquals("", formatter.format(chunk("c1", 2, snapshot(THREADING, "ThreadCount", 5))));
+		String row = formatter.format(activity("c1", snapshot("SampleContext", "sample.count", 1L)));
+		String[] lines = row.split("\n");
+		assertEquals(2, lines.length);
+		assertEquals("#timestamp,java.lang:type\\Memory\\Used,java.lang:type\\Threading\\ThreadCount,"
+				+ "SampleContext\\sample.count", lines[0]);
+		assertTrue(lines[1].endsWith(",1,5,1"));
+		assertFalse(row.contains(SampleChunker.PROP_CYCLE_ID));
+	}
+
+	@Test
+	public void testIncompleteChunkedCycle() {
+		formatter.format(chunk("c1", 1, snapshot(MEMORY, "Used", 1L)));
+		// cycle activity of c1 was lost: chunks of c1 are written as a row of their own
+		String rows = formatter.format(activity("c2", snapshot(MEMORY, "Used", 2L)));
+		String[] lines = rows.split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[1].endsWith(",1"));
+		assertTrue(lines[2].endsWith(",2"));
+	}
+}
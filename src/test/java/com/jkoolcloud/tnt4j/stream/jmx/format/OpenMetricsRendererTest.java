@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.format;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+
+/**
+ * Tests of {@link OpenMetricsRenderer} family naming, labels and metric types.
+ *
+ * @version $Revision: 1 $
+ */
+public class OpenMetricsRendererTest {
+	private static Snapshot snapshot(String name, Object... keyValues) {
+		PropertySnapshot snap = new PropertySnapshot("java.lang", name);
+		for (int i = 0; i < keyValues.length; i += 2) {
+			snap.add((String) keyValues[i], keyValues[i + 1]);
+		}
+		return snap;
+	}
+
+	private static Map<String, String> render(OpenMetricsRenderer renderer, Snapshot... snapshots) {
+		Map<String, String> lines = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, StringBuilder> family : renderer.render(Arrays.asList(snapshots)).entrySet()) {
+			lines.put(family.getKey(), family.getValue().toString());
+		}
+		return lines;
+	}
+
+	@Test
+	public void testGauges() {
+		Map<String, String> lines = render(new OpenMetricsRenderer(),
+				snapshot("java.lang:type=Memory", "HeapMemoryUsage.used", 1024L, "Verbose", true, "Name", "heap"));
+		assertEquals(2, lines.size());
+		assertEquals("java_lang_Memory_HeapMemoryUsage_used 1024\n", lines.get("java_lang_Memory_HeapMemoryUsage_used"));
+		assertEquals("java_lang_Memory_Verbose 1\n", lines.get("java_lang_Memory_Verbose"));
+	}
+
+	@Test
+	public void testCounters() {
+		OpenMetricsRenderer renderer = new OpenMetricsRenderer();
+		Map<String, String> lines = render(renderer, snapshot("java.lang:type=GarbageCollector,name=Copy",
+				"CollectionCount", 5L, "CollectionTime", 12L, "LastGcInfo.duration", 3L));
+		assertEquals("java_lang_GarbageCollector_CollectionCount_total{name=\"Copy\"} 5\n",
+				lines.get("java_lang_GarbageCollector_CollectionCount"));
+		assertTrue(renderer.isCounter("java_lang_GarbageCollector_CollectionCount"));
+		assertTrue(renderer.isCounter("java_lang_GarbageCollector_CollectionTime"));
+		assertFalse(renderer.isCounter("java_lang_GarbageCollector_LastGcInfo_duration"));
+
+		renderer = new OpenMetricsRenderer(16, Collections.<String, String> emptyMap(), "duration");
+		lines = render(renderer, snapshot("java.lang:type=GarbageCollector,name=Copy", "CollectionCount", 5L,
+				"LastGcInfo.duration", 3L));
+		assertFalse(renderer.isCounter("java_lang_GarbageCollector_CollectionCount"));
+		assertEquals("java_lang_GarbageCollector_LastGcInfo_duration_total{name=\"Copy\"} 3\n",
+				lines.get("java_lang_GarbageCollector_LastGcInfo_duration"));
+	}
+
+	@Test
+	public void testConstantLabels() {
+		OpenMetricsRenderer renderer = new OpenMetricsRenderer(16, Collections.singletonMap("sampler", "a\"b"), null);
+		Map<String, String> lines = render(renderer, snapshot("java.lang:type=Threading", "ThreadCount", 10),
+				snapshot("com.example:type=Pool,sampler=x,name=\"p\\\\1\"", "Size", 2.5d));
+		assertEquals("java_lang_Threading_ThreadCount{sampler=\"a\\\"b\"} 10\n",
+				lines.get("java_lang_Threading_ThreadCount"));
+		assertEquals("com_example_Pool_Size{sampler=\"a\\\"b\",name=\"p\\\\1\",mbean_sampler=\"x\"} 2.5\n",
+				lines.get("com_example_Pool_Size"));
+	}
+
+	@Test
+	public void testSpecialValues() {
+		Map<String, String> lines = render(new OpenMetricsRenderer(), snapshot("java.lang:type=OperatingSystem",
+				"SystemCpuLoad", Double.NaN, "Max", Double.POSITIVE_INFINITY, "Min", Double.NEGATIVE_INFINITY));
+		assertEquals("java_lang_OperatingSystem_SystemCpuLoad NaN\n", lines.get("java_lang_OperatingSystem_SystemCpuLoad"));
+		assertEquals("java_lang_OperatingSystem_Max +Inf\n", lines.get("java_lang_OperatingSystem_Max"));
+		assertEquals("java_lang_OperatingSystem_Min -Inf\n", lines.get("java_lang_OperatingSystem_Min"));
+	}
+
+	@Test
+	public void testSkipsNonMBeanSnapshots() {
+		assertTrue(render(new OpenMetricsRenderer(), snapshot("SampleContext", "sample.count", 1L)).isEmpty());
+	}
+}
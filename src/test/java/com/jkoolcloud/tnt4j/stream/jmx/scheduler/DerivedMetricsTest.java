@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import static com.jkoolcloud.tnt4j.stream.jmx.conditions.ExpressionConditionTest.sample;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.Property;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+
+/**
+ * Tests of {@link DerivedMetrics} computed from consecutive counter samples.
+ *
+ * @version $Revision: 1 $
+ */
+public class DerivedMetricsTest {
+	static final String GC = "java.lang:type=GarbageCollector,name=Copy";
+	static final long SEC = 1000000L;
+	static final double DELTA = 1e-9;
+
+	private static PropertySnapshot update(DerivedMetrics metrics, String objName, String attr, Object value,
+			long timeUsec) throws Exception {
+		PropertySnapshot snapshot = new PropertySnapshot("java.lang", objName);
+		metrics.update(sample(new Activity("cycle-" + timeUsec, "sample"), snapshot, objName, attr, value, timeUsec));
+		return snapshot;
+	}
+
+	private static Object value(PropertySnapshot snapshot, String key) {
+		Property prop = snapshot.get(key);
+		return prop == null ? null : prop.getValue();
+	}
+
+	@Test
+	public void testFunctions() throws Exception {
+		DerivedMetrics metrics = new DerivedMetrics();
+		metrics.add("rate", "java.lang:type=GarbageCollector,*", "CollectionCount");
+		metrics.add("delta", "java.lang:type=GarbageCollector,*", "CollectionCount");
+		metrics.add("pct", "java.lang:type=GarbageCollector,*", "CollectionTime");
+		assertEquals(3, metrics.size());
+
+		// first sample is a base value only
+		assertEquals(0, update(metrics, GC, "CollectionCount", 10L, 1 * SEC).size());
+		assertEquals(0, update(metrics, GC, "CollectionTime", 0L, 1 * SEC).size());
+
+		PropertySnapshot snapshot = update(metrics, GC, "CollectionCount", 30L, 3 * SEC);
+		assertEquals(10.0, (Double) value(snapshot, "CollectionCount.rate"), DELTA);
+		assertEquals(20.0, (Double) value(snapshot, "CollectionCount.delta"), DELTA);
+		// 500 ms of 2 seconds
+		snapshot = update(metrics, GC, "CollectionTime", 500L, 3 * SEC);
+		assertEquals(25.0, (Double) value(snapshot, "CollectionTime.pct"), DELTA);
+
+		assertEquals(3L, metrics.getStats().get(DerivedMetrics.STAT_DERIVED_METRIC_COUNT));
+		assertEquals(3, metrics.getStats().get(DerivedMetrics.STAT_DERIVED_SLOT_COUNT));
+	}
+
+	@Test
+	public void testIgnoresOtherSamples() throws Exception {
+		DerivedMetrics metrics = new DerivedMetrics();
+		assertEquals(0, update(metrics, GC, "CollectionCount", 10L, 1 * SEC).size());
+		metrics.add("delta", GC, "CollectionCount");
+		update(metrics, GC, "CollectionCount", 10L, 1 * SEC);
+		assertEquals(0, update(metrics, "java.lang:type=Memory", "CollectionCount", 20L, 2 * SEC).size());
+		assertEquals(0, update(metrics, GC, "CollectionTime", 20L, 2 * SEC).size());
+		assertEquals(0, update(metrics, GC, "CollectionCount", "text", 2 * SEC).size());
+		assertEquals(5.0, (Double) value(update(metrics, GC, "CollectionCount", 15L, 3 * SEC),
+				"CollectionCount.delta"), DELTA);
+	}
+
+	@Test
+	public void testCounterReset() throws Exception {
+		DerivedMetrics metrics = new DerivedMetrics();
+		metrics.add("delta", GC, "CollectionCount");
+		update(metrics, GC, "CollectionCount", 100L, 1 * SEC);
+		assertEquals(0, update(metrics, GC, "CollectionCount", 5L, 2 * SEC).size());
+		assertEquals(1L, metrics.getStats().get(DerivedMetrics.STAT_DERIVED_RESET_COUNT));
+		// decreased value is a new base value
+		assertEquals(3.0, (Double) value(update(metrics, GC, "CollectionCount", 8L, 3 * SEC),
+				"CollectionCount.delta"), DELTA);
+
+		metrics.resetStats();
+		assertEquals(0L, metrics.getStats().get(DerivedMetrics.STAT_DERIVED_RESET_COUNT));
+	}
+
+	@Test
+	public void testResetReleasesSlots() throws Exception {
+		String gc2 = "java.lang:type=GarbageCollector,name=MarkSweep";
+		DerivedMetrics metrics = new DerivedMetrics();
+		metrics.add("delta", "java.lang:type=GarbageCollector,*", "CollectionCount");
+		update(metrics, GC, "CollectionCount", 10L, 1 * SEC);
+		update(metrics, gc2, "CollectionCount", 10L, 1 * SEC);
+		assertEquals(2, metrics.getStats().get(DerivedMetrics.STAT_DERIVED_SLOT_COUNT));
+
+		metrics.reset(new ObjectName(GC));
+		assertEquals(1, metrics.getStats().get(DerivedMetrics.STAT_DERIVED_SLOT_COUNT));
+		// re-registered MBean starts from a new base value
+		assertEquals(0, update(metrics, GC, "CollectionCount", 50L, 2 * SEC).size());
+		assertEquals(2, metrics.getStats().get(DerivedMetrics.STAT_DERIVED_SLOT_COUNT));
+		assertEquals(5.0, (Double) value(update(metrics, GC, "CollectionCount", 55L, 3 * SEC),
+				"CollectionCount.delta"), DELTA);
+		assertEquals(1.0, (Double) value(update(metrics, gc2, "CollectionCount", 11L, 3 * SEC),
+				"CollectionCount.delta"), DELTA);
+	}
+
+	@Test
+	public void testAddAllSkipsMalformed() {
+		DerivedMetrics metrics = new DerivedMetrics();
+		List<IllegalArgumentException> errors = metrics.addAll(
+				"rate:CollectionCount@java.lang:type=GarbageCollector,*; median:CollectionTime@java.lang:type=GarbageCollector,*;"
+						+ "CollectionTime;pct:CollectionTime@not an object name;delta:Usage.used@java.lang:type=MemoryPool,*");
+		assertEquals(3, errors.size());
+		assertEquals(2, metrics.size());
+	}
+}
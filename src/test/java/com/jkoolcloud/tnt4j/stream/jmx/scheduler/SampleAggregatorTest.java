@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.Property;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+
+/**
+ * Tests of {@link SampleAggregator} window aggregates.
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleAggregatorTest {
+	static final String THREADING = "java.lang:type=Threading";
+	static final String MEMORY = "java.lang:type=Memory";
+	static final double DELTA = 1e-9;
+
+	private static PropertySnapshot snapshot(String name, Object... keyValues) {
+		PropertySnapshot snap = new PropertySnapshot("java.lang", name);
+		for (int i = 0; i < keyValues.length; i += 2) {
+			snap.add((String) keyValues[i], keyValues[i + 1]);
+		}
+		return snap;
+	}
+
+	private static Snapshot find(Activity activity, String name) {
+		for (Snapshot snap : activity.getSnapshots()) {
+			if (name.equals(snap.getName())) {
+				return snap;
+			}
+		}
+		return null;
+	}
+
+	private static Object value(Snapshot snapshot, String key) {
+		Property prop = snapshot.get(key);
+		return prop == null ? null : prop.getValue();
+	}
+
+	@Test
+	public void testAggregates() {
+		SampleAggregator aggregator = new SampleAggregator(60000, "min,max,avg,last,count");
+		aggregator.add(snapshot(THREADING, "ThreadCount", 10, "Name", "a"));
+		aggregator.add(snapshot(THREADING, "ThreadCount", 30, "Name", "b"));
+		aggregator.add(snapshot(THREADING, "ThreadCount", 20, "Name", "c"));
+
+		Activity activity = new Activity("cycle-1", "sample");
+		assertTrue(aggregator.flush(activity));
+		Snapshot snap = find(activity, THREADING);
+		assertNotNull(snap);
+		assertEquals(20, value(snap, "ThreadCount"));
+		assertEquals(10.0, (Double) value(snap, "ThreadCount.min"), DELTA);
+		assertEquals(30.0, (Double) value(snap, "ThreadCount.max"), DELTA);
+		assertEquals(20.0, (Double) value(snap, "ThreadCount.avg"), DELTA);
+		assertEquals(3L, value(snap, "ThreadCount.count"));
+		// non numeric properties report last value and count only
+		assertEquals("c", value(snap, "Name"));
+		assertNull(value(snap, "Name.min"));
+		assertEquals(3L, value(snap, "Name.count"));
+
+		assertEquals(3L, aggregator.getStats().get(SampleAggregator.STAT_AGGREGATE_SAMPLE_COUNT));
+		assertEquals(1L, aggregator.getStats().get(SampleAggregator.STAT_AGGREGATE_EMIT_COUNT));
+	}
+
+	@Test
+	public void testSelectedFunctions() {
+		SampleAggregator aggregator = new SampleAggregator(60000, "max, COUNT");
+		aggregator.add(snapshot(THREADING, "ThreadCount", 10));
+		aggregator.add(snapshot(THREADING, "ThreadCount", 30));
+		Activity activity = new Activity("cycle-1", "sample");
+		aggregator.flush(activity);
+		Snapshot snap = find(activity, THREADING);
+		assertEquals(2, snap.size());
+		assertEquals(30.0, (Double) value(snap, "ThreadCount.max"), DELTA);
+		assertEquals(2L, value(snap, "ThreadCount.count"));
+	}
+
+	@Test
+	public void testWindowStartsEmpty() {
+		SampleAggregator aggregator = new SampleAggregator(60000, "last");
+		aggregator.add(snapshot(THREADING, "ThreadCount", 10));
+		aggregator.add(snapshot(MEMORY, "ObjectPendingFinalizationCount", 0));
+		aggregator.flush(new Activity("cycle-1", "sample"));
+
+		Activity activity = new Activity("cycle-2", "sample");
+		assertFalse(aggregator.flush(activity));
+		assertEquals(0, activity.getSnapshotCount());
+
+		// series not sampled within window, e.g. of unregistered MBean, are dropped
+		aggregator.add(snapshot(MEMORY, "ObjectPendingFinalizationCount", 1));
+		assertTrue(aggregator.flush(activity));
+		assertEquals(1, activity.getSnapshotCount());
+		assertEquals(1, value(find(activity, MEMORY), "ObjectPendingFinalizationCount"));
+		assertEquals(1, aggregator.getStats().get(SampleAggregator.STAT_AGGREGATE_SERIES_COUNT));
+	}
+
+	@Test
+	public void testBeginCycle() throws Exception {
+		SampleAggregator aggregator = new SampleAggregator(50, "last");
+		assertFalse(aggregator.beginCycle(new Activity("cycle-1", "sample")));
+		aggregator.add(snapshot(THREADING, "ThreadCount", 10));
+		Thread.sleep(60);
+
+		Activity activity = new Activity("cycle-2", "sample");
+		assertTrue(aggregator.beginCycle(activity));
+		assertEquals(10, value(find(activity, THREADING), "ThreadCount"));
+		assertEquals(1L, aggregator.getStats().get(SampleAggregator.STAT_AGGREGATE_HELD_COUNT));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidFunction() {
+		new SampleAggregator(1000, "min,median");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWindow() {
+		new SampleAggregator(0, "min");
+	}
+}
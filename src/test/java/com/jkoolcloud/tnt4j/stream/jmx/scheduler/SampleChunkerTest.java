@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.TrackingLogger;
+import com.jkoolcloud.tnt4j.core.Activity;
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+import com.jkoolcloud.tnt4j.format.DefaultFormatter;
+import com.jkoolcloud.tnt4j.stream.jmx.sink.CaptureEventSink;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+
+/**
+ * Tests of {@link SampleChunker} flushing sampled snapshots in bounded chunks.
+ *
+ * @version $Revision: 1 $
+ */
+public class SampleChunkerTest {
+	private CaptureEventSink sink;
+	private TrackingLogger logger;
+
+	@Before
+	public void setUp() throws Exception {
+		sink = new CaptureEventSink("chunker-test", new DefaultFormatter());
+		logger = CaptureEventSink.newLogger(sink);
+	}
+
+	@After
+	public void tearDown() {
+		logger.close();
+	}
+
+	private static PropertySnapshot snapshot(String name, int properties) {
+		PropertySnapshot snap = new PropertySnapshot("java.lang", name);
+		for (int i = 0; i < properties; i++) {
+			snap.add("attr" + i, i);
+		}
+		return snap;
+	}
+
+	private List<TrackingActivity> chunks() {
+		List<TrackingActivity> chunks = new ArrayList<TrackingActivity>();
+		for (Object entry : sink.getEntries()) {
+			chunks.add((TrackingActivity) entry);
+		}
+		return chunks;
+	}
+
+	private static Snapshot find(Activity activity, String name) {
+		for (Snapshot snap : activity.getSnapshots()) {
+			if (name.equals(snap.getName())) {
+				return snap;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testChunksByProperties() {
+		SampleChunker chunker = new SampleChunker(4, 0);
+		TrackingActivity cycle = logger.newActivity(OpLevel.INFO, "sample");
+		assertTrue(chunker.beginCycle(cycle, null));
+		assertTrue(chunker.add(snapshot("java.lang:type=A", 2)));
+		assertTrue(chunker.add(snapshot("java.lang:type=B", 2)));
+		assertTrue(chunker.add(snapshot("java.lang:type=C", 3)));
+		assertTrue(chunker.add(snapshot("java.lang:type=D", 1)));
+		chunker.endCycle(cycle);
+
+		List<TrackingActivity> chunks = chunks();
+		assertEquals(1, chunks.size());
+		TrackingActivity chunk = chunks.get(0);
+		assertNotEquals(cycle.getTrackingId(), chunk.getTrackingId());
+		assertTrue(chunk.getCorrelator().contains(cycle.getTrackingId()));
+		assertTrue(cycle.getCorrelator().contains(cycle.getTrackingId()));
+
+		Snapshot chunkInfo = find(chunk, SampleChunker.CHUNK_SNAPSHOT);
+		assertEquals(cycle.getTrackingId(), chunkInfo.get(SampleChunker.PROP_CYCLE_ID).getValue());
+		assertEquals(1, chunkInfo.get(SampleChunker.PROP_CHUNK_INDEX).getValue());
+		assertEquals(4, chunkInfo.get(SampleChunker.PROP_CHUNK_PROPERTIES).getValue());
+		assertNotNull(find(chunk, "java.lang:type=A"));
+		assertNotNull(find(chunk, "java.lang:type=B"));
+
+		// remaining snapshots are reported within sampling activity
+		assertEquals(2, cycle.getSnapshotCount());
+		assertNotNull(find(cycle, "java.lang:type=C"));
+		assertNotNull(find(cycle, "java.lang:type=D"));
+		assertEquals(1, chunker.getStats().get(SampleChunker.STAT_CHUNK_LAST_COUNT));
+		assertEquals(1L, chunker.getStats().get(SampleChunker.STAT_CHUNK_TOTAL_COUNT));
+	}
+
+	@Test
+	public void testOversizedSnapshot() {
+		SampleChunker chunker = new SampleChunker(0, 100);
+		TrackingActivity cycle = logger.newActivity(OpLevel.INFO, "sample");
+		chunker.beginCycle(cycle, null);
+		chunker.add(snapshot("java.lang:type=A", 1));
+		// snapshot exceeding the bound is never split
+		chunker.add(snapshot("java.lang:type=Big", 10));
+		chunker.add(snapshot("java.lang:type=C", 1));
+		chunker.endCycle(cycle);
+
+		List<TrackingActivity> chunks = chunks();
+		assertEquals(2, chunks.size());
+		assertNotNull(find(chunks.get(0), "java.lang:type=A"));
+		assertNotNull(find(chunks.get(1), "java.lang:type=Big"));
+		assertEquals(2, find(chunks.get(1), SampleChunker.CHUNK_SNAPSHOT).get(SampleChunker.PROP_CHUNK_INDEX)
+				.getValue());
+		assertNotNull(find(cycle, "java.lang:type=C"));
+	}
+
+	@Test
+	public void testNotTrackedActivity() {
+		SampleChunker chunker = new SampleChunker(1, 0);
+		Activity cycle = new Activity("cycle-1", "sample");
+		assertFalse(chunker.beginCycle(cycle, null));
+		assertFalse(chunker.add(snapshot("java.lang:type=A", 2)));
+		chunker.endCycle(cycle);
+		assertEquals(0, cycle.getSnapshotCount());
+		assertTrue(sink.getEntries().isEmpty());
+	}
+
+	@Test
+	public void testNewCycleDropsPending() {
+		SampleChunker chunker = new SampleChunker(10, 0);
+		TrackingActivity cycle = logger.newActivity(OpLevel.INFO, "sample");
+		chunker.beginCycle(cycle, null);
+		chunker.add(snapshot("java.lang:type=A", 2));
+
+		TrackingActivity next = logger.newActivity(OpLevel.INFO, "sample");
+		chunker.beginCycle(next, null);
+		// sampling activity of another cycle is left intact
+		chunker.endCycle(cycle);
+		assertEquals(0, cycle.getSnapshotCount());
+		chunker.endCycle(next);
+		assertEquals(0, next.getSnapshotCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBounds() {
+		new SampleChunker(0, 0);
+	}
+}
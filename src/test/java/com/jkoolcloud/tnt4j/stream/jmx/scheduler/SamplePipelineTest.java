@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.scheduler;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.TrackingLogger;
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+import com.jkoolcloud.tnt4j.format.DefaultFormatter;
+import com.jkoolcloud.tnt4j.stream.jmx.scheduler.SamplePipeline.OverflowPolicy;
+import com.jkoolcloud.tnt4j.stream.jmx.sink.CaptureEventSink;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+
+/**
+ * Tests of {@link SamplePipeline} stages and overflow policies.
+ *
+ * @version $Revision: 1 $
+ */
+public class SamplePipelineTest {
+	static final long TIMEOUT_MS = 5000;
+
+	private CaptureEventSink sink;
+	private TrackingLogger logger;
+	private SamplePipeline pipeline;
+
+	@Before
+	public void setUp() throws Exception {
+		// activities are formatted as their names, chunk activities as empty strings
+		sink = new CaptureEventSink("pipeline-test", new DefaultFormatter() {
+			@Override
+			public String format(TrackingActivity activity) {
+				return activity.getName().startsWith("chunk") ? "" : activity.getName();
+			}
+		});
+		logger = CaptureEventSink.newLogger(sink);
+	}
+
+	@After
+	public void tearDown() {
+		sink.release();
+		if (pipeline != null) {
+			pipeline.close(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		}
+		logger.close();
+	}
+
+	private TrackingActivity activity(String name) {
+		return logger.newActivity(OpLevel.INFO, name);
+	}
+
+	private long stat(String key) {
+		return ((Number) pipeline.getStats().get(key)).longValue();
+	}
+
+	private void await(String key, long value) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (stat(key) != value && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(key, value, stat(key));
+	}
+
+	/**
+	 * Stall sink and fill pipeline: a1 is being written, a2 is queued for sink, a3 is formatted and waits for sink
+	 * queue, a4 is queued for formatting.
+	 */
+	private void fill(OverflowPolicy policy) throws InterruptedException {
+		pipeline = new SamplePipeline(1, policy, "java.lang", new SampleTiming());
+		sink.hold();
+		for (int i = 1; i <= 3; i++) {
+			assertTrue(pipeline.submit(logger, activity("a" + i)));
+			await(SamplePipeline.STAT_PIPELINE_FORMAT_QUEUE_DEPTH, 0);
+		}
+		await(SamplePipeline.STAT_PIPELINE_SINK_QUEUE_DEPTH, 1);
+		assertTrue(pipeline.submit(logger, activity("a4")));
+	}
+
+	private void drain() {
+		sink.release();
+		pipeline.close(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void testWritesInOrder() {
+		pipeline = new SamplePipeline(4, OverflowPolicy.BLOCK, "java.lang", new SampleTiming());
+		assertTrue(pipeline.submit(logger, activity("a1")));
+		assertTrue(pipeline.submit(logger, activity("chunk1"), false));
+		assertTrue(pipeline.submit(logger, activity("a2")));
+		drain();
+		// empty entries are not written
+		assertEquals(Arrays.<Object> asList("a1", "a2"), sink.getEntries());
+		assertEquals(3, stat(SamplePipeline.STAT_PIPELINE_SUBMIT_COUNT));
+		assertEquals(2, stat(SamplePipeline.STAT_PIPELINE_WRITE_COUNT));
+		assertEquals(0, stat(SamplePipeline.STAT_PIPELINE_ERROR_COUNT));
+
+		assertFalse(pipeline.submit(logger, activity("a3")));
+		assertEquals(1, stat(SamplePipeline.STAT_PIPELINE_DROP_NEWEST_COUNT));
+	}
+
+	@Test
+	public void testDropNewest() throws Exception {
+		fill(OverflowPolicy.DROP_NEWEST);
+		assertFalse(pipeline.submit(logger, activity("a5")));
+		drain();
+		assertEquals(Arrays.<Object> asList("a1", "a2", "a3", "a4"), sink.getEntries());
+		assertEquals(1, stat(SamplePipeline.STAT_PIPELINE_DROP_NEWEST_COUNT));
+	}
+
+	@Test
+	public void testDropOldest() throws Exception {
+		fill(OverflowPolicy.DROP_OLDEST);
+		assertTrue(pipeline.submit(logger, activity("a5")));
+		drain();
+		assertEquals(Arrays.<Object> asList("a1", "a2", "a3", "a5"), sink.getEntries());
+		assertEquals(1, stat(SamplePipeline.STAT_PIPELINE_DROP_OLDEST_COUNT));
+	}
+
+	@Test
+	public void testPriority() throws Exception {
+		fill(OverflowPolicy.PRIORITY);
+		TrackingActivity a5 = activity("a5");
+		a5.addSnapshot(new PropertySnapshot("java.lang", "java.lang:type=Memory"));
+		a5.addSnapshot(new PropertySnapshot("com.example", "com.example:type=Pool"));
+		a5.addSnapshot(new PropertySnapshot("a5", "SampleContext"));
+		assertTrue(pipeline.submit(logger, a5));
+		drain();
+		assertEquals(Arrays.<Object> asList("a1", "a2", "a3", "a5"), sink.getEntries());
+		assertEquals(2, a5.getSnapshotCount());
+		for (Snapshot snap : a5.getSnapshots()) {
+			assertNotEquals("com.example:type=Pool", snap.getName());
+		}
+		assertEquals(1, stat(SamplePipeline.STAT_PIPELINE_DROP_SNAPSHOT_COUNT));
+		assertEquals(1, stat(SamplePipeline.STAT_PIPELINE_DROP_OLDEST_COUNT));
+	}
+
+	@Test
+	public void testBlock() throws Exception {
+		fill(OverflowPolicy.BLOCK);
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				pipeline.submit(logger, activity("a5"));
+			}
+		});
+		producer.start();
+		await(SamplePipeline.STAT_PIPELINE_BLOCK_COUNT, 1);
+		assertTrue(producer.isAlive());
+		sink.release();
+		producer.join(TIMEOUT_MS);
+		drain();
+		assertEquals(Arrays.<Object> asList("a1", "a2", "a3", "a4", "a5"), sink.getEntries());
+		assertEquals(0, stat(SamplePipeline.STAT_PIPELINE_DROP_NEWEST_COUNT));
+	}
+
+	@Test
+	public void testParsePolicy() {
+		assertEquals(OverflowPolicy.DROP_OLDEST, OverflowPolicy.parse(" drop-oldest"));
+		assertEquals(OverflowPolicy.PRIORITY, OverflowPolicy.parse("Priority"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalidPolicy() {
+		OverflowPolicy.parse("drop-all");
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.sink;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jkoolcloud.tnt4j.core.PropertySnapshot;
+import com.jkoolcloud.tnt4j.stream.jmx.format.FactNameValueFormatter;
+
+/**
+ * Tests of {@link BatchEventSink} batching and framing of formatted entries.
+ *
+ * @version $Revision: 1 $
+ */
+public class BatchEventSinkTest {
+	private CaptureEventSink out;
+	private BatchEventSink sink;
+
+	@Before
+	public void setUp() {
+		out = new CaptureEventSink("batch-test", new FactNameValueFormatter());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (sink != null) {
+			sink.close();
+		}
+	}
+
+	private BatchEventSink open(int batchSize, long batchTimeMs, int maxBytes, boolean framed) throws Exception {
+		sink = new BatchEventSink("batch", out, batchSize, batchTimeMs, maxBytes, framed);
+		sink.open();
+		return sink;
+	}
+
+	@Test
+	public void testBatchSize() throws Exception {
+		open(3, 0, 65536, false);
+		sink.write("e1");
+		sink.write("e2\n");
+		assertTrue(out.getEntries().isEmpty());
+		assertEquals(2, sink.getStats().get(BatchEventSink.STAT_BATCH_PENDING_ENTRIES));
+
+		sink.write("e3");
+		assertEquals(Collections.<Object> singletonList("e1\ne2\ne3"), out.getEntries());
+		assertEquals(1L, sink.getStats().get(BatchEventSink.STAT_BATCH_WRITE_COUNT));
+		assertEquals(3L, sink.getStats().get(BatchEventSink.STAT_BATCH_ENTRY_COUNT));
+		assertEquals(0L, sink.getStats().get(BatchEventSink.STAT_BATCH_PENDING_BYTES));
+	}
+
+	@Test
+	public void testFramed() throws Exception {
+		open(2, 0, 65536, true);
+		sink.write("a");
+		sink.write("\u00e9\u20ac");
+		assertEquals(Collections.<Object> singletonList(BatchEventSink.FRAME_PREFIX + " entries=2 bytes=7\na\n\u00e9\u20ac"),
+				out.getEntries());
+	}
+
+	@Test
+	public void testMaxBytes() throws Exception {
+		open(100, 0, 10, false);
+		sink.write("12345");
+		sink.write("67890");
+		// entry not fitting into the batch starts a new one
+		assertEquals(Collections.<Object> singletonList("12345"), out.getEntries());
+		sink.write("a");
+		sink.write("oversized entry");
+		assertEquals(Arrays.<Object> asList("12345", "67890\na", "oversized entry"), out.getEntries());
+	}
+
+	@Test
+	public void testSkipsEmptyEntries() throws Exception {
+		open(2, 0, 65536, false);
+		sink.write("");
+		sink.write("a");
+		sink.write("");
+		assertTrue(out.getEntries().isEmpty());
+		sink.flush();
+		assertEquals(Collections.<Object> singletonList("a"), out.getEntries());
+		sink.flush();
+		assertEquals(1, out.getEntries().size());
+	}
+
+	@Test
+	public void testKeepsOrder() throws Exception {
+		open(10, 0, 65536, false);
+		sink.write("a");
+		PropertySnapshot snap = new PropertySnapshot("java.lang", "java.lang:type=Threading");
+		snap.add("ThreadCount", 5);
+		sink.log(snap);
+		// entries not written as plain strings are written after pending batch
+		sink.write(Integer.valueOf(7));
+		assertEquals(2, out.getEntries().size());
+		assertTrue(((String) out.getEntries().get(0)).startsWith("a\n"));
+		assertTrue(((String) out.getEntries().get(0)).contains("ThreadCount=5"));
+		assertEquals("7", out.getEntries().get(1));
+		assertEquals(1L, sink.getStats().get(BatchEventSink.STAT_BATCH_WRITE_COUNT));
+	}
+
+	@Test
+	public void testBatchTime() throws Exception {
+		open(100, 50, 65536, false);
+		sink.write("a");
+		long deadline = System.currentTimeMillis() + 5000;
+		while (out.getEntries().isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(Collections.<Object> singletonList("a"), out.getEntries());
+	}
+
+	@Test
+	public void testCloseWritesPending() throws Exception {
+		open(100, 0, 65536, false);
+		sink.write("a");
+		sink.close();
+		sink = null;
+		assertEquals(Collections.<Object> singletonList("a"), out.getEntries());
+		assertFalse(out.isOpen());
+	}
+
+	@Test
+	public void testUtf8Length() {
+		assertEquals(0, BatchEventSink.utf8Length(""));
+		assertEquals(3, BatchEventSink.utf8Length("abc"));
+		assertEquals(9, BatchEventSink.utf8Length("\u00e9\u20ac\ud83d\ude00"));
+		// unpaired surrogate is encoded as replacement character
+		assertEquals(3, BatchEventSink.utf8Length("\ud83d"));
+	}
+}
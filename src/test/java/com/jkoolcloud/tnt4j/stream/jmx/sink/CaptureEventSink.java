@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 JKOOL, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jkoolcloud.tnt4j.stream.jmx.sink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import com.jkoolcloud.tnt4j.TrackingLogger;
+import com.jkoolcloud.tnt4j.config.DefaultConfigFactory;
+import com.jkoolcloud.tnt4j.config.TrackerConfig;
+import com.jkoolcloud.tnt4j.core.OpLevel;
+import com.jkoolcloud.tnt4j.core.Snapshot;
+import com.jkoolcloud.tnt4j.format.EventFormatter;
+import com.jkoolcloud.tnt4j.sink.AbstractEventSink;
+import com.jkoolcloud.tnt4j.sink.EventSink;
+import com.jkoolcloud.tnt4j.sink.EventSinkFactory;
+import com.jkoolcloud.tnt4j.source.Source;
+import com.jkoolcloud.tnt4j.source.SourceType;
+import com.jkoolcloud.tnt4j.tracker.TrackingActivity;
+import com.jkoolcloud.tnt4j.tracker.TrackingEvent;
+
+/**
+ * Event sink capturing logged and written entries in memory, used by tests. Logged activities, events and snapshots
+ * are captured as is, messages and written entries are captured as formatted strings. Writes can be held to simulate
+ * stalled sink.
+ *
+ * @version $Revision: 1 $
+ */
+public class CaptureEventSink extends AbstractEventSink {
+	private final List<Object> entries = Collections.synchronizedList(new ArrayList<Object>());
+	private volatile CountDownLatch gate;
+	private volatile boolean open = false;
+
+	public CaptureEventSink(String name, EventFormatter formatter) {
+		super(name, formatter);
+	}
+
+	/**
+	 * Create tracking logger reporting to a given sink.
+	 *
+	 * @param sink sink all tracked entries are reported to
+	 * @return opened tracking logger instance
+	 */
+	public static TrackingLogger newLogger(final CaptureEventSink sink) throws Exception {
+		TrackerConfig config = DefaultConfigFactory.getInstance().getConfig(sink.getName(), SourceType.APPL,
+				Collections.<String, Properties> emptyMap());
+		config.setEventSinkFactory(new EventSinkFactory() {
+			@Override
+			public EventSink getEventSink(String name) {
+				return sink;
+			}
+
+			@Override
+			public EventSink getEventSink(String name, Properties props) {
+				return sink;
+			}
+
+			@Override
+			public EventSink getEventSink(String name, Properties props, EventFormatter frmt) {
+				return sink;
+			}
+
+			@Override
+			public long getTTL() {
+				return 0;
+			}
+
+			@Override
+			public void setTTL(long ttl) {
+			}
+		});
+		TrackingLogger logger = TrackingLogger.getInstance(config.build());
+		logger.open();
+		return logger;
+	}
+
+	/**
+	 * Obtain captured entries.
+	 *
+	 * @return copy of captured entries
+	 */
+	public List<Object> getEntries() {
+		synchronized (entries) {
+			return new ArrayList<Object>(entries);
+		}
+	}
+
+	/**
+	 * Block writes until {@link #release()} is called.
+	 */
+	public void hold() {
+		gate = new CountDownLatch(1);
+	}
+
+	/**
+	 * Release writes blocked by {@link #hold()}.
+	 */
+	public void release() {
+		CountDownLatch held = gate;
+		gate = null;
+		if (held != null) {
+			held.countDown();
+		}
+	}
+
+	@Override
+	public Object getSinkHandle() {
+		return entries;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void open() {
+		open = true;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+
+	@Override
+	public boolean isSet(OpLevel sev) {
+		return true;
+	}
+
+	@Override
+	protected void _log(TrackingEvent event) {
+		entries.add(event);
+	}
+
+	@Override
+	protected void _log(TrackingActivity activity) {
+		entries.add(activity);
+	}
+
+	@Override
+	protected void _log(Snapshot snapshot) {
+		entries.add(snapshot);
+	}
+
+	@Override
+	protected void _log(long ttl, Source src, OpLevel sev, String msg, Object... args) {
+		entries.add(getEventFormatter().format(ttl, src, sev, msg, args));
+	}
+
+	@Override
+	protected void _write(Object msg, Object... args) throws InterruptedException {
+		CountDownLatch held = gate;
+		if (held != null) {
+			held.await();
+		}
+		entries.add(String.valueOf(msg));
+	}
+}